@@ -0,0 +1,79 @@
+package gov.va.umls.benchmark;
+
+import gov.va.oia.terminology.converters.umlsUtils.rrf.REL;
+import gov.va.umls.rrf.MRCONSO;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.ihtsdo.etypes.EConcept;
+import org.ihtsdo.tk.dto.concept.component.attribute.TkConceptAttributes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The per CUI conversion steps.  The supporting rows are prefetched for the whole fixture, so these measure the conversion 
+ * itself rather than the staging database.  Each operation covers every fixture CUI (or atom).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ConversionBenchmark
+{
+	private static final UUID CONCEPT = UUID.nameUUIDFromBytes("benchmark concept".getBytes());
+
+	@Benchmark
+	public void processCUIRows(FixtureState state, Blackhole bh) throws Exception
+	{
+		ConverterFixture fixture = state.fixture;
+		for (HashMap<String, ArrayList<MRCONSO>> conceptData : fixture.getCUIs())
+		{
+			bh.consume(fixture.processCUIRows(conceptData));
+		}
+	}
+
+	@Benchmark
+	public void processSAT(FixtureState state, Blackhole bh) throws Exception
+	{
+		ConverterFixture fixture = state.fixture;
+		for (MRCONSO atom : fixture.getAtoms())
+		{
+			TkConceptAttributes attributes = new TkConceptAttributes();
+			fixture.processSAT(attributes, atom);
+			bh.consume(attributes);
+		}
+	}
+
+	@Benchmark
+	public void addDefinitions(FixtureState state, Blackhole bh) throws Exception
+	{
+		ConverterFixture fixture = state.fixture;
+		for (MRCONSO atom : fixture.getAtoms())
+		{
+			EConcept concept = new EConcept();
+			concept.setPrimordialUuid(CONCEPT);
+			fixture.addDefinitions(concept, atom);
+			bh.consume(concept);
+		}
+	}
+
+	/**
+	 * The SCT retargeting of the atom relationships, from processCUIRows.  Retargeting is repeatable, so the same 
+	 * relationships are reused.
+	 */
+	@Benchmark
+	public ArrayList<REL> sctRelationshipRetargeting(FixtureState state)
+	{
+		ArrayList<REL> relationships = new ArrayList<>(state.fixture.getAtomRelationships());
+		state.fixture.retargetSCTRelationships(relationships);
+		return relationships;
+	}
+}
@@ -0,0 +1,157 @@
+package gov.va.umls.benchmark;
+
+import gov.va.oia.terminology.converters.umlsUtils.rrf.REL;
+import gov.va.umls.ConvertedCUI;
+import gov.va.umls.FixtureConversion;
+import gov.va.umls.UMLSMojo;
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.MRCONSOReader;
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.ihtsdo.etypes.EConcept;
+import org.ihtsdo.tk.dto.concept.component.TkComponent;
+
+/**
+ * A {@link UMLSMojo} set up on the fixture META of the UMLS-mojo tests (see {@link FixtureConversion}), stopped just before the 
+ * main CUI loop - so the benchmarks can drive the individual steps of the conversion.
+ */
+public class ConverterFixture
+{
+	private File folder_;
+	private UMLSMojo mojo_;
+	private ArrayList<HashMap<String, ArrayList<MRCONSO>>> cuis_ = new ArrayList<>();
+	private ArrayList<MRCONSO> atoms_ = new ArrayList<>();
+	private ArrayList<REL> atomRelationships_ = new ArrayList<>();
+
+	/**
+	 * @param folder - an empty folder to copy the fixture META, and build the staging database and output, into
+	 */
+	public ConverterFixture(File folder) throws Exception
+	{
+		folder_ = folder;
+		FixtureConversion conversion = new FixtureConversion(folder, true);
+		mojo_ = conversion.getMojo();
+		mojo_.prepare();
+
+		//Group the rows the same way as the main loop
+		MRCONSOReader reader = mojo_.openMRCONSO();
+		HashMap<String, ArrayList<MRCONSO>> conceptData = new HashMap<>();
+		MRCONSO current;
+		while ((current = reader.read()) != null)
+		{
+			if (conceptData.size() > 0 && !conceptData.values().iterator().next().get(0).cui.equals(current.cui))
+			{
+				cuis_.add(conceptData);
+				conceptData = new HashMap<>();
+			}
+			String groupKey = current.getSab() + "-" + current.code;
+			ArrayList<MRCONSO> codeConcepts = conceptData.get(groupKey);
+			if (codeConcepts == null)
+			{
+				codeConcepts = new ArrayList<>();
+				conceptData.put(groupKey, codeConcepts);
+			}
+			codeConcepts.add(current);
+			if (!mojo_.specialHandling(current.getSab()))
+			{
+				atoms_.add(current);
+			}
+		}
+		if (conceptData.size() > 0)
+		{
+			cuis_.add(conceptData);
+		}
+		reader.close();
+
+		//The fixture is a single prefetch window
+		CUILookup lookup = mojo_.getLookup();
+		lookup.prefetch(cuis_.get(0).values().iterator().next().get(0).cui,
+				cuis_.get(cuis_.size() - 1).values().iterator().next().get(0).cui);
+
+		for (MRCONSO atom : atoms_)
+		{
+			atomRelationships_.addAll(REL.read(atom.getSab(), lookup.atomRelationshipsForward(atom.cui, atom.aui), true, mojo_));
+			atomRelationships_.addAll(REL.read(atom.getSab(), lookup.atomRelationshipsBackward(atom.cui, atom.aui), false, mojo_));
+		}
+	}
+
+	public File getMETAFolder()
+	{
+		return new File(folder_, "META");
+	}
+
+	/**
+	 * @return the MRCONSO rows of each fixture CUI, grouped by SAB and code - as passed to processCUIRows
+	 */
+	public List<HashMap<String, ArrayList<MRCONSO>>> getCUIs()
+	{
+		return cuis_;
+	}
+
+	/**
+	 * @return the atoms that get their own concepts (not skipped by the SCT special handling)
+	 */
+	public List<MRCONSO> getAtoms()
+	{
+		return atoms_;
+	}
+
+	/**
+	 * @return the atom relationships of {@link #getAtoms()}, before the SCT retargeting
+	 */
+	public List<REL> getAtomRelationships()
+	{
+		return atomRelationships_;
+	}
+
+	public MRCONSOReader openMRCONSO() throws SQLException
+	{
+		return mojo_.openMRCONSO();
+	}
+
+	public ConvertedCUI processCUIRows(HashMap<String, ArrayList<MRCONSO>> conceptData) throws SQLException
+	{
+		return mojo_.processCUIRows(mojo_.getLookup(), conceptData);
+	}
+
+	public void processSAT(TkComponent<?> itemToAnnotate, MRCONSO atom) throws SQLException
+	{
+		mojo_.processSAT(itemToAnnotate, mojo_.getLookup().atomAttributes(atom.cui, atom.aui), atom.code, atom.getSab(), false);
+	}
+
+	public void addDefinitions(EConcept concept, MRCONSO atom) throws SQLException
+	{
+		mojo_.addDefinitions(mojo_.getLookup(), concept, atom.cui, atom.aui, atom.getSab(), false);
+	}
+
+	public void retargetSCTRelationships(List<REL> relationships)
+	{
+		mojo_.retargetSCTRelationships(relationships);
+	}
+
+	/**
+	 * Shut down the staging database, and remove the fixture folder.
+	 */
+	public void close()
+	{
+		mojo_.cleanUp();
+		delete(folder_);
+	}
+
+	private static void delete(File f)
+	{
+		File[] children = f.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		f.delete();
+	}
+}
@@ -0,0 +1,63 @@
+package gov.va.umls.benchmark;
+
+import gov.va.oia.terminology.converters.sharedUtils.stats.ConverterUUID;
+import gov.va.umls.rrf.MRCONSO;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Namespace UUID creation, with the namespace the converter configured for the fixture.  Each operation creates the UUIDs
+ * for the AUI, CUI and code strings of every fixture atom.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ConverterUUIDBenchmark
+{
+	@State(Scope.Benchmark)
+	public static class Names
+	{
+		public ArrayList<String> names = new ArrayList<>();
+
+		@Setup(Level.Trial)
+		public void setUp(FixtureState state)
+		{
+			for (HashMap<String, ArrayList<MRCONSO>> conceptData : state.fixture.getCUIs())
+			{
+				for (ArrayList<MRCONSO> atoms : conceptData.values())
+				{
+					for (MRCONSO atom : atoms)
+					{
+						names.add("AUI" + atom.aui);
+						names.add("CUI" + atom.cui);
+						names.add(atom.cui + ":" + atom.getSab() + ":" + atom.code);
+					}
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public void createNamespaceUUIDFromString(Names names, Blackhole bh)
+	{
+		for (String name : names.names)
+		{
+			bh.consume(ConverterUUID.createNamespaceUUIDFromString(name));
+		}
+	}
+}
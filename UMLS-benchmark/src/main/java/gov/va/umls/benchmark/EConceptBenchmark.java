@@ -0,0 +1,64 @@
+package gov.va.umls.benchmark;
+
+import gov.va.umls.ConvertedCUI;
+import gov.va.umls.rrf.MRCONSO;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.ihtsdo.etypes.EConcept;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializing the converted fixture concepts, as written to the jbin file.  Each operation writes every concept once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EConceptBenchmark
+{
+	@State(Scope.Thread)
+	public static class Concepts
+	{
+		public ArrayList<EConcept> concepts = new ArrayList<>();
+		public ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024 * 1024);
+		public DataOutputStream dos = new DataOutputStream(buffer);
+
+		@Setup(Level.Trial)
+		public void setUp(FixtureState state) throws Exception
+		{
+			for (HashMap<String, ArrayList<MRCONSO>> conceptData : state.fixture.getCUIs())
+			{
+				for (ConvertedCUI.Output output : state.fixture.processCUIRows(conceptData).getOutputs())
+				{
+					concepts.add(output.getConcept());
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public int writeExternal(Concepts concepts) throws Exception
+	{
+		concepts.buffer.reset();
+		for (EConcept concept : concepts.concepts)
+		{
+			concept.writeExternal(concepts.dos);
+		}
+		concepts.dos.flush();
+		return concepts.buffer.size();
+	}
+}
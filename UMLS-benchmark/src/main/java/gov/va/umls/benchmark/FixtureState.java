@@ -0,0 +1,29 @@
+package gov.va.umls.benchmark;
+
+import java.nio.file.Files;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The converter set up on the fixture META - shared by all of the benchmark methods in a fork.
+ */
+@State(Scope.Benchmark)
+public class FixtureState
+{
+	public ConverterFixture fixture;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		fixture = new ConverterFixture(Files.createTempDirectory("umlsBenchmark").toFile());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		fixture.close();
+	}
+}
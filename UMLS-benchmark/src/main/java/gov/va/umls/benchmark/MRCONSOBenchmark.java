@@ -0,0 +1,61 @@
+package gov.va.umls.benchmark;
+
+import gov.va.umls.FixtureConversion;
+import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.MRCONSOReader;
+import gov.va.umls.rrf.MappedRRFReader;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Materializing the MRCONSO rows - from the staging database (as the main loop does), and from the RRF file itself (as the
+ * loader does).  Each operation is a pass over the whole fixture MRCONSO.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MRCONSOBenchmark
+{
+	@Benchmark
+	public int stagingDatabaseRows(FixtureState state, Blackhole bh) throws Exception
+	{
+		MRCONSOReader reader = state.fixture.openMRCONSO();
+		int count = 0;
+		MRCONSO row;
+		while ((row = reader.read()) != null)
+		{
+			bh.consume(row);
+			count++;
+		}
+		reader.close();
+		return count;
+	}
+
+	@Benchmark
+	public int mappedFileRows(FixtureState state, Blackhole bh) throws Exception
+	{
+		File meta = state.fixture.getMETAFolder();
+		RRFLayout layout = new RRFLayout(meta);
+		MappedRRFReader reader = new MappedRRFReader(RRFLayout.dataFile(meta, "MRCONSO"), layout.indexOf("MRCONSO", "SAB"),
+				FixtureConversion.SAB_FILTERS, null);
+		int count = 0;
+		while (reader.hasNextRow())
+		{
+			bh.consume(reader.getNextRow());
+			count++;
+		}
+		reader.close();
+		return count;
+	}
+}
@@ -0,0 +1,120 @@
+package gov.va.umls.benchmark;
+
+import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Measures the heap held by the MRCONSO rows of a META folder (as the CUI groups of the main loop hold them) - once as
+ * {@link MRCONSO} rows, and once as rows with their own String for every column and boxed SRL / CVF, as MRCONSO used to
+ * read them.  Not a JMH benchmark - JMH measures allocation (-prof gc), not what stays reachable.
+ *
+ * Usage: MRCONSOHeap metaFolder [maxRows] - for example against a {@link SyntheticMETA} folder.  Run with a fixed heap
+ * (-Xms = -Xmx) so the numbers aren't skewed by the heap resizing.
+ */
+public class MRCONSOHeap
+{
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.err.println("Usage: MRCONSOHeap metaFolder [maxRows]");
+			System.exit(1);
+		}
+		File meta = new File(args[0]);
+		int maxRows = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+
+		//Once to load the classes, and fill the dictionary
+		read(meta, maxRows, true);
+
+		long before = usedHeap();
+		ArrayList<Object> rows = read(meta, maxRows, true);
+		long encoded = usedHeap() - before;
+		int count = rows.size();
+		rows = null;
+
+		before = usedHeap();
+		rows = read(meta, maxRows, false);
+		long strings = usedHeap() - before;
+
+		System.out.println(String.format("%d rows: %.1f bytes per MRCONSO row, %.1f bytes per row of Strings (%.0f%% less)", count,
+				encoded / (double) count, strings / (double) count, 100.0 * (strings - encoded) / strings));
+		if (rows.size() != count)
+		{
+			throw new IllegalStateException("Read a different number of rows");
+		}
+	}
+
+	private static ArrayList<Object> read(File meta, int maxRows, boolean encoded) throws IOException
+	{
+		int[] columns = new RRFLayout(meta).indexesOf("MRCONSO", MRCONSO.COLUMNS);
+		ArrayList<Object> rows = new ArrayList<>();
+		BufferedReader br = RRFLayout.open(RRFLayout.dataFile(meta, "MRCONSO"));
+		String line;
+		while (rows.size() < maxRows && (line = br.readLine()) != null)
+		{
+			String[] fields = RRFLayout.split(line);
+			String[] values = new String[columns.length];
+			for (int i = 0; i < values.length; i++)
+			{
+				values[i] = columns[i] < fields.length ? fields[columns[i]] : null;
+			}
+			rows.add(encoded ? new MRCONSO(values) : new StringRow(values));
+		}
+		br.close();
+		return rows;
+	}
+
+	private static long usedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++)
+		{
+			System.gc();
+			try
+			{
+				Thread.sleep(100);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * The fields of the MRCONSO row before the dictionary encoding
+	 */
+	@SuppressWarnings("unused")
+	private static class StringRow
+	{
+		private String cui, lat, ts, lui, stt, sui, ispref, aui, saui, scui, sdui, sab, tty, code, str, suppress;
+		private Integer srl, cvf;
+
+		StringRow(String[] values)
+		{
+			cui = values[0];
+			lat = values[1];
+			ts = values[2];
+			lui = values[3];
+			stt = values[4];
+			sui = values[5];
+			ispref = values[6];
+			aui = values[7];
+			saui = values[8];
+			scui = values[9];
+			sdui = values[10];
+			sab = values[11];
+			tty = values[12];
+			code = values[13];
+			str = values[14];
+			srl = values[15] == null ? null : Integer.valueOf(values[15]);
+			suppress = values[16];
+			cvf = values[17] == null ? null : Integer.valueOf(values[17]);
+		}
+	}
+}
@@ -0,0 +1,611 @@
+package gov.va.umls.benchmark;
+
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes a synthetic - but structurally valid - META folder, for running the converter end to end without licensed UMLS data.
+ *
+ * Scale 1 is 100,000 CUIs.  The identifiers are consistent across the files (every AUI / CUI referenced by MRSAT, MRREL,
+ * MRDEF, MRSTY and MRHIER is in MRCONSO), and the data is skewed the way the real release is:  the atom count per CUI is
+ * heavy tailed (a few CUIs have thousands of atoms), SNOMED concepts have several parents, and the parents are picked
+ * towards the top of each hierarchy, so a few concepts have very many children.
+ *
+ * The SABs, term types, attribute names and relationship labels are those of the fixture META of the UMLS-mojo tests (from
+ * its test jar) - its MRDOC, MRRANK and MRSAB are copied across as is.  MRFILES and MRCOLS are built from the written files.
+ *
+ * Usage: SyntheticMETA outputFolder [scale] [seed] - the META folder is created within outputFolder, so outputFolder is the
+ * inputFileLocation for the mojo.  Use the sabFilters of {@link gov.va.umls.FixtureConversion#SAB_FILTERS} (or none).
+ */
+public class SyntheticMETA
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	public static final int CUIS_PER_SCALE = 100000;
+	private static final int MAX_ATOMS_PER_CUI = 2000;
+
+	//name, description, columns (with their MRCOLS data types)
+	private static final String[][] FILES = new String[][] {
+		{"MRCONSO", "Concept names and sources", "CUI char(8),LAT char(3),TS char(1),LUI varchar(10),STT varchar(3),SUI varchar(10),"
+			+ "ISPREF char(1),AUI varchar(9),SAUI varchar(50),SCUI varchar(100),SDUI varchar(100),SAB varchar(40),TTY varchar(40),"
+			+ "CODE varchar(100),STR varchar(3000),SRL integer,SUPPRESS char(1),CVF integer"},
+		{"MRSAT", "Simple Concept, Term and String Attributes", "CUI char(8),LUI varchar(10),SUI varchar(10),METAUI varchar(100),"
+			+ "STYPE varchar(50),CODE varchar(100),ATUI varchar(11),SATUI varchar(50),ATN varchar(100),SAB varchar(40),"
+			+ "ATV varchar(4000),SUPPRESS char(1),CVF integer"},
+		{"MRREL", "Related Concepts", "CUI1 char(8),AUI1 varchar(9),STYPE1 varchar(50),REL varchar(4),CUI2 char(8),AUI2 varchar(9),"
+			+ "STYPE2 varchar(50),RELA varchar(100),RUI varchar(10),SRUI varchar(50),SAB varchar(40),SL varchar(40),RG varchar(10),"
+			+ "DIR varchar(1),SUPPRESS char(1),CVF integer"},
+		{"MRDEF", "Definitions", "CUI char(8),AUI varchar(9),ATUI varchar(11),SATUI varchar(50),SAB varchar(40),DEF varchar(4000),"
+			+ "SUPPRESS char(1),CVF integer"},
+		{"MRSTY", "Semantic Types", "CUI char(8),TUI char(4),STN varchar(100),STY varchar(50),ATUI varchar(11),CVF integer"},
+		{"MRHIER", "Computable hierarchies", "CUI char(8),AUI varchar(9),CXN integer,PAUI varchar(10),SAB varchar(40),"
+			+ "RELA varchar(100),PTR varchar(1000),HCD varchar(100),CVF integer"},
+		{"MRRANK", "Concept Name Ranking", "RANK integer,SAB varchar(40),TTY varchar(40),SUPPRESS char(1)"},
+		{"MRDOC", "Typed key value metadata map", "DOCKEY varchar(50),VALUE varchar(200),TYPE varchar(50),EXPL varchar(1000)"},
+		{"MRSAB", "Source Information", "VCUI char(8),RCUI char(8),VSAB varchar(40),RSAB varchar(40),SON varchar(3000),SF varchar(40),"
+			+ "SVER varchar(40),VSTART char(8),VEND char(8),IMETA varchar(10),RMETA varchar(10),SLC varchar(1000),SCC varchar(1000),"
+			+ "SRL integer,TFR integer,CFR integer,CXTY varchar(50),TTYL varchar(400),ATNL varchar(4000),LAT char(3),CENC varchar(40),"
+			+ "CURVER char(1),SABIN char(1),SSN varchar(3000),SCIT varchar(4000)"},
+		{"MRFILES", "Relational Files", "FIL varchar(50),DES varchar(200),FMT varchar(300),CLS integer,RWS integer,BTS integer"},
+		{"MRCOLS", "Attribute Relationships", "COL varchar(40),DES varchar(200),REF varchar(40),MIN integer,AV numeric(5,2),"
+			+ "MAX integer,FIL varchar(50),DTY varchar(40)"}};
+
+	//The source roots - as in the fixture, which the MRSAB rows point at
+	private static final String[][] SRC_ROOTS = new String[][] {
+		{"C1000001", "A0000001", "ICD9CM", "International Classification of Diseases, Ninth Revision, Clinical Modification"},
+		{"C1000002", "A0000003", "SNOMEDCT_US", "SNOMED CT, US Edition"},
+		{"C1000003", "A0000004", "MSH", "Medical Subject Headings"}};
+
+	private static final String[] SABS = new String[] {"SNOMEDCT_US", "MSH", "ICD9CM", "NCI"};
+	private static final int[] SAB_WEIGHTS = new int[] {45, 25, 15, 15};
+
+	private static final String[][] SEMANTIC_TYPES = new String[][] {
+		{"T047", "B2.2.1.2.1", "Disease or Syndrome"}, {"T184", "A2.2.2", "Sign or Symptom"}, {"T019", "B2.3", "Congenital Abnormality"},
+		{"T061", "B1.3.1.3", "Therapeutic or Preventive Procedure"}, {"T121", "A1.4.1.1.1", "Pharmacologic Substance"},
+		{"T023", "A1.2.3.1", "Body Part, Organ, or Organ Component"}};
+
+	private static final String[] WORDS = ("acute chronic disorder syndrome disease of the left right upper lower limb heart lung renal "
+		+ "hepatic cerebral vascular infection inflammation neoplasm malignant benign primary secondary congenital deficiency "
+		+ "fracture injury procedure repair excision biopsy examination finding pain swelling type due to with without "
+		+ "complication unspecified other specified stage severe mild moderate").split(" ");
+
+	private File meta_;
+	private Random random_;
+	private LinkedHashMap<String, RRFWriter> writers_ = new LinkedHashMap<>();
+	private RRFWriter conso_, sat_, rel_, def_, sty_, hier_;
+	private Hierarchy snomed_, msh_, icd9_;
+	private int nextAui_ = 1000000, nextAtui_ = 1000000, nextRui_ = 1000000, nextSui_ = 1000000;
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.err.println("Usage: SyntheticMETA outputFolder [scale] [seed]");
+			System.exit(1);
+		}
+		double scale = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		long start = System.currentTimeMillis();
+		int cuis = new SyntheticMETA(new File(args[0]), seed).write(scale);
+		System.out.println("Wrote " + cuis + " CUIs to " + new File(args[0], "META").getAbsolutePath() + " in "
+				+ ((System.currentTimeMillis() - start) / 1000) + " seconds");
+	}
+
+	public SyntheticMETA(File outputFolder, long seed)
+	{
+		meta_ = new File(outputFolder, "META");
+		random_ = new Random(seed);
+	}
+
+	/**
+	 * @return the number of (generated) CUIs written
+	 */
+	public int write(double scale) throws IOException
+	{
+		meta_.mkdirs();
+		for (String[] file : FILES)
+		{
+			if (!file[0].equals("MRFILES") && !file[0].equals("MRCOLS"))
+			{
+				writers_.put(file[0], new RRFWriter(file));
+			}
+		}
+		conso_ = writers_.get("MRCONSO");
+		sat_ = writers_.get("MRSAT");
+		rel_ = writers_.get("MRREL");
+		def_ = writers_.get("MRDEF");
+		sty_ = writers_.get("MRSTY");
+		hier_ = writers_.get("MRHIER");
+
+		for (String name : new String[] {"MRRANK", "MRDOC", "MRSAB"})
+		{
+			copyFixture(writers_.get(name));
+		}
+		conso_.write("C1000001", "ENG", "P", "L1000002", "VO", "S1000002", "Y", "A0000002", "", "", "V-ICD9CM", "SRC", "VPT", "V-ICD9CM",
+				"ICD-9-CM", "0", "N", "");
+		for (String[] root : SRC_ROOTS)
+		{
+			conso_.write(root[0], "ENG", "P", "L" + root[0].substring(1), "PF", "S" + root[1].substring(1), "Y", root[1], "", "",
+					"V-" + root[2], "SRC", "RPT", "V-" + root[2], root[3], "0", "N", "");
+		}
+		snomed_ = new Hierarchy("SNOMEDCT_US", SRC_ROOTS[1]);
+		msh_ = new Hierarchy("MSH", SRC_ROOTS[2]);
+		icd9_ = new Hierarchy("ICD9CM", SRC_ROOTS[0]);
+
+		int cuis = (int)Math.max(1, Math.round(CUIS_PER_SCALE * scale));
+		for (int i = 0; i < cuis; i++)
+		{
+			writeCUI(i);
+		}
+
+		for (RRFWriter writer : writers_.values())
+		{
+			writer.close();
+		}
+		writeFileDescriptions();
+		return cuis;
+	}
+
+	private void writeCUI(int index) throws IOException
+	{
+		String cui = "C" + (2000000 + index);
+
+		//Heavy tailed - mostly 1 to 4 atoms, a few with thousands
+		int atoms = (int)Math.min(MAX_ATOMS_PER_CUI, Math.floor(1.0 / Math.pow(1.0 - random_.nextDouble(), 1.0 / 1.4)));
+
+		//The first atom of each SAB is the 'concept' atom - the one in the source hierarchy
+		LinkedHashMap<String, String> conceptAtoms = new LinkedHashMap<>();
+		String preferredLui = "L" + (2000000 + index);
+		for (int a = 0; a < atoms; a++)
+		{
+			String sab = pickSab();
+			boolean first = !conceptAtoms.containsKey(sab);
+			String aui = "A" + nextAui_++;
+			String code = code(sab, index);
+			String tty = tty(sab, first);
+			boolean preferred = a == 0;
+			String lui = preferred ? preferredLui : "L" + (5000000 + nextSui_);
+			String sui = "S" + nextSui_++;
+			String scui = sab.equals("SNOMEDCT_US") ? code : "";
+			String sdui = sab.equals("MSH") ? code : "";
+			String saui = sab.equals("SNOMEDCT_US") ? Long.toString(100000000L + nextSui_) : "";
+			String srl = sab.equals("SNOMEDCT_US") ? "9" : "0";
+			conso_.write(cui, "ENG", preferred ? "P" : "S", lui, first ? "PF" : "VO", sui, first ? "Y" : "N", aui, saui, scui, sdui, sab,
+					tty, code, phrase(2, 8), srl, random_.nextInt(50) == 0 ? "O" : "N", random_.nextInt(4) == 0 ? "256" : "");
+			writeAtomAttributes(cui, lui, sui, aui, sab, code, first);
+			if (first)
+			{
+				conceptAtoms.put(sab, aui);
+				Hierarchy hierarchy = hierarchy(sab);
+				if (hierarchy != null)
+				{
+					hierarchy.add(cui, aui, code);
+				}
+				if ((sab.equals("MSH") || sab.equals("NCI")) && random_.nextInt(10) < 4)
+				{
+					def_.write(cui, aui, "AT" + nextAtui_++, "", sab, phrase(8, 40), "N", "");
+				}
+			}
+		}
+
+		//ICD9 to SNOMED maps
+		if (conceptAtoms.containsKey("ICD9CM") && conceptAtoms.containsKey("SNOMEDCT_US"))
+		{
+			writeRelationship(cui, conceptAtoms.get("ICD9CM"), "AUI", cui, conceptAtoms.get("SNOMEDCT_US"), "SCUI", "RO",
+					"mapped_from", "mapped_to", "SNOMEDCT_US");
+		}
+
+		//CUI level relationships to an earlier CUI
+		if (index > 0 && random_.nextInt(5) == 0)
+		{
+			String other = "C" + (2000000 + random_.nextInt(index));
+			writeRelationship(cui, "", "CUI", other, "", "CUI", random_.nextBoolean() ? "RB" : "RO", "", "", "MTH");
+		}
+		if (random_.nextInt(10) == 0)
+		{
+			sat_.write(cui, "", "", "", "CUI", "", "AT" + nextAtui_++, "", "LT", "MTH", "TRD", "N", "");
+		}
+
+		int types = random_.nextInt(5) == 0 ? 2 : 1;
+		for (int t = 0; t < types; t++)
+		{
+			String[] type = SEMANTIC_TYPES[random_.nextInt(SEMANTIC_TYPES.length)];
+			sty_.write(cui, type[0], type[1], type[2], "AT" + nextAtui_++, "256");
+		}
+	}
+
+	private void writeAtomAttributes(String cui, String lui, String sui, String aui, String sab, String code, boolean conceptAtom)
+			throws IOException
+	{
+		if (sab.equals("SNOMEDCT_US") && conceptAtom)
+		{
+			sat_.write(cui, lui, sui, aui, "SCUI", code, "AT" + nextAtui_++, "", "ACTIVE", sab, "1", "N", "");
+			if (random_.nextBoolean())
+			{
+				sat_.write(cui, lui, sui, aui, "SCUI", code, "AT" + nextAtui_++, "", "CTV3ID", sab, "X" + Integer.toString(random_.nextInt(60000), 36),
+						"N", "");
+			}
+		}
+		else if (sab.equals("MSH"))
+		{
+			if (conceptAtom)
+			{
+				int treeNumbers = 1 + random_.nextInt(3);
+				for (int i = 0; i < treeNumbers; i++)
+				{
+					sat_.write(cui, lui, sui, aui, "CODE", code, "AT" + nextAtui_++, "", "MN", sab, "C" + random_.nextInt(30) + "."
+							+ random_.nextInt(1000) + "." + random_.nextInt(1000), "N", "");
+				}
+				sat_.write(cui, lui, sui, aui, "CODE", code, "AT" + nextAtui_++, "", "DA", sab, "19990101", "N", "");
+			}
+			else
+			{
+				sat_.write(cui, lui, sui, aui, "AUI", code, "AT" + nextAtui_++, "", "TERMUI", sab, "T" + (100000 + nextSui_), "N", "");
+			}
+		}
+		else if (sab.equals("ICD9CM") && random_.nextBoolean())
+		{
+			String[] atns = new String[] {"ICE", "ICI", "ICN"};
+			sat_.write(cui, lui, sui, aui, "AUI", code, "AT" + nextAtui_++, "", atns[random_.nextInt(atns.length)], sab, phrase(3, 12), "N", "");
+		}
+		else if (sab.equals("NCI"))
+		{
+			sat_.write(cui, lui, sui, aui, "CODE", code, "AT" + nextAtui_++, "", "Semantic_Type", sab, SEMANTIC_TYPES[random_.nextInt(
+					SEMANTIC_TYPES.length)][2], "N", "");
+		}
+	}
+
+	/**
+	 * Write both directions of a relationship.  REL / RELA are the relationship of the second item to the first.
+	 */
+	private void writeRelationship(String cui1, String aui1, String stype1, String cui2, String aui2, String stype2, String rel,
+			String rela, String inverseRela, String sab) throws IOException
+	{
+		String srui = sab.equals("SNOMEDCT_US") ? Integer.toString(4000000 + nextRui_) : "";
+		String rg = sab.equals("SNOMEDCT_US") ? "0" : "";
+		String rui = "R" + nextRui_++;
+		rel_.write(cui1, aui1, stype1, rel, cui2, aui2, stype2, rela, rui, srui, sab, sab, rg, "Y", "N", "");
+		rel_.write(cui2, aui2, stype2, inverse(rel), cui1, aui1, stype1, inverseRela, "R" + nextRui_++, srui, sab, sab, rg, "", "N", "");
+		if (sab.equals("SNOMEDCT_US") && random_.nextBoolean())
+		{
+			sat_.write(cui1, "", "", rui, "RUI", "", "AT" + nextAtui_++, "900000000000011006", "CHARACTERISTIC_TYPE_ID", sab,
+					"900000000000011006", "N", "");
+		}
+	}
+
+	private static String inverse(String rel)
+	{
+		switch (rel)
+		{
+			case "PAR": return "CHD";
+			case "CHD": return "PAR";
+			case "RB": return "RN";
+			case "RN": return "RB";
+			default: return rel;
+		}
+	}
+
+	private String pickSab()
+	{
+		int total = 0;
+		for (int w : SAB_WEIGHTS)
+		{
+			total += w;
+		}
+		int pick = random_.nextInt(total);
+		for (int i = 0; i < SABS.length; i++)
+		{
+			pick -= SAB_WEIGHTS[i];
+			if (pick < 0)
+			{
+				return SABS[i];
+			}
+		}
+		return SABS[0];
+	}
+
+	private Hierarchy hierarchy(String sab)
+	{
+		switch (sab)
+		{
+			case "SNOMEDCT_US": return snomed_;
+			case "MSH": return msh_;
+			case "ICD9CM": return icd9_;
+			default: return null;
+		}
+	}
+
+	/**
+	 * One code per CUI and SAB
+	 */
+	private static String code(String sab, int index)
+	{
+		switch (sab)
+		{
+			case "SNOMEDCT_US": return Long.toString(10000000L + index * 10L);
+			case "MSH": return "D" + (100000 + index);
+			case "ICD9CM": return (index / 100) + "." + String.format(Locale.US, "%02d", index % 100);
+			default: return "C" + (10000 + index);
+		}
+	}
+
+	private String tty(String sab, boolean first)
+	{
+		switch (sab)
+		{
+			case "SNOMEDCT_US": return first ? "PT" : (random_.nextInt(3) == 0 ? "FN" : "SY");
+			case "MSH": return first ? "MH" : "ET";
+			default: return "PT";
+		}
+	}
+
+	private String phrase(int minWords, int maxWords)
+	{
+		int words = minWords + random_.nextInt(maxWords - minWords + 1);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < words; i++)
+		{
+			if (i > 0)
+			{
+				sb.append(' ');
+			}
+			sb.append(WORDS[random_.nextInt(WORDS.length)]);
+		}
+		sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+		return sb.toString();
+	}
+
+	private void copyFixture(RRFWriter writer) throws IOException
+	{
+		BufferedReader br = new BufferedReader(new InputStreamReader(SyntheticMETA.class.getResourceAsStream("/fixture/META/"
+				+ writer.name_ + ".RRF"), UTF8));
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			writer.write(Arrays.copyOf(RRFLayout.split(line), writer.columns_.length));
+		}
+		br.close();
+	}
+
+	/**
+	 * MRFILES and MRCOLS - which also describe themselves, so they are built until their own row counts and sizes settle.
+	 */
+	private void writeFileDescriptions() throws IOException
+	{
+		ArrayList<String[]> dataColumns = new ArrayList<>();
+		for (RRFWriter writer : writers_.values())
+		{
+			dataColumns.addAll(writer.describeColumns());
+		}
+
+		RRFWriter files = null;
+		RRFWriter cols = null;
+		for (int pass = 0; pass < 3; pass++)
+		{
+			RRFWriter newFiles = new RRFWriter(FILES[FILES.length - 2], false);
+			RRFWriter newCols = new RRFWriter(FILES[FILES.length - 1], false);
+			ArrayList<RRFWriter> all = new ArrayList<>(writers_.values());
+			all.add(files == null ? newFiles : files);
+			all.add(cols == null ? newCols : cols);
+			for (RRFWriter writer : all)
+			{
+				newFiles.write(writer.name_ + ".RRF", writer.description_, join(writer.columns_), Integer.toString(writer.columns_.length),
+						Long.toString(writer.rows_), Long.toString(writer.bytes_));
+			}
+			for (String[] row : dataColumns)
+			{
+				newCols.write(row);
+			}
+			for (String[] row : (files == null ? newFiles : files).describeColumns())
+			{
+				newCols.write(row);
+			}
+			for (String[] row : (cols == null ? newCols : cols).describeColumns())
+			{
+				newCols.write(row);
+			}
+			files = newFiles;
+			cols = newCols;
+		}
+		files.writeTo(new File(meta_, "MRFILES.RRF"));
+		cols.writeTo(new File(meta_, "MRCOLS.RRF"));
+	}
+
+	private static String join(String[] values)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (String v : values)
+		{
+			sb.append(sb.length() > 0 ? "," : "").append(v);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A source hierarchy - each concept atom gets parents picked towards the top (so the early concepts get many children),
+	 * and a MRHIER row with the path to the source root.
+	 */
+	private class Hierarchy
+	{
+		private String sab_;
+		private String[] root_;
+		private ArrayList<String> cuis_ = new ArrayList<>();
+		private ArrayList<String> auis_ = new ArrayList<>();
+		private static final int TOP_LEVEL = 10;  //the number of items directly under the source root
+		private int[] parents_ = new int[1024];  //the first parent of each item, -1 for the root
+
+		Hierarchy(String sab, String[] root)
+		{
+			sab_ = sab;
+			root_ = root;
+		}
+
+		void add(String cui, String aui, String code) throws IOException
+		{
+			int index = auis_.size();
+			int parentCount = sab_.equals("SNOMEDCT_US") ? 1 + (random_.nextInt(10) < 3 ? 1 : 0) + (random_.nextInt(10) == 0 ? 1 : 0) : 1;
+			int firstParent = -1;
+			for (int p = 0; p < parentCount && index >= TOP_LEVEL; p++)
+			{
+				int parent = (int)(index * Math.pow(random_.nextDouble(), 3));
+				if (p == 0)
+				{
+					firstParent = parent;
+				}
+				else if (parent == firstParent)
+				{
+					continue;
+				}
+				writeRelationship(cui, aui, stype(), cuis_.get(parent), auis_.get(parent), stype(), "PAR",
+						sab_.equals("SNOMEDCT_US") ? "inverse_isa" : "", sab_.equals("SNOMEDCT_US") ? "isa" : "", sab_);
+			}
+			if (firstParent < 0)
+			{
+				writeRelationship(cui, aui, stype(), root_[0], root_[1], "AUI", "PAR", "", "", sab_);
+			}
+
+			if (index == parents_.length)
+			{
+				parents_ = Arrays.copyOf(parents_, parents_.length * 2);
+			}
+			parents_[index] = firstParent;
+			cuis_.add(cui);
+			auis_.add(aui);
+
+			StringBuilder path = new StringBuilder();
+			for (int p = firstParent; p >= 0; p = parents_[p])
+			{
+				path.insert(0, auis_.get(p)).insert(0, '.');
+			}
+			path.insert(0, root_[1]);
+			hier_.write(cui, aui, "1", firstParent < 0 ? root_[1] : auis_.get(firstParent), sab_, sab_.equals("SNOMEDCT_US") ? "isa" : "",
+					path.toString(), sab_.equals("SNOMEDCT_US") ? "" : code, "");
+		}
+
+		private String stype()
+		{
+			switch (sab_)
+			{
+				case "SNOMEDCT_US": return "SCUI";
+				case "MSH": return "CODE";
+				default: return "AUI";
+			}
+		}
+	}
+
+	/**
+	 * Writes the rows of a RRF file, keeping the counts and column widths for MRFILES and MRCOLS.
+	 */
+	private class RRFWriter
+	{
+		private String name_, description_;
+		private String[] columns_, types_;
+		private BufferedWriter writer_;
+		private StringBuilder buffer_;  //instead of a file, for MRFILES and MRCOLS
+		private long rows_, bytes_;
+		private int[] minWidth_, maxWidth_;
+		private long[] totalWidth_;
+
+		RRFWriter(String[] file) throws IOException
+		{
+			this(file, true);
+		}
+
+		RRFWriter(String[] file, boolean toFile) throws IOException
+		{
+			name_ = file[0];
+			description_ = file[1];
+			String[] columns = file[2].split(",(?=[A-Z])");  //not the comma in numeric(5,2)
+			columns_ = new String[columns.length];
+			types_ = new String[columns.length];
+			for (int i = 0; i < columns.length; i++)
+			{
+				columns_[i] = columns[i].substring(0, columns[i].indexOf(' '));
+				types_[i] = columns[i].substring(columns[i].indexOf(' ') + 1);
+			}
+			minWidth_ = new int[columns.length];
+			Arrays.fill(minWidth_, Integer.MAX_VALUE);
+			maxWidth_ = new int[columns.length];
+			totalWidth_ = new long[columns.length];
+			if (toFile)
+			{
+				writer_ = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(meta_, name_ + ".RRF")), UTF8), 1 << 16);
+			}
+			else
+			{
+				buffer_ = new StringBuilder();
+			}
+		}
+
+		void write(String ... fields) throws IOException
+		{
+			int length = 0;
+			for (int i = 0; i < fields.length; i++)
+			{
+				String field = fields[i] == null ? "" : fields[i];
+				int width = field.getBytes(UTF8).length;
+				minWidth_[i] = Math.min(minWidth_[i], width);
+				maxWidth_[i] = Math.max(maxWidth_[i], width);
+				totalWidth_[i] += width;
+				length += width + 1;
+				if (writer_ != null)
+				{
+					writer_.write(field);
+					writer_.write('|');
+				}
+				else
+				{
+					buffer_.append(field).append('|');
+				}
+			}
+			if (writer_ != null)
+			{
+				writer_.write('\n');
+			}
+			else
+			{
+				buffer_.append('\n');
+			}
+			rows_++;
+			bytes_ += length + 1;
+		}
+
+		/**
+		 * @return the MRCOLS rows for this file
+		 */
+		ArrayList<String[]> describeColumns()
+		{
+			ArrayList<String[]> result = new ArrayList<>();
+			for (int i = 0; i < columns_.length; i++)
+			{
+				result.add(new String[] {columns_[i], columns_[i], "", Integer.toString(rows_ == 0 ? 0 : minWidth_[i]),
+					String.format(Locale.US, "%.2f", rows_ == 0 ? 0.0 : (double)totalWidth_[i] / rows_), Integer.toString(maxWidth_[i]),
+					name_ + ".RRF", types_[i]});
+			}
+			return result;
+		}
+
+		void writeTo(File f) throws IOException
+		{
+			BufferedWriter w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), UTF8));
+			w.write(buffer_.toString());
+			w.close();
+		}
+
+		void close() throws IOException
+		{
+			writer_.close();
+		}
+	}
+}
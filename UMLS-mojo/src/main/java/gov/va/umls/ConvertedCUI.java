@@ -0,0 +1,125 @@
+package gov.va.umls;
+
+import gov.va.oia.terminology.converters.umlsUtils.rrf.REL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.ihtsdo.etypes.EConcept;
+
+/**
+ * Everything built for one CUI group - the concepts, plus the updates to shared state that go with them.
+ * 
+ * The concepts are built on the main thread (from rows that may have been read by a worker).  The updates that depend on the
+ * CUI order (relationship loading, refset membership, SCT bookkeeping and the write itself) are then applied in CUI order, 
+ * so that the output doesn't depend on how the work was split up.
+ */
+public class ConvertedCUI
+{
+	private String cui_;
+	private ArrayList<Output> outputs_ = new ArrayList<>();
+	private LinkedHashSet<String> usedSCTRelatedCUIs_ = new LinkedHashSet<>();
+	private HashMap<String, Integer> mishandledLanguages_ = new HashMap<>();
+
+	public ConvertedCUI(String cui)
+	{
+		cui_ = cui;
+	}
+
+	public String getCui()
+	{
+		return cui_;
+	}
+
+	/**
+	 * Add a concept to be written, in the order it should be written.
+	 */
+	public Output add(EConcept concept)
+	{
+		Output o = new Output(concept);
+		outputs_.add(o);
+		return o;
+	}
+
+	public List<Output> getOutputs()
+	{
+		return outputs_;
+	}
+
+	public void addUsedSCTRelatedCUI(String cui)
+	{
+		usedSCTRelatedCUIs_.add(cui);
+	}
+
+	public LinkedHashSet<String> getUsedSCTRelatedCUIs()
+	{
+		return usedSCTRelatedCUIs_;
+	}
+
+	public void addMishandledLanguage(String lat)
+	{
+		Integer i = mishandledLanguages_.get(lat);
+		mishandledLanguages_.put(lat, i == null ? 1 : i + 1);
+	}
+
+	public HashMap<String, Integer> getMishandledLanguages()
+	{
+		return mishandledLanguages_;
+	}
+
+	/**
+	 * A concept, with the relationships still to be added to it and the refsets it should become a member of.
+	 */
+	public static class Output
+	{
+		private EConcept concept_;
+		private ArrayList<List<REL>> relationships_ = new ArrayList<>();
+		private ArrayList<EConcept> refsets_ = new ArrayList<>();
+		private boolean pendingSCT_ = false;
+
+		private Output(EConcept concept)
+		{
+			concept_ = concept;
+		}
+
+		public EConcept getConcept()
+		{
+			return concept_;
+		}
+
+		public Output addRelationships(List<REL> rels)
+		{
+			relationships_.add(rels);
+			return this;
+		}
+
+		public List<List<REL>> getRelationships()
+		{
+			return relationships_;
+		}
+
+		public Output addRefsetMembership(EConcept refset)
+		{
+			refsets_.add(refset);
+			return this;
+		}
+
+		public List<EConcept> getRefsets()
+		{
+			return refsets_;
+		}
+
+		/**
+		 * Mark this (CUI) concept as one that should be held back, and only written if something else relates to it.
+		 */
+		public void setPendingSCT()
+		{
+			pendingSCT_ = true;
+		}
+
+		public boolean isPendingSCT()
+		{
+			return pendingSCT_;
+		}
+	}
+}
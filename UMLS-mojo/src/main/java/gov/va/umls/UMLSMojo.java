@@ -10,19 +10,49 @@ import gov.va.oia.terminology.converters.sharedUtils.propertyTypes.ValueProperty
 import gov.va.oia.terminology.converters.sharedUtils.stats.ConverterUUID;
 import gov.va.oia.terminology.converters.umlsUtils.RRFBaseConverterMojo;
 import gov.va.oia.terminology.converters.umlsUtils.RRFDatabaseHandle;
-import gov.va.oia.terminology.converters.umlsUtils.UMLSFileReader;
 import gov.va.oia.terminology.converters.umlsUtils.ValuePropertyPairWithAttributes;
 import gov.va.oia.terminology.converters.umlsUtils.rrf.REL;
 import gov.va.oia.terminology.converters.umlsUtils.sql.TableDefinition;
+import gov.va.umls.checkpoint.ConversionCheckpoint;
+import gov.va.umls.delta.CUIDigests;
+import gov.va.umls.delta.DeltaManifest;
+import gov.va.umls.delta.DeltaPlan;
+import gov.va.umls.delta.ReleaseChanges;
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.lookup.LookupQueries;
+import gov.va.umls.lookup.LookupSnapshot;
+import gov.va.umls.lookup.StatementLookup;
+import gov.va.umls.lookup.WindowPrefetchLookup;
+import gov.va.umls.mergejoin.MergeJoinEngine;
+import gov.va.umls.output.AsyncConceptWriter;
+import gov.va.umls.output.BlockCompressedWriter;
+import gov.va.umls.output.RefsetMemberLog;
+import gov.va.umls.output.ShardedConceptWriter;
+import gov.va.umls.parallel.OrderedTaskSequencer;
+import gov.va.umls.parallel.WorkerLookups;
+import gov.va.umls.propertyTypes.AttributeSchema;
 import gov.va.umls.propertyTypes.PT_Annotations;
 import gov.va.umls.propertyTypes.PT_IDs;
+import gov.va.umls.report.RunReport;
+import gov.va.umls.report.StatementProfiler;
 import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.MRCONSOReader;
+import gov.va.umls.rrf.RRFLayout;
+import gov.va.umls.sct.PendingConceptStore;
+import gov.va.umls.sct.SCTIDMap;
+import gov.va.umls.sct.SCTIndex;
+import gov.va.umls.staging.ParallelTableLoader;
+import gov.va.umls.staging.ReachabilityPruner;
+import gov.va.umls.staging.RootAUIs;
+import gov.va.umls.staging.StagingCache;
+import gov.va.umls.uuid.NamespaceUUIDs;
+import gov.va.umls.uuid.UUIDCache;
+import gov.va.umls.uuid.UUIDDuplicateLog;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.sql.PreparedStatement;
@@ -31,7 +61,9 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -40,6 +72,7 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.plugin.MojoExecutionException;
@@ -49,7 +82,6 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.ihtsdo.etypes.EConcept;
 import org.ihtsdo.tk.dto.concept.component.TkComponent;
 import org.ihtsdo.tk.dto.concept.component.description.TkDescription;
-import org.ihtsdo.tk.dto.concept.component.identifier.TkIdentifier;
 import org.ihtsdo.tk.dto.concept.component.refex.type_string.TkRefsetStrMember;
 
 /**
@@ -58,10 +90,20 @@ import org.ihtsdo.tk.dto.concept.component.refex.type_string.TkRefsetStrMember;
 @Mojo (name = "buildUMLS", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
 public class UMLSMojo extends RRFBaseConverterMojo
 {
+	//The names the base class creates the CUI and CUI/SAB/code concept UUIDs from
+	private static final String CUI_PREFIX = "CUI:";
+	private static final String CODE_PREFIX = "CODE:";
+	
 	private PropertyType ptSTT_Types_, ptTermStatus_;
-	private PreparedStatement satAtomStatement, satConceptStatement, semanticTypeStatement, 
-		cuiRelStatementForward, auiRelStatementForward, cuiRelStatementBackward, auiRelStatementBackward,
-		definitionStatement;
+	private AttributeSchema schema_;
+	private CUILookup lookup_;
+	private WorkerLookups workerLookups_;
+	private OrderedTaskSequencer<FetchedWindow> sequencer_;
+	private int cuiCounter_ = 0;
+	
+	private CUIDigests cuiDigests_;
+	private DeltaPlan deltaPlan_;
+	private DeltaManifest.Writer deltaManifest_;
 	
 	private EConcept allRefsetConcept_;
 	private EConcept allCUIRefsetConcept_;
@@ -71,13 +113,35 @@ public class UMLSMojo extends RRFBaseConverterMojo
 	
 	private HashMap<String, String> umlsReleaseInfo = new HashMap<>();
 	
-	private HashMap<String, UUID> sctIDToUUID_ = null;
+	private SCTIDMap sctIDToUUID_ = null;
 	
 	/**
 	 * Where to write the H2 database
 	 */
 	@Parameter 
 	protected File tmpDBPath;
+	
+	/**
+	 * The space (in MB) that the staging databases kept in tmpDBPath may use.  Each META folder and SAB filter combination 
+	 * gets its own database - once over this size, the least recently used ones are removed.
+	 */
+	@Parameter (defaultValue = "51200")
+	private long stagingCacheSizeMB = 51200;
+	
+	/**
+	 * The number of tables (and indexes) to load into the staging database at once.
+	 */
+	@Parameter (defaultValue = "4")
+	private int loadThreads = 4;
+	
+	/**
+	 * With a SAB filter, leave the MRSAT, MRDEF and MRREL rows that don't refer to a CUI / AUI of the filtered MRCONSO out of 
+	 * the staging database.  The converted CUIs are unchanged, but the attribute and relationship metadata concepts are then 
+	 * built from the remaining rows only - so the attribute types and relationship types that are only used by pruned rows 
+	 * are left out of the metadata.  Off by default, so the metadata matches an unpruned conversion.
+	 */
+	@Parameter (defaultValue = "false")
+	private boolean pruneUnreachableRows = false;
 
 	/**
 	 * A list of SABs to include in the load.  If provided, any SABs that do not match are excluded from the conversion.
@@ -106,9 +170,140 @@ public class UMLSMojo extends RRFBaseConverterMojo
 	@Parameter 
 	private boolean skipMTHConcepts;
 	
+	/**
+	 * The number of consecutive CUIs to load attributes, definitions, semantic types and relationships for in a single set of 
+	 * range queries.  Set to 0 to run individual queries for each CUI and atom instead.
+	 */
+	@Parameter (defaultValue = "1000")
+	private int prefetchWindowSize = 1000;
+	
+	/**
+	 * An optional flag to convert straight from externally sorted copies of the RRF files (with merge joins), rather than from
+	 * indexed queries against a fully staged H2 database.  Only the small tables (and a metadata summary of the large ones) are 
+	 * staged in H2 in this mode.
+	 */
+	@Parameter 
+	private boolean mergeJoinEngine;
+	
+	/**
+	 * When a SAB filter is in use, build the filtered join of MRREL to MRCONSO (with the target SAB and CODE) into tables 
+	 * clustered by CUI and AUI, once per staging database, instead of running the join on every relationship query.
+	 */
+	@Parameter (defaultValue = "true")
+	private boolean materializeRelationships = true;
+	
+	/**
+	 * The number of threads to read the attribute, definition, semantic type and relationship rows of the CUIs with.  Each thread 
+	 * gets its own connection to the staging database.  The concepts are still built (EConceptUtility isn't thread safe) and 
+	 * written on the main thread, in CUI order - only the reads run in parallel.  Not supported with mergeJoinEngine (which reads its 
+	 * data in a single pass).
+	 */
+	@Parameter (defaultValue = "1")
+	private int conversionThreads = 1;
+	
+	/**
+	 * The jbin file written by the conversion of the previous UMLS release.  If provided (and the delta manifest that was written 
+	 * along with it is found in the same folder) only the CUIs that changed since the previous release are converted - the 
+	 * concepts for the rest are copied from this file.  Must not be in the output directory.
+	 */
+	@Parameter 
+	private File previousReleaseFile;
+	
+	/**
+	 * Write a delta manifest into the output directory, so that the next release can be converted with previousReleaseFile.
+	 * Always written when previousReleaseFile is set.
+	 */
+	@Parameter 
+	private boolean writeDeltaManifest;
+	
+	/**
+	 * Time every execution of the lookup statements, and capture their query plans - written to umlsStatementProfile.json 
+	 * in the output directory.  Adds some overhead to each query.
+	 */
+	@Parameter 
+	private boolean profileStatements;
+	
+	/**
+	 * Save a checkpoint of the main CUI loop every this many CUIs, so a failed conversion can be resumed (see resume).  While
+	 * checkpointing, the concepts are written to segment files under the working folder, and copied into the jbin file at the 
+	 * end of the loop.  0 to disable.
+	 */
+	@Parameter (defaultValue = "0")
+	private int checkpointInterval = 0;
+	
+	/**
+	 * Continue a failed conversion from its last checkpoint - the settings must be the same as the failed run (including 
+	 * checkpointInterval).  Starts from the first CUI if there is no checkpoint.
+	 */
+	@Parameter 
+	private boolean resume;
+	
+	/**
+	 * Write the concepts of the CUI loop to this many jbin shard files (by the hash of the CUI), each written on its own thread, 
+	 * rather than to the single jbin file.  The metadata, refset and copied concepts stay in the single jbin file.  A manifest 
+	 * of the files (umlsJbinManifest.txt) is written alongside them.  0 to write everything to the single jbin file.  Not 
+	 * supported with checkpointInterval.
+	 */
+	@Parameter (defaultValue = "0")
+	private int outputShards = 0;
+	
+	/**
+	 * Serialize and write the concepts of the CUI loop on separate threads (through large double buffers), rather than on the 
+	 * thread that builds them.  The jbin file is byte for byte the same either way.  Not used with outputShards, which already 
+	 * writes on separate threads.
+	 */
+	@Parameter (defaultValue = "true")
+	private boolean asyncOutput = true;
 	
-	private HashMap<String, EConcept> pendingSCTRelatedConcepts_ = new HashMap<>();
+	/**
+	 * Write the concepts of the CUI loop to UMLS-concepts.jbinz as independently compressed blocks (with a block index, so 
+	 * readers can seek to any block), compressed in parallel - rather than to the single jbin file.  The metadata, refset and 
+	 * copied concepts stay in the single jbin file.  The only codec is 'deflate'.  Always uses the async writer.  Not supported 
+	 * with outputShards or checkpointInterval.
+	 */
+	@Parameter 
+	private String compressedOutput;
+	
+	/**
+	 * How to check the UUIDs created during the CUI loop for duplicates.
+	 * 'memory' - the ConverterUUID debug map, which checks every UUID (as before).  
+	 * 'partialDisk' - turns off the debug map, and logs only the UUIDs this mojo creates itself - the CUI, CUI/SAB/code concept 
+	 * and attribute / definition (ATUI) UUIDs - to a temp file, checked once the conversion is done.  Fails the conversion if 
+	 * any are found, and lists them in umlsUUIDDuplicates.txt.  The UUIDs EConceptUtility creates for the descriptions, 
+	 * relationships, annotations and refset members are not checked in this mode.  
+	 * 'none' - don't check.
+	 * The ATUI, CUI and code concept UUIDs are hashed without building their names - with 'memory', only while the debug map 
+	 * doesn't need the name.
+	 */
+	@Parameter (defaultValue = "memory")
+	private String uuidDuplicateCheck = "memory";
+	
+	/**
+	 * The number of CUI and code concept UUIDs to keep, for the relationship targets that ask for them again.  0 to disable.
+	 */
+	@Parameter (defaultValue = "500000")
+	private int uuidCacheSize = 500000;
+	
+	
+	private PendingConceptStore pendingSCTRelatedConcepts_;
 	private HashSet<String> usedSCTRelatedConceptsCUIs_ = new HashSet<>();
+	
+	private MergeJoinEngine mergeJoin_;
+	private RunReport report_;
+	private StatementProfiler profiler_;
+	private ConversionCheckpoint checkpoint_;
+	private ShardedConceptWriter shards_;
+	private AsyncConceptWriter asyncWriter_;
+	private BlockCompressedWriter blockWriter_;
+	private RefsetMemberLog refsetMembers_;
+	private NamespaceUUIDs namespaceUUIDs_;
+	private boolean namespaceConceptUUIDs_;
+	private UUIDDuplicateLog uuidDuplicates_;
+	private UUIDCache<String> cuiUUIDs_;
+	private UUIDCache<UUIDCache.CompositeKey> codeUUIDs_;
+	private RootAUIs rootAUIs_;
+	private File stagingDbFile_;
+	private String sabQueryStringMTHModified_;
 
 	@Override
 	public void execute() throws MojoExecutionException
@@ -118,126 +313,30 @@ public class UMLSMojo extends RRFBaseConverterMojo
 		
 		try
 		{
-			outputDirectory.mkdir();
-			
-			if (inputFileLocation.isDirectory())
-			{
-				if (!new File(inputFileLocation, "META").isDirectory())
-				{
-					throw new MojoExecutionException("Please configure UMLS-eConcept/pom.xml 'srcDataPath' to point to the version output folder of metamorphosys."
-							+ "  Didn't find the expected 'META' folder under " + inputFileLocation.getAbsolutePath());
-				}
-			}
-			else
-			{
-				throw new MojoExecutionException("Please configure UMLS-eConcept/pom.xml 'srcDataPath' to point to the version output folder of metamorphosys."
-						+ "  Currently set to " + inputFileLocation.getAbsolutePath());
-			}
-
-			loadDatabase();
-			
-			if (sctInputFile != null)
-			{
-				loadSCTInfo();
-			}
-			
-			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM");
-			
-			String temp = converterResultVersion.substring(0, 7);
-			temp = temp.replace("AA", "-01");  //Just hardcode AA to Jan for now.  will need more rules later...
-			
-			init(outputDirectory, "UMLS", "MR", new PT_IDs(), new PT_Annotations(), sabFilters, additionalRootConcepts, sdf.parse(temp).getTime());
-			
-			String sabQueryStringMTHModified = sabQueryString_;
-			if (sabQueryString_.length() > 0 && skipMTHConcepts)
-			{
-				//yes, its MTH in VSAB or RSAB
-				sabQueryStringMTHModified = sabQueryStringMTHModified.replace(" or SAB='MTH'", "");
-			}
-			
-			satAtomStatement = db_.getConnection().prepareStatement("select * from MRSAT where CUI = ? and METAUI = ? " + (sabQueryString_.length() > 0 ? "and " + sabQueryStringMTHModified : ""));
-			satConceptStatement = db_.getConnection().prepareStatement("select * from MRSAT where CUI = ? and METAUI is null " + (sabQueryString_.length() > 0 ? "and " + sabQueryStringMTHModified : ""));
-			semanticTypeStatement = db_.getConnection().prepareStatement("select TUI, ATUI, CVF from MRSTY where CUI = ?");
-			definitionStatement = db_.getConnection().prepareStatement("select * from MRDEF where CUI = ? and AUI = ?");
-			
-			//UMLS and RXNORM do different things with rels - UMLS never has null CUI's, while RxNorm always has null CUI's (when AUI is specified)
-			//Also need to join back to MRCONSO for the cases where we are applying a SAB filter, to make sure both the source and the target are things that will be loaded.
-			
-			String sabQueryString1 = sabQueryString_.replaceAll("SAB", "r.SAB");  //Allow the relsab to come from MTH
-			String sabQueryString2 = sabQueryStringMTHModified.replaceAll("SAB", "MRCONSO.SAB");  //don't allow the target to come from MTH
-			
-			cuiRelStatementForward = db_.getConnection().prepareStatement("SELECT r.CUI1, r.AUI1, r.STYPE1, r.REL, r.CUI2, r.AUI2, r.STYPE2, "
-					+ "r.RELA, r.RUI, r.SRUI, r.SAB, r.SL, r.DIR, r.RG, r.SUPPRESS, r.CVF from MRREL as r"  
-					+ (sabQueryString_.length() > 0 ? ", MRCONSO" : "")
-					+ " WHERE CUI2 = ? and AUI2 is null " 
-					+ (sabQueryString_.length() > 0 ? "and " + sabQueryString1 + "and r.CUI1 = MRCONSO.CUI and " + sabQueryString2: ""));
-			
-			cuiRelStatementBackward = db_.getConnection().prepareStatement("SELECT r.CUI1, r.AUI1, r.STYPE1, r.REL, r.CUI2, r.AUI2, r.STYPE2, "
-					+ "r.RELA, r.RUI, r.SRUI, r.SAB, r.SL, r.DIR, r.RG, r.SUPPRESS, r.CVF from MRREL as r"  
-					+ (sabQueryString_.length() > 0 ? ", MRCONSO" : "")
-					+ " WHERE CUI1 = ? and AUI1 is null " 
-					+ (sabQueryString_.length() > 0 ? "and " + sabQueryString1 + "and r.CUI2 = MRCONSO.CUI and " + sabQueryString2: ""));
-
-			auiRelStatementForward = db_.getConnection().prepareStatement("SELECT r.CUI1, r.AUI1, r.STYPE1, r.REL, r.CUI2, r.AUI2, r.STYPE2, "
-					+ "r.RELA, r.RUI, r.SRUI, r.SAB, r.SL, r.DIR, r.RG, r.SUPPRESS, r.CVF, MRCONSO.SAB as targetSAB, MRCONSO.CODE as targetCODE" 
-					+ " from MRREL as r, MRCONSO"
-					+ " WHERE CUI2 = ? and AUI2 = ? " 
-					+ (sabQueryString_.length() > 0 ? "and " + sabQueryString1 + "and r.CUI1 = MRCONSO.CUI and r.AUI1 = MRCONSO.AUI and " + sabQueryString2: ""));
-			
-			auiRelStatementBackward = db_.getConnection().prepareStatement("SELECT r.CUI1, r.AUI1, r.STYPE1, r.REL, r.CUI2, r.AUI2, r.STYPE2, "
-					+ "r.RELA, r.RUI, r.SRUI, r.SAB, r.SL, r.DIR, r.RG, r.SUPPRESS, r.CVF, MRCONSO.SAB as targetSAB, MRCONSO.CODE as targetCODE" 
-					+ " from MRREL as r, MRCONSO"
-					+ " WHERE CUI1 = ? and AUI1 = ? " 
-					+ (sabQueryString_.length() > 0 ? "and " + sabQueryString1 + "and r.CUI2 = MRCONSO.CUI and r.AUI2 = MRCONSO.AUI and " + sabQueryString2: ""));
-			
-			allRefsetConcept_ = ptUMLSRefsets_.getConcept(ptUMLSRefsets_.ALL.getSourcePropertyNameFSN());
-			allCUIRefsetConcept_ = ptUMLSRefsets_.getConcept(ptUMLSRefsets_.CUI_CONCEPTS.getSourcePropertyNameFSN());
-			allAUIRefsetConcept_ = ptUMLSRefsets_.getConcept(ptUMLSRefsets_.TERM_CONCEPTS.getSourcePropertyNameFSN());
-			
-			// Add version data to rootConcept
-			eConcepts_.addStringAnnotation(umlsRootConcept_, loaderVersion,  ptContentVersion_.LOADER_VERSION.getUUID(), false);
-			eConcepts_.addStringAnnotation(umlsRootConcept_, converterResultVersion, ptContentVersion_.RELEASE.getUUID(), false);
-			
-			for (Entry<String, String> relInfo : umlsReleaseInfo.entrySet())
-			{
-				eConcepts_.addStringAnnotation(umlsRootConcept_, relInfo.getValue(), ptContentVersion_.getProperty(relInfo.getKey()).getUUID(), false);
-			}
-			
-			//Disable the masterUUID debug map now that the metadata is populated, not enough memory on most systems to maintain it for everything else.
-			//ConverterUUID.disableUUIDMap_ = true;
+			prepare();
 			
 			//process
-			int cuiCounter = 0;
+			RunReport.Phase phase = report_.start("cuiLoop");
+			MRCONSOReader consoReader = openMRCONSO();
 			
-			Statement statement = db_.getConnection().createStatement();
-			
-			ResultSet rs = statement.executeQuery("select count (distinct CUI) from MRCONSO " + (sabQueryString_.length() > 0 ? " where " + sabQueryStringMTHModified : ""));
-			if (rs.next())
-			{
-				ConsoleUtil.println("CUIs to process: " + rs.getString(1));
-			}
-			rs.close();
-			
-			rs = statement.executeQuery("select * from MRCONSO " + (sabQueryString_.length() > 0 ? " where " + sabQueryStringMTHModified : "") + " order by CUI");
 			HashMap<String, ArrayList<MRCONSO>> conceptData = new HashMap<>();
-			while (rs.next())
+			ArrayList<HashMap<String, ArrayList<MRCONSO>>> window = new ArrayList<>();
+			MRCONSO current;
+			while ((current = consoReader.read()) != null)
 			{
-				MRCONSO current = new MRCONSO(rs);
 				if (conceptData.size() > 0 && !conceptData.values().iterator().next().get(0).cui.equals(current.cui))
 				{
-					processCUIRows(conceptData);
-					if (cuiCounter % 100 == 0)
+					if (isConverted(conceptData))
 					{
-						ConsoleUtil.showProgress();
+						window.add(conceptData);
 					}
-					cuiCounter++;
-					if (cuiCounter % 10000 == 0)
+					conceptData = new HashMap<>();
+					if (window.size() >= Math.max(1, prefetchWindowSize))
 					{
-						ConsoleUtil.println("Processed " + cuiCounter + " CUIs creating " + eConcepts_.getLoadStats().getConceptCount() + " concepts");
+						processWindow(window);
 					}
-					conceptData.clear();
 				}
-				String groupKey = current.sab + "-" + current.code;
+				String groupKey = current.getSab() + "-" + current.code;
 
 				ArrayList<MRCONSO> codeConcepts = conceptData.get(groupKey);
 				if (codeConcepts == null)
@@ -248,16 +347,57 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				
 				codeConcepts.add(current);
 			}
-			rs.close();
-			statement.close();
 
 			
 			// process last
-			if (conceptData.size() > 0)
+			if (conceptData.size() > 0 && isConverted(conceptData))
+			{
+				window.add(conceptData);
+			}
+			if (window.size() > 0)
+			{
+				processWindow(window);
+			}
+			consoReader.close();
+			
+			if (sequencer_ != null)
+			{
+				sequencer_.finish();
+				workerLookups_.close();
+			}
+			
+			if (asyncWriter_ != null)
 			{
-				processCUIRows(conceptData);
+				asyncWriter_.flush();
+				phase.metric("writerStallSeconds", asyncWriter_.getStallNanos() / 1000000000.0);
+				phase.metric("writerBufferWaitSeconds", asyncWriter_.getBufferWaitNanos() / 1000000000.0);
+				phase.metric("writerMaxQueueDepth", asyncWriter_.getMaxQueueDepth());
+				phase.metric("writerAverageQueueDepth", asyncWriter_.getAverageQueueDepth());
+				ConsoleUtil.println(String.format("Concept writer: %.1f seconds stalled on a full queue, %.1f seconds waiting on the disk, "
+						+ "queue depth %.1f average, %d max", asyncWriter_.getStallNanos() / 1000000000.0, asyncWriter_.getBufferWaitNanos() / 1000000000.0, 
+						asyncWriter_.getAverageQueueDepth(), asyncWriter_.getMaxQueueDepth()));
 			}
 			
+			if (checkpoint_ != null)
+			{
+				dos_ = checkpoint_.end();
+				if (asyncWriter_ != null)
+				{
+					asyncWriter_.setTarget(dos_);
+				}
+			}
+			
+			if (deltaManifest_ != null)
+			{
+				deltaManifest_.close();
+			}
+			if (cuiUUIDs_ != null)
+			{
+				phase.metric("uuidCacheHits", cuiUUIDs_.getHits() + codeUUIDs_.getHits());
+				phase.metric("uuidCacheMisses", cuiUUIDs_.getMisses() + codeUUIDs_.getMisses());
+			}
+			phase.end(cuiCounter_);
+			
 			if (mishandledLanguages_.size() > 0)
 			{
 				ConsoleUtil.printErrorln("non-english lang settings not properly handled yet");
@@ -267,83 +407,892 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				}
 			}
 			
-			satAtomStatement.close();
-			satConceptStatement.close();
-			semanticTypeStatement.close();
-			definitionStatement.close();
-			cuiRelStatementForward.close();
-			cuiRelStatementBackward.close();
-			auiRelStatementBackward.close();
-			auiRelStatementForward.close();
+			lookup_.close();
 			
 			//Write out the pending SCT related CUI concepts, and SCT stub concepts with relationships to the CUI concepts
+			phase = report_.start("pendingSCTFlush");
 			ConsoleUtil.println("Checking " + pendingSCTRelatedConcepts_.size() + " to see if any need to be written - " + usedSCTRelatedConceptsCUIs_.size() + " to check");
 			int cuiCount = 0;
 			
-			for (String cui : usedSCTRelatedConceptsCUIs_)
+			for (String cui : pendingSCTRelatedConcepts_.inStoreOrder(usedSCTRelatedConceptsCUIs_))
 			{
 				EConcept cuiConcept = pendingSCTRelatedConcepts_.remove(cui);
 				if (cuiConcept != null)
 				{
 					cuiCount++;
-					eConcepts_.addRefsetMember(allRefsetConcept_, cuiConcept.getPrimordialUuid(), null, true, null);
-					eConcepts_.addRefsetMember(allCUIRefsetConcept_, cuiConcept.getPrimordialUuid(), null, true, null);
-					cuiConcept.writeExternal(dos_);
+					refsetMembers_.add(allRefsetConcept_, cuiConcept.getPrimordialUuid());
+					refsetMembers_.add(allCUIRefsetConcept_, cuiConcept.getPrimordialUuid());
+					writeConcept(cui, cuiConcept);
 				}
 			}
+			if (shards_ != null)
+			{
+				shards_.close();
+			}
+			if (asyncWriter_ != null)
+			{
+				asyncWriter_.close();
+			}
+			if (blockWriter_ != null)
+			{
+				blockWriter_.close();
+				ConsoleUtil.println(String.format("Wrote %d compressed blocks to %s - %.1f MB compressed to %.1f MB", blockWriter_.getBlockCount(), 
+						BlockCompressedWriter.FILE_NAME, blockWriter_.getUncompressedBytes() / 1048576.0, blockWriter_.getCompressedBytes() / 1048576.0));
+			}
 
 			ConsoleUtil.println("Wrote out  " + cuiCount+ " SCT CUI concepts");
+			phase.end(cuiCount);
 			
+			phase = report_.start("finish");
+			ConsoleUtil.println("Writing " + refsetMembers_.size() + " logged refset memberships");
+			phase.metric("refsetMembers", refsetMembers_.size());
+			//The refset concepts read their logged members back from the log as finish writes them
+			refsetMembers_.attach(eConcepts_);
 			finish(outputDirectory);
+			refsetMembers_.close();
+			if (shards_ != null)
+			{
+				writeShardManifest();
+			}
+			if (uuidDuplicates_ != null)
+			{
+				ConsoleUtil.println("Checking " + uuidDuplicates_.size() + " UUIDs for duplicates");
+				long duplicates = uuidDuplicates_.check(new File(outputDirectory, UUIDDuplicateLog.REPORT_FILE_NAME));
+				uuidDuplicates_ = null;
+				if (duplicates > 0)
+				{
+					throw new MojoExecutionException(duplicates + " duplicate UUIDs were created - see " + UUIDDuplicateLog.REPORT_FILE_NAME);
+				}
+			}
+			phase.end();
+			if (checkpoint_ != null)
+			{
+				pendingSCTRelatedConcepts_.close();
+				pendingSCTRelatedConcepts_ = null;
+				checkpoint_.delete();
+			}
+			writeReport(true);
 		}
 		catch (Exception e)
 		{
 			e.printStackTrace();
+			writeReport(false);
 			throw new MojoExecutionException("Failure during export ", e);
 		}
-		finally
+		finally
+		{
+			cleanUp();
+		}
+		
+		ConsoleUtil.println("Completed in " + ((System.currentTimeMillis() - startTime)/1000) + " seconds");
+		ConsoleUtil.println(new Date().toString());
+		
+	}
+
+	private void writeReport(boolean completed)
+	{
+		if (report_ != null)
+		{
+			try
+			{
+				report_.write(new File(outputDirectory, RunReport.FILE_NAME), completed);
+			}
+			catch (IOException e)
+			{
+				ConsoleUtil.printErrorln("Error writing the run report: " + e);
+			}
+		}
+		if (profiler_ != null)
+		{
+			try
+			{
+				profiler_.write(new File(outputDirectory, StatementProfiler.FILE_NAME));
+			}
+			catch (IOException e)
+			{
+				ConsoleUtil.printErrorln("Error writing the statement profile: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Everything up to the main CUI loop - load the staging database, the metadata, and set up the lookups.  Split out (along 
+	 * with {@link #openMRCONSO()} and {@link #cleanUp()}) so the benchmarks and tests can set up a converter on their fixture
+	 * data.  The steps of the CUI loop are public for the same reason - they aren't meant for use outside of the build.
+	 */
+	public void prepare() throws Exception
+	{
+		report_ = new RunReport();
+		report_.setting("loaderVersion", loaderVersion);
+		report_.setting("releaseVersion", converterResultVersion);
+		report_.setting("sabFilters", sabFilters);
+		report_.setting("skipMTHConcepts", skipMTHConcepts);
+		report_.setting("mergeJoinEngine", mergeJoinEngine);
+		report_.setting("loadThreads", loadThreads);
+		report_.setting("conversionThreads", conversionThreads);
+		report_.setting("prefetchWindowSize", prefetchWindowSize);
+		report_.setting("delta", previousReleaseFile != null);
+		report_.setting("profileStatements", profileStatements);
+		report_.setting("checkpointInterval", checkpointInterval);
+		report_.setting("outputShards", outputShards);
+		report_.setting("asyncOutput", (asyncOutput || compressedOutput != null) && outputShards == 0);
+		report_.setting("compressedOutput", compressedOutput);
+		report_.setting("uuidDuplicateCheck", uuidDuplicateCheck);
+		report_.setting("uuidCacheSize", uuidCacheSize);
+		if (!Arrays.asList("memory", "partialDisk", "none").contains(uuidDuplicateCheck))
+		{
+			throw new MojoExecutionException("uuidDuplicateCheck must be one of memory, partialDisk or none");
+		}
+		if (uuidCacheSize > 0)
+		{
+			cuiUUIDs_ = new UUIDCache<>(uuidCacheSize);
+			codeUUIDs_ = new UUIDCache<>(uuidCacheSize);
+		}
+		if (outputShards > 0 && checkpointInterval > 0)
+		{
+			throw new MojoExecutionException("outputShards is not supported with checkpointInterval");
+		}
+		if (conversionThreads > 1 && mergeJoinEngine)
+		{
+			throw new MojoExecutionException("conversionThreads is not supported with mergeJoinEngine");
+		}
+		BlockCompressedWriter.Codec codec = null;
+		if (compressedOutput != null && compressedOutput.length() > 0)
+		{
+			if (outputShards > 0 || checkpointInterval > 0)
+			{
+				throw new MojoExecutionException("compressedOutput is not supported with outputShards or checkpointInterval");
+			}
+			try
+			{
+				codec = BlockCompressedWriter.Codec.parse(compressedOutput);
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new MojoExecutionException(e.getMessage());
+			}
+		}
+		if (profileStatements)
+		{
+			profiler_ = new StatementProfiler();
+		}
+		
+		outputDirectory.mkdir();
+		
+		if (inputFileLocation.isDirectory())
+		{
+			if (!new File(inputFileLocation, "META").isDirectory())
+			{
+				throw new MojoExecutionException("Please configure UMLS-eConcept/pom.xml 'srcDataPath' to point to the version output folder of metamorphosys."
+						+ "  Didn't find the expected 'META' folder under " + inputFileLocation.getAbsolutePath());
+			}
+		}
+		else
+		{
+			throw new MojoExecutionException("Please configure UMLS-eConcept/pom.xml 'srcDataPath' to point to the version output folder of metamorphosys."
+					+ "  Currently set to " + inputFileLocation.getAbsolutePath());
+		}
+		
+		if (previousReleaseFile != null && previousReleaseFile.getAbsoluteFile().getParentFile().getCanonicalFile().equals(outputDirectory.getCanonicalFile()))
+		{
+			throw new MojoExecutionException("previousReleaseFile must be moved out of the output directory - it would be overwritten by this conversion");
+		}
+
+		if (mergeJoinEngine)
+		{
+			mergeJoin_ = new MergeJoinEngine(new File(inputFileLocation, "META"), new File(getWorkingFolder(), "mergeJoinTemp"), sabFilters, 
+					skipMTHConcepts, additionalRootConcepts, MergeJoinEngine.DEFAULT_RUN_SIZE);
+			RunReport.Phase phase = report_.start("mergeJoinStaging");
+			mergeJoin_.prepare();
+			phase.end();
+		}
+		
+		loadDatabase(mergeJoin_);
+		
+		if (sctInputFile != null)
+		{
+			RunReport.Phase phase = report_.start("sctLoad");
+			loadSCTInfo();
+			phase.end(sctIDToUUID_.size());
+		}
+		
+		RunReport.Phase metadataPhase = report_.start("metadata");
+		
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM");
+		
+		String temp = converterResultVersion.substring(0, 7);
+		temp = temp.replace("AA", "-01");  //Just hardcode AA to Jan for now.  will need more rules later...
+		
+		init(outputDirectory, "UMLS", "MR", new PT_IDs(), new PT_Annotations(), sabFilters, additionalRootConcepts, sdf.parse(temp).getTime());
+		
+		buildSchema();
+		metadataPhase.end();
+		
+		sabQueryStringMTHModified_ = sabQueryString_;
+		if (sabQueryString_.length() > 0 && skipMTHConcepts)
+		{
+			//yes, its MTH in VSAB or RSAB
+			sabQueryStringMTHModified_ = sabQueryStringMTHModified_.replace(" or SAB='MTH'", "");
+		}
+		
+		LookupQueries queries = new LookupQueries(sabQueryString_, sabQueryStringMTHModified_);
+		if (mergeJoin_ == null && materializeRelationships && sabQueryString_.length() > 0)
+		{
+			RunReport.Phase phase = report_.start("materializeRelationships");
+			materializeRelationships(queries);
+			phase.end();
+		}
+		if (mergeJoin_ == null && profiler_ != null)
+		{
+			capturePlans(queries);
+		}
+		if (mergeJoin_ != null)
+		{
+			lookup_ = mergeJoin_.getLookup();
+		}
+		else if (prefetchWindowSize > 0)
+		{
+			lookup_ = new WindowPrefetchLookup(db_.getConnection(), queries, profiler_);
+		}
+		else
+		{
+			lookup_ = new StatementLookup(db_.getConnection(), queries, profiler_);
+		}
+		
+		if (conversionThreads > 1)
+		{
+			workerLookups_ = new WorkerLookups(stagingDbFile_, queries, prefetchWindowSize > 0, profiler_);
+			sequencer_ = new OrderedTaskSequencer<>("CUI-worker", conversionThreads, conversionThreads * 2, 
+					new OrderedTaskSequencer.Committer<FetchedWindow>()
+			{
+				@Override
+				public void commit(FetchedWindow result) throws Exception
+				{
+					//Back on the main thread
+					for (ConvertedCUI converted : convertWindow(result.lookup_, result.window_))
+					{
+						UMLSMojo.this.commit(converted);
+					}
+				}
+			});
+		}
+		
+		allRefsetConcept_ = ptUMLSRefsets_.getConcept(ptUMLSRefsets_.ALL.getSourcePropertyNameFSN());
+		allCUIRefsetConcept_ = ptUMLSRefsets_.getConcept(ptUMLSRefsets_.CUI_CONCEPTS.getSourcePropertyNameFSN());
+		allAUIRefsetConcept_ = ptUMLSRefsets_.getConcept(ptUMLSRefsets_.TERM_CONCEPTS.getSourcePropertyNameFSN());
+		refsetMembers_ = new RefsetMemberLog(getWorkingFolder());
+		
+		// Add version data to rootConcept
+		eConcepts_.addStringAnnotation(umlsRootConcept_, loaderVersion,  ptContentVersion_.LOADER_VERSION.getUUID(), false);
+		eConcepts_.addStringAnnotation(umlsRootConcept_, converterResultVersion, ptContentVersion_.RELEASE.getUUID(), false);
+		
+		for (Entry<String, String> relInfo : umlsReleaseInfo.entrySet())
+		{
+			eConcepts_.addStringAnnotation(umlsRootConcept_, relInfo.getValue(), ptContentVersion_.getProperty(relInfo.getKey()).getUUID(), false);
+		}
+		
+		if (checkpointInterval > 0)
+		{
+			prepareCheckpoint();
+		}
+		else
+		{
+			pendingSCTRelatedConcepts_ = new PendingConceptStore(getWorkingFolder());
+		}
+		
+		if (previousReleaseFile != null || writeDeltaManifest)
+		{
+			RunReport.Phase phase = report_.start("deltaPrepare");
+			prepareDelta(mergeJoin_ == null ? new RRFLayout(new File(inputFileLocation, "META")) : mergeJoin_.getLayout());
+			phase.end();
+		}
+		
+		if (checkpoint_ != null)
+		{
+			dos_ = checkpoint_.begin(dos_);
+		}
+		if (outputShards > 0)
+		{
+			shards_ = new ShardedConceptWriter(outputDirectory, outputShards);
+		}
+		else if (codec != null)
+		{
+			blockWriter_ = new BlockCompressedWriter(new File(outputDirectory, BlockCompressedWriter.FILE_NAME), codec, 
+					Runtime.getRuntime().availableProcessors());
+			//Smaller blocks than the plain writer - each is a unit of random access for readers
+			asyncWriter_ = new AsyncConceptWriter(blockWriter_, 4096, 1024 * 1024);
+		}
+		else if (asyncOutput)
+		{
+			asyncWriter_ = new AsyncConceptWriter(dos_, 4096, 8 * 1024 * 1024);
+		}
+		
+		//Disable the masterUUID debug map now that the metadata is populated, not enough memory on most systems to maintain it for everything else.
+		//ConverterUUID.disableUUIDMap_ = true;
+		if (!"memory".equals(uuidDuplicateCheck))
+		{
+			//From here on, only the UUIDs created by this mojo (not by EConceptUtility) are checked
+			ConverterUUID.disableUUIDMap_ = true;
+			if ("partialDisk".equals(uuidDuplicateCheck))
+			{
+				uuidDuplicates_ = new UUIDDuplicateLog(getWorkingFolder());
+			}
+		}
+		namespaceUUIDs_ = new NamespaceUUIDs(uuidDuplicates_);
+		namespaceConceptUUIDs_ = conceptUUIDNamesMatch();
+	}
+	
+	/**
+	 * @return true if {@link #namespaceUUIDs_} builds the CUI and code concept UUIDs from the same names the base class does
+	 */
+	private boolean conceptUUIDNamesMatch()
+	{
+		boolean disableUUIDMap = ConverterUUID.disableUUIDMap_;
+		ConverterUUID.disableUUIDMap_ = true;
+		try
+		{
+			NamespaceUUIDs probe = new NamespaceUUIDs(null);
+			boolean matches = probe.create(false, CUI_PREFIX, "C0000005").equals(super.createCUIConceptUUID("C0000005"))
+					&& probe.create(false, CODE_PREFIX, "C0000005", ":", "MSH", ":", "D012711")
+						.equals(super.createCuiSabCodeConceptUUID("C0000005", "MSH", "D012711"));
+			if (!matches)
+			{
+				ConsoleUtil.printErrorln("The CUI and code concept UUIDs aren't named as expected - creating them through the base class");
+			}
+			return matches;
+		}
+		finally
+		{
+			ConverterUUID.disableUUIDMap_ = disableUUIDMap;
+		}
+	}
+	
+	/**
+	 * Start a new set of checkpoints for the CUI loop - or when resuming, restore the loop state saved by the last checkpoint.
+	 */
+	private void prepareCheckpoint() throws Exception
+	{
+		StringBuilder config = new StringBuilder(conversionConfig());
+		config.append("|").append(converterResultVersion).append("|").append(inputFileLocation.getAbsolutePath()).append("|").append(checkpointInterval)
+			.append("|").append(previousReleaseFile == null ? "" : previousReleaseFile.getAbsolutePath()).append("|").append(writeDeltaManifest);
+		File folder = new File(getWorkingFolder(), ConversionCheckpoint.FOLDER_NAME);
+		
+		if (resume)
+		{
+			checkpoint_ = ConversionCheckpoint.resume(folder, config.toString());
+			if (checkpoint_ == null)
+			{
+				ConsoleUtil.printErrorln("No checkpoint found in " + folder.getAbsolutePath() + " - starting from the first CUI");
+			}
+		}
+		if (checkpoint_ == null)
+		{
+			checkpoint_ = ConversionCheckpoint.create(folder, config.toString());
+		}
+		pendingSCTRelatedConcepts_ = checkpoint_.openPendingConcepts();
+		
+		if (checkpoint_.getLastCui() != null)
+		{
+			ConsoleUtil.println("Resuming after " + checkpoint_.getLastCui() + " - " + checkpoint_.getCUICount() + " CUIs were converted before the checkpoint");
+			cuiCounter_ = checkpoint_.getCUICount();
+			usedSCTRelatedConceptsCUIs_.addAll(checkpoint_.getUsedSCTRelatedCUIs());
+			for (Entry<String, Integer> lang : checkpoint_.getMishandledLanguages().entrySet())
+			{
+				mishandledLanguages_.put(lang.getKey(), new AtomicInteger(lang.getValue()));
+			}
+			final HashMap<UUID, EConcept> refsets = refsetsByUUID();
+			checkpoint_.readRefsetMembers(new ConversionCheckpoint.RefsetMemberSink()
+			{
+				@Override
+				public void add(UUID refset, UUID concept) throws IOException
+				{
+					refsetMembers_.add(refsets.get(refset), concept);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * @return the MRCONSO rows to convert, in CUI order
+	 */
+	public MRCONSOReader openMRCONSO() throws SQLException
+	{
+		MRCONSOReader consoReader;
+		final String resumeAfter = checkpoint_ == null ? null : checkpoint_.getLastCui();
+		if (mergeJoin_ != null)
+		{
+			if (resumeAfter == null)
+			{
+				consoReader = mergeJoin_;
+			}
+			else
+			{
+				//The sorted files can only be read from the start
+				consoReader = new MRCONSOReader()
+				{
+					@Override
+					public MRCONSO read() throws IOException
+					{
+						MRCONSO row;
+						while ((row = mergeJoin_.read()) != null && row.cui.compareTo(resumeAfter) <= 0)
+						{
+							//already converted
+						}
+						return row;
+					}
+					
+					@Override
+					public void close() throws IOException
+					{
+						mergeJoin_.close();
+					}
+				};
+			}
+		}
+		else
+		{
+			final Statement statement = db_.getConnection().createStatement();
+			
+			String where = sabQueryString_.length() > 0 ? " where " + sabQueryStringMTHModified_ : "";
+			if (resumeAfter != null)
+			{
+				where += (where.length() > 0 ? " and " : " where ") + "CUI > '" + resumeAfter + "'";
+			}
+			
+			ResultSet rs = statement.executeQuery("select count (distinct CUI) from MRCONSO " + where);
+			if (rs.next())
+			{
+				ConsoleUtil.println("CUIs to process: " + rs.getString(1));
+			}
+			rs.close();
+			
+			final ResultSet consoRS = statement.executeQuery("select * from MRCONSO " + where + " order by CUI");
+			final int[] consoColumns = MRCONSO.columnIndexes(consoRS);
+			consoReader = new MRCONSOReader()
+			{
+				@Override
+				public MRCONSO read() throws SQLException
+				{
+					return consoRS.next() ? new MRCONSO(consoRS, consoColumns) : null;
+				}
+				
+				@Override
+				public void close() throws SQLException
+				{
+					consoRS.close();
+					statement.close();
+				}
+			};
+		}
+		return consoReader;
+	}
+	
+	/**
+	 * Release the staging database, temp files and threads.
+	 */
+	public void cleanUp()
+	{
+		if (sequencer_ != null)
+		{
+			sequencer_.shutdown();
+		}
+		if (checkpoint_ != null)
+		{
+			checkpoint_.close();
+		}
+		if (shards_ != null)
+		{
+			shards_.abort();
+		}
+		if (asyncWriter_ != null)
+		{
+			asyncWriter_.abort();
+		}
+		if (blockWriter_ != null)
+		{
+			blockWriter_.abort();
+		}
+		if (uuidDuplicates_ != null)
+		{
+			try
+			{
+				uuidDuplicates_.close();
+			}
+			catch (IOException e)
+			{
+				ConsoleUtil.printErrorln("Error removing the UUID log: " + e);
+			}
+		}
+		if (refsetMembers_ != null)
+		{
+			try
+			{
+				refsetMembers_.close();
+			}
+			catch (IOException e)
+			{
+				ConsoleUtil.printErrorln("Error removing the refset member log: " + e);
+			}
+		}
+		if (pendingSCTRelatedConcepts_ != null)
+		{
+			try
+			{
+				//the spill file is part of the checkpoint
+				pendingSCTRelatedConcepts_.close(checkpoint_ == null);
+			}
+			catch (IOException e)
+			{
+				ConsoleUtil.printErrorln("Error removing the pending SCT concept spill file: " + e);
+			}
+		}
+		if (mergeJoin_ != null)
+		{
+			try
+			{
+				mergeJoin_.dispose();
+			}
+			catch (IOException e)
+			{
+				ConsoleUtil.printErrorln("Error removing the merge join temp files: " + e);
+			}
+		}
+		try
+		{
+			if (db_ != null)
+			{
+				db_.shutdown();
+			}
+		}
+		catch (SQLException e)
+		{
+			ConsoleUtil.printErrorln("Error closing source DB: " + e);
+		}
+	}
+	
+	/**
+	 * Digest the source rows of each CUI, and if a previous release was provided, work out which CUIs need to be converted and 
+	 * copy the concepts of the rest across.
+	 */
+	private void prepareDelta(RRFLayout layout) throws Exception
+	{
+		File meta = new File(inputFileLocation, "META");
+		ConsoleUtil.println("Calculating CUI digests");
+		cuiDigests_ = new CUIDigests(meta, layout, sabFilters, skipMTHConcepts);
+		
+		//The metadata tables are read for every CUI - if they changed, nothing can be copied
+		String configId = UUID.nameUUIDFromBytes((conversionConfig() + "|" + CUIDigests.metadataDigest(meta, layout, sabFilters))
+				.getBytes("UTF-8")).toString();
+		//If the UUID scheme changes, nothing can be copied
+		UUID probe = createCUIConceptUUID("C0000005");
+		
+		HashMap<UUID, EConcept> refsets = refsetsByUUID();
+		
+		if (previousReleaseFile != null)
+		{
+			File manifestFile = new File(previousReleaseFile.getAbsoluteFile().getParentFile(), DeltaManifest.FILE_NAME);
+			if (!previousReleaseFile.isFile() || !manifestFile.isFile())
+			{
+				ConsoleUtil.printErrorln("Didn't find " + previousReleaseFile.getAbsolutePath() + " and its delta manifest - doing a full conversion");
+			}
+			else
+			{
+				DeltaManifest previous = DeltaManifest.read(manifestFile);
+				if (!configId.equals(previous.getConfig()) || !probe.equals(previous.getProbe()))
+				{
+					ConsoleUtil.printErrorln("The previous release was converted with a different configuration - doing a full conversion");
+				}
+				else
+				{
+					ReleaseChanges changes = new ReleaseChanges(meta, layout);
+					ConsoleUtil.println("Changes reported by the release (" + changes.getVersion() + "): " + changes.getRetiredCuis().size() 
+							+ " retired CUIs, " + changes.getChangedCuis().size() + " changed CUIs");
+					deltaPlan_ = new DeltaPlan(cuiDigests_, previous, changes, refsets.keySet(), meta, layout, CUIDigests.sabSet(sabFilters, false));
+					ConsoleUtil.println(deltaPlan_.toString());
+				}
+			}
+		}
+		
+		//When resuming, the manifest already has the unchanged CUIs, and the CUIs converted before the checkpoint
+		boolean resumed = checkpoint_ != null && checkpoint_.getLastCui() != null;
+		deltaManifest_ = resumed ? new DeltaManifest.Writer(new File(outputDirectory, DeltaManifest.FILE_NAME), checkpoint_.getManifestLength())
+				: new DeltaManifest.Writer(new File(outputDirectory, DeltaManifest.FILE_NAME), configId, probe);
+		
+		if (deltaPlan_ != null)
+		{
+			copyUnchangedConcepts(refsets, !resumed);
+		}
+	}
+	
+	/**
+	 * @return the settings that change the concepts generated for a CUI
+	 */
+	private String conversionConfig()
+	{
+		StringBuilder config = new StringBuilder();
+		config.append(loaderVersion).append("|").append(sabFilters).append("|").append(skipMTHConcepts).append("|").append(additionalRootConcepts);
+		if (sctInputFile != null)
+		{
+			config.append("|").append(sctInputFile.getAbsolutePath()).append("|").append(sctInputFile.lastModified());
+		}
+		return config.toString();
+	}
+	
+	/**
+	 * @return the refsets the CUI loop adds concepts to
+	 */
+	private HashMap<UUID, EConcept> refsetsByUUID()
+	{
+		HashMap<UUID, EConcept> refsets = new HashMap<>();
+		for (EConcept refset : new EConcept[] {allRefsetConcept_, allCUIRefsetConcept_, allAUIRefsetConcept_})
+		{
+			refsets.put(refset.getPrimordialUuid(), refset);
+		}
+		for (Entry<String, String> sabRefset : terminologyCodeRefsetPropertyName_.entrySet())
+		{
+			EConcept refset = ptRefsets_.get(sabRefset.getKey()).getConcept(sabRefset.getValue());
+			refsets.put(refset.getPrimordialUuid(), refset);
+		}
+		return refsets;
+	}
+	
+	/**
+	 * Copy the concepts of the unchanged CUIs from the previous release, restoring their refset memberships.
+	 * @param writeManifest - false if the manifest already has the entries of the unchanged CUIs
+	 */
+	private void copyUnchangedConcepts(HashMap<UUID, EConcept> refsets, boolean writeManifest) throws Exception
+	{
+		HashMap<UUID, List<UUID>> toCopy = new HashMap<>();
+		for (Entry<String, DeltaManifest.Entry> unchanged : deltaPlan_.getUnchanged().entrySet())
+		{
+			toCopy.putAll(unchanged.getValue().getConcepts());
+			usedSCTRelatedConceptsCUIs_.addAll(unchanged.getValue().getUsedSCTRelatedCUIs());
+			if (writeManifest)
+			{
+				deltaManifest_.write(unchanged.getKey(), unchanged.getValue());
+			}
+		}
+		
+		ConsoleUtil.println("Copying " + toCopy.size() + " concepts from " + previousReleaseFile.getName());
+		int copied = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(previousReleaseFile)));
+		while (in.available() > 0)
+		{
+			EConcept concept = new EConcept(in);
+			List<UUID> conceptRefsets = toCopy.remove(concept.getPrimordialUuid());
+			if (conceptRefsets != null)
+			{
+				for (UUID refset : conceptRefsets)
+				{
+					refsetMembers_.add(refsets.get(refset), concept.getPrimordialUuid());
+				}
+				concept.writeExternal(dos_);
+				if (copied++ % 1000 == 0)
+				{
+					ConsoleUtil.showProgress();
+				}
+			}
+		}
+		in.close();
+		
+		if (toCopy.size() > 0)
+		{
+			throw new MojoExecutionException(toCopy.size() + " concepts listed in the delta manifest were not found in " + previousReleaseFile.getAbsolutePath());
+		}
+		ConsoleUtil.println("Copied " + copied + " concepts");
+	}
+	
+	/**
+	 * Build any of the materialized relationship tables that the staging database doesn't have yet, and switch the queries over to them.
+	 */
+	private void materializeRelationships(LookupQueries queries) throws SQLException
+	{
+		Statement s = db_.getConnection().createStatement();
+		for (boolean atom : new boolean[] {false, true})
+		{
+			for (boolean forward : new boolean[] {true, false})
+			{
+				String table = queries.relationshipTable(atom, forward);
+				ResultSet rs = db_.getConnection().getMetaData().getTables(null, null, table, null);
+				boolean exists = rs.next();
+				rs.close();
+				if (!exists)
+				{
+					ConsoleUtil.println("Creating the relationship table " + table);
+					for (String sql : queries.materializeRelationships(atom, forward))
+					{
+						s.execute(sql);
+						ConsoleUtil.showProgress();
+					}
+				}
+			}
+		}
+		s.close();
+		queries.useMaterializedRelationships();
+	}
+	
+	/**
+	 * Capture the plans of the lookup statements, now that the indexes (and any relationship tables) are in place - bound to the 
+	 * first CUI and atom of the CUI loop, or the first window of CUIs, so H2 plans them for values it has statistics for.
+	 */
+	private void capturePlans(LookupQueries queries) throws SQLException
+	{
+		int windowSize = Math.max(1, prefetchWindowSize);
+		PreparedStatement ps = db_.getConnection().prepareStatement("select CUI, AUI from MRCONSO " 
+				+ (sabQueryString_.length() > 0 ? "where " + sabQueryString_ : "") + " order by CUI, AUI limit ?");
+		//Enough rows for the window, at a few atoms per CUI
+		ps.setInt(1, windowSize * 16);
+		ResultSet rs = ps.executeQuery();
+		String cui = null, aui = null, lastCui = null;
+		int cuis = 0;
+		while (rs.next())
+		{
+			String current = rs.getString("CUI");
+			if (cui == null)
+			{
+				cui = current;
+				aui = rs.getString("AUI");
+			}
+			if (!current.equals(lastCui))
+			{
+				if (++cuis > windowSize)
+				{
+					break;
+				}
+				lastCui = current;
+			}
+		}
+		rs.close();
+		ps.close();
+		if (cui == null)
+		{
+			ConsoleUtil.printErrorln("No MRCONSO rows to capture the statement plans with");
+		}
+		else if (prefetchWindowSize > 0)
+		{
+			WindowPrefetchLookup.capturePlans(profiler_, db_.getConnection(), queries, cui, lastCui);
+		}
+		else
+		{
+			StatementLookup.capturePlans(profiler_, db_.getConnection(), queries, cui, aui);
+		}
+	}
+	
+	/**
+	 * @return false if the CUI group is unchanged since the previous release (and was copied from it)
+	 */
+	private boolean isConverted(HashMap<String, ArrayList<MRCONSO>> conceptData)
+	{
+		return deltaPlan_ == null || deltaPlan_.isConverted(conceptData.values().iterator().next().get(0).cui);
+	}
+	
+	/**
+	 * @return the folder to put the staging database (and other temporary files) in
+	 */
+	private File getWorkingFolder()
+	{
+		if (tmpDBPath != null && tmpDBPath.isDirectory())
+		{
+			return tmpDBPath;
+		}
+		else
+		{
+			return outputDirectory;
+		}
+	}
+	
+	/**
+	 * The UUID of the CUI concept - cached, as the CUIs are asked for again as relationship targets.
+	 */
+	@Override
+	protected UUID createCUIConceptUUID(String cui)
+	{
+		UUID uuid = cuiUUIDs_ == null ? null : cuiUUIDs_.get(cui);
+		if (uuid == null)
+		{
+			if (namespaceConceptUUIDs_)
+			{
+				uuid = namespaceUUIDs_.create(false, CUI_PREFIX, cui);
+			}
+			else
+			{
+				uuid = super.createCUIConceptUUID(cui);
+				if (uuidDuplicates_ != null)
+				{
+					//Logged by the inputs - the base class builds the name
+					uuidDuplicates_.record(uuid, false, CUI_PREFIX, cui);
+				}
+			}
+			if (cuiUUIDs_ != null)
+			{
+				cuiUUIDs_.put(cui, uuid);
+			}
+		}
+		return uuid;
+	}
+	
+	/**
+	 * The UUID of the CUI/SAB/code concept - cached, as the codes are asked for again as relationship targets.
+	 */
+	@Override
+	protected UUID createCuiSabCodeConceptUUID(String cui, String sab, String code)
+	{
+		UUIDCache.CompositeKey key = codeUUIDs_ == null ? null : new UUIDCache.CompositeKey(cui, sab, code);
+		UUID uuid = key == null ? null : codeUUIDs_.get(key);
+		if (uuid == null)
 		{
-			try
+			if (namespaceConceptUUIDs_)
+			{
+				uuid = namespaceUUIDs_.create(false, CODE_PREFIX, cui, ":", sab, ":", code);
+			}
+			else
 			{
-				if (db_ != null)
+				uuid = super.createCuiSabCodeConceptUUID(cui, sab, code);
+				if (uuidDuplicates_ != null)
 				{
-					db_.shutdown();
+					uuidDuplicates_.record(uuid, false, CODE_PREFIX, cui, ":", sab, ":", code);
 				}
 			}
-			catch (SQLException e)
+			if (key != null)
 			{
-				ConsoleUtil.printErrorln("Error closing source DB: " + e);
+				codeUUIDs_.put(key, uuid);
 			}
 		}
-		
-		ConsoleUtil.println("Completed in " + ((System.currentTimeMillis() - startTime)/1000) + " seconds");
-		ConsoleUtil.println(new Date().toString());
-		
+		return uuid;
 	}
-
-	private void loadDatabase() throws Exception
+	
+	private UUID createATUIUUID(String atui, boolean skipDupeCheck)
+	{
+		return namespaceUUIDs_.create("ATUI", atui, !skipDupeCheck);
+	}
+	
+	/**
+	 * @param mergeJoin - if provided, the large tables are staged from the (metadata only) files it provides.
+	 */
+	private void loadDatabase(MergeJoinEngine mergeJoin) throws Exception
 	{
 		// Set up the DB for loading the temp data
 		db_ = new RRFDatabaseHandle();
 		File meta = new File(inputFileLocation, "META");
 		
-		File h2Folder;
+		File h2Folder = getWorkingFolder();
 		
-		if (tmpDBPath != null && tmpDBPath.isDirectory())
-		{
-			h2Folder = tmpDBPath;
-		}
-		else
-		{
-			h2Folder = outputDirectory;
-		}
+		//The merge join engine already cuts the large tables down to the filtered CUIs
+		boolean prune = pruneUnreachableRows && mergeJoin == null && sabFilters != null && sabFilters.size() > 0;
 		
-		File dbFile = new File(h2Folder, "umlsRRF_DB.h2.db");
-		boolean createdNew = db_.createOrOpenDatabase(new File(h2Folder, "umlsRRF_DB"));
+		//Don't mix up a metadata only database with a fully loaded one (or a pruned one)
+		StagingCache stagingCache = new StagingCache(h2Folder, stagingCacheSizeMB * 1024L * 1024L);
+		String dbName = stagingCache.getDatabaseName(mergeJoin == null ? "umlsRRF_DB" : "umlsRRF_metadata_DB", meta, sabFilters, 
+				mergeJoin == null ? (prune ? "full, pruned" : "full") 
+						: "metadata, skipMTHConcepts " + skipMTHConcepts + ", additionalRootConcepts " + additionalRootConcepts);
+		RunReport.Phase phase = report_.start("stagingLoad");
+		stagingDbFile_ = new File(h2Folder, dbName);
+		boolean createdNew = db_.createOrOpenDatabase(stagingDbFile_);
 
 		if (!createdNew)
 		{
-			ConsoleUtil.println("Using existing database.  To load from scratch, delete the file '" + dbFile.getAbsolutePath() + ".*'");
+			ConsoleUtil.println("Using the existing staging database " + dbName + " - it was loaded from the same META files and SAB filters");
+			stagingCache.touch(dbName);
 		}
 		else
 		{
@@ -359,9 +1308,24 @@ public class UMLSMojo extends RRFBaseConverterMojo
 			List<TableDefinition> tables = db_.loadTableDefinitionsFromMRCOLS(new FileInputStream(new File(meta, "MRFILES.RRF")), 
 					new FileInputStream(new File(meta, "MRCOLS.RRF")), filesToSkip);
 
+			// The indexes to support the queries we will run, by table
+			HashMap<String, List<String>> indexes = new HashMap<>();
+			addIndex(indexes, "MRCONSO", "CREATE INDEX conso_cui_index ON MRCONSO (CUI, AUI)");  //make order by fast - also used in adding rels 
+			addIndex(indexes, "MRSAT", "CREATE INDEX sat_cui_metaui_index ON MRSAT (CUI, METAUI)");  // concept/atom sat lookup
+			addIndex(indexes, "MRSAT", "CREATE INDEX sat_metaui_index ON MRSAT (METAUI)");  //rel sat lookup
+			addIndex(indexes, "MRSAT", "CREATE INDEX sat_sab_index ON MRSAT (SAB)");  //Helps with attribute metadata lookup
+			addIndex(indexes, "MRSTY", "CREATE INDEX sty_cui_index ON MRSTY (CUI)");  //semantic type lookup
+			addIndex(indexes, "MRSTY", "CREATE INDEX sty_tui_index ON MRSTY (TUI)");  //select distinct tui during metadata
+			addIndex(indexes, "MRREL", "CREATE INDEX rel_2_index ON MRREL (CUI2, AUI2)");
+			addIndex(indexes, "MRREL", "CREATE INDEX rel_1_index ON MRREL (CUI1, AUI1)");
+			addIndex(indexes, "MRDEF", "CREATE INDEX mrdef_cui_aui_index ON MRDEF (CUI, AUI)");
+			addIndex(indexes, "MRREL", "CREATE INDEX rel_rela_rel_index ON MRREL (RELA, REL)");  //helps with rel metadata
+			addIndex(indexes, "MRREL", "CREATE INDEX rel_sab_index ON MRREL (SAB)");  //helps with rel metadata
+			addIndex(indexes, "MRHIER", "CREATE INDEX mrhier_paui_index ON MRHIER (PAUI)");  //for looking up if a term has roots
+			
+			final HashMap<TableDefinition, File> dataFiles = new HashMap<>();
 			for (TableDefinition td : tables)
 			{
-
 				String tableName = td.getTableName();
 				File dataFile;
 				if (tableName.indexOf('/') > 0)
@@ -374,40 +1338,63 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				{
 					dataFile = new File(meta, tableName + ".RRF");
 				}
-				db_.loadDataIntoTable(td, new UMLSFileReader(new BufferedReader(new FileReader(dataFile))), sabFilters);
+				if (mergeJoin != null)
+				{
+					dataFile = mergeJoin.getStagingFile(tableName, dataFile);
+				}
+				dataFiles.put(td, dataFile);
 			}
-
-			// Build some indexes to support the queries we will run
-
-			Statement s = db_.getConnection().createStatement();
-			ConsoleUtil.println("Creating indexes");
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX conso_cui_index ON MRCONSO (CUI, AUI)");  //make order by fast - also used in adding rels 
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX sat_cui_metaui_index ON MRSAT (CUI, METAUI)");  // concept/atom sat lookup
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX sat_metaui_index ON MRSAT (METAUI)");  //rel sat lookup
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX sat_sab_index ON MRSAT (SAB)");  //Helps with attribute metadata lookup
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX sty_cui_index ON MRSTY (CUI)");  //semantic type lookup
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX sty_tui_index ON MRSTY (TUI)");  //select distinct tui during metadata
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX rel_2_index ON MRREL (CUI2, AUI2)");
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX rel_1_index ON MRREL (CUI1, AUI1)");
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX mrdef_cui_aui_index ON MRDEF (CUI, AUI)");
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX rel_rela_rel_index ON MRREL (RELA, REL)");  //helps with rel metadata
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX rel_sab_index ON MRREL (SAB)");  //helps with rel metadata
-			ConsoleUtil.showProgress();
-			s.execute("CREATE INDEX mrhier_paui_index ON MRHIER (PAUI)");  //for looking up if a term has roots
-			s.close();
+			
+			//Biggest first, so a big table doesn't start last
+			ArrayList<TableDefinition> loadOrder = new ArrayList<>(tables);
+			Collections.sort(loadOrder, new Comparator<TableDefinition>()
+			{
+				@Override
+				public int compare(TableDefinition o1, TableDefinition o2)
+				{
+					return Long.compare(dataFiles.get(o2).length(), dataFiles.get(o1).length());
+				}
+			});
+			
+			ReachabilityPruner pruner = null;
+			if (prune)
+			{
+				ConsoleUtil.println("Reading the CUIs and AUIs of the filtered MRCONSO");
+				pruner = new ReachabilityPruner(meta, sabFilters);
+				ConsoleUtil.println("Loading only the rows that refer to the " + pruner.getCUICount() + " CUIs and " + pruner.getAUICount() 
+					+ " AUIs");
+			}
+			
+			ConsoleUtil.println("Loading " + tables.size() + " tables with " + loadThreads + " threads");
+			ParallelTableLoader loader = new ParallelTableLoader(stagingDbFile_, loadThreads, pruner, phase);
+			for (TableDefinition td : loadOrder)
+			{
+				loader.load(td, dataFiles.get(td), sabFilters, indexes.get(td.getTableName()));
+			}
+			loader.finish();
+			
+			stagingCache.markComplete(dbName);
+		}
+		phase.end();
+		
+		phase = report_.start("rootAUIs");
+		ConsoleUtil.println("Reading the root and top level AUIs from MRHIER");
+		rootAUIs_ = new RootAUIs(db_.getConnection(), additionalRootConcepts);
+		ConsoleUtil.println("Found " + rootAUIs_.size() + " AUIs that may be root concepts");
+		phase.end(rootAUIs_.size());
+	}
+	
+	private static void addIndex(HashMap<String, List<String>> indexes, String table, String sql)
+	{
+		List<String> tableIndexes = indexes.get(table);
+		if (tableIndexes == null)
+		{
+			tableIndexes = new ArrayList<>();
+			indexes.put(table, tableIndexes);
 		}
+		tableIndexes.add(sql);
 	}
+	
 	@Override
 	protected void loadCustomMetaData() throws Exception
 	{
@@ -445,9 +1432,24 @@ public class UMLSMojo extends RRFBaseConverterMojo
 		//noop
 	}
 
+	/**
+	 * @return the attribute schema, built on first use
+	 */
+	private AttributeSchema buildSchema()
+	{
+		if (schema_ == null)
+		{
+			schema_ = new AttributeSchema(ptUMLSAttributes_, ptIds_, ptSABs_, ptTermStatus_, ptSTT_Types_, ptSuppress_, ptSTypes_, 
+					ptSourceRestrictionLevels_, MRCONSO.getDictionary());
+		}
+		return schema_;
+	}
+
 	@Override
-	protected void processSAT(TkComponent<?> itemToAnnotate, ResultSet rs, String itemCode, String itemSab, boolean skipAuiAnnotation) throws SQLException
+	public void processSAT(TkComponent<?> itemToAnnotate, ResultSet rs, String itemCode, String itemSab, boolean skipAuiAnnotation) throws SQLException
 	{
+		//The base class calls this from init(), before execute() builds the schema
+		AttributeSchema schema = buildSchema();
 		while (rs.next())
 		{
 			//String cui = rs.getString("CUI");
@@ -464,24 +1466,24 @@ public class UMLSMojo extends RRFBaseConverterMojo
 			String suppress = rs.getString("SUPPRESS");
 			Integer cvf = rs.getObject("CVF") == null ? null : rs.getInt("CVF");
 
-			TkRefsetStrMember attribute = eConcepts_.addStringAnnotation(itemToAnnotate, ConverterUUID.createNamespaceUUIDFromString("ATUI" + atui), atv, 
+			TkRefsetStrMember attribute = eConcepts_.addStringAnnotation(itemToAnnotate, createATUIUUID(atui, false), atv, 
 					ptTermAttributes_.get(sab).getProperty(atn).getUUID(), false, null);
 			
-			eConcepts_.addAdditionalIds(attribute, atui, ptIds_.getProperty("ATUI").getUUID());
+			eConcepts_.addAdditionalIds(attribute, atui, schema.atuiId);
 			
 			if (lui != null)
 			{
-				eConcepts_.addStringAnnotation(attribute, lui, ptUMLSAttributes_.getProperty("LUI").getUUID(), false);
+				eConcepts_.addStringAnnotation(attribute, lui, schema.lui, false);
 			}
 			
 			if (sui != null)
 			{
-				eConcepts_.addStringAnnotation(attribute, sui, ptUMLSAttributes_.getProperty("SUI").getUUID(), false);
+				eConcepts_.addStringAnnotation(attribute, sui, schema.sui, false);
 			}
 			
 			if (stype != null)
 			{
-				eConcepts_.addUuidAnnotation(attribute, ptSTypes_.getProperty(stype).getUUID(), ptUMLSAttributes_.getProperty("STYPE").getUUID());
+				eConcepts_.addUuidAnnotation(attribute, schema.stypeValue(stype), schema.stype);
 			}
 			
 			if (code != null)
@@ -489,33 +1491,33 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				//Only load the code if it is different than the code of the item we are putting this attribute on.
 				if (itemCode == null || !itemCode.equals(code))
 				{
-					eConcepts_.addStringAnnotation(attribute, code, ptUMLSAttributes_.getProperty("CODE").getUUID(), false);
+					eConcepts_.addStringAnnotation(attribute, code, schema.code, false);
 				}
 			}
 			
 			if (satui != null)
 			{
-				eConcepts_.addStringAnnotation(attribute, satui, ptUMLSAttributes_.getProperty("SATUI").getUUID(), false);
+				eConcepts_.addStringAnnotation(attribute, satui, schema.satui, false);
 			}
 			
 			//only load the sab if it is different than the sab of the item we are putting this attribute on
 			if (itemSab == null || !itemSab.equals(sab))
 			{
-				eConcepts_.addUuidAnnotation(attribute, ptSABs_.getProperty(sab).getUUID(), ptUMLSAttributes_.getProperty("SAB").getUUID());
+				eConcepts_.addUuidAnnotation(attribute, schema.sabValue(sab), schema.sab);
 			}
 			
 			if (suppress != null)
 			{
-				eConcepts_.addUuidAnnotation(attribute, ptSuppress_.getProperty(suppress).getUUID(), ptUMLSAttributes_.getProperty("SUPPRESS").getUUID());
+				eConcepts_.addUuidAnnotation(attribute, schema.suppressValue(suppress), schema.suppress);
 			}
 			if (cvf != null)
 			{
-				eConcepts_.addStringAnnotation(attribute, cvf.toString(), ptUMLSAttributes_.getProperty("CVF").getUUID(), false);
+				eConcepts_.addStringAnnotation(attribute, cvf.toString(), schema.cvf, false);
 			}
 			if (!skipAuiAnnotation)
 			{
 				//Add an attribute that says which AUI this attribute came from
-				eConcepts_.addStringAnnotation(attribute, metaui, ptUMLSAttributes_.getProperty("METAUI").getUUID(), false);
+				eConcepts_.addStringAnnotation(attribute, metaui, schema.metaui, false);
 			}
 		}
 		rs.close();
@@ -569,14 +1571,210 @@ public class UMLSMojo extends RRFBaseConverterMojo
 		s.close();
 	}
 	
-	private void processCUIRows(HashMap<String, ArrayList<MRCONSO>> conceptData) throws IOException, SQLException
+	/**
+	 * Process a run of consecutive CUI groups (in 'order by CUI' order), prefetching their supporting data first.  Clears the window.
+	 * When running multi-threaded, a worker reads the supporting data of the window into a {@link LookupSnapshot}, and the 
+	 * concepts are built from it and committed later, in order, on this thread.
+	 */
+	private void processWindow(ArrayList<HashMap<String, ArrayList<MRCONSO>>> window) throws Exception
+	{
+		if (sequencer_ == null)
+		{
+			for (ConvertedCUI converted : convertWindow(lookup_, window))
+			{
+				commit(converted);
+			}
+		}
+		else
+		{
+			final ArrayList<HashMap<String, ArrayList<MRCONSO>>> work = new ArrayList<>(window);
+			sequencer_.submit(new Callable<FetchedWindow>()
+			{
+				@Override
+				public FetchedWindow call() throws Exception
+				{
+					return fetchWindow(workerLookups_.get(), work);
+				}
+			});
+		}
+		window.clear();
+	}
+	
+	/**
+	 * Read everything {@link #processCUIRows(CUILookup, HashMap)} will look up for the window into a snapshot.  Runs on a worker 
+	 * thread - so only reads the lookup, and the SCT index.
+	 */
+	private FetchedWindow fetchWindow(CUILookup lookup, List<HashMap<String, ArrayList<MRCONSO>>> window) throws SQLException
+	{
+		lookup.prefetch(window.get(0).values().iterator().next().get(0).cui, window.get(window.size() - 1).values().iterator().next().get(0).cui);
+		LookupSnapshot snapshot = new LookupSnapshot();
+		for (HashMap<String, ArrayList<MRCONSO>> conceptData : window)
+		{
+			for (ArrayList<MRCONSO> consoWithSameCodeSab : conceptData.values())
+			{
+				if (!snomedSpecialHandling(consoWithSameCodeSab.get(0).getSab()))
+				{
+					for (MRCONSO rowData : consoWithSameCodeSab)
+					{
+						snapshot.fetchAtom(lookup, rowData.cui, rowData.aui);
+					}
+				}
+			}
+			snapshot.fetchCUI(lookup, conceptData.values().iterator().next().get(0).cui);
+		}
+		return new FetchedWindow(window, snapshot);
+	}
+	
+	private List<ConvertedCUI> convertWindow(CUILookup lookup, List<HashMap<String, ArrayList<MRCONSO>>> window) throws IOException, SQLException
+	{
+		lookup.prefetch(window.get(0).values().iterator().next().get(0).cui, window.get(window.size() - 1).values().iterator().next().get(0).cui);
+		ArrayList<ConvertedCUI> result = new ArrayList<>(window.size());
+		for (HashMap<String, ArrayList<MRCONSO>> conceptData : window)
+		{
+			result.add(processCUIRows(lookup, conceptData));
+		}
+		return result;
+	}
+	
+	/**
+	 * Apply the shared state updates for a converted CUI, and write out its concepts.  Always called in CUI order, on the main thread.
+	 */
+	private void commit(ConvertedCUI converted) throws IOException, SQLException
+	{
+		for (ConvertedCUI.Output output : converted.getOutputs())
+		{
+			for (List<REL> rels : output.getRelationships())
+			{
+				addRelationships(output.getConcept(), rels);
+			}
+			
+			if (output.isPendingSCT())
+			{
+				//might not need to write this one.
+				pendingSCTRelatedConcepts_.put(converted.getCui(), output.getConcept());
+				continue;
+			}
+			
+			for (EConcept refset : output.getRefsets())
+			{
+				refsetMembers_.add(refset, output.getConcept().getPrimordialUuid());
+				if (checkpoint_ != null)
+				{
+					checkpoint_.addRefsetMember(refset.getPrimordialUuid(), output.getConcept().getPrimordialUuid());
+				}
+			}
+			writeConcept(converted.getCui(), output.getConcept());
+			//disabled debug code
+			//conceptUUIDsCreated_.add(output.getConcept().getPrimordialUuid());
+		}
+		
+		usedSCTRelatedConceptsCUIs_.addAll(converted.getUsedSCTRelatedCUIs());
+		
+		if (deltaManifest_ != null)
+		{
+			DeltaManifest.Entry entry = new DeltaManifest.Entry(cuiDigests_.get(converted.getCui()));
+			for (ConvertedCUI.Output output : converted.getOutputs())
+			{
+				if (output.isPendingSCT())
+				{
+					entry.setPendingSCT();
+					continue;
+				}
+				ArrayList<UUID> refsets = new ArrayList<>();
+				for (EConcept refset : output.getRefsets())
+				{
+					refsets.add(refset.getPrimordialUuid());
+				}
+				entry.addConcept(output.getConcept().getPrimordialUuid(), refsets);
+			}
+			entry.getUsedSCTRelatedCUIs().addAll(converted.getUsedSCTRelatedCUIs());
+			deltaManifest_.write(converted.getCui(), entry);
+		}
+		
+		for (Entry<String, Integer> lang : converted.getMishandledLanguages().entrySet())
+		{
+			AtomicInteger i = mishandledLanguages_.get(lang.getKey());
+			if (i == null)
+			{
+				i = new AtomicInteger(0);
+				mishandledLanguages_.put(lang.getKey(), i);
+			}
+			i.addAndGet(lang.getValue());
+		}
+		
+		if (cuiCounter_ % 100 == 0)
+		{
+			ConsoleUtil.showProgress();
+		}
+		cuiCounter_++;
+		if (cuiCounter_ % 10000 == 0)
+		{
+			ConsoleUtil.println("Processed " + cuiCounter_ + " CUIs creating " + eConcepts_.getLoadStats().getConceptCount() + " concepts");
+		}
+		if (checkpoint_ != null && cuiCounter_ % checkpointInterval == 0)
+		{
+			if (asyncWriter_ != null)
+			{
+				asyncWriter_.flush();
+			}
+			dos_ = checkpoint_.save(converted.getCui(), cuiCounter_, usedSCTRelatedConceptsCUIs_, mishandledLanguages_, pendingSCTRelatedConcepts_, 
+					deltaManifest_);
+			if (asyncWriter_ != null)
+			{
+				asyncWriter_.setTarget(dos_);
+			}
+		}
+	}
+	
+	/**
+	 * Write a concept of the CUI loop - to its shard, if sharding, or through the async writer (which may be compressing).
+	 */
+	private void writeConcept(String cui, EConcept concept) throws IOException
+	{
+		if (shards_ != null)
+		{
+			shards_.write(cui, concept);
+		}
+		else if (asyncWriter_ != null)
+		{
+			asyncWriter_.write(concept);
+		}
+		else
+		{
+			concept.writeExternal(dos_);
+		}
+	}
+	
+	/**
+	 * Write the manifest of the shards, and the jbin file(s) the base mojo wrote.
+	 */
+	private void writeShardManifest() throws IOException
+	{
+		File[] unsharded = outputDirectory.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.endsWith(".jbin") && !name.startsWith(ShardedConceptWriter.SHARD_PREFIX);
+			}
+		});
+		Arrays.sort(unsharded);
+		shards_.writeManifest(new File(outputDirectory, ShardedConceptWriter.MANIFEST_FILE_NAME), Arrays.asList(unsharded));
+	}
+	
+	/**
+	 * Build the concepts for a CUI.  Only call on the main thread - it uses the shared EConceptUtility and base class state.  
+	 * The updates that depend on the CUI order are left to {@link #commit(ConvertedCUI)}.
+	 */
+	public ConvertedCUI processCUIRows(CUILookup lookup, HashMap<String, ArrayList<MRCONSO>> conceptData) throws SQLException
 	{
 		String cui = conceptData.values().iterator().next().get(0).cui;
+		ConvertedCUI converted = new ConvertedCUI(cui);
 		
 		boolean allSABsSnomedSpecial = true;
 		for (ArrayList<MRCONSO> consoWithSameCodeSab : conceptData.values())
 		{
-			if (!snomedSpecialHandling(consoWithSameCodeSab.get(0).sab))
+			if (!snomedSpecialHandling(consoWithSameCodeSab.get(0).getSab()))
 			{
 				allSABsSnomedSpecial = false;
 				break;
@@ -584,13 +1782,13 @@ public class UMLSMojo extends RRFBaseConverterMojo
 		}
 		
 		EConcept cuiConcept = eConcepts_.createConcept(createCUIConceptUUID(cui));
-		eConcepts_.addAdditionalIds(cuiConcept, cui, ptIds_.getProperty("CUI").getUUID(), false);
+		eConcepts_.addAdditionalIds(cuiConcept, cui, schema_.cuiId, false);
 
 		ArrayList<ValuePropertyPair> cuiDescriptions = new ArrayList<>();
 		
 		for (ArrayList<MRCONSO> consoWithSameCodeSab : conceptData.values())
 		{
-			String sab = consoWithSameCodeSab.get(0).sab;
+			String sab = consoWithSameCodeSab.get(0).getSab();
 			
 			if (snomedSpecialHandling(sab))
 			{
@@ -598,16 +1796,16 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				//do nothing with the rest of the AUI based concepts
 				for (MRCONSO rowData : consoWithSameCodeSab)
 				{
-					cuiDescriptions.add(new ValuePropertyPairWithAttributes(rowData.str, ptDescriptions_.get(rowData.sab).getProperty(rowData.tty)));
+					cuiDescriptions.add(new ValuePropertyPairWithAttributes(rowData.str, ptDescriptions_.get(rowData.getSab()).getProperty(rowData.getTty())));
 					//Don't do any relationships on these... we only want the rels that cross in and out of SCT - so we rely on the other terminologies
 					//to link into SCT.
 				}
 				
-				UUID snomedConceptId = sctIDToUUID_.get(consoWithSameCodeSab.get(0).code);
-				if (snomedConceptId != null)
+				int snomedConcept = sctIDToUUID_.find(consoWithSameCodeSab.get(0).code);
+				if (snomedConcept >= 0)
 				{
 					//Add rel to parent CUI - but load it in reverse, so we don't have to mess with SCT concepts
-					eConcepts_.addRelationship(cuiConcept, snomedConceptId, ptUMLSRelationships_.UMLS_CUI.getUUID(), null);
+					eConcepts_.addRelationship(cuiConcept, sctIDToUUID_.getUUID(snomedConcept), ptUMLSRelationships_.UMLS_CUI.getUUID(), null);
 				}
 			}
 			else
@@ -616,7 +1814,7 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				EConcept codeSabConcept = eConcepts_.createConcept(createCuiSabCodeConceptUUID(consoWithSameCodeSab.get(0).cui, 
 						sab, consoWithSameCodeSab.get(0).code));
 				
-				eConcepts_.addStringAnnotation(codeSabConcept, consoWithSameCodeSab.get(0).code, ptUMLSAttributes_.getProperty("CODE").getUUID(), false);
+				eConcepts_.addStringAnnotation(codeSabConcept, consoWithSameCodeSab.get(0).code, schema_.code, false);
 				
 				ArrayList<ValuePropertyPairWithAttributes> codeSabDescriptions = new ArrayList<>();
 				
@@ -626,59 +1824,53 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				for (MRCONSO rowData : consoWithSameCodeSab)
 				{
 					//put it in as a string, so users can search for AUI
-					eConcepts_.addAdditionalIds(codeSabConcept, rowData.aui, ptIds_.getProperty("AUI").getUUID(), false);
+					eConcepts_.addAdditionalIds(codeSabConcept, rowData.aui, schema_.auiId, false);
 					
-					ValuePropertyPairWithAttributes desc = new ValuePropertyPairWithAttributes(rowData.str, ptDescriptions_.get(rowData.sab).getProperty(rowData.tty));
+					ValuePropertyPairWithAttributes desc = new ValuePropertyPairWithAttributes(rowData.str, ptDescriptions_.get(rowData.getSab()).getProperty(rowData.getTty()));
 					
 					if (consoWithSameCodeSab.size() > 1)
 					{
-						desc.addStringAttribute(ptUMLSAttributes_.getProperty("AUI").getUUID(), rowData.aui);
+						desc.addStringAttribute(schema_.aui, rowData.aui);
 					}
 					
 					// TODO handle language.
-					if (!rowData.lat.equals("ENG"))
+					if (!rowData.getLat().equals("ENG"))
 					{
-						AtomicInteger i = mishandledLanguages_.get(rowData.lat);
-						if (i == null)
-						{
-							i = new AtomicInteger(0);
-							mishandledLanguages_.put(rowData.lat, i);
-						}
-						i.incrementAndGet();
+						converted.addMishandledLanguage(rowData.getLat());
 					}
 					
-					desc.addUUIDAttribute(ptUMLSAttributes_.getProperty("TS").getUUID(), ptTermStatus_.getProperty(rowData.ts).getUUID());
+					desc.addUUIDAttribute(schema_.ts, schema_.termStatusValue(rowData.getTsCode()));
 					
-					desc.addStringAttribute(ptUMLSAttributes_.getProperty("LUI").getUUID(), rowData.lui);
+					desc.addStringAttribute(schema_.lui, rowData.lui);
 					
-					desc.addUUIDAttribute(ptUMLSAttributes_.getProperty("STT").getUUID(), ptSTT_Types_.getProperty(rowData.stt).getUUID());
+					desc.addUUIDAttribute(schema_.stt, schema_.sttValue(rowData.getSttCode()));
 					
-					desc.addStringAttribute(ptUMLSAttributes_.getProperty("SUI").getUUID(), rowData.sui);
+					desc.addStringAttribute(schema_.sui, rowData.sui);
 					
-					desc.addStringAttribute(ptUMLSAttributes_.getProperty("ISPREF").getUUID(), rowData.ispref);
+					desc.addStringAttribute(schema_.ispref, rowData.getIspref());
 					
 					if (rowData.saui != null)
 					{
-						desc.addStringAttribute(ptUMLSAttributes_.getProperty("SAUI").getUUID(), rowData.saui);
+						desc.addStringAttribute(schema_.saui, rowData.saui);
 					}
 					if (rowData.scui != null)
 					{
-						desc.addStringAttribute(ptUMLSAttributes_.getProperty("SCUI").getUUID(), rowData.scui);
+						desc.addStringAttribute(schema_.scui, rowData.scui);
 					}
 					if (rowData.sdui != null)
 					{
-						desc.addStringAttribute(ptUMLSAttributes_.getProperty("SDUI").getUUID(), rowData.sdui);
+						desc.addStringAttribute(schema_.sdui, rowData.sdui);
 					}
 					
-					desc.addUUIDAttribute(ptUMLSAttributes_.getProperty("SAB").getUUID(), ptSABs_.getProperty(rowData.sab).getUUID());
+					desc.addUUIDAttribute(schema_.sab, schema_.sabValue(rowData.getSabCode()));
 	
-					desc.addUUIDAttribute(ptUMLSAttributes_.getProperty("SRL").getUUID(), ptSourceRestrictionLevels_.getProperty(rowData.srl.toString()).getUUID());
+					desc.addUUIDAttribute(schema_.srl, schema_.srlValue(rowData.getSrl()));
 		
-					desc.addUUIDAttribute(ptUMLSAttributes_.getProperty("SUPPRESS").getUUID(), ptSuppress_.getProperty(rowData.suppress).getUUID());
+					desc.addUUIDAttribute(schema_.suppress, schema_.suppressValue(rowData.getSuppressCode()));
 					
-					if (rowData.cvf != null)
+					if (rowData.getCvf() != MRCONSO.NO_VALUE)
 					{
-						desc.addStringAttribute(ptUMLSAttributes_.getProperty("CVF").getUUID(), rowData.cvf.toString());
+						desc.addStringAttribute(schema_.cvf, Integer.toString(rowData.getCvf()));
 					}
 					
 					//used for sorting description to find one for the CUI concept
@@ -687,27 +1879,23 @@ public class UMLSMojo extends RRFBaseConverterMojo
 					codeSabDescriptions.add(desc);
 					
 					//Add Atom attributes
-					satAtomStatement.clearParameters();
-					satAtomStatement.setString(1, rowData.cui);
-					satAtomStatement.setString(2, rowData.aui);
-					ResultSet rs = satAtomStatement.executeQuery();
-					processSAT(codeSabConcept.getConceptAttributes(), rs, rowData.code, rowData.sab, consoWithSameCodeSab.size() == 1);
+					processSAT(codeSabConcept.getConceptAttributes(), lookup.atomAttributes(rowData.cui, rowData.aui), rowData.code, rowData.getSab(), 
+							consoWithSameCodeSab.size() == 1);
 					
 					//Add Definitions
-					addDefinitions(codeSabConcept, rowData.cui, rowData.aui, sab, consoWithSameCodeSab.size() == 1);
+					addDefinitions(lookup, codeSabConcept, rowData.cui, rowData.aui, sab, consoWithSameCodeSab.size() == 1);
 	
-					auiRelStatementForward.clearParameters();
-					auiRelStatementForward.setString(1, rowData.cui);
-					auiRelStatementForward.setString(2, rowData.aui);
-					forwardRelationships.addAll(REL.read(rowData.sab, auiRelStatementForward.executeQuery(), true, this));
+					forwardRelationships.addAll(REL.read(rowData.getSab(), lookup.atomRelationshipsForward(rowData.cui, rowData.aui), true, this));
 					
-					auiRelStatementBackward.clearParameters();
-					auiRelStatementBackward.setString(1, rowData.cui);
-					auiRelStatementBackward.setString(2, rowData.aui);
-					backwardRelationships.addAll(REL.read(rowData.sab, auiRelStatementBackward.executeQuery(), false, this));
+					backwardRelationships.addAll(REL.read(rowData.getSab(), lookup.atomRelationshipsBackward(rowData.cui, rowData.aui), false, this));
 					
 					//If root concept, add rel to UMLS root concept
-					UUID parentConcept = isRootConcept(rowData.cui, rowData.aui);
+					UUID parentConcept = null;
+					if (rootAUIs_.mayBeRoot(rowData.aui))
+					{
+						//the base class runs this against the main connection
+						parentConcept = isRootConcept(rowData.cui, rowData.aui);
+					}
 					if (parentConcept != null)
 					{
 						eConcepts_.addRelationship(codeSabConcept, parentConcept);
@@ -719,57 +1907,18 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				
 				//pre-preprocess the rels - change the target to the real SCT code for any targets that match...  also strip 
 				//and rels that miss (and we therefore have nothing to create the relationship to)
-				Iterator<REL> rels = forwardRelationships.iterator();
-				while (rels.hasNext())
-				{
-					REL rel = rels.next();
-					if (snomedSpecialHandling(rel.getTargetSAB()))
-					{
-						UUID temp = sctIDToUUID_.get(rel.getTargetCode());
-						if (temp != null)
-						{
-							rel.setSnomedUUIDTarget(temp);
-						}
-						else
-						{
-							rels.remove();
-							ConsoleUtil.printErrorln("Couldn't link to SCT CODE " + rel.getTargetCode());
-						}
-					}
-				}
-				
-				rels = backwardRelationships.iterator();
-				while (rels.hasNext())
-				{
-					REL rel = rels.next();
-					if (snomedSpecialHandling(rel.getTargetSAB()))
-					{
-						UUID temp = sctIDToUUID_.get(rel.getTargetCode());
-						if (temp != null)
-						{
-							rel.setSnomedUUIDTarget(temp);
-						}
-						else
-						{
-							rels.remove();
-							ConsoleUtil.printErrorln("Couldn't link to SCT CODE " + rel.getTargetCode());
-						}
-					}
-				}
+				retargetSCTRelationships(forwardRelationships);
+				retargetSCTRelationships(backwardRelationships);
 				
-				addRelationships(codeSabConcept, forwardRelationships);
-				addRelationships(codeSabConcept, backwardRelationships);
-				
-				eConcepts_.addRefsetMember(allRefsetConcept_, codeSabConcept.getPrimordialUuid(), null, true, null);
-				eConcepts_.addRefsetMember(allAUIRefsetConcept_, codeSabConcept.getPrimordialUuid(), null, true, null);
-				eConcepts_.addRefsetMember(ptRefsets_.get(sab).getConcept(terminologyCodeRefsetPropertyName_.get(sab)) , codeSabConcept.getPrimordialUuid(), null, true, null);
+				converted.add(codeSabConcept)
+					.addRelationships(forwardRelationships)
+					.addRelationships(backwardRelationships)
+					.addRefsetMembership(allRefsetConcept_)
+					.addRefsetMembership(allAUIRefsetConcept_)
+					.addRefsetMembership(ptRefsets_.get(sab).getConcept(terminologyCodeRefsetPropertyName_.get(sab)));
 				
 				List<TkDescription> addedDescriptions = eConcepts_.addDescriptions(codeSabConcept, codeSabDescriptions);
 				ValuePropertyPairWithAttributes.processAttributes(eConcepts_, codeSabDescriptions, addedDescriptions);
-	
-				codeSabConcept.writeExternal(dos_);
-				//disabled debug code
-				//conceptUUIDsCreated_.add(codeSabConcept.getPrimordialUuid());
 			}
 		}
 		
@@ -779,64 +1928,75 @@ public class UMLSMojo extends RRFBaseConverterMojo
 				cuiDescriptions.get(0).getProperty().getPropertyType().getPropertyTypeReferenceSetUUID(), false);
 		
 		//process concept attributes
-		satConceptStatement.clearParameters();
-		satConceptStatement.setString(1, cui);
-		ResultSet rs = satConceptStatement.executeQuery();
-		processSAT(cuiConcept.getConceptAttributes(), rs, null, null, true);
+		processSAT(cuiConcept.getConceptAttributes(), lookup.conceptAttributes(cui), null, null, true);
 		
 		//add semantic types
-		semanticTypeStatement.clearParameters();
-		semanticTypeStatement.setString(1, cui);
-		rs = semanticTypeStatement.executeQuery();
-		processSemanticTypes(cuiConcept, rs);
+		processSemanticTypes(cuiConcept, lookup.semanticTypes(cui));
+		
+		ConvertedCUI.Output cuiOutput = converted.add(cuiConcept);
 
-		cuiRelStatementForward.clearParameters();
-		cuiRelStatementForward.setString(1, cui);
-		List<REL> relList = REL.read(null, cuiRelStatementForward.executeQuery(), true, this);
+		List<REL> relList = REL.read(null, lookup.cuiRelationshipsForward(cui), true, this);
 		if (relList.size() > 0)
 		{
-			usedSCTRelatedConceptsCUIs_.add(cui);
+			converted.addUsedSCTRelatedCUI(cui);
 			for (REL r : relList)
 			{
-				usedSCTRelatedConceptsCUIs_.add(r.getTargetCUI());
+				converted.addUsedSCTRelatedCUI(r.getTargetCUI());
 			}
 		}
-		addRelationships(cuiConcept, relList);
+		cuiOutput.addRelationships(relList);
 		
-		cuiRelStatementBackward.clearParameters();
-		cuiRelStatementBackward.setString(1, cui);
-		relList = REL.read(null, cuiRelStatementBackward.executeQuery(), false, this);
+		relList = REL.read(null, lookup.cuiRelationshipsBackward(cui), false, this);
 		if (relList.size() > 0)
 		{
-			usedSCTRelatedConceptsCUIs_.add(cui);
+			converted.addUsedSCTRelatedCUI(cui);
 			for (REL r : relList)
 			{
-				usedSCTRelatedConceptsCUIs_.add(r.getTargetCUI());
+				converted.addUsedSCTRelatedCUI(r.getTargetCUI());
 			}
 		}
-		addRelationships(cuiConcept, relList);
+		cuiOutput.addRelationships(relList);
 
 		if (allSABsSnomedSpecial)
 		{
-			//might not need to write this one.
-			pendingSCTRelatedConcepts_.put(cui, cuiConcept);
+			cuiOutput.setPendingSCT();
 		}
 		else
 		{
-			eConcepts_.addRefsetMember(allRefsetConcept_, cuiConcept.getPrimordialUuid(), null, true, null);
-			eConcepts_.addRefsetMember(allCUIRefsetConcept_, cuiConcept.getPrimordialUuid(), null, true, null);
-			cuiConcept.writeExternal(dos_);
+			cuiOutput.addRefsetMembership(allRefsetConcept_).addRefsetMembership(allCUIRefsetConcept_);
+		}
+		return converted;
+	}
+	
+	/**
+	 * Change the target of the relationships that point into SCT to the real SCT concept.  Strips the rels that miss (and we 
+	 * therefore have nothing to create the relationship to).
+	 */
+	public void retargetSCTRelationships(List<REL> relationships)
+	{
+		Iterator<REL> rels = relationships.iterator();
+		while (rels.hasNext())
+		{
+			REL rel = rels.next();
+			if (snomedSpecialHandling(rel.getTargetSAB()))
+			{
+				int target = sctIDToUUID_.find(rel.getTargetCode());
+				if (target >= 0)
+				{
+					rel.setSnomedUUIDTarget(sctIDToUUID_.getUUID(target));
+				}
+				else
+				{
+					rels.remove();
+					ConsoleUtil.printErrorln("Couldn't link to SCT CODE " + rel.getTargetCode());
+				}
+			}
 		}
-		//disabled debug code
-		//conceptUUIDsCreated_.add(cuiConcept.getPrimordialUuid());
 	}
 	
-	private void addDefinitions(EConcept concept, String cui, String aui, String itemSab, boolean skipAuiAnnotation) throws SQLException
+	public void addDefinitions(CUILookup lookup, EConcept concept, String cui, String aui, String itemSab, boolean skipAuiAnnotation) throws SQLException
 	{
-		definitionStatement.clearParameters();
-		definitionStatement.setString(1, cui);
-		definitionStatement.setString(2, aui);
-		ResultSet rs = definitionStatement.executeQuery();
+		ResultSet rs = lookup.definitions(cui, aui);
 		while (rs.next())
 		{
 			String atui = rs.getString("ATUI");
@@ -846,40 +2006,40 @@ public class UMLSMojo extends RRFBaseConverterMojo
 			String suppress = rs.getString("SUPPRESS");
 			String cvf = rs.getString("CVF");
 			
-			TkDescription d = eConcepts_.addDescription(concept, ConverterUUID.createNamespaceUUIDFromString("ATUI" + atui, false), 
+			TkDescription d = eConcepts_.addDescription(concept, createATUIUUID(atui, false), 
 					def, DescriptionType.DEFINITION, false, null, null, false);
 			
-			eConcepts_.addAdditionalIds(d, atui, ptIds_.getProperty("ATUI").getUUID());
+			eConcepts_.addAdditionalIds(d, atui, schema_.atuiId);
 			
 			if (satui != null)
 			{
-				eConcepts_.addStringAnnotation(d, satui, ptUMLSAttributes_.getProperty("SATUI").getUUID(), false);
+				eConcepts_.addStringAnnotation(d, satui, schema_.satui, false);
 			}
 			//only add the sab if it differs from the concept we are putting it on
 			if (itemSab == null || !itemSab.equals(sab))
 			{
-				eConcepts_.addUuidAnnotation(d, ptSABs_.getProperty(sab).getUUID(), ptUMLSAttributes_.getProperty("SAB").getUUID());
+				eConcepts_.addUuidAnnotation(d, schema_.sabValue(sab), schema_.sab);
 			}
 			
 			if (suppress != null)
 			{
-				eConcepts_.addUuidAnnotation(d, ptSuppress_.getProperty(suppress).getUUID(), ptUMLSAttributes_.getProperty("SUPPRESS").getUUID());
+				eConcepts_.addUuidAnnotation(d, schema_.suppressValue(suppress), schema_.suppress);
 			}
 			if (cvf != null)
 			{
-				eConcepts_.addStringAnnotation(d, cvf.toString(), ptUMLSAttributes_.getProperty("CVF").getUUID(), false);
+				eConcepts_.addStringAnnotation(d, cvf.toString(), schema_.cvf, false);
 			}
 			
 			if (!skipAuiAnnotation)
 			{
 				//add the source AUI for this definition
-				eConcepts_.addStringAnnotation(d, aui, ptUMLSAttributes_.getProperty("AUI").getUUID(), false);
+				eConcepts_.addStringAnnotation(d, aui, schema_.aui, false);
 			}
 		}
 	}
 	
 	@Override
-	protected boolean specialHandling(String sab)
+	public boolean specialHandling(String sab)
 	{
 		if (sab.equals("MTH"))
 		{
@@ -909,57 +2069,48 @@ public class UMLSMojo extends RRFBaseConverterMojo
 	
 	private void loadSCTInfo() throws ClassNotFoundException, IOException
 	{
-		UUID sctIDType = UUID.fromString("0418a591-f75b-39ad-be2c-3ab849326da9");  //"SNOMED integer id"
-		// Read in the SCT data
-		HashMap<String, UUID> sctConcepts = new HashMap<>();
-		File[] temp = sctInputFile.listFiles(new FilenameFilter()
-		{
-			@Override
-			public boolean accept(File dir, String name)
-			{
-				if (name.endsWith(".jbin"))
-				{
-					return true;
-				}
-				return false;
-			}
-		});
+		// Read in the SCT data - or reuse the index built from it last time
+		sctIDToUUID_ = SCTIndex.open(sctInputFile, getWorkingFolder()).toMap();
+		ConsoleUtil.println("Read UUIDs from SCT file - read " + sctIDToUUID_.size() + " concepts");
+	}
+
+
+	/**
+	 * Set up a converter outside of maven - for the benchmarks.  Call {@link #prepare()} before converting anything.
+	 * @param sctIds - optional - used in place of the SCT index that would be read from sctInputFile
+	 */
+	public static UMLSMojo create(File inputFileLocation, File outputDirectory, String releaseVersion, List<String> sabFilters, SCTIDMap sctIds)
+	{
+		UMLSMojo mojo = new UMLSMojo();
+		mojo.inputFileLocation = inputFileLocation;
+		mojo.outputDirectory = outputDirectory;
+		mojo.loaderVersion = "benchmark loader";
+		mojo.converterResultVersion = releaseVersion;
+		mojo.sabFilters = sabFilters;
+		mojo.sctIDToUUID_ = sctIds;
+		return mojo;
+	}
+	
+	public CUILookup getLookup()
+	{
+		return lookup_;
+	}
+	
+	/**
+	 * A window of CUI groups, with the supporting rows read for it by a worker
+	 */
+	private static class FetchedWindow
+	{
+		private List<HashMap<String, ArrayList<MRCONSO>>> window_;
+		private LookupSnapshot lookup_;
 		
-		for (File f : temp)
+		private FetchedWindow(List<HashMap<String, ArrayList<MRCONSO>>> window, LookupSnapshot lookup)
 		{
-			ConsoleUtil.println("Reading " + f.getName());
-			DataInputStream in = new DataInputStream(new FileInputStream(f));
-	
-			while (in.available() > 0)
-			{
-				if (sctConcepts.size() % 1000 == 0)
-				{
-					ConsoleUtil.showProgress();
-				}
-				EConcept concept = new EConcept(in);
-				
-				if (concept.getConceptAttributes() != null && concept.getConceptAttributes().getAdditionalIdComponents() != null)
-				{
-					for (TkIdentifier id : concept.getConceptAttributes().getAdditionalIdComponents())
-					{
-						if (sctIDType.equals(id.getAuthorityUuid()))
-						{
-							//Store these by SCTID, because there is no reliable way to generate a UUID from a SCTID.
-							sctConcepts.put(id.getDenotation().toString(), concept.getPrimordialUuid());
-							break;
-						}
-					}
-				}
-				
-				
-			}
-			in.close();
+			window_ = window;
+			lookup_ = lookup;
 		}
-		ConsoleUtil.println("Read UUIDs from SCT file - read " + sctConcepts.size() + " concepts");
-		sctIDToUUID_ = sctConcepts;
 	}
 
-
 	public static void main(String[] args) throws MojoExecutionException
 	{
 		UMLSMojo mojo = new UMLSMojo();
@@ -0,0 +1,385 @@
+package gov.va.umls.checkpoint;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import gov.va.umls.delta.DeltaManifest;
+import gov.va.umls.sct.PendingConceptStore;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checkpoints of the main CUI loop, so a failed conversion can be resumed after the last CUI of the last checkpoint, rather
+ * than from the first CUI.
+ *
+ * During the loop, the concepts are written to numbered segment files (rather than the jbin file) along with a log of the
+ * refset memberships they were given.  A checkpoint closes the current segment, and records the last CUI written along with
+ * the rest of the loop state - the SCT related CUIs seen, the mishandled language counts, the pending SCT concept spill file
+ * (which lives in the checkpoint folder) and the delta manifest.  At the end of the loop, the segments are copied into the
+ * jbin file, in order.
+ *
+ * A resumed run rebuilds everything before the loop (which is deterministic) as normal, then picks up the loop state from the
+ * checkpoint - the segments after the checkpoint, and anything written to the spill file and manifest after it, are discarded.
+ */
+public class ConversionCheckpoint
+{
+	public static final String FOLDER_NAME = "umlsCheckpoint";
+
+	private static final int VERSION = 2;
+	//Written last, so a state file that was cut short is recognized
+	private static final int END = 0x43504B54;
+	private static final String STATE = "checkpoint.state";
+
+	/**
+	 * Receives the refset memberships logged in the completed segments, when resuming
+	 */
+	public interface RefsetMemberSink
+	{
+		public void add(UUID refset, UUID concept) throws IOException;
+	}
+
+	private File folder_;
+	private String config_;
+
+	private String lastCui_;
+	private int segments_ = 0;
+	private int cuiCount_ = 0;
+	private LinkedHashSet<String> usedSCTRelatedCUIs_ = new LinkedHashSet<>();
+	private HashMap<String, Integer> mishandledLanguages_ = new HashMap<>();
+	private long pendingLength_ = -1;
+	private HashMap<String, Long> pendingOffsets_ = new HashMap<>();
+	private long manifestLength_ = -1;
+
+	private DataOutputStream output_;
+	private DataOutputStream segment_;
+	private DataOutputStream members_;
+
+	private ConversionCheckpoint(File folder, String config)
+	{
+		folder_ = folder;
+		config_ = config;
+	}
+
+	/**
+	 * Start a new set of checkpoints, removing any left in the folder.
+	 * @param config - identifies the settings of the run - a checkpoint is only resumed by a run with the same settings
+	 */
+	public static ConversionCheckpoint create(File folder, String config) throws IOException
+	{
+		delete(folder);
+		if (!folder.mkdirs())
+		{
+			throw new IOException("Couldn't create the checkpoint folder " + folder.getAbsolutePath());
+		}
+		return new ConversionCheckpoint(folder, config);
+	}
+
+	/**
+	 * @return the last checkpoint in the folder, or null if there isn't one
+	 * @throws IOException if the checkpoint was made by a run with different settings
+	 */
+	public static ConversionCheckpoint resume(File folder, String config) throws IOException
+	{
+		ConversionCheckpoint cp = read(new File(folder, STATE), folder, config);
+		if (cp == null)
+		{
+			//A run that stopped during its first save leaves only the temp file - used if it was written out in full
+			cp = read(new File(folder, STATE + ".tmp"), folder, config);
+			if (cp == null)
+			{
+				return null;
+			}
+		}
+
+		//Anything written after the checkpoint
+		for (int i = cp.segments_ + 1; segmentFile(folder, i).exists(); i++)
+		{
+			segmentFile(folder, i).delete();
+			membersFile(folder, i).delete();
+		}
+		return cp;
+	}
+
+	/**
+	 * @return the checkpoint in the state file, or null if the file is missing or wasn't written out in full
+	 */
+	private static ConversionCheckpoint read(File state, File folder, String config) throws IOException
+	{
+		if (!state.isFile())
+		{
+			return null;
+		}
+		ConversionCheckpoint cp = new ConversionCheckpoint(folder, config);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(state)));
+		try
+		{
+			if (in.readInt() != VERSION || !in.readUTF().equals(config))
+			{
+				throw new IOException("The checkpoint in " + folder.getAbsolutePath() + " was made by a run with different settings");
+			}
+			cp.lastCui_ = in.readUTF();
+			cp.segments_ = in.readInt();
+			cp.cuiCount_ = in.readInt();
+			for (int i = in.readInt(); i > 0; i--)
+			{
+				cp.usedSCTRelatedCUIs_.add(in.readUTF());
+			}
+			for (int i = in.readInt(); i > 0; i--)
+			{
+				cp.mishandledLanguages_.put(in.readUTF(), in.readInt());
+			}
+			cp.pendingLength_ = in.readLong();
+			for (int i = in.readInt(); i > 0; i--)
+			{
+				cp.pendingOffsets_.put(in.readUTF(), in.readLong());
+			}
+			cp.manifestLength_ = in.readLong();
+			if (in.readInt() != END || in.read() != -1)
+			{
+				return null;
+			}
+		}
+		catch (EOFException e)
+		{
+			return null;
+		}
+		finally
+		{
+			in.close();
+		}
+		return cp;
+	}
+
+	/**
+	 * @return the last CUI written before the checkpoint, or null if no checkpoint has been made
+	 */
+	public String getLastCui()
+	{
+		return lastCui_;
+	}
+
+	public int getCUICount()
+	{
+		return cuiCount_;
+	}
+
+	public Collection<String> getUsedSCTRelatedCUIs()
+	{
+		return usedSCTRelatedCUIs_;
+	}
+
+	public Map<String, Integer> getMishandledLanguages()
+	{
+		return mishandledLanguages_;
+	}
+
+	/**
+	 * @return the length of the delta manifest temp file at the checkpoint, or -1 if the run doesn't write a manifest
+	 */
+	public long getManifestLength()
+	{
+		return manifestLength_;
+	}
+
+	/**
+	 * @return the pending SCT concept store for the loop - in the checkpoint folder, reopened at the checkpoint if resuming
+	 */
+	public PendingConceptStore openPendingConcepts() throws IOException
+	{
+		return pendingLength_ < 0 ? new PendingConceptStore(folder_) : new PendingConceptStore(folder_, pendingLength_, pendingOffsets_);
+	}
+
+	/**
+	 * Hand back the refset memberships given to the concepts of the completed segments
+	 */
+	public void readRefsetMembers(RefsetMemberSink sink) throws IOException
+	{
+		for (int i = 1; i <= segments_; i++)
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(membersFile(folder_, i)), 64 * 1024));
+			try
+			{
+				while (in.available() > 0)
+				{
+					sink.add(new UUID(in.readLong(), in.readLong()), new UUID(in.readLong(), in.readLong()));
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Start writing the loop concepts to segments.
+	 * @param output - the jbin output, which the segments are copied into by {@link #end()}
+	 * @return the stream to write the loop concepts to
+	 */
+	public DataOutputStream begin(DataOutputStream output) throws IOException
+	{
+		output_ = output;
+		openSegment();
+		return segment_;
+	}
+
+	/**
+	 * Log a refset membership given to a concept written to the current segment
+	 */
+	public void addRefsetMember(UUID refset, UUID concept) throws IOException
+	{
+		members_.writeLong(refset.getMostSignificantBits());
+		members_.writeLong(refset.getLeastSignificantBits());
+		members_.writeLong(concept.getMostSignificantBits());
+		members_.writeLong(concept.getLeastSignificantBits());
+	}
+
+	/**
+	 * Close the current segment, and record the state of the loop after the CUI.
+	 * @param manifest - the delta manifest writer, if one is in use
+	 * @return the stream to write the loop concepts to from here on
+	 */
+	public DataOutputStream save(String lastCui, int cuiCount, Collection<String> usedSCTRelatedCUIs, Map<String, AtomicInteger> mishandledLanguages,
+			PendingConceptStore pendingConcepts, DeltaManifest.Writer manifest) throws IOException
+	{
+		closeSegment();
+		segments_++;
+
+		File temp = new File(folder_, STATE + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1024 * 1024));
+		out.writeInt(VERSION);
+		out.writeUTF(config_);
+		out.writeUTF(lastCui);
+		out.writeInt(segments_);
+		out.writeInt(cuiCount);
+		out.writeInt(usedSCTRelatedCUIs.size());
+		for (String cui : usedSCTRelatedCUIs)
+		{
+			out.writeUTF(cui);
+		}
+		out.writeInt(mishandledLanguages.size());
+		for (Entry<String, AtomicInteger> lang : mishandledLanguages.entrySet())
+		{
+			out.writeUTF(lang.getKey());
+			out.writeInt(lang.getValue().get());
+		}
+		out.writeLong(pendingConcepts.checkpoint());
+		out.writeInt(pendingConcepts.getOffsets().size());
+		for (Entry<String, Long> offset : pendingConcepts.getOffsets().entrySet())
+		{
+			out.writeUTF(offset.getKey());
+			out.writeLong(offset.getValue());
+		}
+		out.writeLong(manifest == null ? -1 : manifest.checkpoint());
+		out.writeInt(END);
+		out.close();
+
+		//Replaces the previous state in one step - there is always a complete state file, once the first save is done
+		Files.move(temp.toPath(), new File(folder_, STATE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		lastCui_ = lastCui;
+		cuiCount_ = cuiCount;
+
+		openSegment();
+		ConsoleUtil.println("Checkpoint " + segments_ + " saved after " + lastCui);
+		return segment_;
+	}
+
+	/**
+	 * Close the last segment, and copy all of the segments into the jbin output.
+	 * @return the jbin output
+	 */
+	public DataOutputStream end() throws IOException
+	{
+		closeSegment();
+		byte[] buffer = new byte[1024 * 1024];
+		for (int i = 1; i <= segments_ + 1; i++)
+		{
+			InputStream in = new FileInputStream(segmentFile(folder_, i));
+			int read;
+			while ((read = in.read(buffer)) > 0)
+			{
+				output_.write(buffer, 0, read);
+			}
+			in.close();
+		}
+		return output_;
+	}
+
+	/**
+	 * Close any open segment, leaving the checkpoint in place - for when the conversion fails.
+	 */
+	public void close()
+	{
+		try
+		{
+			closeSegment();
+		}
+		catch (IOException e)
+		{
+			ConsoleUtil.printErrorln("Error closing the checkpoint segment: " + e);
+		}
+	}
+
+	/**
+	 * Remove the checkpoint folder, once the conversion has finished.
+	 */
+	public void delete()
+	{
+		delete(folder_);
+	}
+
+	private void openSegment() throws IOException
+	{
+		segment_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segmentFile(folder_, segments_ + 1)), 1024 * 1024));
+		members_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(membersFile(folder_, segments_ + 1)), 64 * 1024));
+	}
+
+	private void closeSegment() throws IOException
+	{
+		if (segment_ != null)
+		{
+			segment_.close();
+			members_.close();
+			segment_ = null;
+			members_ = null;
+		}
+	}
+
+	private static File segmentFile(File folder, int segment)
+	{
+		return new File(folder, "segment-" + segment + ".jbin");
+	}
+
+	private static File membersFile(File folder, int segment)
+	{
+		return new File(folder, "segment-" + segment + ".refsets");
+	}
+
+	private static void delete(File f)
+	{
+		File[] children = f.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		f.delete();
+	}
+}
@@ -0,0 +1,188 @@
+package gov.va.umls.delta;
+
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A content digest for each CUI in a META folder, built from all of the rows that the conversion reads for the CUI (after the 
+ * SAB filters are applied).  Each row is hashed on its own, and the row hashes are summed - so the digest only changes when 
+ * the rows themselves change, not when the files are reordered.
+ */
+public class CUIDigests
+{
+	private HashMap<String, long[]> digests_ = new HashMap<>();
+
+	/**
+	 * @param sabFilters - the SABs to include (null or empty for all)
+	 */
+	public CUIDigests(File metaFolder, RRFLayout layout, List<String> sabFilters, boolean skipMTHConcepts) throws IOException
+	{
+		HashSet<String> sabs = sabSet(sabFilters, false);
+		HashSet<String> sabsNoMTH = sabSet(sabFilters, skipMTHConcepts);
+		
+		//MRCONSO defines the CUIs - the other tables only add to the CUIs that it has
+		scan(metaFolder, layout, "MRCONSO", sabsNoMTH, true, "CUI");
+		scan(metaFolder, layout, "MRSAT", sabsNoMTH, false, "CUI");
+		scan(metaFolder, layout, "MRDEF", sabs, false, "CUI");
+		scan(metaFolder, layout, "MRSTY", null, false, "CUI");
+		scan(metaFolder, layout, "MRREL", sabs, false, "CUI1", "CUI2");
+		scan(metaFolder, layout, "MRHIER", sabs, false, "CUI");
+	}
+
+	/**
+	 * @param sabFilters - the configured SAB filters
+	 * @param removeMTH - true to drop MTH from the filter (when MTH concepts are skipped)
+	 * @return the SABs to accept, or null for no filter
+	 */
+	public static HashSet<String> sabSet(List<String> sabFilters, boolean removeMTH)
+	{
+		if (sabFilters == null || sabFilters.size() == 0)
+		{
+			return null;
+		}
+		HashSet<String> result = new HashSet<>(sabFilters);
+		if (removeMTH)
+		{
+			result.remove("MTH");
+		}
+		return result;
+	}
+
+	/**
+	 * A digest of the metadata tables that the conversion reads for every CUI - MRRANK, MRDOC and MRSAB (after the SAB filters 
+	 * are applied).  These don't belong to any one CUI, so a change to them changes the conversion config, rather than the CUI 
+	 * digests.
+	 */
+	public static String metadataDigest(File metaFolder, RRFLayout layout, List<String> sabFilters) throws IOException
+	{
+		HashSet<String> sabs = sabSet(sabFilters, false);
+		StringBuilder digest = new StringBuilder();
+		digest.append(tableDigest(metaFolder, layout, "MRRANK", sabs, "SAB"));
+		digest.append("|").append(tableDigest(metaFolder, layout, "MRDOC", null, null));
+		digest.append("|").append(tableDigest(metaFolder, layout, "MRSAB", sabs, "RSAB"));
+		return digest.toString();
+	}
+
+	private static String tableDigest(File metaFolder, RRFLayout layout, String table, HashSet<String> sabs, String sabColumn) 
+			throws IOException
+	{
+		File f = RRFLayout.dataFile(metaFolder, table);
+		if (layout.getColumns(table) == null || !f.isFile())
+		{
+			return "-";
+		}
+		
+		int sab = sabs == null ? -1 : layout.indexOf(table, sabColumn);
+		long sum = 0;
+		long rotated = 0;
+		long count = 0;
+		BufferedReader br = RRFLayout.open(f);
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			if (sab >= 0 && !sabs.contains(RRFLayout.field(line, sab)))
+			{
+				continue;
+			}
+			long hash = hash(line);
+			sum += hash;
+			rotated += Long.rotateLeft(hash, 31) * 0x9E3779B97F4A7C15L;
+			count++;
+		}
+		br.close();
+		return Long.toHexString(sum) + "-" + Long.toHexString(rotated) + "-" + count;
+	}
+
+	private void scan(File metaFolder, RRFLayout layout, String table, HashSet<String> sabs, boolean defines, String ... cuiColumns) 
+			throws IOException
+	{
+		File f = RRFLayout.dataFile(metaFolder, table);
+		if (layout.getColumns(table) == null || !f.isFile())
+		{
+			return;
+		}
+		
+		int[] cuiIndexes = layout.indexesOf(table, cuiColumns);
+		int sab = sabs == null ? -1 : layout.indexOf(table, "SAB");
+		BufferedReader br = RRFLayout.open(f);
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			if (sab >= 0 && !sabs.contains(RRFLayout.field(line, sab)))
+			{
+				continue;
+			}
+			long hash = hash(line);
+			for (int i = 0; i < cuiIndexes.length; i++)
+			{
+				String cui = RRFLayout.field(line, cuiIndexes[i]);
+				if (cui == null || (i > 0 && cui.equals(RRFLayout.field(line, cuiIndexes[0]))))
+				{
+					continue;
+				}
+				long[] digest = digests_.get(cui);
+				if (digest == null)
+				{
+					if (!defines)
+					{
+						continue;
+					}
+					digest = new long[3];
+					digests_.put(cui, digest);
+				}
+				digest[0] += hash;
+				digest[1] += Long.rotateLeft(hash, 31) * 0x9E3779B97F4A7C15L;
+				digest[2]++;
+			}
+		}
+		br.close();
+	}
+
+	/**
+	 * 64 bit FNV-1a over the chars of the line
+	 */
+	private static long hash(String line)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < line.length(); i++)
+		{
+			hash ^= line.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the digest for the CUI, or null if the CUI isn't in this release
+	 */
+	public String get(String cui)
+	{
+		long[] digest = digests_.get(cui);
+		if (digest == null)
+		{
+			return null;
+		}
+		return Long.toHexString(digest[0]) + "-" + Long.toHexString(digest[1]) + "-" + digest[2];
+	}
+
+	public boolean contains(String cui)
+	{
+		return digests_.containsKey(cui);
+	}
+
+	public Set<String> getCuis()
+	{
+		return digests_.keySet();
+	}
+
+	public int size()
+	{
+		return digests_.size();
+	}
+}
@@ -0,0 +1,268 @@
+package gov.va.umls.delta;
+
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The record of a conversion that a later release can be converted against - for each CUI, the digest of its source rows, 
+ * the concepts that were written for it (with the refsets they were added to), and the SCT related CUIs it referenced.
+ * 
+ * Tab delimited text - a 'config' line and a 'probe' line (the UUID generated for a fixed CUI), followed by a line per CUI.
+ */
+public class DeltaManifest
+{
+	public static final String FILE_NAME = "umlsDeltaManifest.txt";
+	
+	private String config_;
+	private UUID probe_;
+	private HashMap<String, Entry> entries_ = new HashMap<>();
+
+	private DeltaManifest()
+	{
+	}
+
+	public static DeltaManifest read(File f) throws IOException
+	{
+		DeltaManifest manifest = new DeltaManifest();
+		BufferedReader br = RRFLayout.open(f);
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			String[] fields = line.split("\t", -1);
+			if (fields[0].equals("config"))
+			{
+				manifest.config_ = fields[1];
+			}
+			else if (fields[0].equals("probe"))
+			{
+				manifest.probe_ = UUID.fromString(fields[1]);
+			}
+			else
+			{
+				manifest.entries_.put(fields[0], Entry.parse(fields));
+			}
+		}
+		br.close();
+		return manifest;
+	}
+
+	public String getConfig()
+	{
+		return config_;
+	}
+
+	public UUID getProbe()
+	{
+		return probe_;
+	}
+
+	public Map<String, Entry> getEntries()
+	{
+		return entries_;
+	}
+
+	/**
+	 * What was written for one CUI
+	 */
+	public static class Entry
+	{
+		private String digest_;
+		private boolean pendingSCT_ = false;
+		private LinkedHashMap<UUID, List<UUID>> concepts_ = new LinkedHashMap<>();
+		private ArrayList<String> usedSCTRelatedCUIs_ = new ArrayList<>();
+
+		public Entry(String digest)
+		{
+			digest_ = digest;
+		}
+
+		/**
+		 * @return a copy of this entry, with a new digest
+		 */
+		public Entry withDigest(String digest)
+		{
+			Entry e = new Entry(digest);
+			e.pendingSCT_ = pendingSCT_;
+			e.concepts_.putAll(concepts_);
+			e.usedSCTRelatedCUIs_.addAll(usedSCTRelatedCUIs_);
+			return e;
+		}
+
+		public String getDigest()
+		{
+			return digest_;
+		}
+
+		/**
+		 * Mark the CUI as having (possibly) had its concept written as part of the SCT cleanup at the end - these are never copied.
+		 */
+		public void setPendingSCT()
+		{
+			pendingSCT_ = true;
+		}
+
+		public boolean isPendingSCT()
+		{
+			return pendingSCT_;
+		}
+
+		public void addConcept(UUID concept, List<UUID> refsets)
+		{
+			concepts_.put(concept, refsets);
+		}
+
+		/**
+		 * @return the written concepts, and the refsets each was added to
+		 */
+		public Map<UUID, List<UUID>> getConcepts()
+		{
+			return concepts_;
+		}
+
+		public void addUsedSCTRelatedCUI(String cui)
+		{
+			usedSCTRelatedCUIs_.add(cui);
+		}
+
+		public List<String> getUsedSCTRelatedCUIs()
+		{
+			return usedSCTRelatedCUIs_;
+		}
+
+		//CUI digest flags concept=refset,refset;concept=refset usedCUI,usedCUI
+		private String toLine(String cui)
+		{
+			StringBuilder sb = new StringBuilder();
+			sb.append(cui).append('\t').append(digest_).append('\t').append(pendingSCT_ ? "P" : "-").append('\t');
+			boolean first = true;
+			for (Map.Entry<UUID, List<UUID>> concept : concepts_.entrySet())
+			{
+				if (!first)
+				{
+					sb.append(';');
+				}
+				first = false;
+				sb.append(concept.getKey()).append('=');
+				for (int i = 0; i < concept.getValue().size(); i++)
+				{
+					sb.append(i > 0 ? "," : "").append(concept.getValue().get(i));
+				}
+			}
+			sb.append('\t');
+			for (int i = 0; i < usedSCTRelatedCUIs_.size(); i++)
+			{
+				sb.append(i > 0 ? "," : "").append(usedSCTRelatedCUIs_.get(i));
+			}
+			return sb.toString();
+		}
+
+		private static Entry parse(String[] fields)
+		{
+			Entry e = new Entry(fields[1]);
+			e.pendingSCT_ = fields[2].equals("P");
+			if (fields[3].length() > 0)
+			{
+				for (String concept : fields[3].split(";"))
+				{
+					int split = concept.indexOf('=');
+					ArrayList<UUID> refsets = new ArrayList<>();
+					if (split < concept.length() - 1)
+					{
+						for (String refset : concept.substring(split + 1).split(","))
+						{
+							refsets.add(UUID.fromString(refset));
+						}
+					}
+					e.concepts_.put(UUID.fromString(concept.substring(0, split)), refsets);
+				}
+			}
+			if (fields[4].length() > 0)
+			{
+				for (String cui : fields[4].split(","))
+				{
+					e.usedSCTRelatedCUIs_.add(cui);
+				}
+			}
+			return e;
+		}
+	}
+
+	/**
+	 * Writes a manifest.  The entries go to a temp file, which only replaces the manifest on {@link #close()} - so a failed 
+	 * conversion never leaves a partial manifest behind.
+	 */
+	public static class Writer
+	{
+		private File file_;
+		private File tempFile_;
+		private BufferedWriter out_;
+
+		public Writer(File f, String config, UUID probe) throws IOException
+		{
+			file_ = f;
+			tempFile_ = new File(f.getParentFile(), f.getName() + ".tmp");
+			out_ = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile_), "UTF-8"), 1024 * 1024);
+			out_.write("config\t" + config + "\n");
+			out_.write("probe\t" + probe + "\n");
+		}
+
+		/**
+		 * Reopen the temp file of a writer, as it was at a {@link #checkpoint()} - anything written after that is discarded.
+		 * @param length - the length returned by the checkpoint
+		 */
+		public Writer(File f, long length) throws IOException
+		{
+			file_ = f;
+			tempFile_ = new File(f.getParentFile(), f.getName() + ".tmp");
+			if (tempFile_.length() < length)
+			{
+				throw new IOException("The delta manifest " + tempFile_.getAbsolutePath() + " is shorter than at the checkpoint");
+			}
+			RandomAccessFile truncate = new RandomAccessFile(tempFile_, "rw");
+			truncate.setLength(length);
+			truncate.close();
+			out_ = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile_, true), "UTF-8"), 1024 * 1024);
+		}
+
+		/**
+		 * Flush everything written so far to the temp file.
+		 * @return the length of the temp file - to reopen it at this point
+		 */
+		public long checkpoint() throws IOException
+		{
+			out_.flush();
+			return tempFile_.length();
+		}
+
+		public void write(String cui, Entry entry) throws IOException
+		{
+			out_.write(entry.toLine(cui));
+			out_.write('\n');
+		}
+
+		public void close() throws IOException
+		{
+			out_.close();
+			if (file_.exists() && !file_.delete())
+			{
+				throw new IOException("Couldn't replace " + file_.getAbsolutePath());
+			}
+			if (!tempFile_.renameTo(file_))
+			{
+				throw new IOException("Couldn't rename " + tempFile_.getAbsolutePath() + " to " + file_.getName());
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package gov.va.umls.delta;
+
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Works out which CUIs of a new release need to be converted, and which can have their concepts copied from the conversion 
+ * of the previous release.
+ * 
+ * A CUI is converted if it is new, if the digest of its rows changed, if the release change files report it as changed, 
+ * or if it was a pending SCT CUI (those are decided at the end of the run).  So that relationships never point at stale 
+ * target concepts, any CUI with a relationship to one of those CUIs (or to a retired CUI) is converted too.
+ */
+public class DeltaPlan
+{
+	private HashSet<String> convert_ = new HashSet<>();
+	private HashMap<String, DeltaManifest.Entry> unchanged_ = new HashMap<>();
+	private int added_, modified_, retired_, neighbours_;
+
+	/**
+	 * @param knownRefsets - the refsets that copied concepts can be added to.  CUIs with memberships in any other refset are converted.
+	 * @param sabFilters - the SAB filters of the conversion, used when looking for related CUIs
+	 */
+	public DeltaPlan(CUIDigests current, DeltaManifest previous, ReleaseChanges changes, Set<UUID> knownRefsets, File metaFolder, 
+			RRFLayout layout, HashSet<String> sabFilters) throws IOException
+	{
+		HashSet<String> changed = new HashSet<>();
+		
+		for (String cui : current.getCuis())
+		{
+			DeltaManifest.Entry entry = previous.getEntries().get(cui);
+			if (entry == null)
+			{
+				added_++;
+				changed.add(cui);
+			}
+			else if (!entry.getDigest().equals(current.get(cui)) || entry.isPendingSCT() || changes.getChangedCuis().contains(cui) 
+					|| !knownRefsets.containsAll(allRefsets(entry)))
+			{
+				modified_++;
+				changed.add(cui);
+			}
+		}
+		
+		for (String cui : previous.getEntries().keySet())
+		{
+			if (!current.contains(cui))
+			{
+				retired_++;
+				changed.add(cui);
+			}
+		}
+		for (String cui : changes.getRetiredCuis())
+		{
+			if (previous.getEntries().containsKey(cui))
+			{
+				changed.add(cui);
+			}
+		}
+		
+		convert_.addAll(changed);
+		addRelatedCUIs(changed, current, metaFolder, layout, sabFilters);
+		
+		for (String cui : current.getCuis())
+		{
+			if (!convert_.contains(cui))
+			{
+				unchanged_.put(cui, previous.getEntries().get(cui).withDigest(current.get(cui)));
+			}
+		}
+	}
+
+	private static HashSet<UUID> allRefsets(DeltaManifest.Entry entry)
+	{
+		HashSet<UUID> result = new HashSet<>();
+		for (Map.Entry<UUID, List<UUID>> concept : entry.getConcepts().entrySet())
+		{
+			result.addAll(concept.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * One pass over MRREL, to pick up the CUIs on the other end of a relationship from a changed CUI.
+	 */
+	private void addRelatedCUIs(HashSet<String> changed, CUIDigests current, File metaFolder, RRFLayout layout, HashSet<String> sabFilters) 
+			throws IOException
+	{
+		File f = RRFLayout.dataFile(metaFolder, "MRREL");
+		if (layout.getColumns("MRREL") == null || !f.isFile())
+		{
+			return;
+		}
+		int cui1 = layout.indexOf("MRREL", "CUI1");
+		int cui2 = layout.indexOf("MRREL", "CUI2");
+		int sab = sabFilters == null ? -1 : layout.indexOf("MRREL", "SAB");
+		
+		BufferedReader br = RRFLayout.open(f);
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			if (sab >= 0 && !sabFilters.contains(RRFLayout.field(line, sab)))
+			{
+				continue;
+			}
+			String a = RRFLayout.field(line, cui1);
+			String b = RRFLayout.field(line, cui2);
+			if (a == null || b == null)
+			{
+				continue;
+			}
+			if (changed.contains(b) && current.contains(a) && convert_.add(a))
+			{
+				neighbours_++;
+			}
+			if (changed.contains(a) && current.contains(b) && convert_.add(b))
+			{
+				neighbours_++;
+			}
+		}
+		br.close();
+	}
+
+	/**
+	 * @return true if the CUI needs to be converted - false if its concepts should be copied from the previous release
+	 */
+	public boolean isConverted(String cui)
+	{
+		return !unchanged_.containsKey(cui);
+	}
+
+	/**
+	 * @return the CUIs to copy from the previous release, with the manifest entry to carry forward for each
+	 */
+	public Map<String, DeltaManifest.Entry> getUnchanged()
+	{
+		return unchanged_;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Delta: " + added_ + " new CUIs, " + modified_ + " modified CUIs, " + retired_ + " retired CUIs, " + neighbours_ 
+				+ " related CUIs to reconvert, " + unchanged_.size() + " unchanged CUIs";
+	}
+}
@@ -0,0 +1,140 @@
+package gov.va.umls.delta;
+
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * The CUI level changes that the release itself reports - from CHANGE/DELETEDCUI, CHANGE/MERGEDCUI, and the rows of MRCUI 
+ * and MRAUI for the newest version that they cover.
+ */
+public class ReleaseChanges
+{
+	private HashSet<String> retiredCuis_ = new HashSet<>();
+	private HashSet<String> changedCuis_ = new HashSet<>();
+	private String version_;
+
+	public ReleaseChanges(File metaFolder, RRFLayout layout) throws IOException
+	{
+		//PCUI|PLAT|PSTR|
+		for (String[] row : read(metaFolder, layout, "CHANGE/DELETEDCUI", "PCUI"))
+		{
+			retiredCuis_.add(row[0]);
+		}
+		
+		//PCUI|CUI|
+		for (String[] row : read(metaFolder, layout, "CHANGE/MERGEDCUI", "PCUI", "CUI"))
+		{
+			retiredCuis_.add(row[0]);
+			addIfPresent(changedCuis_, row[1]);
+		}
+		
+		//CUI1|VER|REL|RELA|MAPREASON|CUI2|MAPIN| - CUI1 is always a retired CUI, CUI2 (if any) is where its content went
+		for (String[] row : newestVersion(read(metaFolder, layout, "MRCUI", "VER", "CUI1", "CUI2")))
+		{
+			retiredCuis_.add(row[1]);
+			addIfPresent(changedCuis_, row[2]);
+		}
+		
+		//AUI1|CUI1|VER|REL|RELA|MAPREASON|AUI2|CUI2|MAPIN| - an atom that moved from CUI1 to CUI2
+		for (String[] row : newestVersion(read(metaFolder, layout, "MRAUI", "VER", "CUI1", "CUI2")))
+		{
+			addIfPresent(changedCuis_, row[1]);
+			addIfPresent(changedCuis_, row[2]);
+		}
+	}
+
+	private static void addIfPresent(HashSet<String> set, String cui)
+	{
+		if (cui != null)
+		{
+			set.add(cui);
+		}
+	}
+
+	/**
+	 * @return the requested columns of each row of the table, or nothing, if the table isn't part of this subset
+	 */
+	private static ArrayList<String[]> read(File metaFolder, RRFLayout layout, String table, String ... columns) throws IOException
+	{
+		ArrayList<String[]> result = new ArrayList<>();
+		File f = RRFLayout.dataFile(metaFolder, table);
+		if (layout.getColumns(table) == null || !f.isFile())
+		{
+			return result;
+		}
+		int[] indexes = layout.indexesOf(table, columns);
+		BufferedReader br = RRFLayout.open(f);
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			String[] fields = RRFLayout.split(line);
+			String[] row = new String[indexes.length];
+			for (int i = 0; i < indexes.length; i++)
+			{
+				row[i] = indexes[i] < fields.length ? fields[indexes[i]] : null;
+			}
+			if (row[0] != null)
+			{
+				result.add(row);
+			}
+		}
+		br.close();
+		return result;
+	}
+
+	/**
+	 * Keep only the rows with the highest version (the first column).  MRCUI and MRAUI carry the whole history.
+	 */
+	private ArrayList<String[]> newestVersion(ArrayList<String[]> rows)
+	{
+		String newest = null;
+		for (String[] row : rows)
+		{
+			if (newest == null || row[0].compareTo(newest) > 0)
+			{
+				newest = row[0];
+			}
+		}
+		ArrayList<String[]> result = new ArrayList<>();
+		for (String[] row : rows)
+		{
+			if (row[0].equals(newest))
+			{
+				result.add(row);
+			}
+		}
+		if (newest != null && (version_ == null || newest.compareTo(version_) > 0))
+		{
+			version_ = newest;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the CUIs that the release reports as deleted or merged away
+	 */
+	public HashSet<String> getRetiredCuis()
+	{
+		return retiredCuis_;
+	}
+
+	/**
+	 * @return the CUIs that gained content from retired CUIs, or had atoms moved in or out
+	 */
+	public HashSet<String> getChangedCuis()
+	{
+		return changedCuis_;
+	}
+
+	/**
+	 * @return the newest version found in MRCUI / MRAUI, or null if neither was available
+	 */
+	public String getVersion()
+	{
+		return version_;
+	}
+}
@@ -0,0 +1,37 @@
+package gov.va.umls.lookup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The per CUI / per atom data that processCUIRows needs beyond the MRCONSO rows themselves.
+ * 
+ * Every method hands back a ResultSet with the same columns (and row order) as the original per-item queries, 
+ * so the results can be passed straight into processSAT, processSemanticTypes and REL.read.
+ */
+public interface CUILookup
+{
+	/**
+	 * Called before a run of consecutive CUIs (in MRCONSO 'order by CUI' order) is processed.  
+	 * Implementations that don't prefetch may ignore this.
+	 */
+	public void prefetch(String firstCui, String lastCui) throws SQLException;
+
+	public ResultSet atomAttributes(String cui, String aui) throws SQLException;
+
+	public ResultSet conceptAttributes(String cui) throws SQLException;
+
+	public ResultSet semanticTypes(String cui) throws SQLException;
+
+	public ResultSet definitions(String cui, String aui) throws SQLException;
+
+	public ResultSet atomRelationshipsForward(String cui, String aui) throws SQLException;
+
+	public ResultSet atomRelationshipsBackward(String cui, String aui) throws SQLException;
+
+	public ResultSet cuiRelationshipsForward(String cui) throws SQLException;
+
+	public ResultSet cuiRelationshipsBackward(String cui) throws SQLException;
+
+	public void close() throws SQLException;
+}
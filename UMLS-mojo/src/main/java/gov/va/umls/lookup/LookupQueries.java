@@ -0,0 +1,158 @@
+package gov.va.umls.lookup;
+
+/**
+ * Builds the SQL for the {@link CUILookup} queries - either the single item form (CUI = ?) or the range 
+ * form (CUI >= ? and CUI <= ?) used to prefetch a window of CUIs.
+ * 
+ * The range forms return the same rows as the union of the single item forms, with an explicit ordering that 
+ * matches the index order the single item queries return their rows in.
+ */
+public class LookupQueries
+{
+	private static final String REL_COLUMNS = "r.CUI1, r.AUI1, r.STYPE1, r.REL, r.CUI2, r.AUI2, r.STYPE2, "
+			+ "r.RELA, r.RUI, r.SRUI, r.SAB, r.SL, r.DIR, r.RG, r.SUPPRESS, r.CVF";
+
+	private String sabQueryString_;
+	private String sabQueryStringMTHModified_;
+	private String relSabQueryString_;
+	private String targetSabQueryString_;
+	private boolean materializedRelationships_ = false;
+
+	/**
+	 * @param sabQueryString - the SAB restriction built by the base mojo (may be empty)
+	 * @param sabQueryStringMTHModified - the same restriction, less MTH when MTH concepts are being skipped
+	 */
+	public LookupQueries(String sabQueryString, String sabQueryStringMTHModified)
+	{
+		sabQueryString_ = sabQueryString;
+		sabQueryStringMTHModified_ = sabQueryStringMTHModified;
+		relSabQueryString_ = sabQueryString.replaceAll("SAB", "r.SAB");  //Allow the relsab to come from MTH
+		targetSabQueryString_ = sabQueryStringMTHModified.replaceAll("SAB", "MRCONSO.SAB");  //don't allow the target to come from MTH
+	}
+
+	private boolean filtered()
+	{
+		return sabQueryString_.length() > 0;
+	}
+
+	/**
+	 * Read the relationships from the tables built by {@link #materializeRelationships(boolean, boolean)}, rather than joining 
+	 * MRREL to MRCONSO on every query.  Only possible when a SAB filter is in use.
+	 */
+	public void useMaterializedRelationships()
+	{
+		if (!filtered())
+		{
+			throw new IllegalStateException("The relationship tables are only materialized for a SAB filter");
+		}
+		materializedRelationships_ = true;
+	}
+
+	/**
+	 * @return the name of the materialized relationship table for the direction and level.  The name includes whether MTH 
+	 * targets are allowed, as a staging database may be used with and without skipMTHConcepts.
+	 */
+	public String relationshipTable(boolean atom, boolean forward)
+	{
+		return "REL_" + (atom ? "AUI" : "CUI") + (forward ? "_FWD" : "_BACK") + (sabQueryString_.equals(sabQueryStringMTHModified_) ? "" : "_NOMTH");
+	}
+
+	/**
+	 * @return the statements that build the materialized relationship table for the direction and level - the filtered join 
+	 * of every rel, in the order the range queries read them (so they are stored clustered by the CUI and AUI), plus its index.
+	 * The statements are run in order.
+	 */
+	public String[] materializeRelationships(boolean atom, boolean forward)
+	{
+		String here = forward ? "2" : "1";
+		String table = relationshipTable(atom, forward);
+		boolean wasMaterialized = materializedRelationships_;
+		materializedRelationships_ = false;
+		String select = atom ? atomRelationships(forward, true) : cuiRelationships(forward, true);
+		materializedRelationships_ = wasMaterialized;
+		//drop the range restriction - keep the rest of the where clause and the ordering
+		select = select.replace("CUI" + here + " >= ? and CUI" + here + " <= ? and ", "").replace("CUI" + here + " >= ? and CUI" + here + " <= ?", "1=1");
+		//Built under a temp name, so the table only appears once it is complete (with its index)
+		return new String[] {"DROP TABLE IF EXISTS " + table + "_TMP",
+				"CREATE TABLE " + table + "_TMP AS " + select, 
+				"CREATE INDEX " + table + "_index ON " + table + "_TMP (CUI" + here + ", AUI" + here + ")",
+				"ALTER TABLE " + table + "_TMP RENAME TO " + table};
+	}
+
+	/**
+	 * The range form reads the atom level attributes of the window by their METAUI prefix - the UMLS documents the METAUI of 
+	 * MRSAT as an AUI (leading 'A'), a RUI (leading 'R') or empty for a concept attribute, and every AUI starts with 'A'.  
+	 * The rows are only served up by their exact CUI and METAUI, so the prefix just keeps the relationship attributes out of 
+	 * the window - an AUI without it would get no attributes from the range form.
+	 */
+	public String atomAttributes(boolean range)
+	{
+		return "select * from MRSAT where " + (range ? "CUI >= ? and CUI <= ? and METAUI like 'A%' " : "CUI = ? and METAUI = ? ")
+				+ (filtered() ? "and " + sabQueryStringMTHModified_ : "")
+				+ (range ? " order by CUI, METAUI, _ROWID_" : "");
+	}
+
+	public String conceptAttributes(boolean range)
+	{
+		return "select * from MRSAT where " + (range ? "CUI >= ? and CUI <= ?" : "CUI = ?") + " and METAUI is null "
+				+ (filtered() ? "and " + sabQueryStringMTHModified_ : "")
+				+ (range ? " order by CUI, _ROWID_" : "");
+	}
+
+	public String semanticTypes(boolean range)
+	{
+		//The range form needs the CUI to bucket on - keep it after the columns processSemanticTypes expects
+		return range ? "select TUI, ATUI, CVF, CUI from MRSTY where CUI >= ? and CUI <= ? order by CUI, _ROWID_" 
+				: "select TUI, ATUI, CVF from MRSTY where CUI = ?";
+	}
+
+	public String definitions(boolean range)
+	{
+		return range ? "select * from MRDEF where CUI >= ? and CUI <= ? order by CUI, AUI, _ROWID_" 
+				: "select * from MRDEF where CUI = ? and AUI = ?";
+	}
+
+	/**
+	 * UMLS and RXNORM do different things with rels - UMLS never has null CUI's, while RxNorm always has null CUI's (when AUI is specified)
+	 * Also need to join back to MRCONSO for the cases where we are applying a SAB filter, to make sure both the source and the target 
+	 * are things that will be loaded.
+	 * @param forward - true to look up by CUI2 (the rels that point at the item), false to look up by CUI1
+	 */
+	public String cuiRelationships(boolean forward, boolean range)
+	{
+		String here = forward ? "2" : "1";
+		String there = forward ? "1" : "2";
+		if (materializedRelationships_)
+		{
+			return "SELECT " + REL_COLUMNS.replace("r.", "") + " from " + relationshipTable(false, forward) 
+					+ " WHERE " + (range ? "CUI" + here + " >= ? and CUI" + here + " <= ? order by CUI" + here + ", _ROWID_" : "CUI" + here + " = ?");
+		}
+		return "SELECT " + REL_COLUMNS + " from MRREL as r"
+				+ (filtered() ? ", MRCONSO" : "")
+				+ " WHERE " + (range ? "CUI" + here + " >= ? and CUI" + here + " <= ?" : "CUI" + here + " = ?") + " and AUI" + here + " is null "
+				+ (filtered() ? "and " + relSabQueryString_ + "and r.CUI" + there + " = MRCONSO.CUI and " + targetSabQueryString_ : "")
+				+ (range ? " order by r.CUI" + here + ", r._ROWID_" : "");
+	}
+
+	/**
+	 * @see #cuiRelationships(boolean, boolean)
+	 */
+	public String atomRelationships(boolean forward, boolean range)
+	{
+		String here = forward ? "2" : "1";
+		String there = forward ? "1" : "2";
+		if (materializedRelationships_)
+		{
+			return "SELECT " + REL_COLUMNS.replace("r.", "") + ", TARGETSAB as targetSAB, TARGETCODE as targetCODE from " + relationshipTable(true, forward) 
+					+ " WHERE " + (range ? "CUI" + here + " >= ? and CUI" + here + " <= ? order by CUI" + here + ", AUI" + here + ", _ROWID_" 
+							: "CUI" + here + " = ? and AUI" + here + " = ?");
+		}
+		return "SELECT " + REL_COLUMNS + ", MRCONSO.SAB as targetSAB, MRCONSO.CODE as targetCODE"
+				+ " from MRREL as r, MRCONSO"
+				+ " WHERE " + (range ? "CUI" + here + " >= ? and CUI" + here + " <= ? and AUI" + here + " is not null " 
+						: "CUI" + here + " = ? and AUI" + here + " = ? ")
+				+ (filtered() ? "and " + relSabQueryString_ + "and r.CUI" + there + " = MRCONSO.CUI and r.AUI" + there + " = MRCONSO.AUI and " 
+						+ targetSabQueryString_ : "")
+				+ (range ? " order by r.CUI" + here + ", r.AUI" + here + ", r._ROWID_" : "");
+	}
+}
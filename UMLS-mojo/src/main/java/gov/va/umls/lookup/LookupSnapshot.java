@@ -0,0 +1,173 @@
+package gov.va.umls.lookup;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.h2.tools.SimpleResultSet;
+
+/**
+ * A copy, in memory, of everything read from another {@link CUILookup} for a window of CUIs - so the database work can be done
+ * on a worker thread, and the concepts built from the copy later, on the main thread.
+ *
+ * Only the CUIs and atoms that were fetched can be looked up - asking for anything else is a bug, and fails.
+ */
+public class LookupSnapshot implements CUILookup
+{
+	private HashMap<String, Rows> atomAttributes_ = new HashMap<>();
+	private HashMap<String, Rows> definitions_ = new HashMap<>();
+	private HashMap<String, Rows> atomRelationshipsForward_ = new HashMap<>();
+	private HashMap<String, Rows> atomRelationshipsBackward_ = new HashMap<>();
+	private HashMap<String, Rows> conceptAttributes_ = new HashMap<>();
+	private HashMap<String, Rows> semanticTypes_ = new HashMap<>();
+	private HashMap<String, Rows> cuiRelationshipsForward_ = new HashMap<>();
+	private HashMap<String, Rows> cuiRelationshipsBackward_ = new HashMap<>();
+
+	/**
+	 * Copy the attributes, definitions and relationships of an atom
+	 */
+	public void fetchAtom(CUILookup from, String cui, String aui) throws SQLException
+	{
+		String key = cui + "|" + aui;
+		atomAttributes_.put(key, new Rows(from.atomAttributes(cui, aui)));
+		definitions_.put(key, new Rows(from.definitions(cui, aui)));
+		atomRelationshipsForward_.put(key, new Rows(from.atomRelationshipsForward(cui, aui)));
+		atomRelationshipsBackward_.put(key, new Rows(from.atomRelationshipsBackward(cui, aui)));
+	}
+
+	/**
+	 * Copy the attributes, semantic types and relationships of a CUI
+	 */
+	public void fetchCUI(CUILookup from, String cui) throws SQLException
+	{
+		conceptAttributes_.put(cui, new Rows(from.conceptAttributes(cui)));
+		semanticTypes_.put(cui, new Rows(from.semanticTypes(cui)));
+		cuiRelationshipsForward_.put(cui, new Rows(from.cuiRelationshipsForward(cui)));
+		cuiRelationshipsBackward_.put(cui, new Rows(from.cuiRelationshipsBackward(cui)));
+	}
+
+	@Override
+	public void prefetch(String firstCui, String lastCui)
+	{
+		//already fetched
+	}
+
+	@Override
+	public ResultSet atomAttributes(String cui, String aui)
+	{
+		return get(atomAttributes_, cui + "|" + aui);
+	}
+
+	@Override
+	public ResultSet conceptAttributes(String cui)
+	{
+		return get(conceptAttributes_, cui);
+	}
+
+	@Override
+	public ResultSet semanticTypes(String cui)
+	{
+		return get(semanticTypes_, cui);
+	}
+
+	@Override
+	public ResultSet definitions(String cui, String aui)
+	{
+		return get(definitions_, cui + "|" + aui);
+	}
+
+	@Override
+	public ResultSet atomRelationshipsForward(String cui, String aui)
+	{
+		return get(atomRelationshipsForward_, cui + "|" + aui);
+	}
+
+	@Override
+	public ResultSet atomRelationshipsBackward(String cui, String aui)
+	{
+		return get(atomRelationshipsBackward_, cui + "|" + aui);
+	}
+
+	@Override
+	public ResultSet cuiRelationshipsForward(String cui)
+	{
+		return get(cuiRelationshipsForward_, cui);
+	}
+
+	@Override
+	public ResultSet cuiRelationshipsBackward(String cui)
+	{
+		return get(cuiRelationshipsBackward_, cui);
+	}
+
+	@Override
+	public void close()
+	{
+		//nothing held open
+	}
+
+	private static ResultSet get(HashMap<String, Rows> from, String key)
+	{
+		Rows rows = from.get(key);
+		if (rows == null)
+		{
+			throw new IllegalStateException(key + " wasn't fetched into the snapshot");
+		}
+		return rows.toResultSet();
+	}
+
+	/**
+	 * The columns and rows of one result set
+	 */
+	private static class Rows
+	{
+		private String[] labels_;
+		private int[] types_, precisions_, scales_;
+		private ArrayList<Object[]> rows_ = new ArrayList<>();
+
+		/**
+		 * Closes the result set
+		 */
+		private Rows(ResultSet rs) throws SQLException
+		{
+			ResultSetMetaData md = rs.getMetaData();
+			int count = md.getColumnCount();
+			labels_ = new String[count];
+			types_ = new int[count];
+			precisions_ = new int[count];
+			scales_ = new int[count];
+			for (int i = 0; i < count; i++)
+			{
+				labels_[i] = md.getColumnLabel(i + 1);
+				types_[i] = md.getColumnType(i + 1);
+				precisions_[i] = md.getPrecision(i + 1);
+				scales_[i] = md.getScale(i + 1);
+			}
+			while (rs.next())
+			{
+				Object[] row = new Object[count];
+				for (int i = 0; i < count; i++)
+				{
+					row[i] = rs.getObject(i + 1);
+				}
+				rows_.add(row);
+			}
+			rs.close();
+		}
+
+		private ResultSet toResultSet()
+		{
+			SimpleResultSet result = new SimpleResultSet();
+			for (int i = 0; i < labels_.length; i++)
+			{
+				result.addColumn(labels_[i], types_[i], precisions_[i], scales_[i]);
+			}
+			for (Object[] row : rows_)
+			{
+				result.addRow(row);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package gov.va.umls.lookup;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.h2.tools.SimpleResultSet;
+
+/**
+ * The rows returned by one range query, grouped by the values of one or more key columns.
+ * Each group can be handed back out as an in-memory ResultSet, with the rows in the order the query returned them.
+ */
+public class RowBuckets
+{
+	private String[] keyColumnNames_;
+	private int[] keyColumns_;
+	private String[] labels_;
+	private int[] types_, precisions_, scales_;
+	private HashMap<String, ArrayList<Object[]>> buckets_ = new HashMap<>();
+
+	public RowBuckets(String ... keyColumnNames)
+	{
+		keyColumnNames_ = keyColumnNames;
+	}
+
+	/**
+	 * Replace the current contents with the rows from the passed in result set.  Closes the result set.
+	 */
+	public void load(ResultSet rs) throws SQLException
+	{
+		buckets_.clear();
+		if (labels_ == null)
+		{
+			readMetaData(rs.getMetaData());
+		}
+		
+		while (rs.next())
+		{
+			Object[] row = new Object[labels_.length];
+			for (int i = 0; i < row.length; i++)
+			{
+				row[i] = rs.getObject(i + 1);
+			}
+			add(row);
+		}
+		rs.close();
+	}
+	
+	/**
+	 * Define the columns directly, for rows that don't come from a database query.
+	 * @param labels - the column labels
+	 * @param sqlTypes - the {@link java.sql.Types} of each column
+	 */
+	public void setColumns(String[] labels, int[] sqlTypes)
+	{
+		labels_ = labels;
+		types_ = sqlTypes;
+		precisions_ = new int[labels.length];
+		scales_ = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			precisions_[i] = sqlTypes[i] == Types.INTEGER ? 10 : Integer.MAX_VALUE;
+		}
+		resolveKeyColumns();
+	}
+	
+	/**
+	 * Add a single row (in column order) to the appropriate bucket.
+	 */
+	public void add(Object[] row)
+	{
+		String key = key(row);
+		ArrayList<Object[]> bucket = buckets_.get(key);
+		if (bucket == null)
+		{
+			bucket = new ArrayList<>();
+			buckets_.put(key, bucket);
+		}
+		bucket.add(row);
+	}
+
+	/**
+	 * @return the rows stored under the given key column values (possibly none)
+	 */
+	public ResultSet get(String ... keyValues)
+	{
+		SimpleResultSet result = new SimpleResultSet();
+		for (int i = 0; i < labels_.length; i++)
+		{
+			result.addColumn(labels_[i], types_[i], precisions_[i], scales_[i]);
+		}
+		
+		ArrayList<Object[]> bucket = buckets_.get(keyValues.length == 1 ? keyValues[0] : join(keyValues));
+		if (bucket != null)
+		{
+			for (Object[] row : bucket)
+			{
+				result.addRow(row);
+			}
+		}
+		return result;
+	}
+
+	public int size()
+	{
+		return buckets_.size();
+	}
+
+	public void clear()
+	{
+		buckets_.clear();
+	}
+
+	private void readMetaData(ResultSetMetaData md) throws SQLException
+	{
+		int count = md.getColumnCount();
+		labels_ = new String[count];
+		types_ = new int[count];
+		precisions_ = new int[count];
+		scales_ = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			labels_[i] = md.getColumnLabel(i + 1);
+			types_[i] = md.getColumnType(i + 1);
+			precisions_[i] = md.getPrecision(i + 1);
+			scales_[i] = md.getScale(i + 1);
+		}
+		resolveKeyColumns();
+	}
+	
+	private void resolveKeyColumns()
+	{
+		keyColumns_ = new int[keyColumnNames_.length];
+		for (int i = 0; i < keyColumnNames_.length; i++)
+		{
+			keyColumns_[i] = -1;
+			for (int j = 0; j < labels_.length; j++)
+			{
+				if (labels_[j].equalsIgnoreCase(keyColumnNames_[i]))
+				{
+					keyColumns_[i] = j;
+					break;
+				}
+			}
+			if (keyColumns_[i] < 0)
+			{
+				throw new RuntimeException("Key column " + keyColumnNames_[i] + " is not in the result columns");
+			}
+		}
+	}
+
+	private String key(Object[] row)
+	{
+		if (keyColumns_.length == 1)
+		{
+			return (String)row[keyColumns_[0]];
+		}
+		String[] values = new String[keyColumns_.length];
+		for (int i = 0; i < keyColumns_.length; i++)
+		{
+			values[i] = (String)row[keyColumns_[i]];
+		}
+		return join(values);
+	}
+
+	private static String join(String[] values)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++)
+		{
+			if (i > 0)
+			{
+				sb.append('|');
+			}
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+}
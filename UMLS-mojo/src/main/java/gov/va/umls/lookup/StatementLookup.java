@@ -0,0 +1,129 @@
+package gov.va.umls.lookup;
+
+import gov.va.umls.report.StatementProfiler;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The original lookup strategy - one indexed point query per CUI or atom.
+ */
+public class StatementLookup implements CUILookup
+{
+	private PreparedStatement satAtomStatement, satConceptStatement, semanticTypeStatement, 
+		cuiRelStatementForward, auiRelStatementForward, cuiRelStatementBackward, auiRelStatementBackward,
+		definitionStatement;
+
+	/**
+	 * @param profiler - optional - profiles the statements when set
+	 */
+	public StatementLookup(Connection connection, LookupQueries queries, StatementProfiler profiler) throws SQLException
+	{
+		satAtomStatement = prepare(connection, profiler, "atomAttributes", queries.atomAttributes(false));
+		satConceptStatement = prepare(connection, profiler, "conceptAttributes", queries.conceptAttributes(false));
+		semanticTypeStatement = prepare(connection, profiler, "semanticTypes", queries.semanticTypes(false));
+		definitionStatement = prepare(connection, profiler, "definitions", queries.definitions(false));
+		cuiRelStatementForward = prepare(connection, profiler, "cuiRelForward", queries.cuiRelationships(true, false));
+		cuiRelStatementBackward = prepare(connection, profiler, "cuiRelBackward", queries.cuiRelationships(false, false));
+		auiRelStatementForward = prepare(connection, profiler, "auiRelForward", queries.atomRelationships(true, false));
+		auiRelStatementBackward = prepare(connection, profiler, "auiRelBackward", queries.atomRelationships(false, false));
+	}
+
+	/**
+	 * Capture the plans of the statements, for the given CUI and one of its atoms
+	 */
+	public static void capturePlans(StatementProfiler profiler, Connection connection, LookupQueries queries, String cui, String aui)
+	{
+		profiler.capturePlan(connection, "atomAttributes", queries.atomAttributes(false), cui, aui);
+		profiler.capturePlan(connection, "conceptAttributes", queries.conceptAttributes(false), cui);
+		profiler.capturePlan(connection, "semanticTypes", queries.semanticTypes(false), cui);
+		profiler.capturePlan(connection, "definitions", queries.definitions(false), cui, aui);
+		profiler.capturePlan(connection, "cuiRelForward", queries.cuiRelationships(true, false), cui);
+		profiler.capturePlan(connection, "cuiRelBackward", queries.cuiRelationships(false, false), cui);
+		profiler.capturePlan(connection, "auiRelForward", queries.atomRelationships(true, false), cui, aui);
+		profiler.capturePlan(connection, "auiRelBackward", queries.atomRelationships(false, false), cui, aui);
+	}
+
+	private static PreparedStatement prepare(Connection connection, StatementProfiler profiler, String name, String sql) throws SQLException
+	{
+		return profiler == null ? connection.prepareStatement(sql) : profiler.prepare(connection, name, sql);
+	}
+
+	@Override
+	public void prefetch(String firstCui, String lastCui)
+	{
+		//noop
+	}
+
+	private ResultSet execute(PreparedStatement ps, String... params) throws SQLException
+	{
+		ps.clearParameters();
+		for (int i = 0; i < params.length; i++)
+		{
+			ps.setString(i + 1, params[i]);
+		}
+		return ps.executeQuery();
+	}
+
+	@Override
+	public ResultSet atomAttributes(String cui, String aui) throws SQLException
+	{
+		return execute(satAtomStatement, cui, aui);
+	}
+
+	@Override
+	public ResultSet conceptAttributes(String cui) throws SQLException
+	{
+		return execute(satConceptStatement, cui);
+	}
+
+	@Override
+	public ResultSet semanticTypes(String cui) throws SQLException
+	{
+		return execute(semanticTypeStatement, cui);
+	}
+
+	@Override
+	public ResultSet definitions(String cui, String aui) throws SQLException
+	{
+		return execute(definitionStatement, cui, aui);
+	}
+
+	@Override
+	public ResultSet atomRelationshipsForward(String cui, String aui) throws SQLException
+	{
+		return execute(auiRelStatementForward, cui, aui);
+	}
+
+	@Override
+	public ResultSet atomRelationshipsBackward(String cui, String aui) throws SQLException
+	{
+		return execute(auiRelStatementBackward, cui, aui);
+	}
+
+	@Override
+	public ResultSet cuiRelationshipsForward(String cui) throws SQLException
+	{
+		return execute(cuiRelStatementForward, cui);
+	}
+
+	@Override
+	public ResultSet cuiRelationshipsBackward(String cui) throws SQLException
+	{
+		return execute(cuiRelStatementBackward, cui);
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		satAtomStatement.close();
+		satConceptStatement.close();
+		semanticTypeStatement.close();
+		definitionStatement.close();
+		cuiRelStatementForward.close();
+		cuiRelStatementBackward.close();
+		auiRelStatementBackward.close();
+		auiRelStatementForward.close();
+	}
+}
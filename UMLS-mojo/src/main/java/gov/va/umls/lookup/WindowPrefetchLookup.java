@@ -0,0 +1,146 @@
+package gov.va.umls.lookup;
+
+import gov.va.umls.report.StatementProfiler;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.ResultSet;
+
+/**
+ * Loads the attribute, definition, semantic type and relationship rows for a window of consecutive CUIs with 
+ * one range query per table, and serves the per CUI / per atom lookups from memory.
+ * 
+ * Lookups for CUIs outside of the most recently prefetched window return no rows.
+ */
+public class WindowPrefetchLookup implements CUILookup
+{
+	private PreparedStatement satAtomStatement, satConceptStatement, semanticTypeStatement, 
+		cuiRelStatementForward, auiRelStatementForward, cuiRelStatementBackward, auiRelStatementBackward,
+		definitionStatement;
+	
+	private RowBuckets satAtomRows_ = new RowBuckets("CUI", "METAUI");
+	private RowBuckets satConceptRows_ = new RowBuckets("CUI");
+	private RowBuckets semanticTypeRows_ = new RowBuckets("CUI");
+	private RowBuckets definitionRows_ = new RowBuckets("CUI", "AUI");
+	private RowBuckets cuiRelForwardRows_ = new RowBuckets("CUI2");
+	private RowBuckets cuiRelBackwardRows_ = new RowBuckets("CUI1");
+	private RowBuckets auiRelForwardRows_ = new RowBuckets("CUI2", "AUI2");
+	private RowBuckets auiRelBackwardRows_ = new RowBuckets("CUI1", "AUI1");
+
+	/**
+	 * @param profiler - optional - profiles the statements when set
+	 */
+	public WindowPrefetchLookup(Connection connection, LookupQueries queries, StatementProfiler profiler) throws SQLException
+	{
+		satAtomStatement = prepare(connection, profiler, "atomAttributes", queries.atomAttributes(true));
+		satConceptStatement = prepare(connection, profiler, "conceptAttributes", queries.conceptAttributes(true));
+		semanticTypeStatement = prepare(connection, profiler, "semanticTypes", queries.semanticTypes(true));
+		definitionStatement = prepare(connection, profiler, "definitions", queries.definitions(true));
+		cuiRelStatementForward = prepare(connection, profiler, "cuiRelForward", queries.cuiRelationships(true, true));
+		cuiRelStatementBackward = prepare(connection, profiler, "cuiRelBackward", queries.cuiRelationships(false, true));
+		auiRelStatementForward = prepare(connection, profiler, "auiRelForward", queries.atomRelationships(true, true));
+		auiRelStatementBackward = prepare(connection, profiler, "auiRelBackward", queries.atomRelationships(false, true));
+	}
+
+	/**
+	 * Capture the plans of the statements, for the given window of CUIs
+	 */
+	public static void capturePlans(StatementProfiler profiler, Connection connection, LookupQueries queries, String firstCui, String lastCui)
+	{
+		profiler.capturePlan(connection, "atomAttributes", queries.atomAttributes(true), firstCui, lastCui);
+		profiler.capturePlan(connection, "conceptAttributes", queries.conceptAttributes(true), firstCui, lastCui);
+		profiler.capturePlan(connection, "semanticTypes", queries.semanticTypes(true), firstCui, lastCui);
+		profiler.capturePlan(connection, "definitions", queries.definitions(true), firstCui, lastCui);
+		profiler.capturePlan(connection, "cuiRelForward", queries.cuiRelationships(true, true), firstCui, lastCui);
+		profiler.capturePlan(connection, "cuiRelBackward", queries.cuiRelationships(false, true), firstCui, lastCui);
+		profiler.capturePlan(connection, "auiRelForward", queries.atomRelationships(true, true), firstCui, lastCui);
+		profiler.capturePlan(connection, "auiRelBackward", queries.atomRelationships(false, true), firstCui, lastCui);
+	}
+
+	private static PreparedStatement prepare(Connection connection, StatementProfiler profiler, String name, String sql) throws SQLException
+	{
+		return profiler == null ? connection.prepareStatement(sql) : profiler.prepare(connection, name, sql);
+	}
+
+	@Override
+	public void prefetch(String firstCui, String lastCui) throws SQLException
+	{
+		load(satAtomStatement, satAtomRows_, firstCui, lastCui);
+		load(satConceptStatement, satConceptRows_, firstCui, lastCui);
+		load(semanticTypeStatement, semanticTypeRows_, firstCui, lastCui);
+		load(definitionStatement, definitionRows_, firstCui, lastCui);
+		load(cuiRelStatementForward, cuiRelForwardRows_, firstCui, lastCui);
+		load(cuiRelStatementBackward, cuiRelBackwardRows_, firstCui, lastCui);
+		load(auiRelStatementForward, auiRelForwardRows_, firstCui, lastCui);
+		load(auiRelStatementBackward, auiRelBackwardRows_, firstCui, lastCui);
+	}
+
+	private void load(PreparedStatement ps, RowBuckets into, String firstCui, String lastCui) throws SQLException
+	{
+		ps.clearParameters();
+		ps.setString(1, firstCui);
+		ps.setString(2, lastCui);
+		into.load(ps.executeQuery());
+	}
+
+	@Override
+	public ResultSet atomAttributes(String cui, String aui)
+	{
+		return satAtomRows_.get(cui, aui);
+	}
+
+	@Override
+	public ResultSet conceptAttributes(String cui)
+	{
+		return satConceptRows_.get(cui);
+	}
+
+	@Override
+	public ResultSet semanticTypes(String cui)
+	{
+		return semanticTypeRows_.get(cui);
+	}
+
+	@Override
+	public ResultSet definitions(String cui, String aui)
+	{
+		return definitionRows_.get(cui, aui);
+	}
+
+	@Override
+	public ResultSet atomRelationshipsForward(String cui, String aui)
+	{
+		return auiRelForwardRows_.get(cui, aui);
+	}
+
+	@Override
+	public ResultSet atomRelationshipsBackward(String cui, String aui)
+	{
+		return auiRelBackwardRows_.get(cui, aui);
+	}
+
+	@Override
+	public ResultSet cuiRelationshipsForward(String cui)
+	{
+		return cuiRelForwardRows_.get(cui);
+	}
+
+	@Override
+	public ResultSet cuiRelationshipsBackward(String cui)
+	{
+		return cuiRelBackwardRows_.get(cui);
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		satAtomStatement.close();
+		satConceptStatement.close();
+		semanticTypeStatement.close();
+		definitionStatement.close();
+		cuiRelStatementForward.close();
+		cuiRelStatementBackward.close();
+		auiRelStatementBackward.close();
+		auiRelStatementForward.close();
+	}
+}
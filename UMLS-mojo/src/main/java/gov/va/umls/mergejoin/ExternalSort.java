@@ -0,0 +1,230 @@
+package gov.va.umls.mergejoin;
+
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts RRF (pipe delimited) lines by one or more of their fields, spilling sorted runs to temp files when there are 
+ * more lines than fit in a single run.
+ * 
+ * The sort is stable - lines with equal keys come back out in the order they were added.  Keys are compared as 
+ * Strings, which matches the ordering H2 uses for 'order by' on the same columns.
+ */
+public class ExternalSort
+{
+	private static final int MAX_FAN_IN = 128;
+	
+	private String name_;
+	private File tempFolder_;
+	private int runSize_;
+	private int[] keyFields_;
+	private ArrayList<SortLine> buffer_ = new ArrayList<>();
+	private ArrayList<File> runs_ = new ArrayList<>();
+	private long lineCount_ = 0;
+
+	/**
+	 * @param name - used to name the temp files
+	 * @param tempFolder - where to write sorted runs
+	 * @param runSize - the number of lines to sort in memory before spilling a run to disk
+	 * @param keyFields - the fields (0 based) to sort on, most significant first
+	 */
+	public ExternalSort(String name, File tempFolder, int runSize, int ... keyFields)
+	{
+		name_ = name;
+		tempFolder_ = tempFolder;
+		runSize_ = runSize;
+		keyFields_ = keyFields;
+	}
+
+	public void add(String line) throws IOException
+	{
+		buffer_.add(new SortLine(key(line), line));
+		lineCount_++;
+		if (buffer_.size() >= runSize_)
+		{
+			spill();
+		}
+	}
+
+	public long getLineCount()
+	{
+		return lineCount_;
+	}
+
+	/**
+	 * Write all of the lines, in sorted order, to the output file.  Removes the temporary runs.
+	 * @return the output file
+	 */
+	public File finish(File output) throws IOException
+	{
+		if (runs_.size() == 0)
+		{
+			Collections.sort(buffer_);
+			write(buffer_, output);
+			buffer_.clear();
+			return output;
+		}
+		
+		if (buffer_.size() > 0)
+		{
+			spill();
+		}
+		
+		//Merge from the front, so that earlier runs stay ahead of later runs - keeps the sort stable
+		while (runs_.size() > MAX_FAN_IN)
+		{
+			List<File> group = runs_.subList(0, MAX_FAN_IN);
+			File merged = File.createTempFile(name_ + "-run", ".tmp", tempFolder_);
+			merge(new ArrayList<>(group), merged);
+			group.clear();
+			runs_.add(0, merged);
+		}
+		merge(runs_, output);
+		runs_.clear();
+		return output;
+	}
+
+	private String key(String line)
+	{
+		if (keyFields_.length == 1)
+		{
+			String key = RRFLayout.field(line, keyFields_[0]);
+			return key == null ? "" : key;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < keyFields_.length; i++)
+		{
+			if (i > 0)
+			{
+				//sorts below every other character, so the combined key orders the same as comparing field by field
+				sb.append('\u0000');
+			}
+			String key = RRFLayout.field(line, keyFields_[i]);
+			if (key != null)
+			{
+				sb.append(key);
+			}
+		}
+		return sb.toString();
+	}
+
+	private void spill() throws IOException
+	{
+		//Collections.sort is stable
+		Collections.sort(buffer_);
+		File run = File.createTempFile(name_ + "-run", ".tmp", tempFolder_);
+		write(buffer_, run);
+		runs_.add(run);
+		buffer_.clear();
+	}
+
+	private void write(List<SortLine> lines, File f) throws IOException
+	{
+		BufferedWriter w = writer(f);
+		for (SortLine sl : lines)
+		{
+			w.write(sl.line);
+			w.write('\n');
+		}
+		w.close();
+	}
+
+	private void merge(List<File> runs, File output) throws IOException
+	{
+		PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(), new Comparator<RunReader>()
+		{
+			@Override
+			public int compare(RunReader o1, RunReader o2)
+			{
+				int result = o1.key.compareTo(o2.key);
+				return result != 0 ? result : Integer.compare(o1.runIndex, o2.runIndex);
+			}
+		});
+		
+		for (int i = 0; i < runs.size(); i++)
+		{
+			RunReader rr = new RunReader(runs.get(i), i);
+			if (rr.advance())
+			{
+				queue.add(rr);
+			}
+		}
+		
+		BufferedWriter w = writer(output);
+		while (queue.size() > 0)
+		{
+			RunReader rr = queue.poll();
+			w.write(rr.line);
+			w.write('\n');
+			if (rr.advance())
+			{
+				queue.add(rr);
+			}
+		}
+		w.close();
+		
+		for (File f : runs)
+		{
+			f.delete();
+		}
+	}
+
+	static BufferedWriter writer(File f) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8"), 1024 * 1024);
+	}
+
+	private static class SortLine implements Comparable<SortLine>
+	{
+		String key;
+		String line;
+
+		SortLine(String key, String line)
+		{
+			this.key = key;
+			this.line = line;
+		}
+
+		@Override
+		public int compareTo(SortLine o)
+		{
+			return key.compareTo(o.key);
+		}
+	}
+
+	private class RunReader
+	{
+		BufferedReader reader;
+		int runIndex;
+		String line;
+		String key;
+
+		RunReader(File f, int runIndex) throws IOException
+		{
+			reader = RRFLayout.open(f);
+			this.runIndex = runIndex;
+		}
+
+		boolean advance() throws IOException
+		{
+			line = reader.readLine();
+			if (line == null)
+			{
+				reader.close();
+				return false;
+			}
+			key = key(line);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,479 @@
+package gov.va.umls.mergejoin;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.MRCONSOReader;
+import gov.va.umls.rrf.RRFLayout;
+import gov.va.umls.staging.RootAUIs;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Converts straight from the RRF files, rather than from indexed queries against the H2 staging database.
+ * 
+ * {@link #prepare()} externally sorts MRCONSO, MRSAT, MRDEF, MRSTY and both sides of MRREL by CUI - doing the MRREL to MRCONSO 
+ * joins (that the staged queries do at query time) with sort based merge joins along the way.  After that, this class serves up 
+ * the MRCONSO rows in CUI order, and {@link #getLookup()} serves the matching attribute, definition, semantic type and relationship 
+ * rows from a single forward pass over the other sorted files.
+ * 
+ * The base converter still reads its metadata from the staging database - {@link #getStagingFile(String, File)} provides small 
+ * replacement files for the large tables, holding just one row for each distinct combination of the metadata columns.  The 
+ * MRCONSO replacement also keeps every SRC row, and the rows of the atoms the root check may look up (see {@link RootAUIs}).
+ * 
+ * The runSize is shared between the sorts that are filled at the same time (up to eight, for MRREL) - so it bounds the lines 
+ * held in memory at once, however many sorts are running.
+ */
+public class MergeJoinEngine implements MRCONSOReader
+{
+	public static final int DEFAULT_RUN_SIZE = 500000;
+	
+	private File meta_;
+	private File tempFolder_;
+	private int runSize_;
+	private List<String> additionalRootConcepts_;
+	private RRFLayout layout_;
+	private HashSet<String> sabs_;  //null for no filter
+	private HashSet<String> sabsNoMTH_;  //null for no filter
+	private HashMap<String, File> stagingFiles_ = new HashMap<>();
+	
+	private File consoByCui_, consoByAui_;
+	private File satByCui_, defByCui_, styByCui_;
+	private File relForwardCui_, relBackwardCui_, relForwardAui_, relBackwardAui_;
+	
+	private SortedLineStream consoStream_;
+	private int[] consoColumns_;
+	private MergeJoinLookup lookup_;
+
+	/**
+	 * @param metaFolder - the META folder from metamorphosys
+	 * @param tempFolder - where to write the sorted files.  Created if necessary, and removed by {@link #close()}
+	 * @param sabFilters - the SABs to include (null or empty for all)
+	 * @param skipMTHConcepts - don't create concepts (or attributes) from MTH atoms - MTH is still used for relationships
+	 * @param additionalRootConcepts - the SAB|CUI|AUI entries that are configured as roots (may be null) - kept in the staged MRCONSO
+	 * @param runSize - the most lines to hold in memory at once, across all of the sorts that are being filled
+	 */
+	public MergeJoinEngine(File metaFolder, File tempFolder, List<String> sabFilters, boolean skipMTHConcepts, List<String> additionalRootConcepts, 
+			int runSize) throws IOException
+	{
+		meta_ = metaFolder;
+		tempFolder_ = tempFolder;
+		runSize_ = runSize;
+		additionalRootConcepts_ = additionalRootConcepts;
+		tempFolder_.mkdirs();
+		layout_ = new RRFLayout(metaFolder);
+		if (sabFilters != null && sabFilters.size() > 0)
+		{
+			sabs_ = new HashSet<>(sabFilters);
+			sabsNoMTH_ = new HashSet<>(sabFilters);
+			if (skipMTHConcepts)
+			{
+				sabsNoMTH_.remove("MTH");
+			}
+		}
+	}
+
+	public RRFLayout getLayout()
+	{
+		return layout_;
+	}
+
+	/**
+	 * Sort (and join) everything.
+	 */
+	public void prepare() throws IOException
+	{
+		ConsoleUtil.println("Sorting MRCONSO");
+		sortConso();
+		ConsoleUtil.println("Sorting MRSAT");
+		satByCui_ = sortByCui("MRSAT", sabsNoMTH_, "SAB", "ATN", "STYPE", "SUPPRESS");
+		ConsoleUtil.println("Sorting MRDEF");
+		defByCui_ = sortByCui("MRDEF", sabs_, "SAB", "SUPPRESS");
+		ConsoleUtil.println("Sorting MRSTY");
+		styByCui_ = sortByCui("MRSTY", null, "TUI", "STN", "STY");
+		ConsoleUtil.println("Sorting and joining MRREL");
+		sortRelationships();
+		
+		consoStream_ = new SortedLineStream(consoByCui_);
+		consoColumns_ = layout_.indexesOf("MRCONSO", MRCONSO.COLUMNS);
+		lookup_ = new MergeJoinLookup(layout_, satByCui_, defByCui_, styByCui_, relForwardCui_, relBackwardCui_, relForwardAui_, relBackwardAui_);
+	}
+
+	/**
+	 * @return the file the staging database should load the table from - either the original RRF file, or a reduced 
+	 * copy that just carries the metadata the base converter needs.
+	 */
+	public File getStagingFile(String table, File original)
+	{
+		File f = stagingFiles_.get(table);
+		return f == null ? original : f;
+	}
+
+	/**
+	 * @return a lookup that serves the rows for each CUI - CUIs must be prefetched in increasing order.
+	 */
+	public CUILookup getLookup()
+	{
+		return lookup_;
+	}
+
+	@Override
+	public MRCONSO read() throws IOException
+	{
+		String[] fields = consoStream_.peekFields();
+		if (fields == null)
+		{
+			return null;
+		}
+		String[] values = new String[consoColumns_.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = consoColumns_[i] < fields.length ? fields[consoColumns_[i]] : null;
+		}
+		consoStream_.advance();
+		return new MRCONSO(values);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		consoStream_.close();
+	}
+
+	/**
+	 * Close everything, and remove the temp folder.
+	 */
+	public void dispose() throws IOException
+	{
+		if (consoStream_ != null)
+		{
+			consoStream_.close();
+		}
+		if (lookup_ != null)
+		{
+			lookup_.close();
+		}
+		File[] files = tempFolder_.listFiles();
+		if (files != null)
+		{
+			for (File f : files)
+			{
+				f.delete();
+			}
+		}
+		tempFolder_.delete();
+	}
+
+	private boolean accept(HashSet<String> sabs, String sab)
+	{
+		return sabs == null || sabs.contains(sab);
+	}
+
+	private void sortConso() throws IOException
+	{
+		int sab = layout_.indexOf("MRCONSO", "SAB");
+		int cui = layout_.indexOf("MRCONSO", "CUI");
+		int aui = layout_.indexOf("MRCONSO", "AUI");
+		int code = layout_.indexOf("MRCONSO", "CODE");
+		
+		//Same order as the conso_cui_index the staged 'order by CUI' scan walks
+		ExternalSort byCui = new ExternalSort("MRCONSO", tempFolder_, share(2), cui, aui);
+		//AUI|CUI|SAB|CODE| - for joining relationships to their target atoms
+		ExternalSort byAui = new ExternalSort("MRCONSO-AUI", tempFolder_, share(2), 0);
+		
+		//The base converter's metadata and root lookups are the only MRCONSO queries left for the staging database
+		MetadataRows metadata = new MetadataRows(layout_.indexesOf("MRCONSO", "SAB", "TTY", "LAT", "TS", "STT", "ISPREF", "SUPPRESS"));
+		RootAUIs rootAUIs = new RootAUIs(meta_, layout_, additionalRootConcepts_);
+		
+		BufferedReader br = RRFLayout.open(RRFLayout.dataFile(meta_, "MRCONSO"));
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			String[] fields = RRFLayout.split(line);
+			if ("SRC".equals(fields[sab]) || rootAUIs.mayBeRoot(fields[aui]))
+			{
+				metadata.keep(line);
+			}
+			else
+			{
+				metadata.add(line);
+			}
+			if (accept(sabsNoMTH_, fields[sab]))
+			{
+				byCui.add(line);
+				byAui.add(fields[aui] + "|" + fields[cui] + "|" + fields[sab] + "|" + (fields[code] == null ? "" : fields[code]) + "|");
+			}
+		}
+		br.close();
+		stagingFiles_.put("MRCONSO", metadata.write(new File(tempFolder_, "MRCONSO-metadata.RRF")));
+		consoByCui_ = byCui.finish(new File(tempFolder_, "MRCONSO-by-CUI.txt"));
+		consoByAui_ = byAui.finish(new File(tempFolder_, "MRCONSO-by-AUI.txt"));
+		ConsoleUtil.println("Sorted " + byCui.getLineCount() + " MRCONSO rows");
+	}
+
+	/**
+	 * Sort a table by its CUI column, and write out its metadata reduced staging file.
+	 * @param sabs - the SAB filter to apply (on the tables own SAB column), or null
+	 * @param metadataColumns - the columns that the metadata loading cares about
+	 */
+	private File sortByCui(String table, HashSet<String> sabs, String ... metadataColumns) throws IOException
+	{
+		int cui = layout_.indexOf(table, "CUI");
+		int sab = sabs == null ? -1 : layout_.indexOf(table, "SAB");
+		MetadataRows metadata = new MetadataRows(layout_.indexesOf(table, metadataColumns));
+		ExternalSort sort = new ExternalSort(table, tempFolder_, share(1), cui);
+		
+		BufferedReader br = RRFLayout.open(RRFLayout.dataFile(meta_, table));
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			metadata.add(line);
+			if (sab < 0 || accept(sabs, RRFLayout.field(line, sab)))
+			{
+				sort.add(line);
+			}
+		}
+		br.close();
+		stagingFiles_.put(table, metadata.write(new File(tempFolder_, table + "-metadata.RRF")));
+		ConsoleUtil.println("Sorted " + sort.getLineCount() + " " + table + " rows");
+		return sort.finish(new File(tempFolder_, table + "-by-CUI.txt"));
+	}
+
+	private void sortRelationships() throws IOException
+	{
+		int sab = layout_.indexOf("MRREL", "SAB");
+		int cui1 = layout_.indexOf("MRREL", "CUI1");
+		int aui1 = layout_.indexOf("MRREL", "AUI1");
+		int cui2 = layout_.indexOf("MRREL", "CUI2");
+		int aui2 = layout_.indexOf("MRREL", "AUI2");
+		//The original line number is appended to each row, so the rows can be put back in file order after the joins
+		int seq = layout_.getColumns("MRREL").length;
+		
+		MetadataRows metadata = new MetadataRows(layout_.indexesOf("MRREL", "SAB", "REL", "RELA", "STYPE1", "STYPE2", "SL", "DIR", "SUPPRESS"));
+		
+		//Keyed by the far end of the relationship, for the joins
+		ExternalSort forwardCuiJoin = new ExternalSort("MRREL-F-CUI-join", tempFolder_, share(8), cui1);
+		ExternalSort backwardCuiJoin = new ExternalSort("MRREL-B-CUI-join", tempFolder_, share(8), cui2);
+		ExternalSort forwardAuiJoin = new ExternalSort("MRREL-F-AUI-join", tempFolder_, share(8), aui1);
+		ExternalSort backwardAuiJoin = new ExternalSort("MRREL-B-AUI-join", tempFolder_, share(8), aui2);
+		
+		//Keyed by the near end, in file order - the final lookup order
+		ExternalSort forwardCui = new ExternalSort("MRREL-F-CUI", tempFolder_, share(8), cui2, seq);
+		ExternalSort backwardCui = new ExternalSort("MRREL-B-CUI", tempFolder_, share(8), cui1, seq);
+		ExternalSort forwardAui = new ExternalSort("MRREL-F-AUI", tempFolder_, share(8), cui2, seq);
+		ExternalSort backwardAui = new ExternalSort("MRREL-B-AUI", tempFolder_, share(8), cui1, seq);
+		
+		BufferedReader br = RRFLayout.open(RRFLayout.dataFile(meta_, "MRREL"));
+		String line;
+		long lineNumber = 0;
+		while ((line = br.readLine()) != null)
+		{
+			metadata.add(line);
+			String[] fields = RRFLayout.split(line);
+			if (!accept(sabs_, fields[sab]))
+			{
+				continue;
+			}
+			String numbered = line + sequence(lineNumber++) + "|";
+			
+			//Without a SAB filter, the CUI level rels aren't joined back to MRCONSO at all
+			if (fields[aui2] == null)
+			{
+				(sabs_ == null ? forwardCui : forwardCuiJoin).add(numbered);
+			}
+			else if (fields[aui1] != null)
+			{
+				forwardAuiJoin.add(numbered);
+			}
+			
+			if (fields[aui1] == null)
+			{
+				(sabs_ == null ? backwardCui : backwardCuiJoin).add(numbered);
+			}
+			else if (fields[aui2] != null)
+			{
+				backwardAuiJoin.add(numbered);
+			}
+		}
+		br.close();
+		stagingFiles_.put("MRREL", metadata.write(new File(tempFolder_, "MRREL-metadata.RRF")));
+		
+		if (sabs_ != null)
+		{
+			joinConcepts(forwardCuiJoin.finish(new File(tempFolder_, "MRREL-F-CUI-join.txt")), cui1, forwardCui);
+			joinConcepts(backwardCuiJoin.finish(new File(tempFolder_, "MRREL-B-CUI-join.txt")), cui2, backwardCui);
+		}
+		joinAtoms(forwardAuiJoin.finish(new File(tempFolder_, "MRREL-F-AUI-join.txt")), cui1, aui1, forwardAui);
+		joinAtoms(backwardAuiJoin.finish(new File(tempFolder_, "MRREL-B-AUI-join.txt")), cui2, aui2, backwardAui);
+		
+		relForwardCui_ = forwardCui.finish(new File(tempFolder_, "MRREL-F-CUI.txt"));
+		relBackwardCui_ = backwardCui.finish(new File(tempFolder_, "MRREL-B-CUI.txt"));
+		relForwardAui_ = forwardAui.finish(new File(tempFolder_, "MRREL-F-AUI.txt"));
+		relBackwardAui_ = backwardAui.finish(new File(tempFolder_, "MRREL-B-AUI.txt"));
+		ConsoleUtil.println("Sorted " + lineNumber + " MRREL rows");
+	}
+
+	/**
+	 * The staged CUI level rel queries join to every MRCONSO row of the far CUI - emit each rel once per matching MRCONSO row 
+	 * (and drop the ones that don't match any) so the result is row for row the same.
+	 * @param rels - rels sorted by the far end CUI
+	 */
+	private void joinConcepts(File rels, int farCui, ExternalSort into) throws IOException
+	{
+		SortedLineStream relStream = new SortedLineStream(rels);
+		SortedLineStream consoStream = new SortedLineStream(consoByCui_);
+		int consoCui = layout_.indexOf("MRCONSO", "CUI");
+		
+		String countedCui = null;
+		int count = 0;
+		while (relStream.peek() != null)
+		{
+			String cui = relStream.peekField(farCui);
+			if (!cui.equals(countedCui))
+			{
+				while (consoStream.peek() != null && consoStream.peekField(consoCui).compareTo(cui) < 0)
+				{
+					consoStream.advance();
+				}
+				count = 0;
+				while (consoStream.peek() != null && consoStream.peekField(consoCui).equals(cui))
+				{
+					count++;
+					consoStream.advance();
+				}
+				countedCui = cui;
+			}
+			for (int i = 0; i < count; i++)
+			{
+				into.add(relStream.peek());
+			}
+			relStream.advance();
+		}
+		relStream.close();
+		consoStream.close();
+		rels.delete();
+	}
+
+	/**
+	 * Join the rels to the MRCONSO row of the far end atom, appending the target SAB and CODE, and dropping any rels 
+	 * whose target atom isn't being loaded.
+	 * @param rels - rels sorted by the far end AUI
+	 */
+	private void joinAtoms(File rels, int farCui, int farAui, ExternalSort into) throws IOException
+	{
+		SortedLineStream relStream = new SortedLineStream(rels);
+		SortedLineStream consoStream = new SortedLineStream(consoByAui_);
+		
+		while (relStream.peek() != null)
+		{
+			String aui = relStream.peekField(farAui);
+			while (consoStream.peek() != null && consoStream.peekField(0).compareTo(aui) < 0)
+			{
+				consoStream.advance();
+			}
+			if (consoStream.peek() != null && consoStream.peekField(0).equals(aui) && consoStream.peekField(1).equals(relStream.peekField(farCui)))
+			{
+				String code = consoStream.peekField(3);
+				into.add(relStream.peek() + consoStream.peekField(2) + "|" + (code == null ? "" : code) + "|");
+			}
+			relStream.advance();
+		}
+		relStream.close();
+		consoStream.close();
+		rels.delete();
+	}
+
+	/**
+	 * @return the run size of each of a number of sorts that are filled at the same time
+	 */
+	private int share(int sorts)
+	{
+		return Math.max(1, runSize_ / sorts);
+	}
+
+	private static String sequence(long lineNumber)
+	{
+		//zero padded, so it sorts correctly as a String
+		String s = Long.toString(lineNumber);
+		StringBuilder sb = new StringBuilder(12);
+		for (int i = s.length(); i < 12; i++)
+		{
+			sb.append('0');
+		}
+		return sb.append(s).toString();
+	}
+
+	/**
+	 * Collects the first row for each distinct combination of the metadata columns - and any rows that are kept regardless.
+	 */
+	private static class MetadataRows
+	{
+		private int[] columns_;
+		private LinkedHashMap<String, String> rows_ = new LinkedHashMap<>();
+		private ArrayList<String> kept_ = new ArrayList<>();
+
+		MetadataRows(int[] columns)
+		{
+			columns_ = columns;
+		}
+
+		void add(String line)
+		{
+			String k = key(line);
+			if (!rows_.containsKey(k))
+			{
+				rows_.put(k, line);
+			}
+		}
+
+		/**
+		 * Keep the row, whether or not its combination was already seen (it still counts as seen)
+		 */
+		void keep(String line)
+		{
+			String k = key(line);
+			if (!rows_.containsKey(k))
+			{
+				rows_.put(k, line);
+			}
+			else
+			{
+				kept_.add(line);
+			}
+		}
+
+		private String key(String line)
+		{
+			StringBuilder key = new StringBuilder();
+			for (int c : columns_)
+			{
+				key.append(RRFLayout.field(line, c)).append('|');
+			}
+			return key.toString();
+		}
+
+		File write(File f) throws IOException
+		{
+			BufferedWriter w = ExternalSort.writer(f);
+			for (String line : rows_.values())
+			{
+				w.write(line);
+				w.write('\n');
+			}
+			for (String line : kept_)
+			{
+				w.write(line);
+				w.write('\n');
+			}
+			w.close();
+			return f;
+		}
+	}
+}
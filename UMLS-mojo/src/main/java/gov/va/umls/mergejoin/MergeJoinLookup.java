@@ -0,0 +1,253 @@
+package gov.va.umls.mergejoin;
+
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.lookup.RowBuckets;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Serves the per CUI lookups from the CUI sorted files built by {@link MergeJoinEngine}, reading each file forward 
+ * one prefetch window at a time.  Prefetch windows must be requested in increasing CUI order.
+ * 
+ * The ResultSets have the same columns (and labels) as the matching staged queries in {@link gov.va.umls.lookup.LookupQueries}.
+ */
+public class MergeJoinLookup implements CUILookup
+{
+	private static final String[] REL_COLUMNS = new String[] {"CUI1", "AUI1", "STYPE1", "REL", "CUI2", "AUI2", "STYPE2", 
+		"RELA", "RUI", "SRUI", "SAB", "SL", "DIR", "RG", "SUPPRESS", "CVF"};
+	
+	private RowBuckets satAtomRows_ = new RowBuckets("CUI", "METAUI");
+	private RowBuckets satConceptRows_ = new RowBuckets("CUI");
+	private RowBuckets semanticTypeRows_ = new RowBuckets("CUI");
+	private RowBuckets definitionRows_ = new RowBuckets("CUI", "AUI");
+	private RowBuckets cuiRelForwardRows_ = new RowBuckets("CUI2");
+	private RowBuckets cuiRelBackwardRows_ = new RowBuckets("CUI1");
+	private RowBuckets auiRelForwardRows_ = new RowBuckets("CUI2", "AUI2");
+	private RowBuckets auiRelBackwardRows_ = new RowBuckets("CUI1", "AUI1");
+	
+	private Feed sat_, def_, sty_, cuiRelForward_, cuiRelBackward_, auiRelForward_, auiRelBackward_;
+
+	public MergeJoinLookup(RRFLayout layout, File satByCui, File defByCui, File styByCui, File relForwardCui, File relBackwardCui, 
+			File relForwardAui, File relBackwardAui) throws IOException
+	{
+		String[] satColumns = layout.getColumns("MRSAT");
+		sat_ = new Feed(satByCui, layout.indexOf("MRSAT", "CUI"), new Projection(layout, "MRSAT", satColumns), satAtomRows_);
+		//Attributes without a METAUI are concept attributes
+		sat_.alternate(layout.indexOf("MRSAT", "METAUI"), satConceptRows_);
+		
+		def_ = new Feed(defByCui, layout.indexOf("MRDEF", "CUI"), new Projection(layout, "MRDEF", layout.getColumns("MRDEF")), definitionRows_);
+		sty_ = new Feed(styByCui, layout.indexOf("MRSTY", "CUI"), new Projection(layout, "MRSTY", "TUI", "ATUI", "CVF", "CUI"), semanticTypeRows_);
+		
+		Projection cuiRels = new Projection(layout, "MRREL", REL_COLUMNS);
+		//The atom rels have the target SAB and CODE appended - after the sequence number
+		int targetSab = layout.getColumns("MRREL").length + 1;
+		Projection auiRels = new Projection(layout, "MRREL", REL_COLUMNS).append("TARGETSAB", targetSab).append("TARGETCODE", targetSab + 1);
+		
+		cuiRelForward_ = new Feed(relForwardCui, layout.indexOf("MRREL", "CUI2"), cuiRels, cuiRelForwardRows_);
+		cuiRelBackward_ = new Feed(relBackwardCui, layout.indexOf("MRREL", "CUI1"), cuiRels, cuiRelBackwardRows_);
+		auiRelForward_ = new Feed(relForwardAui, layout.indexOf("MRREL", "CUI2"), auiRels, auiRelForwardRows_);
+		auiRelBackward_ = new Feed(relBackwardAui, layout.indexOf("MRREL", "CUI1"), auiRels, auiRelBackwardRows_);
+	}
+
+	@Override
+	public void prefetch(String firstCui, String lastCui) throws SQLException
+	{
+		try
+		{
+			sat_.load(firstCui, lastCui);
+			def_.load(firstCui, lastCui);
+			sty_.load(firstCui, lastCui);
+			cuiRelForward_.load(firstCui, lastCui);
+			cuiRelBackward_.load(firstCui, lastCui);
+			auiRelForward_.load(firstCui, lastCui);
+			auiRelBackward_.load(firstCui, lastCui);
+		}
+		catch (IOException e)
+		{
+			throw new SQLException("Error reading the sorted RRF data", e);
+		}
+	}
+
+	@Override
+	public ResultSet atomAttributes(String cui, String aui)
+	{
+		return satAtomRows_.get(cui, aui);
+	}
+
+	@Override
+	public ResultSet conceptAttributes(String cui)
+	{
+		return satConceptRows_.get(cui);
+	}
+
+	@Override
+	public ResultSet semanticTypes(String cui)
+	{
+		return semanticTypeRows_.get(cui);
+	}
+
+	@Override
+	public ResultSet definitions(String cui, String aui)
+	{
+		return definitionRows_.get(cui, aui);
+	}
+
+	@Override
+	public ResultSet atomRelationshipsForward(String cui, String aui)
+	{
+		return auiRelForwardRows_.get(cui, aui);
+	}
+
+	@Override
+	public ResultSet atomRelationshipsBackward(String cui, String aui)
+	{
+		return auiRelBackwardRows_.get(cui, aui);
+	}
+
+	@Override
+	public ResultSet cuiRelationshipsForward(String cui)
+	{
+		return cuiRelForwardRows_.get(cui);
+	}
+
+	@Override
+	public ResultSet cuiRelationshipsBackward(String cui)
+	{
+		return cuiRelBackwardRows_.get(cui);
+	}
+
+	@Override
+	public void close()
+	{
+		for (Feed f : new Feed[] {sat_, def_, sty_, cuiRelForward_, cuiRelBackward_, auiRelForward_, auiRelBackward_})
+		{
+			try
+			{
+				f.stream.close();
+			}
+			catch (IOException e)
+			{
+				//noop
+			}
+		}
+	}
+
+	/**
+	 * Maps the fields of a sorted line onto the columns of the equivalent staged query.
+	 */
+	private static class Projection
+	{
+		String[] labels;
+		int[] types;
+		int[] fields;
+
+		Projection(RRFLayout layout, String table, String ... columns)
+		{
+			labels = columns.clone();
+			types = new int[columns.length];
+			fields = new int[columns.length];
+			for (int i = 0; i < columns.length; i++)
+			{
+				fields[i] = layout.indexOf(table, columns[i]);
+				types[i] = layout.isInteger(table, columns[i]) ? Types.INTEGER : Types.VARCHAR;
+			}
+		}
+
+		Projection append(String label, int field)
+		{
+			int size = labels.length;
+			String[] newLabels = new String[size + 1];
+			int[] newTypes = new int[size + 1];
+			int[] newFields = new int[size + 1];
+			System.arraycopy(labels, 0, newLabels, 0, size);
+			System.arraycopy(types, 0, newTypes, 0, size);
+			System.arraycopy(fields, 0, newFields, 0, size);
+			newLabels[size] = label;
+			newTypes[size] = Types.VARCHAR;
+			newFields[size] = field;
+			labels = newLabels;
+			types = newTypes;
+			fields = newFields;
+			return this;
+		}
+
+		Object[] row(String[] values)
+		{
+			Object[] row = new Object[fields.length];
+			for (int i = 0; i < fields.length; i++)
+			{
+				String value = fields[i] < values.length ? values[fields[i]] : null;
+				row[i] = (value != null && types[i] == Types.INTEGER) ? Integer.valueOf(value) : value;
+			}
+			return row;
+		}
+	}
+
+	/**
+	 * One sorted file, feeding into its row buckets.
+	 */
+	private static class Feed
+	{
+		SortedLineStream stream;
+		int cuiField;
+		Projection projection;
+		RowBuckets buckets;
+		int alternateField = -1;
+		RowBuckets alternateBuckets;
+
+		Feed(File sorted, int cuiField, Projection projection, RowBuckets buckets) throws IOException
+		{
+			this.stream = new SortedLineStream(sorted);
+			this.cuiField = cuiField;
+			this.projection = projection;
+			this.buckets = buckets;
+			buckets.setColumns(projection.labels, projection.types);
+		}
+
+		/**
+		 * Rows where the given field is empty go into the alternate buckets instead.
+		 */
+		void alternate(int field, RowBuckets into)
+		{
+			alternateField = field;
+			alternateBuckets = into;
+			into.setColumns(projection.labels, projection.types);
+		}
+
+		void load(String firstCui, String lastCui) throws IOException
+		{
+			buckets.clear();
+			if (alternateBuckets != null)
+			{
+				alternateBuckets.clear();
+			}
+			
+			while (stream.peek() != null)
+			{
+				String cui = stream.peekField(cuiField);
+				if (cui != null && cui.compareTo(lastCui) > 0)
+				{
+					break;
+				}
+				//rows without a CUI sort first, and are never looked up
+				if (cui != null && cui.compareTo(firstCui) >= 0)
+				{
+					String[] values = stream.peekFields();
+					if (alternateField >= 0 && values[alternateField] == null)
+					{
+						alternateBuckets.add(projection.row(values));
+					}
+					else
+					{
+						buckets.add(projection.row(values));
+					}
+				}
+				stream.advance();
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package gov.va.umls.mergejoin;
+
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A read-ahead-by-one reader over a sorted RRF line file, for walking several sorted files side by side.
+ */
+public class SortedLineStream
+{
+	private BufferedReader reader_;
+	private String line_;
+	private String[] fields_;
+
+	public SortedLineStream(File f) throws IOException
+	{
+		reader_ = RRFLayout.open(f);
+		line_ = reader_.readLine();
+	}
+
+	/**
+	 * @return the current line, or null at the end of the file
+	 */
+	public String peek()
+	{
+		return line_;
+	}
+
+	/**
+	 * @return the current line, split into fields (or null at the end of the file)
+	 */
+	public String[] peekFields()
+	{
+		if (fields_ == null && line_ != null)
+		{
+			fields_ = RRFLayout.split(line_);
+		}
+		return fields_;
+	}
+
+	/**
+	 * @return one field of the current line
+	 */
+	public String peekField(int index)
+	{
+		if (line_ == null)
+		{
+			return null;
+		}
+		return fields_ == null ? RRFLayout.field(line_, index) : (index < fields_.length ? fields_[index] : null);
+	}
+
+	/**
+	 * Move on to the next line
+	 */
+	public void advance() throws IOException
+	{
+		line_ = reader_.readLine();
+		fields_ = null;
+	}
+
+	public void close() throws IOException
+	{
+		reader_.close();
+		line_ = null;
+		fields_ = null;
+	}
+}
@@ -0,0 +1,343 @@
+package gov.va.umls.output;
+
+import gov.va.umls.parallel.NamedThreadFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.ihtsdo.etypes.EConcept;
+
+/**
+ * Takes the serialization and the disk writes of the concepts off the conversion thread.
+ *
+ * Concepts are queued (a bounded queue) to a serializer thread, which writes them into one of two large, reused buffers.
+ * A full buffer is handed to an I/O thread to be written to the target stream (or another {@link BlockSink}), while the
+ * serializer fills the other one.
+ * When the disk falls behind, the serializer waits for a buffer to come back, the queue fills up, and {@link #write(EConcept)}
+ * blocks - the time spent blocked, and the queue depth, are tracked.
+ *
+ * The concepts are written in the order they are queued, with exactly the bytes writeExternal would have written.
+ */
+public class AsyncConceptWriter
+{
+	private static final EConcept FLUSH = new EConcept();
+	private static final EConcept END = new EConcept();
+
+	private BlockingQueue<EConcept> queue_;
+	private BlockingQueue<Buffer> free_ = new ArrayBlockingQueue<>(2);
+	private BlockingQueue<Buffer> full_ = new ArrayBlockingQueue<>(3);
+	private Semaphore flushed_ = new Semaphore(0);
+	private int bufferSize_;
+	private volatile BlockSink sink_;
+	private volatile IOException failure_;
+	private Thread serializer_, writer_;
+
+	private long writes_ = 0, queueDepthTotal_ = 0;
+	private int maxQueueDepth_ = 0;
+	private long stallNanos_ = 0;
+	private volatile long bufferWaitNanos_ = 0;
+	private volatile long bytes_ = 0;
+
+	/**
+	 * @param target - where to write the concepts
+	 * @param queueSize - the number of concepts that may be queued before {@link #write(EConcept)} blocks
+	 * @param bufferSize - the size a buffer is filled to before it is written out
+	 */
+	public AsyncConceptWriter(DataOutputStream target, int queueSize, int bufferSize)
+	{
+		this(new StreamSink(target), queueSize, bufferSize);
+	}
+
+	/**
+	 * @param sink - where to hand the filled buffers, as blocks of whole concepts
+	 * @param queueSize - the number of concepts that may be queued before {@link #write(EConcept)} blocks
+	 * @param bufferSize - the size a buffer is filled to before it is written out
+	 */
+	public AsyncConceptWriter(BlockSink sink, int queueSize, int bufferSize)
+	{
+		sink_ = sink;
+		queue_ = new ArrayBlockingQueue<>(queueSize);
+		bufferSize_ = bufferSize;
+		free_.add(new Buffer(bufferSize));
+		free_.add(new Buffer(bufferSize));
+
+		NamedThreadFactory threads = new NamedThreadFactory("jbin-writer");
+		serializer_ = threads.newThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				serialize();
+			}
+		});
+		writer_ = threads.newThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writeBuffers();
+			}
+		});
+		serializer_.start();
+		writer_.start();
+	}
+
+	/**
+	 * Queue a concept to be written.  The concept must not be changed once queued.  Blocks while the queue is full.
+	 */
+	public void write(EConcept concept) throws IOException
+	{
+		int depth = queue_.size();
+		writes_++;
+		queueDepthTotal_ += depth;
+		maxQueueDepth_ = Math.max(maxQueueDepth_, depth);
+		if (!queue_.offer(concept))
+		{
+			long start = System.nanoTime();
+			put(concept);
+			stallNanos_ += System.nanoTime() - start;
+		}
+		else
+		{
+			checkFailure();
+		}
+	}
+
+	/**
+	 * Wait until everything queued so far has been written to the target stream.
+	 */
+	public void flush() throws IOException
+	{
+		put(FLUSH);
+		awaitFlushed();
+	}
+
+	/**
+	 * Switch to writing to another stream.  Only call after {@link #flush()}, before anything else is queued.
+	 */
+	public void setTarget(DataOutputStream target)
+	{
+		sink_ = new StreamSink(target);
+	}
+
+	/**
+	 * Write out everything queued, and stop the threads.  Doesn't close the target stream.
+	 */
+	public void close() throws IOException
+	{
+		put(END);
+		awaitFlushed();
+	}
+
+	/**
+	 * Stop the threads, without writing anything further - for when the conversion fails.
+	 */
+	public void abort()
+	{
+		serializer_.interrupt();
+		writer_.interrupt();
+	}
+
+	/**
+	 * @return the time {@link #write(EConcept)} spent blocked on a full queue
+	 */
+	public long getStallNanos()
+	{
+		return stallNanos_;
+	}
+
+	/**
+	 * @return the time the serializer spent waiting for the I/O thread to hand a buffer back
+	 */
+	public long getBufferWaitNanos()
+	{
+		return bufferWaitNanos_;
+	}
+
+	public int getMaxQueueDepth()
+	{
+		return maxQueueDepth_;
+	}
+
+	public double getAverageQueueDepth()
+	{
+		return writes_ == 0 ? 0 : (double)queueDepthTotal_ / writes_;
+	}
+
+	public long getBytesWritten()
+	{
+		return bytes_;
+	}
+
+	private void put(EConcept concept) throws IOException
+	{
+		checkFailure();
+		try
+		{
+			//Keep checking, so a failed thread can't leave the caller blocked on a full queue
+			while (!queue_.offer(concept, 1, TimeUnit.SECONDS))
+			{
+				checkFailure();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while queuing a concept", e);
+		}
+	}
+
+	private void awaitFlushed() throws IOException
+	{
+		try
+		{
+			while (!flushed_.tryAcquire(1, TimeUnit.SECONDS))
+			{
+				checkFailure();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while waiting for the concepts to be written", e);
+		}
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException
+	{
+		if (failure_ != null)
+		{
+			throw new IOException("Failed writing the concepts", failure_);
+		}
+	}
+
+	private void fail(Exception e)
+	{
+		if (failure_ == null)
+		{
+			failure_ = e instanceof IOException ? (IOException)e : new IOException(e);
+		}
+		serializer_.interrupt();
+		writer_.interrupt();
+	}
+
+	private void serialize()
+	{
+		try
+		{
+			Buffer current = null;
+			while (true)
+			{
+				EConcept concept = queue_.take();
+				if (concept == FLUSH || concept == END)
+				{
+					if (current != null)
+					{
+						full_.put(current);
+						current = null;
+					}
+					full_.put(concept == FLUSH ? Buffer.FLUSH : Buffer.END);
+					if (concept == END)
+					{
+						return;
+					}
+					continue;
+				}
+				if (current == null)
+				{
+					current = free_.poll();
+					if (current == null)
+					{
+						long start = System.nanoTime();
+						current = free_.take();
+						bufferWaitNanos_ += System.nanoTime() - start;
+					}
+				}
+				concept.writeExternal(current.data_);
+				current.concepts_++;
+				if (current.size() >= bufferSize_)
+				{
+					full_.put(current);
+					current = null;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e);
+		}
+	}
+
+	private void writeBuffers()
+	{
+		try
+		{
+			while (true)
+			{
+				Buffer buffer = full_.take();
+				if (buffer == Buffer.FLUSH || buffer == Buffer.END)
+				{
+					flushed_.release();
+					if (buffer == Buffer.END)
+					{
+						return;
+					}
+					continue;
+				}
+				sink_.writeBlock(buffer.bytes(), buffer.size(), buffer.concepts_);
+				bytes_ += buffer.size();
+				buffer.reset();
+				buffer.concepts_ = 0;
+				free_.put(buffer);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e);
+		}
+	}
+
+	/**
+	 * A reusable serialization buffer - reset keeps the (grown) array.
+	 */
+	private static class Buffer extends ByteArrayOutputStream
+	{
+		private static final Buffer FLUSH = new Buffer(0);
+		private static final Buffer END = new Buffer(0);
+
+		private DataOutputStream data_ = new DataOutputStream(this);
+		private int concepts_ = 0;
+
+		private Buffer(int size)
+		{
+			//Leave room for the concept that takes it over the threshold
+			super(size + size / 4);
+		}
+
+		private byte[] bytes()
+		{
+			return buf;
+		}
+	}
+
+	/**
+	 * Writes the blocks straight to a stream
+	 */
+	private static class StreamSink implements BlockSink
+	{
+		private DataOutputStream out_;
+
+		private StreamSink(DataOutputStream out)
+		{
+			out_ = out;
+		}
+
+		@Override
+		public void writeBlock(byte[] data, int length, int concepts) throws IOException
+		{
+			out_.write(data, 0, length);
+		}
+	}
+}
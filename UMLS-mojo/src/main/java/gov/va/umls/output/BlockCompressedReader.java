@@ -0,0 +1,176 @@
+package gov.va.umls.output;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to the blocks of a file written by {@link BlockCompressedWriter} - each block can be read and decompressed on
+ * its own, and holds whole concepts, so a block can be handed straight to {@code new EConcept(DataInputStream)}.
+ *
+ * Not thread safe - open a reader per thread to read blocks in parallel.
+ */
+public class BlockCompressedReader
+{
+	private RandomAccessFile file_;
+	private long[] offsets_;
+	private int[] compressedLengths_;
+	private int[] uncompressedLengths_;
+	private long[] firstConcepts_;
+	private long conceptCount_;
+
+	public BlockCompressedReader(File f) throws IOException
+	{
+		file_ = new RandomAccessFile(f, "r");
+		if (file_.readInt() != BlockCompressedWriter.MAGIC)
+		{
+			throw new IOException(f.getName() + " is not a block compressed concept file");
+		}
+		if (file_.readByte() != BlockCompressedWriter.Codec.DEFLATE.getId())
+		{
+			throw new IOException(f.getName() + " uses an unsupported codec");
+		}
+		file_.seek(file_.length() - 16);
+		long indexOffset = file_.readLong();
+		int blocks = file_.readInt();
+		if (file_.readInt() != BlockCompressedWriter.INDEX_MAGIC)
+		{
+			throw new IOException(f.getName() + " has no block index - it wasn't finished");
+		}
+
+		offsets_ = new long[blocks];
+		compressedLengths_ = new int[blocks];
+		uncompressedLengths_ = new int[blocks];
+		firstConcepts_ = new long[blocks];
+		file_.seek(indexOffset);
+		for (int i = 0; i < blocks; i++)
+		{
+			offsets_[i] = file_.readLong();
+			compressedLengths_[i] = file_.readInt();
+			uncompressedLengths_[i] = file_.readInt();
+			firstConcepts_[i] = file_.readLong();
+		}
+		if (blocks > 0)
+		{
+			file_.seek(offsets_[blocks - 1] + 8);
+			conceptCount_ = firstConcepts_[blocks - 1] + file_.readInt();
+		}
+	}
+
+	public int getBlockCount()
+	{
+		return offsets_.length;
+	}
+
+	public long getConceptCount()
+	{
+		return conceptCount_;
+	}
+
+	/**
+	 * @return the block holding the concept (counting from 0, in the order they were written)
+	 */
+	public int findBlock(long concept)
+	{
+		if (concept < 0 || concept >= conceptCount_)
+		{
+			throw new IndexOutOfBoundsException("Concept " + concept + " of " + conceptCount_);
+		}
+		int low = 0;
+		int high = firstConcepts_.length - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (firstConcepts_[mid] <= concept)
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index of the first concept in the block
+	 */
+	public long getFirstConcept(int block)
+	{
+		return firstConcepts_[block];
+	}
+
+	/**
+	 * @return the decompressed bytes of the block - the serialized concepts
+	 */
+	public byte[] readBlock(int block) throws IOException
+	{
+		file_.seek(offsets_[block]);
+		int compressedLength = file_.readInt();
+		int uncompressedLength = file_.readInt();
+		file_.readInt();  //concepts
+		int crc = file_.readInt();
+		if (compressedLength != compressedLengths_[block] || uncompressedLength != uncompressedLengths_[block])
+		{
+			throw new IOException("Block " + block + " doesn't match the index");
+		}
+		byte[] compressed = new byte[compressedLength];
+		file_.readFully(compressed);
+
+		byte[] data = new byte[uncompressedLength];
+		Inflater inflater = new Inflater(true);
+		try
+		{
+			inflater.setInput(compressed);
+			int read = 0;
+			while (read < data.length)
+			{
+				int n = inflater.inflate(data, read, data.length - read);
+				if (n == 0 && (inflater.finished() || inflater.needsInput()))
+				{
+					break;
+				}
+				read += n;
+			}
+			if (read != data.length)
+			{
+				throw new IOException("Block " + block + " is truncated");
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("Block " + block + " is corrupt", e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+
+		CRC32 check = new CRC32();
+		check.update(data);
+		if ((int)check.getValue() != crc)
+		{
+			throw new IOException("Block " + block + " fails its checksum");
+		}
+		return data;
+	}
+
+	/**
+	 * @return a stream over the concepts of the block
+	 */
+	public DataInputStream openBlock(int block) throws IOException
+	{
+		return new DataInputStream(new ByteArrayInputStream(readBlock(block)));
+	}
+
+	public void close() throws IOException
+	{
+		file_.close();
+	}
+}
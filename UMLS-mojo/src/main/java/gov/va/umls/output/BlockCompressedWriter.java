@@ -0,0 +1,233 @@
+package gov.va.umls.output;
+
+import gov.va.umls.parallel.OrderedTaskSequencer;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes blocks of serialized concepts as independently compressed frames, followed by an index of the blocks - see
+ * {@link BlockCompressedReader}.
+ *
+ * The blocks are compressed on a pool of threads, and written out in the order they were handed in.
+ *
+ * Layout (big endian, as DataOutputStream writes it):
+ * <pre>
+ * header:  int MAGIC, byte codec
+ * frame:   int compressed length, int uncompressed length, int concept count, int CRC32 of the uncompressed bytes, compressed bytes
+ * index:   per block - long frame offset, int compressed length, int uncompressed length, long index of its first concept
+ * trailer: long index offset, int block count, int INDEX_MAGIC
+ * </pre>
+ */
+public class BlockCompressedWriter implements BlockSink
+{
+	public static final String FILE_NAME = "UMLS-concepts.jbinz";
+	public static final int MAGIC = 0x4A425A31;  //JBZ1
+	public static final int INDEX_MAGIC = 0x4A425A49;  //JBZI
+
+	/**
+	 * The compression of the frames - the id is stored in the header
+	 */
+	public enum Codec
+	{
+		DEFLATE(1);
+
+		private byte id_;
+
+		private Codec(int id)
+		{
+			id_ = (byte)id;
+		}
+
+		public byte getId()
+		{
+			return id_;
+		}
+
+		public static Codec parse(String name)
+		{
+			for (Codec c : values())
+			{
+				if (c.name().equalsIgnoreCase(name))
+				{
+					return c;
+				}
+			}
+			if ("lz4".equalsIgnoreCase(name))
+			{
+				throw new IllegalArgumentException("LZ4 would need a compression library the loader doesn't depend on - use deflate");
+			}
+			throw new IllegalArgumentException("Unknown block compression '" + name + "' - use deflate");
+		}
+	}
+
+	private DataOutputStream out_;
+	private long offset_;
+	private long concepts_ = 0;
+	private long uncompressedBytes_ = 0;
+	private OrderedTaskSequencer<Frame> compressors_;
+	private ArrayList<long[]> index_ = new ArrayList<>();
+
+	/**
+	 * @param threads - the number of blocks to compress at once
+	 */
+	public BlockCompressedWriter(File f, Codec codec, int threads) throws IOException
+	{
+		out_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1024 * 1024));
+		out_.writeInt(MAGIC);
+		out_.writeByte(codec.getId());
+		offset_ = 5;
+		compressors_ = new OrderedTaskSequencer<>("jbin-compress", threads, threads * 2, new OrderedTaskSequencer.Committer<Frame>()
+		{
+			@Override
+			public void commit(Frame frame) throws Exception
+			{
+				writeFrame(frame);
+			}
+		});
+	}
+
+	/**
+	 * Queue the block for compression.  Blocks (on the calling thread) while too many blocks are already being compressed.
+	 */
+	@Override
+	public void writeBlock(byte[] data, int length, int concepts) throws IOException
+	{
+		final byte[] copy = Arrays.copyOf(data, length);
+		final int conceptCount = concepts;
+		try
+		{
+			compressors_.submit(new Callable<Frame>()
+			{
+				@Override
+				public Frame call()
+				{
+					return compress(copy, conceptCount);
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new IOException("Failed compressing a block", e);
+		}
+	}
+
+	/**
+	 * Write out the blocks still being compressed, then the index, and close the file.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			compressors_.finish();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new IOException("Failed compressing a block", e);
+		}
+		long indexOffset = offset_;
+		for (long[] entry : index_)
+		{
+			out_.writeLong(entry[0]);
+			out_.writeInt((int)entry[1]);
+			out_.writeInt((int)entry[2]);
+			out_.writeLong(entry[3]);
+		}
+		out_.writeLong(indexOffset);
+		out_.writeInt(index_.size());
+		out_.writeInt(INDEX_MAGIC);
+		out_.close();
+	}
+
+	/**
+	 * Stop the compression threads, without writing anything further - for when the conversion fails.
+	 */
+	public void abort()
+	{
+		compressors_.shutdown();
+		try
+		{
+			out_.close();
+		}
+		catch (IOException e)
+		{
+			//already failing
+		}
+	}
+
+	public int getBlockCount()
+	{
+		return index_.size();
+	}
+
+	public long getUncompressedBytes()
+	{
+		return uncompressedBytes_;
+	}
+
+	public long getCompressedBytes()
+	{
+		return offset_;
+	}
+
+	private static Frame compress(byte[] data, int concepts)
+	{
+		Frame frame = new Frame();
+		frame.uncompressedLength_ = data.length;
+		frame.concepts_ = concepts;
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		frame.crc_ = (int)crc.getValue();
+
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+		byte[] buffer = new byte[64 * 1024];
+		while (!deflater.finished())
+		{
+			int n = deflater.deflate(buffer);
+			compressed.write(buffer, 0, n);
+		}
+		deflater.end();
+		frame.data_ = compressed.toByteArray();
+		return frame;
+	}
+
+	private void writeFrame(Frame frame) throws IOException
+	{
+		index_.add(new long[] {offset_, frame.data_.length, frame.uncompressedLength_, concepts_});
+		out_.writeInt(frame.data_.length);
+		out_.writeInt(frame.uncompressedLength_);
+		out_.writeInt(frame.concepts_);
+		out_.writeInt(frame.crc_);
+		out_.write(frame.data_);
+		offset_ += 16 + frame.data_.length;
+		concepts_ += frame.concepts_;
+		uncompressedBytes_ += frame.uncompressedLength_;
+	}
+
+	private static class Frame
+	{
+		private byte[] data_;
+		private int uncompressedLength_;
+		private int concepts_;
+		private int crc_;
+	}
+}
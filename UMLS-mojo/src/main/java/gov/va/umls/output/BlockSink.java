@@ -0,0 +1,16 @@
+package gov.va.umls.output;
+
+import java.io.IOException;
+
+/**
+ * Receives the serialized concepts from an {@link AsyncConceptWriter}, a block at a time.  A block always holds whole concepts.
+ */
+public interface BlockSink
+{
+	/**
+	 * @param data - the serialized concepts.  Only valid for the duration of the call - the array is reused.
+	 * @param length - the number of bytes of data
+	 * @param concepts - the number of concepts in the block
+	 */
+	public void writeBlock(byte[] data, int length, int concepts) throws IOException;
+}
@@ -0,0 +1,220 @@
+package gov.va.umls.output;
+
+import gov.va.oia.terminology.converters.sharedUtils.EConceptUtility;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.UUID;
+import org.ihtsdo.etypes.EConcept;
+
+/**
+ * Logs the refset memberships of the converted concepts to spill files, rather than adding them to the refset concepts as
+ * they are created - the 'all' refsets end up with millions of members, which would otherwise sit on the heap.
+ *
+ * Each refset gets its own file of member concept UUIDs, in the order they were logged.  {@link #attach(EConceptUtility)} hands
+ * them to the refset concepts as member lists that are read back from the files as they are iterated - so the base mojo writes
+ * each refset concept once, with all of its members, without holding them.  Not thread safe.
+ */
+public class RefsetMemberLog
+{
+	private static final String FILE_PREFIX = "refsetMembers-";
+
+	private File folder_;
+	private ArrayList<EConcept> refsets_ = new ArrayList<>();
+	private IdentityHashMap<EConcept, Integer> refsetIndex_ = new IdentityHashMap<>();
+	private ArrayList<DataOutputStream> outs_ = new ArrayList<>();
+	private ArrayList<Long> counts_ = new ArrayList<>();
+	private ArrayList<StreamedMembers> attached_ = new ArrayList<>();
+	private long count_ = 0;
+
+	/**
+	 * @param folder - where to create the log files.  Removed by {@link #close()}.
+	 */
+	public RefsetMemberLog(File folder)
+	{
+		folder_ = folder;
+	}
+
+	public void add(EConcept refset, UUID concept) throws IOException
+	{
+		if (outs_ == null)
+		{
+			throw new IllegalStateException("The log was already attached to its refsets");
+		}
+		Integer index = refsetIndex_.get(refset);
+		if (index == null)
+		{
+			index = refsets_.size();
+			refsets_.add(refset);
+			refsetIndex_.put(refset, index);
+			outs_.add(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file(index)), 64 * 1024)));
+			counts_.add(0L);
+		}
+		DataOutputStream out = outs_.get(index);
+		out.writeLong(concept.getMostSignificantBits());
+		out.writeLong(concept.getLeastSignificantBits());
+		counts_.set(index, counts_.get(index) + 1);
+		count_++;
+	}
+
+	/**
+	 * @return the number of memberships logged
+	 */
+	public long size()
+	{
+		return count_;
+	}
+
+	/**
+	 * @return the number of refsets with logged memberships
+	 */
+	public int getRefsetCount()
+	{
+		return refsets_.size();
+	}
+
+	/**
+	 * Set the members of each refset concept with logged memberships to the members it already had, followed by the logged ones -
+	 * created by eConcepts (as {@link EConceptUtility#addRefsetMember(EConcept, UUID, UUID, boolean, Long)} would) one at a
+	 * time, as the list is read.  Call just before the refset concepts are written, and {@link #close()} once they are.  Nothing
+	 * can be logged afterwards.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void attach(EConceptUtility eConcepts) throws IOException
+	{
+		for (DataOutputStream out : outs_)
+		{
+			out.close();
+		}
+		outs_ = null;
+		for (int i = 0; i < refsets_.size(); i++)
+		{
+			EConcept refset = refsets_.get(i);
+			StreamedMembers members = new StreamedMembers(eConcepts, refset, refset.getRefsetMembers(), file(i), counts_.get(i));
+			attached_.add(members);
+			refset.setRefsetMembers((List) members);
+		}
+	}
+
+	private File file(int index)
+	{
+		return new File(folder_, FILE_PREFIX + index + ".spill");
+	}
+
+	/**
+	 * Remove the log files - once the refsets are written, or when the conversion fails.
+	 */
+	public void close() throws IOException
+	{
+		if (outs_ != null)
+		{
+			for (DataOutputStream out : outs_)
+			{
+				out.close();
+			}
+			outs_ = null;
+		}
+		for (StreamedMembers members : attached_)
+		{
+			members.close();
+		}
+		for (int i = 0; i < refsets_.size(); i++)
+		{
+			File f = file(i);
+			if (f.exists() && !f.delete())
+			{
+				throw new IOException("Couldn't remove " + f.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * The existing members of a refset, followed by the members in its log file.  Reading through in order costs a single pass
+	 * over the file - going backwards reopens it.
+	 */
+	private static class StreamedMembers extends AbstractList<Object>
+	{
+		private EConceptUtility eConcepts_;
+		private EConcept scratch_;
+		private List<?> existing_;
+		private File file_;
+		private long count_;
+		private DataInputStream in_;
+		private long next_;
+
+		private StreamedMembers(EConceptUtility eConcepts, EConcept refset, List<?> existing, File file, long count)
+		{
+			eConcepts_ = eConcepts;
+			//Only ever holds the member being created
+			scratch_ = new EConcept();
+			scratch_.setPrimordialUuid(refset.getPrimordialUuid());
+			existing_ = existing == null ? new ArrayList<>() : new ArrayList<>(existing);
+			file_ = file;
+			count_ = count;
+		}
+
+		@Override
+		public Object get(int index)
+		{
+			if (index < existing_.size())
+			{
+				return existing_.get(index);
+			}
+			long logged = index - existing_.size();
+			if (index < 0 || logged >= count_)
+			{
+				throw new IndexOutOfBoundsException(index + " of " + size());
+			}
+			try
+			{
+				if (in_ == null || logged < next_)
+				{
+					close();
+					in_ = new DataInputStream(new BufferedInputStream(new FileInputStream(file_), 64 * 1024));
+					next_ = 0;
+				}
+				for (; next_ < logged; next_++)
+				{
+					in_.skipBytes(16);
+				}
+				UUID concept = new UUID(in_.readLong(), in_.readLong());
+				next_++;
+				eConcepts_.addRefsetMember(scratch_, concept, null, true, null);
+				return scratch_.getRefsetMembers().remove(0);
+			}
+			catch (EOFException e)
+			{
+				throw new RuntimeException("The refset member log " + file_.getAbsolutePath() + " is shorter than expected", e);
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException("Error reading the refset member log " + file_.getAbsolutePath(), e);
+			}
+		}
+
+		@Override
+		public int size()
+		{
+			return (int) (existing_.size() + count_);
+		}
+
+		private void close() throws IOException
+		{
+			if (in_ != null)
+			{
+				in_.close();
+				in_ = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package gov.va.umls.output;
+
+import gov.va.umls.parallel.NamedThreadFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.ihtsdo.etypes.EConcept;
+
+/**
+ * Writes the concepts of the CUI loop to a number of jbin shard files rather than the single jbin file - each CUI goes to the
+ * shard picked by the hash of the CUI, so all of the concepts of a CUI end up in the same shard.
+ *
+ * Each shard has its own writer thread (serializing the concepts, and computing the MD5 of the file as it goes), fed through
+ * a bounded queue - so the shards are written concurrently, and the caller only blocks when a shard falls behind.
+ *
+ * The manifest lists each file of the output, with its concept count, size and MD5 - the shards have no dependencies on
+ * each other, so they can be imported in parallel.
+ */
+public class ShardedConceptWriter
+{
+	public static final String MANIFEST_FILE_NAME = "umlsJbinManifest.txt";
+	public static final String SHARD_PREFIX = "UMLS-shard-";
+
+	private static final EConcept END = new EConcept();
+
+	private Shard[] shards_;
+
+	/**
+	 * @param folder - where to write the shard files
+	 * @param shards - the number of shard files
+	 */
+	public ShardedConceptWriter(File folder, int shards) throws IOException
+	{
+		shards_ = new Shard[shards];
+		NamedThreadFactory threads = new NamedThreadFactory("jbin-shard");
+		for (int i = 0; i < shards; i++)
+		{
+			shards_[i] = new Shard(new File(folder, String.format("%s%03d.jbin", SHARD_PREFIX, i)));
+			threads.newThread(shards_[i]).start();
+		}
+	}
+
+	/**
+	 * Queue a concept to be written to the shard for the CUI.  Concepts of the same CUI are written in the order they are queued.
+	 * The concept must not be changed once queued.
+	 */
+	public void write(String cui, EConcept concept) throws IOException
+	{
+		shards_[(cui.hashCode() & 0x7fffffff) % shards_.length].put(concept);
+	}
+
+	/**
+	 * Wait for everything queued to be written, and close the shard files.
+	 */
+	public void close() throws IOException
+	{
+		for (Shard shard : shards_)
+		{
+			shard.put(END);
+		}
+		for (Shard shard : shards_)
+		{
+			shard.await();
+		}
+	}
+
+	/**
+	 * Stop the writer threads, without waiting for the queued concepts - for when the conversion fails.
+	 */
+	public void abort()
+	{
+		for (Shard shard : shards_)
+		{
+			shard.abort();
+		}
+	}
+
+	/**
+	 * Write the manifest of the output - the files that weren't sharded (with an unknown concept count), then the shards.
+	 * Tab delimited: file name, concept count (or -1), size in bytes, MD5.
+	 */
+	public void writeManifest(File manifest, List<File> unsharded) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(manifest), "UTF-8"));
+		out.write("shards\t" + shards_.length + "\n");
+		for (File f : unsharded)
+		{
+			out.write(f.getName() + "\t-1\t" + f.length() + "\t" + md5(f) + "\n");
+		}
+		for (Shard shard : shards_)
+		{
+			out.write(shard.file_.getName() + "\t" + shard.concepts_ + "\t" + shard.counter_.count_ + "\t" + toHex(shard.digest_.digest()) + "\n");
+		}
+		out.close();
+	}
+
+	private static MessageDigest newMD5()
+	{
+		try
+		{
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String md5(File f) throws IOException
+	{
+		MessageDigest md = newMD5();
+		InputStream in = new BufferedInputStream(new FileInputStream(f), 1024 * 1024);
+		byte[] buffer = new byte[64 * 1024];
+		int read;
+		while ((read = in.read(buffer)) > 0)
+		{
+			md.update(buffer, 0, read);
+		}
+		in.close();
+		return toHex(md.digest());
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes)
+		{
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * One shard file, and the thread that writes it.
+	 */
+	private static class Shard implements Runnable
+	{
+		private File file_;
+		private BlockingQueue<EConcept> queue_ = new ArrayBlockingQueue<>(1024);
+		private MessageDigest digest_ = newMD5();
+		private CountingOutputStream counter_;
+		private DataOutputStream out_;
+		private long concepts_ = 0;
+		private volatile IOException failure_;
+		private volatile boolean done_ = false;
+		private Thread thread_;
+
+		private Shard(File file) throws IOException
+		{
+			file_ = file;
+			counter_ = new CountingOutputStream(new FileOutputStream(file));
+			out_ = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(counter_, digest_), 1024 * 1024));
+		}
+
+		private void put(EConcept concept) throws IOException
+		{
+			checkFailure();
+			try
+			{
+				//Keep checking, so a failed writer can't leave the caller blocked on a full queue
+				while (!queue_.offer(concept, 1, TimeUnit.SECONDS))
+				{
+					checkFailure();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				throw new IOException("Interrupted while queuing a concept for " + file_.getName(), e);
+			}
+		}
+
+		private void checkFailure() throws IOException
+		{
+			if (failure_ != null)
+			{
+				throw new IOException("Failed writing " + file_.getName(), failure_);
+			}
+		}
+
+		private synchronized void await() throws IOException
+		{
+			while (!done_)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException e)
+				{
+					throw new IOException("Interrupted while waiting for " + file_.getName(), e);
+				}
+			}
+			checkFailure();
+		}
+
+		private synchronized void abort()
+		{
+			if (thread_ != null)
+			{
+				thread_.interrupt();
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			synchronized (this)
+			{
+				thread_ = Thread.currentThread();
+			}
+			try
+			{
+				EConcept concept;
+				while ((concept = queue_.take()) != END)
+				{
+					concept.writeExternal(out_);
+					concepts_++;
+				}
+				out_.close();
+			}
+			catch (IOException e)
+			{
+				failure_ = e;
+			}
+			catch (InterruptedException e)
+			{
+				failure_ = new IOException("Interrupted", e);
+			}
+			catch (RuntimeException e)
+			{
+				failure_ = new IOException(e);
+			}
+			finally
+			{
+				if (failure_ != null)
+				{
+					try
+					{
+						out_.close();
+					}
+					catch (IOException e)
+					{
+						//already failed
+					}
+					queue_.clear();
+				}
+				synchronized (this)
+				{
+					done_ = true;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream
+	{
+		private long count_ = 0;
+
+		CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count_++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count_ += len;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package gov.va.umls.parallel;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads - so a failed build never hangs on its worker threads.
+ */
+public class NamedThreadFactory implements ThreadFactory
+{
+	private String name_;
+	private AtomicInteger count_ = new AtomicInteger();
+
+	public NamedThreadFactory(String name)
+	{
+		name_ = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable r)
+	{
+		Thread t = new Thread(r, name_ + "-" + count_.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+}
@@ -0,0 +1,99 @@
+package gov.va.umls.parallel;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs tasks on a pool of worker threads, but hands their results to a {@link Committer} on the submitting thread, 
+ * strictly in submission order.
+ * 
+ * The number of tasks in flight is bounded - {@link #submit(Callable)} commits completed results (blocking on the 
+ * oldest task if necessary) before it accepts more work than that.
+ */
+public class OrderedTaskSequencer<T>
+{
+	public interface Committer<T>
+	{
+		public void commit(T result) throws Exception;
+	}
+	
+	private ExecutorService pool_;
+	private LinkedList<Future<T>> inFlight_ = new LinkedList<>();
+	private int maxInFlight_;
+	private Committer<T> committer_;
+
+	/**
+	 * @param threads - the number of worker threads
+	 * @param maxInFlight - the maximum number of submitted, but not yet committed tasks
+	 */
+	public OrderedTaskSequencer(String name, int threads, int maxInFlight, Committer<T> committer)
+	{
+		pool_ = Executors.newFixedThreadPool(threads, new NamedThreadFactory(name));
+		maxInFlight_ = Math.max(1, maxInFlight);
+		committer_ = committer;
+	}
+
+	public void submit(Callable<T> task) throws Exception
+	{
+		inFlight_.add(pool_.submit(task));
+		//Opportunistically commit anything that is already done
+		while (inFlight_.size() > 0 && (inFlight_.size() > maxInFlight_ || inFlight_.getFirst().isDone()))
+		{
+			commitOldest();
+		}
+	}
+
+	/**
+	 * Wait for, and commit, everything that is still in flight, then stop the workers.
+	 */
+	public void finish() throws Exception
+	{
+		try
+		{
+			while (inFlight_.size() > 0)
+			{
+				commitOldest();
+			}
+		}
+		finally
+		{
+			shutdown();
+		}
+	}
+
+	/**
+	 * Stop the workers, without committing anything further.
+	 */
+	public void shutdown()
+	{
+		for (Future<T> f : inFlight_)
+		{
+			f.cancel(true);
+		}
+		inFlight_.clear();
+		pool_.shutdownNow();
+	}
+
+	private void commitOldest() throws Exception
+	{
+		Future<T> f = inFlight_.removeFirst();
+		T result;
+		try
+		{
+			result = f.get();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof Exception)
+			{
+				throw (Exception)e.getCause();
+			}
+			throw e;
+		}
+		committer_.commit(result);
+	}
+}
@@ -0,0 +1,79 @@
+package gov.va.umls.parallel;
+
+import gov.va.oia.terminology.converters.umlsUtils.RRFDatabaseHandle;
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.lookup.LookupQueries;
+import gov.va.umls.lookup.StatementLookup;
+import gov.va.umls.lookup.WindowPrefetchLookup;
+import gov.va.umls.report.StatementProfiler;
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * Gives each worker thread its own {@link CUILookup}, on its own connection to the staging database - so the workers 
+ * never share a connection or a prepared statement.  The connections are opened through {@link RRFDatabaseHandle}, with the 
+ * same settings and credentials as the main one.
+ */
+public class WorkerLookups extends ThreadLocal<CUILookup>
+{
+	private File dbFile_;
+	private LookupQueries queries_;
+	private boolean prefetch_;
+	private StatementProfiler profiler_;
+	private ArrayList<RRFDatabaseHandle> handles_ = new ArrayList<>();
+	private ArrayList<CUILookup> lookups_ = new ArrayList<>();
+
+	/**
+	 * @param dbFile - the staging database (as passed to {@link RRFDatabaseHandle#createOrOpenDatabase(File)})
+	 * @param prefetch - true to create {@link WindowPrefetchLookup}s, false for {@link StatementLookup}s
+	 * @param profiler - optional - profiles the statements of every worker when set
+	 */
+	public WorkerLookups(File dbFile, LookupQueries queries, boolean prefetch, StatementProfiler profiler)
+	{
+		dbFile_ = dbFile;
+		queries_ = queries;
+		prefetch_ = prefetch;
+		profiler_ = profiler;
+	}
+
+	@Override
+	protected CUILookup initialValue()
+	{
+		try
+		{
+			RRFDatabaseHandle handle = new RRFDatabaseHandle();
+			handle.createOrOpenDatabase(dbFile_);
+			CUILookup lookup = prefetch_ ? new WindowPrefetchLookup(handle.getConnection(), queries_, profiler_) 
+					: new StatementLookup(handle.getConnection(), queries_, profiler_);
+			synchronized (this)
+			{
+				handles_.add(handle);
+				lookups_.add(lookup);
+			}
+			return lookup;
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Couldn't open a worker connection to " + dbFile_.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Close all of the lookups (and connections) handed out to the workers.
+	 */
+	public synchronized void close() throws SQLException
+	{
+		for (CUILookup lookup : lookups_)
+		{
+			lookup.close();
+		}
+		for (RRFDatabaseHandle handle : handles_)
+		{
+			//Not shutdown() - that would close the database for everyone
+			handle.getConnection().close();
+		}
+		lookups_.clear();
+		handles_.clear();
+	}
+}
@@ -0,0 +1,189 @@
+package gov.va.umls.propertyTypes;
+
+import gov.va.oia.terminology.converters.sharedUtils.propertyTypes.PropertyType;
+import gov.va.umls.rrf.ValueDictionary;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * The attribute and id type UUIDs used for every atom and attribute row, resolved once - after init() has loaded the 
+ * metadata - instead of by name on each row.
+ * 
+ * The value sets of the dictionary encoded MRCONSO columns (SAB, TS, STT, SUPPRESS) are cached in arrays indexed by 
+ * dictionary code - sized to the dictionary, and grown as new codes show up.  A code is resolved through its property type the 
+ * first time it is seen - the race to fill (or grow) the array is harmless (a lost slot is just resolved again), so the lookups 
+ * are safe from any thread.
+ * 
+ * The values of the columns that are read as Strings (STYPE, and the SAB and SUPPRESS of the MRSAT and MRDEF rows) are 
+ * resolved into maps by name when the schema is built, and the SRL values into an array by level.  Only a value that wasn't 
+ * in the property type yet is looked up through it.
+ */
+public class AttributeSchema
+{
+	public final UUID lui, sui, stype, code, satui, sab, suppress, cvf, metaui, aui, ts, stt, ispref, saui, scui, sdui, srl;
+	public final UUID atuiId, cuiId, auiId;
+	
+	private ValueDictionary dictionary_;
+	private ValueSet sabs_, termStatus_, sttTypes_, suppress_;
+	private ValueMap sabNames_, suppressNames_, stypeNames_;
+	private PropertyType srls_;
+	private UUID[] srlByLevel_;
+
+	public AttributeSchema(PropertyType umlsAttributes, PropertyType ids, PropertyType sabs, PropertyType termStatus, PropertyType sttTypes, 
+			PropertyType suppress, PropertyType stypes, PropertyType srls, ValueDictionary dictionary)
+	{
+		lui = umlsAttributes.getProperty("LUI").getUUID();
+		sui = umlsAttributes.getProperty("SUI").getUUID();
+		stype = umlsAttributes.getProperty("STYPE").getUUID();
+		code = umlsAttributes.getProperty("CODE").getUUID();
+		satui = umlsAttributes.getProperty("SATUI").getUUID();
+		sab = umlsAttributes.getProperty("SAB").getUUID();
+		this.suppress = umlsAttributes.getProperty("SUPPRESS").getUUID();
+		cvf = umlsAttributes.getProperty("CVF").getUUID();
+		metaui = umlsAttributes.getProperty("METAUI").getUUID();
+		aui = umlsAttributes.getProperty("AUI").getUUID();
+		ts = umlsAttributes.getProperty("TS").getUUID();
+		stt = umlsAttributes.getProperty("STT").getUUID();
+		ispref = umlsAttributes.getProperty("ISPREF").getUUID();
+		saui = umlsAttributes.getProperty("SAUI").getUUID();
+		scui = umlsAttributes.getProperty("SCUI").getUUID();
+		sdui = umlsAttributes.getProperty("SDUI").getUUID();
+		srl = umlsAttributes.getProperty("SRL").getUUID();
+		
+		atuiId = ids.getProperty("ATUI").getUUID();
+		cuiId = ids.getProperty("CUI").getUUID();
+		auiId = ids.getProperty("AUI").getUUID();
+		
+		dictionary_ = dictionary;
+		sabs_ = new ValueSet(sabs);
+		termStatus_ = new ValueSet(termStatus);
+		sttTypes_ = new ValueSet(sttTypes);
+		suppress_ = new ValueSet(suppress);
+		
+		sabNames_ = new ValueMap(sabs);
+		suppressNames_ = new ValueMap(suppress);
+		stypeNames_ = new ValueMap(stypes);
+		srls_ = srls;
+		srlByLevel_ = new UUID[10];
+		for (String name : srls.getPropertyNames())
+		{
+			try
+			{
+				int level = Integer.parseInt(name);
+				if (level >= 0 && level < srlByLevel_.length)
+				{
+					srlByLevel_[level] = srls.getProperty(name).getUUID();
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				//not a level
+			}
+		}
+	}
+
+	/**
+	 * @return the UUID of the SAB value for a dictionary code
+	 */
+	public UUID sabValue(short code)
+	{
+		return sabs_.get(code);
+	}
+
+	public UUID termStatusValue(short code)
+	{
+		return termStatus_.get(code);
+	}
+
+	public UUID sttValue(short code)
+	{
+		return sttTypes_.get(code);
+	}
+
+	public UUID suppressValue(short code)
+	{
+		return suppress_.get(code);
+	}
+
+	/**
+	 * @return the UUID of a SAB value read as a String
+	 */
+	public UUID sabValue(String sab)
+	{
+		return sabNames_.get(sab);
+	}
+
+	public UUID suppressValue(String suppress)
+	{
+		return suppressNames_.get(suppress);
+	}
+
+	public UUID stypeValue(String stype)
+	{
+		return stypeNames_.get(stype);
+	}
+
+	/**
+	 * @return the UUID of a source restriction level
+	 */
+	public UUID srlValue(int srl)
+	{
+		UUID result = srl >= 0 && srl < srlByLevel_.length ? srlByLevel_[srl] : null;
+		return result == null ? srls_.getProperty(Integer.toString(srl)).getUUID() : result;
+	}
+
+	/**
+	 * The UUIDs of the values of a property type by name, as of when the schema was built.  Never changed, so it can be read 
+	 * from any thread.
+	 */
+	private static class ValueMap
+	{
+		private PropertyType propertyType_;
+		private HashMap<String, UUID> byName_ = new HashMap<>();
+
+		ValueMap(PropertyType propertyType)
+		{
+			propertyType_ = propertyType;
+			for (String name : propertyType.getPropertyNames())
+			{
+				byName_.put(name, propertyType.getProperty(name).getUUID());
+			}
+		}
+
+		UUID get(String name)
+		{
+			UUID result = byName_.get(name);
+			return result == null ? propertyType_.getProperty(name).getUUID() : result;
+		}
+	}
+
+	private class ValueSet
+	{
+		private PropertyType propertyType_;
+		private volatile UUID[] byCode_;
+
+		ValueSet(PropertyType propertyType)
+		{
+			propertyType_ = propertyType;
+			byCode_ = new UUID[Math.max(16, dictionary_.size())];
+		}
+
+		UUID get(short code)
+		{
+			UUID[] byCode = byCode_;
+			UUID result = code < byCode.length ? byCode[code] : null;
+			if (result == null)
+			{
+				result = propertyType_.getProperty(dictionary_.decode(code)).getUUID();
+				if (code >= byCode.length)
+				{
+					byCode = Arrays.copyOf(byCode, Math.max(code + 1, byCode.length * 2));
+				}
+				byCode[code] = result;
+				byCode_ = byCode;
+			}
+			return result;
+		}
+	}
+}
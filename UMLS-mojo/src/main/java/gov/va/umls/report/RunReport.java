@@ -0,0 +1,409 @@
+package gov.va.umls.report;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+
+/**
+ * Timings for each phase of a conversion, written out as JSON alongside the jbin file - so runs can be compared across
+ * releases and hardware.
+ *
+ * Phases run one after the other on the main thread, and record wall time, process CPU time (all threads), GC time and the
+ * peak heap (the sum of the peaks of the heap memory pools) over the phase.  A phase can also have steps - the table loads
+ * and index builds of the staging phase - which may run concurrently, on any thread, and record their wall time and the
+ * CPU time of their own thread.
+ */
+public class RunReport
+{
+	public static final String FILE_NAME = "umlsConversionReport.json";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final double NANOS = 1000000000.0;
+	private static final double MB = 1024.0 * 1024.0;
+
+	private long startTime_ = System.currentTimeMillis();
+	private long startNanos_ = System.nanoTime();
+	private LinkedHashMap<String, Object> settings_ = new LinkedHashMap<>();
+	private ArrayList<Phase> phases_ = new ArrayList<>();
+
+	/**
+	 * Record a setting of the run (a configuration value, a version) - a String, Number, Boolean or List of those.
+	 */
+	public void setting(String name, Object value)
+	{
+		settings_.put(name, value);
+	}
+
+	/**
+	 * Start timing a phase.  Any phase still running is ended first.
+	 */
+	public Phase start(String name)
+	{
+		if (phases_.size() > 0 && !phases_.get(phases_.size() - 1).ended_)
+		{
+			phases_.get(phases_.size() - 1).end();
+		}
+		Phase phase = new Phase(name);
+		phases_.add(phase);
+		return phase;
+	}
+
+	public void write(File f, boolean completed) throws IOException
+	{
+		if (phases_.size() > 0 && !phases_.get(phases_.size() - 1).ended_)
+		{
+			phases_.get(phases_.size() - 1).end();
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		field(json, 1, "started", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date(startTime_))).append(",\n");
+		field(json, 1, "completed", completed).append(",\n");
+		field(json, 1, "wallSeconds", (System.nanoTime() - startNanos_) / NANOS).append(",\n");
+		indent(json, 1).append("\"environment\": {\n");
+		field(json, 2, "javaVersion", System.getProperty("java.version")).append(",\n");
+		field(json, 2, "os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch")).append(",\n");
+		field(json, 2, "processors", runtime.availableProcessors()).append(",\n");
+		field(json, 2, "maxHeapMB", runtime.maxMemory() / MB).append("\n");
+		indent(json, 1).append("},\n");
+		indent(json, 1).append("\"settings\": {");
+		String separator = "\n";
+		for (Entry<String, Object> setting : settings_.entrySet())
+		{
+			json.append(separator);
+			field(json, 2, setting.getKey(), setting.getValue());
+			separator = ",\n";
+		}
+		json.append("\n");
+		indent(json, 1).append("},\n");
+		indent(json, 1).append("\"phases\": [");
+		separator = "\n";
+		for (Phase phase : phases_)
+		{
+			json.append(separator);
+			phase.toJSON(json, 2);
+			separator = ",\n";
+		}
+		json.append("\n");
+		indent(json, 1).append("]\n");
+		json.append("}\n");
+
+		Writer w = new OutputStreamWriter(new FileOutputStream(f), UTF8);
+		w.write(json.toString());
+		w.close();
+	}
+
+	/**
+	 * One phase of the run.  Not thread safe, apart from the steps.
+	 */
+	public static class Phase
+	{
+		private String name_;
+		private long startNanos_, wallNanos_;
+		private long startCpu_, cpuNanos_ = -1;
+		private long startGcMillis_, gcMillis_;
+		private long startGcCount_, gcCount_;
+		private long peakHeap_;
+		private long rows_ = -1;
+		private boolean ended_ = false;
+		private List<Step> steps_ = new ArrayList<>();
+		private LinkedHashMap<String, Object> metrics_ = new LinkedHashMap<>();
+
+		private Phase(String name)
+		{
+			name_ = name;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			{
+				if (pool.getType() == MemoryType.HEAP && pool.isValid())
+				{
+					pool.resetPeakUsage();
+				}
+			}
+			startGcMillis_ = gcMillis();
+			startGcCount_ = gcCount();
+			startCpu_ = processCpuNanos();
+			startNanos_ = System.nanoTime();
+		}
+
+		/**
+		 * Start timing a step of this phase, on the current thread.
+		 * @param kind - table, index, etc
+		 */
+		public Step startStep(String kind, String name)
+		{
+			Step step = new Step(kind, name);
+			synchronized (steps_)
+			{
+				steps_.add(step);
+			}
+			return step;
+		}
+
+		/**
+		 * Record another measurement of the phase - a String, Number or Boolean.
+		 */
+		public void metric(String name, Object value)
+		{
+			metrics_.put(name, value);
+		}
+
+		/**
+		 * @param rows - the number of rows (CUIs, concepts) the phase processed, for the throughput
+		 */
+		public void end(long rows)
+		{
+			rows_ = rows;
+			end();
+		}
+
+		public void end()
+		{
+			wallNanos_ = System.nanoTime() - startNanos_;
+			long cpu = processCpuNanos();
+			cpuNanos_ = cpu < 0 || startCpu_ < 0 ? -1 : cpu - startCpu_;
+			gcMillis_ = gcMillis() - startGcMillis_;
+			gcCount_ = gcCount() - startGcCount_;
+			peakHeap_ = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			{
+				if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.getPeakUsage() != null)
+				{
+					peakHeap_ += pool.getPeakUsage().getUsed();
+				}
+			}
+			ended_ = true;
+			ConsoleUtil.println(String.format(Locale.US, "Phase %s: %.1f seconds%s, %.1f seconds GC, peak heap %.0f MB", name_,
+					wallNanos_ / NANOS, rows_ >= 0 ? ", " + rows_ + " rows" : "", gcMillis_ / 1000.0, peakHeap_ / MB));
+		}
+
+		private void toJSON(StringBuilder json, int depth)
+		{
+			indent(json, depth).append("{\n");
+			field(json, depth + 1, "name", name_).append(",\n");
+			field(json, depth + 1, "wallSeconds", wallNanos_ / NANOS).append(",\n");
+			if (cpuNanos_ >= 0)
+			{
+				field(json, depth + 1, "cpuSeconds", cpuNanos_ / NANOS).append(",\n");
+			}
+			if (rows_ >= 0)
+			{
+				field(json, depth + 1, "rows", rows_).append(",\n");
+				field(json, depth + 1, "rowsPerSecond", wallNanos_ == 0 ? 0.0 : rows_ / (wallNanos_ / NANOS)).append(",\n");
+			}
+			field(json, depth + 1, "gcSeconds", gcMillis_ / 1000.0).append(",\n");
+			field(json, depth + 1, "gcCount", gcCount_).append(",\n");
+			field(json, depth + 1, "peakHeapMB", peakHeap_ / MB);
+			for (Entry<String, Object> metric : metrics_.entrySet())
+			{
+				json.append(",\n");
+				field(json, depth + 1, metric.getKey(), metric.getValue());
+			}
+			synchronized (steps_)
+			{
+				if (steps_.size() > 0)
+				{
+					json.append(",\n");
+					indent(json, depth + 1).append("\"steps\": [");
+					String separator = "\n";
+					for (Step step : steps_)
+					{
+						json.append(separator);
+						step.toJSON(json, depth + 2);
+						separator = ",\n";
+					}
+					json.append("\n");
+					indent(json, depth + 1).append("]");
+				}
+			}
+			json.append("\n");
+			indent(json, depth).append("}");
+		}
+	}
+
+	/**
+	 * A step within a phase - ended on the thread that started it.
+	 */
+	public static class Step
+	{
+		private String kind_, name_;
+		private long startNanos_, wallNanos_ = -1;
+		private long startCpu_, cpuNanos_ = -1;
+		private long rows_ = -1;
+
+		private Step(String kind, String name)
+		{
+			kind_ = kind;
+			name_ = name;
+			startCpu_ = threadCpuNanos();
+			startNanos_ = System.nanoTime();
+		}
+
+		/**
+		 * @param rows - the number of rows processed, or -1 if not applicable
+		 */
+		public void end(long rows)
+		{
+			wallNanos_ = System.nanoTime() - startNanos_;
+			long cpu = threadCpuNanos();
+			cpuNanos_ = cpu < 0 || startCpu_ < 0 ? -1 : cpu - startCpu_;
+			rows_ = rows;
+		}
+
+		private void toJSON(StringBuilder json, int depth)
+		{
+			indent(json, depth).append("{");
+			json.append("\"kind\": ").append(quote(kind_));
+			json.append(", \"name\": ").append(quote(name_));
+			if (wallNanos_ < 0)
+			{
+				json.append(", \"completed\": false}");
+				return;
+			}
+			json.append(", \"wallSeconds\": ").append(number(wallNanos_ / NANOS));
+			if (cpuNanos_ >= 0)
+			{
+				json.append(", \"cpuSeconds\": ").append(number(cpuNanos_ / NANOS));
+			}
+			if (rows_ >= 0)
+			{
+				json.append(", \"rows\": ").append(rows_);
+				json.append(", \"rowsPerSecond\": ").append(number(wallNanos_ == 0 ? 0.0 : rows_ / (wallNanos_ / NANOS)));
+			}
+			json.append("}");
+		}
+	}
+
+	private static long processCpuNanos()
+	{
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean)
+		{
+			return ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+		}
+		return -1;
+	}
+
+	private static long threadCpuNanos()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long gcMillis()
+	{
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			total += Math.max(0, gc.getCollectionTime());
+		}
+		return total;
+	}
+
+	private static long gcCount()
+	{
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			total += Math.max(0, gc.getCollectionCount());
+		}
+		return total;
+	}
+
+	private static StringBuilder indent(StringBuilder json, int depth)
+	{
+		for (int i = 0; i < depth; i++)
+		{
+			json.append("  ");
+		}
+		return json;
+	}
+
+	private static StringBuilder field(StringBuilder json, int depth, String name, Object value)
+	{
+		indent(json, depth).append(quote(name)).append(": ");
+		value(json, value);
+		return json;
+	}
+
+	private static void value(StringBuilder json, Object value)
+	{
+		if (value == null)
+		{
+			json.append("null");
+		}
+		else if (value instanceof Boolean || value instanceof Integer || value instanceof Long)
+		{
+			json.append(value);
+		}
+		else if (value instanceof Number)
+		{
+			json.append(number(((Number)value).doubleValue()));
+		}
+		else if (value instanceof List)
+		{
+			json.append("[");
+			String separator = "";
+			for (Object o : (List<?>)value)
+			{
+				json.append(separator);
+				value(json, o);
+				separator = ", ";
+			}
+			json.append("]");
+		}
+		else
+		{
+			json.append(quote(value.toString()));
+		}
+	}
+
+	static String number(double d)
+	{
+		return Double.isNaN(d) || Double.isInfinite(d) ? "null" : String.format(Locale.US, "%.3f", d);
+	}
+
+	static String quote(String s)
+	{
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch (c)
+			{
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if (c < 0x20)
+					{
+						sb.append(String.format("\\u%04x", (int)c));
+					}
+					else
+					{
+						sb.append(c);
+					}
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
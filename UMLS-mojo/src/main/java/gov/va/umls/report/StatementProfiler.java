@@ -0,0 +1,353 @@
+package gov.va.umls.report;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in profiling of the prepared statements run against the staging database.
+ *
+ * Statements prepared through {@link #prepare(Connection, String, String)} are wrapped so that each execution is counted and
+ * timed (into a latency histogram), and the rows read from its results are counted, along with the time spent reading them.
+ * Statements prepared under the same name - the same query on each worker connection - share their statistics.
+ *
+ * The H2 EXPLAIN plan of each query is captured up front by {@link #capturePlan(Connection, String, String, String...)}, with
+ * real values bound, and the statement is flagged if the plan scans a table rather than using one of the indexes.
+ *
+ * The wrappers are reflection proxies, which adds some overhead to every call on the statement and its result sets - so the
+ * totals are a little high, but the relative cost of each statement is what matters.
+ */
+public class StatementProfiler
+{
+	public static final String FILE_NAME = "umlsStatementProfile.json";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final double NANOS = 1000000000.0;
+	private static final Pattern INDEX = Pattern.compile("PUBLIC\\.(\\w+_INDEX)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern TABLE_SCAN = Pattern.compile("PUBLIC\\.(\\w+)\\.tableScan", Pattern.CASE_INSENSITIVE);
+
+	private LinkedHashMap<String, Stats> stats_ = new LinkedHashMap<>();
+
+	/**
+	 * Capture the plan H2 chooses for the named statement, with the parameters bound - call once the tables and their indexes 
+	 * are in place, and before the statement is prepared.
+	 */
+	public void capturePlan(Connection connection, String name, String sql, String... parameters)
+	{
+		getStats(name, sql).explain(connection, parameters);
+	}
+
+	/**
+	 * Prepare a statement that records its executions under the name.
+	 */
+	public PreparedStatement prepare(Connection connection, String name, String sql) throws SQLException
+	{
+		Stats stats = getStats(name, sql);
+		PreparedStatement ps = connection.prepareStatement(sql);
+		return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] {PreparedStatement.class},
+				new StatementHandler(ps, stats));
+	}
+
+	private Stats getStats(String name, String sql)
+	{
+		synchronized (stats_)
+		{
+			Stats stats = stats_.get(name);
+			if (stats == null)
+			{
+				stats = new Stats(name, sql);
+				stats_.put(name, stats);
+			}
+			return stats;
+		}
+	}
+
+	/**
+	 * Print a line for each statement, slowest first, and write the full statistics and plans as JSON.
+	 */
+	public void write(File f) throws IOException
+	{
+		ArrayList<Stats> all;
+		synchronized (stats_)
+		{
+			all = new ArrayList<>(stats_.values());
+		}
+
+		TreeSet<Stats> slowestFirst = new TreeSet<>(all);
+		ConsoleUtil.println("Statement profile (execute + read seconds, calls, rows, p50 / p99 / max ms):");
+		for (Stats stats : slowestFirst)
+		{
+			ConsoleUtil.println(stats.summary());
+			if (stats.tableScans_.size() > 0)
+			{
+				ConsoleUtil.printErrorln("Statement " + stats.name_ + " scans " + stats.tableScans_ + " rather than using an index");
+			}
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"statements\": [");
+		String separator = "\n";
+		for (Stats stats : slowestFirst)
+		{
+			json.append(separator);
+			stats.toJSON(json);
+			separator = ",\n";
+		}
+		json.append("\n  ]\n}\n");
+
+		Writer w = new OutputStreamWriter(new FileOutputStream(f), UTF8);
+		w.write(json.toString());
+		w.close();
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable
+	{
+		try
+		{
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Times the execute calls, and wraps the result sets they return.
+	 */
+	private static class StatementHandler implements InvocationHandler
+	{
+		private PreparedStatement ps_;
+		private Stats stats_;
+
+		private StatementHandler(PreparedStatement ps, Stats stats)
+		{
+			ps_ = ps;
+			stats_ = stats;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			if (!method.getName().startsWith("execute"))
+			{
+				return StatementProfiler.invoke(ps_, method, args);
+			}
+			long start = System.nanoTime();
+			Object result = StatementProfiler.invoke(ps_, method, args);
+			stats_.executed(System.nanoTime() - start);
+			if (result instanceof ResultSet)
+			{
+				return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+						new ResultSetHandler((ResultSet)result, stats_));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Counts the rows read, and the time spent in next().
+	 */
+	private static class ResultSetHandler implements InvocationHandler
+	{
+		private ResultSet rs_;
+		private Stats stats_;
+
+		private ResultSetHandler(ResultSet rs, Stats stats)
+		{
+			rs_ = rs;
+			stats_ = stats;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			if (!method.getName().equals("next"))
+			{
+				return StatementProfiler.invoke(rs_, method, args);
+			}
+			long start = System.nanoTime();
+			Object result = StatementProfiler.invoke(rs_, method, args);
+			stats_.read(System.nanoTime() - start, ((Boolean)result).booleanValue());
+			return result;
+		}
+	}
+
+	/**
+	 * The statistics for one named statement.  The latency histogram has power of 2 buckets, in microseconds.
+	 */
+	private static class Stats implements Comparable<Stats>
+	{
+		private String name_, sql_;
+		private String plan_;
+		private TreeSet<String> indexes_ = new TreeSet<>();
+		private TreeSet<String> tableScans_ = new TreeSet<>();
+		private long calls_, rows_;
+		private long executeNanos_, readNanos_, maxNanos_;
+		private long[] histogram_ = new long[40];
+
+		private Stats(String name, String sql)
+		{
+			name_ = name;
+			sql_ = sql;
+		}
+
+		private synchronized void explain(Connection connection, String[] parameters)
+		{
+			indexes_.clear();
+			tableScans_.clear();
+			try
+			{
+				PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql_);
+				for (int i = 0; i < parameters.length; i++)
+				{
+					ps.setString(i + 1, parameters[i]);
+				}
+				ResultSet rs = ps.executeQuery();
+				StringBuilder plan = new StringBuilder();
+				while (rs.next())
+				{
+					plan.append(rs.getString(1));
+				}
+				rs.close();
+				ps.close();
+				plan_ = plan.toString();
+			}
+			catch (SQLException e)
+			{
+				plan_ = "EXPLAIN failed: " + e.getMessage();
+				return;
+			}
+
+			Matcher m = INDEX.matcher(plan_);
+			while (m.find())
+			{
+				indexes_.add(m.group(1).toUpperCase());
+			}
+			m = TABLE_SCAN.matcher(plan_);
+			while (m.find())
+			{
+				tableScans_.add(m.group(1).toUpperCase());
+			}
+		}
+
+		private synchronized void executed(long nanos)
+		{
+			calls_++;
+			executeNanos_ += nanos;
+			maxNanos_ = Math.max(maxNanos_, nanos);
+			long micros = nanos / 1000;
+			histogram_[Math.min(histogram_.length - 1, 64 - Long.numberOfLeadingZeros(micros))]++;
+		}
+
+		private synchronized void read(long nanos, boolean gotRow)
+		{
+			readNanos_ += nanos;
+			if (gotRow)
+			{
+				rows_++;
+			}
+		}
+
+		/**
+		 * @return the upper bound (in ms) of the histogram bucket the percentile falls in
+		 */
+		private synchronized double percentile(double p)
+		{
+			long target = (long)Math.ceil(calls_ * p);
+			long seen = 0;
+			for (int i = 0; i < histogram_.length; i++)
+			{
+				seen += histogram_[i];
+				if (seen >= Math.max(1, target))
+				{
+					return (1L << i) / 1000.0;
+				}
+			}
+			return 0;
+		}
+
+		private synchronized long totalNanos()
+		{
+			return executeNanos_ + readNanos_;
+		}
+
+		private synchronized String summary()
+		{
+			return String.format(Locale.US, "  %-24s %9.2f + %9.2f s %10d calls %12d rows %8.3f / %8.3f / %8.3f ms%s", name_,
+					executeNanos_ / NANOS, readNanos_ / NANOS, calls_, rows_, percentile(0.5), percentile(0.99), maxNanos_ / 1000000.0,
+					tableScans_.size() > 0 ? "  TABLE SCAN" : "");
+		}
+
+		private synchronized void toJSON(StringBuilder json)
+		{
+			json.append("    {\n");
+			json.append("      \"name\": ").append(RunReport.quote(name_)).append(",\n");
+			json.append("      \"sql\": ").append(RunReport.quote(sql_)).append(",\n");
+			json.append("      \"plan\": ").append(RunReport.quote(plan_ == null ? "" : plan_)).append(",\n");
+			json.append("      \"indexes\": ").append(list(indexes_)).append(",\n");
+			json.append("      \"tableScans\": ").append(list(tableScans_)).append(",\n");
+			json.append("      \"calls\": ").append(calls_).append(",\n");
+			json.append("      \"rows\": ").append(rows_).append(",\n");
+			json.append("      \"executeSeconds\": ").append(RunReport.number(executeNanos_ / NANOS)).append(",\n");
+			json.append("      \"readSeconds\": ").append(RunReport.number(readNanos_ / NANOS)).append(",\n");
+			json.append("      \"meanMs\": ").append(RunReport.number(calls_ == 0 ? 0.0 : executeNanos_ / 1000000.0 / calls_)).append(",\n");
+			json.append("      \"p50Ms\": ").append(RunReport.number(percentile(0.5))).append(",\n");
+			json.append("      \"p90Ms\": ").append(RunReport.number(percentile(0.9))).append(",\n");
+			json.append("      \"p99Ms\": ").append(RunReport.number(percentile(0.99))).append(",\n");
+			json.append("      \"maxMs\": ").append(RunReport.number(maxNanos_ / 1000000.0)).append(",\n");
+			//bucket upper bound in microseconds -> executions
+			json.append("      \"histogramMicros\": {");
+			String separator = "";
+			for (int i = 0; i < histogram_.length; i++)
+			{
+				if (histogram_[i] > 0)
+				{
+					json.append(separator).append("\"").append(1L << i).append("\": ").append(histogram_[i]);
+					separator = ", ";
+				}
+			}
+			json.append("}\n    }");
+		}
+
+		private static String list(TreeSet<String> items)
+		{
+			StringBuilder sb = new StringBuilder("[");
+			String separator = "";
+			for (String s : items)
+			{
+				sb.append(separator).append(RunReport.quote(s));
+				separator = ", ";
+			}
+			return sb.append("]").toString();
+		}
+
+		/**
+		 * Slowest (execute + read) first
+		 */
+		@Override
+		public int compareTo(Stats o)
+		{
+			int result = Long.compare(o.totalNanos(), totalNanos());
+			return result != 0 ? result : name_.compareTo(o.name_);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package gov.va.umls.rrf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashSet;
+
+/**
+ * A compact set of UMLS identifiers (CUIs, AUIs) - the usual form of a prefix letter followed by digits is kept as a bit 
+ * in a bitmap, indexed by the number (with a bitmap per digit count, as the ids are zero padded).  Anything else falls back 
+ * to a set of Strings.
+ * 
+ * Membership can be tested straight from the raw bytes of a RRF field, without building a String.
+ */
+public class IdBitmap
+{
+	private char prefix_;
+	private BitSet[] bits_ = new BitSet[10];  //by digit count
+	private HashSet<String> others_ = new HashSet<>();
+
+	/**
+	 * @param prefix - the leading letter of the ids - 'C' for CUIs, 'A' for AUIs
+	 */
+	public IdBitmap(char prefix)
+	{
+		prefix_ = prefix;
+	}
+
+	public void add(String id)
+	{
+		if (id == null)
+		{
+			return;
+		}
+		int number = number(id);
+		if (number >= 0)
+		{
+			int digits = id.length() - 1;
+			if (bits_[digits] == null)
+			{
+				bits_[digits] = new BitSet();
+			}
+			bits_[digits].set(number);
+		}
+		else
+		{
+			others_.add(id);
+		}
+	}
+
+	public boolean contains(String id)
+	{
+		int number = number(id);
+		return number >= 0 ? get(id.length() - 1, number) : others_.contains(id);
+	}
+
+	/**
+	 * Test an id held as (ASCII / UTF-8) bytes in a buffer
+	 */
+	public boolean contains(ByteBuffer buffer, int start, int length)
+	{
+		if (length > 1 && length <= 10 && buffer.get(start) == prefix_)
+		{
+			long number = 0;
+			int i = 1;
+			for (; i < length; i++)
+			{
+				byte b = buffer.get(start + i);
+				if (b < '0' || b > '9')
+				{
+					break;
+				}
+				number = number * 10 + (b - '0');
+			}
+			if (i == length && number <= Integer.MAX_VALUE)
+			{
+				return get(length - 1, (int)number);
+			}
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			bytes[i] = buffer.get(start + i);
+		}
+		return others_.contains(new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	private boolean get(int digits, int number)
+	{
+		return bits_[digits] != null && bits_[digits].get(number);
+	}
+
+	/**
+	 * @return the number of the id, or -1 if the id isn't in the prefix + digits form
+	 */
+	private int number(String id)
+	{
+		if (id.length() < 2 || id.length() > 10 || id.charAt(0) != prefix_)
+		{
+			return -1;
+		}
+		long number = 0;
+		for (int i = 1; i < id.length(); i++)
+		{
+			char c = id.charAt(i);
+			if (c < '0' || c > '9')
+			{
+				return -1;
+			}
+			number = number * 10 + (c - '0');
+		}
+		return number <= Integer.MAX_VALUE ? (int)number : -1;
+	}
+
+	public int size()
+	{
+		int size = others_.size();
+		for (BitSet b : bits_)
+		{
+			size += b == null ? 0 : b.cardinality();
+		}
+		return size;
+	}
+}
@@ -3,30 +3,176 @@ package gov.va.umls.rrf;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+/**
+ * A MRCONSO row.  The high cardinality columns are plain fields - the low cardinality columns (LAT, TS, STT, ISPREF, SAB, 
+ * TTY, SUPPRESS) are held as codes into a dictionary shared by all rows, and the integer columns as primitives.
+ */
 public class MRCONSO
 {
-	public String cui, lat, ts, lui, stt, sui, ispref, aui, saui, scui, sdui, sab, tty, code, str, suppress;
-	public Integer srl, cvf;
-
-	public MRCONSO(ResultSet rs) throws SQLException
-	{
-		cui = rs.getString("CUI");
-		lat = rs.getString("LAT");
-		ts = rs.getString("TS");
-		lui = rs.getString("LUI");
-		stt = rs.getString("STT");
-		sui = rs.getString("SUI");
-		ispref = rs.getString("ISPREF");
-		aui = rs.getString("AUI");
-		saui = rs.getString("SAUI");
-		scui = rs.getString("SCUI");
-		sdui = rs.getString("SDUI");
-		sab = rs.getString("SAB");
-		tty = rs.getString("TTY");
-		code = rs.getString("CODE");
-		str = rs.getString("STR");
-		srl = rs.getObject("SRL") == null ? null : rs.getInt("SRL");
-		suppress = rs.getString("SUPPRESS");
-		cvf = rs.getObject("CVF") == null ? null : rs.getInt("CVF");
+	/**
+	 * The MRCONSO columns, in the order expected by {@link #MRCONSO(String[])}
+	 */
+	public static final String[] COLUMNS = new String[] {"CUI", "LAT", "TS", "LUI", "STT", "SUI", "ISPREF", "AUI", "SAUI", "SCUI", "SDUI", 
+		"SAB", "TTY", "CODE", "STR", "SRL", "SUPPRESS", "CVF"};
+	
+	/**
+	 * The value of {@link #getSrl()} and {@link #getCvf()} when the column is empty
+	 */
+	public static final int NO_VALUE = Integer.MIN_VALUE;
+	
+	private static final ValueDictionary DICTIONARY = new ValueDictionary();
+	
+	public String cui, lui, sui, aui, saui, scui, sdui, code, str;
+	private short lat_, ts_, stt_, ispref_, sab_, tty_, suppress_;
+	private int srl_, cvf_;
+
+	/**
+	 * @param columnIndexes - the positions of the {@link #COLUMNS} in the result set, from {@link #columnIndexes(ResultSet)}
+	 */
+	public MRCONSO(ResultSet rs, int[] columnIndexes) throws SQLException
+	{
+		cui = rs.getString(columnIndexes[0]);
+		lat_ = DICTIONARY.encode(rs.getString(columnIndexes[1]));
+		ts_ = DICTIONARY.encode(rs.getString(columnIndexes[2]));
+		lui = rs.getString(columnIndexes[3]);
+		stt_ = DICTIONARY.encode(rs.getString(columnIndexes[4]));
+		sui = rs.getString(columnIndexes[5]);
+		ispref_ = DICTIONARY.encode(rs.getString(columnIndexes[6]));
+		aui = rs.getString(columnIndexes[7]);
+		saui = rs.getString(columnIndexes[8]);
+		scui = rs.getString(columnIndexes[9]);
+		sdui = rs.getString(columnIndexes[10]);
+		sab_ = DICTIONARY.encode(rs.getString(columnIndexes[11]));
+		tty_ = DICTIONARY.encode(rs.getString(columnIndexes[12]));
+		code = rs.getString(columnIndexes[13]);
+		str = rs.getString(columnIndexes[14]);
+		srl_ = rs.getInt(columnIndexes[15]);
+		if (rs.wasNull())
+		{
+			srl_ = NO_VALUE;
+		}
+		suppress_ = DICTIONARY.encode(rs.getString(columnIndexes[16]));
+		cvf_ = rs.getInt(columnIndexes[17]);
+		if (rs.wasNull())
+		{
+			cvf_ = NO_VALUE;
+		}
+	}
+	
+	/**
+	 * @param values - the column values in {@link #COLUMNS} order, with null for empty values
+	 */
+	public MRCONSO(String[] values)
+	{
+		cui = values[0];
+		lat_ = DICTIONARY.encode(values[1]);
+		ts_ = DICTIONARY.encode(values[2]);
+		lui = values[3];
+		stt_ = DICTIONARY.encode(values[4]);
+		sui = values[5];
+		ispref_ = DICTIONARY.encode(values[6]);
+		aui = values[7];
+		saui = values[8];
+		scui = values[9];
+		sdui = values[10];
+		sab_ = DICTIONARY.encode(values[11]);
+		tty_ = DICTIONARY.encode(values[12]);
+		code = values[13];
+		str = values[14];
+		srl_ = values[15] == null ? NO_VALUE : Integer.parseInt(values[15]);
+		suppress_ = DICTIONARY.encode(values[16]);
+		cvf_ = values[17] == null ? NO_VALUE : Integer.parseInt(values[17]);
+	}
+	
+	/**
+	 * @return the positions of the {@link #COLUMNS} in the result set - so the rows can be read by index
+	 */
+	public static int[] columnIndexes(ResultSet rs) throws SQLException
+	{
+		int[] result = new int[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++)
+		{
+			result[i] = rs.findColumn(COLUMNS[i]);
+		}
+		return result;
+	}
+
+	public String getLat()
+	{
+		return DICTIONARY.decode(lat_);
+	}
+
+	public String getTs()
+	{
+		return DICTIONARY.decode(ts_);
+	}
+
+	public String getStt()
+	{
+		return DICTIONARY.decode(stt_);
+	}
+
+	public String getIspref()
+	{
+		return DICTIONARY.decode(ispref_);
+	}
+
+	public String getSab()
+	{
+		return DICTIONARY.decode(sab_);
+	}
+
+	public String getTty()
+	{
+		return DICTIONARY.decode(tty_);
+	}
+
+	public String getSuppress()
+	{
+		return DICTIONARY.decode(suppress_);
+	}
+
+	/**
+	 * @return the dictionary that the low cardinality columns are encoded with
+	 */
+	public static ValueDictionary getDictionary()
+	{
+		return DICTIONARY;
+	}
+
+	public short getSabCode()
+	{
+		return sab_;
+	}
+
+	public short getTsCode()
+	{
+		return ts_;
+	}
+
+	public short getSttCode()
+	{
+		return stt_;
+	}
+
+	public short getSuppressCode()
+	{
+		return suppress_;
+	}
+
+	/**
+	 * @return the SRL, or {@link #NO_VALUE}
+	 */
+	public int getSrl()
+	{
+		return srl_;
+	}
+
+	/**
+	 * @return the CVF, or {@link #NO_VALUE}
+	 */
+	public int getCvf()
+	{
+		return cvf_;
 	}
 }
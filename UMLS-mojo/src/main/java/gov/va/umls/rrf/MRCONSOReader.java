@@ -0,0 +1,17 @@
+package gov.va.umls.rrf;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * A source of MRCONSO rows, in CUI order.
+ */
+public interface MRCONSOReader
+{
+	/**
+	 * @return the next row, or null when there are no more
+	 */
+	public MRCONSO read() throws IOException, SQLException;
+
+	public void close() throws IOException, SQLException;
+}
@@ -0,0 +1,288 @@
+package gov.va.umls.rrf;
+
+import gov.va.oia.terminology.converters.umlsUtils.UMLSFileReader;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link UMLSFileReader} that reads a RRF file through a memory map, scanning the UTF-8 bytes in place.
+ * 
+ * Rows are checked against the SAB filter on the raw bytes of the SAB column, so rows that are filtered out never become 
+ * Strings.  Rows can also be restricted to a set of ids ({@link #require(int, IdBitmap)}), checked the same way.  Columns that 
+ * aren't wanted are returned as null, without being decoded.  Empty columns are returned as empty strings.
+ * 
+ * Subclasses {@link UMLSFileReader} only so it can be handed to the base loadDataIntoTable, which reads through hasNextRow(), 
+ * getNextRow() and close() alone - all three are overridden here.  The base reader is given an empty stream, and none of its 
+ * other methods see the mapped file - don't call them.
+ */
+public class MappedRRFReader extends UMLSFileReader
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final long WINDOW_SIZE = 256L * 1024L * 1024L;
+	
+	private RandomAccessFile file_;
+	private FileChannel channel_;
+	private long fileSize_;
+	private MappedByteBuffer window_;
+	private long windowStart_;
+	private int pos_;  //within the window
+	
+	private int sabColumn_;
+	private byte[][] sabs_;  //null for no filter
+	private boolean[] keepColumns_;  //null to keep all
+	private int[] requiredColumns_ = new int[0];
+	private IdBitmap[] requiredIds_ = new IdBitmap[0];
+	
+	private int lineStart_;  //within the window
+	private int[] fieldEnds_ = new int[64];
+	private int fieldCount_;
+	private byte[] lineBytes_ = new byte[4096];
+	private List<String> next_;
+	private long rowCount_;
+
+	/**
+	 * @param sabColumn - the position of the SAB column, or -1 if the file doesn't have one (or shouldn't be filtered)
+	 * @param sabFilters - the SABs to keep rows for (null or empty for all)
+	 * @param keepColumns - the columns to decode, null for all
+	 */
+	public MappedRRFReader(File f, int sabColumn, Collection<String> sabFilters, boolean[] keepColumns) throws IOException
+	{
+		//Never read - see the class doc
+		super(new BufferedReader(new StringReader("")));
+		file_ = new RandomAccessFile(f, "r");
+		channel_ = file_.getChannel();
+		fileSize_ = channel_.size();
+		sabColumn_ = sabColumn;
+		if (sabColumn >= 0 && sabFilters != null && sabFilters.size() > 0)
+		{
+			sabs_ = new byte[sabFilters.size()][];
+			int i = 0;
+			for (String sab : sabFilters)
+			{
+				sabs_[i++] = sab.getBytes(UTF8);
+			}
+		}
+		keepColumns_ = keepColumns;
+		map(0);
+	}
+
+	/**
+	 * Only return the rows where the column is empty, or holds one of the ids.  Checked on the raw bytes, like the SAB filter.
+	 */
+	public void require(int column, IdBitmap ids)
+	{
+		requiredColumns_ = Arrays.copyOf(requiredColumns_, requiredColumns_.length + 1);
+		requiredIds_ = Arrays.copyOf(requiredIds_, requiredIds_.length + 1);
+		requiredColumns_[requiredColumns_.length - 1] = column;
+		requiredIds_[requiredIds_.length - 1] = ids;
+	}
+
+	private void map(long start) throws IOException
+	{
+		windowStart_ = start;
+		window_ = channel_.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize_ - start));
+		pos_ = 0;
+	}
+
+	@Override
+	public boolean hasNextRow() throws IOException
+	{
+		while (next_ == null)
+		{
+			if (!nextLine())
+			{
+				return false;
+			}
+			if (accept())
+			{
+				next_ = decode();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public List<String> getNextRow() throws IOException
+	{
+		if (!hasNextRow())
+		{
+			return null;
+		}
+		List<String> result = next_;
+		next_ = null;
+		rowCount_++;
+		return result;
+	}
+
+	/**
+	 * @return the number of rows returned so far
+	 */
+	public long getRowCount()
+	{
+		return rowCount_;
+	}
+
+	/**
+	 * Find the next line, and the field boundaries within it.  A line that runs past the end of the window is 
+	 * rescanned from a new window starting at the line.
+	 * @return false at the end of the file
+	 */
+	private boolean nextLine() throws IOException
+	{
+		while (true)
+		{
+			if (windowStart_ + pos_ >= fileSize_)
+			{
+				return false;
+			}
+			int limit = window_.limit();
+			int start = pos_;
+			fieldCount_ = 0;
+			int i = start;
+			while (i < limit)
+			{
+				byte b = window_.get(i);
+				if (b == '|')
+				{
+					addFieldEnd(i);
+				}
+				else if (b == '\n')
+				{
+					break;
+				}
+				i++;
+			}
+			
+			if (i == limit && windowStart_ + limit < fileSize_)
+			{
+				//Line crosses the window end
+				if (start == 0)
+				{
+					throw new IOException("RRF line longer than " + WINDOW_SIZE + " bytes");
+				}
+				map(windowStart_ + start);
+				continue;
+			}
+			
+			int end = i;
+			if (end > start && window_.get(end - 1) == '\r')
+			{
+				end--;
+			}
+			//A final field not followed by a pipe
+			if (end > (fieldCount_ == 0 ? start : fieldEnds_[fieldCount_ - 1] + 1))
+			{
+				addFieldEnd(end);
+			}
+			lineStart_ = start;
+			pos_ = i + 1;
+			if (end == start)
+			{
+				continue;  //blank line
+			}
+			return true;
+		}
+	}
+
+	private void addFieldEnd(int index)
+	{
+		if (fieldCount_ == fieldEnds_.length)
+		{
+			fieldEnds_ = Arrays.copyOf(fieldEnds_, fieldEnds_.length * 2);
+		}
+		fieldEnds_[fieldCount_++] = index;
+	}
+
+	private int fieldStart(int field)
+	{
+		return field == 0 ? lineStart_ : fieldEnds_[field - 1] + 1;
+	}
+
+	private boolean accept()
+	{
+		for (int i = 0; i < requiredColumns_.length; i++)
+		{
+			int column = requiredColumns_[i];
+			if (column < fieldCount_)
+			{
+				int start = fieldStart(column);
+				int length = fieldEnds_[column] - start;
+				if (length > 0 && !requiredIds_[i].contains(window_, start, length))
+				{
+					return false;
+				}
+			}
+		}
+		if (sabs_ == null)
+		{
+			return true;
+		}
+		if (sabColumn_ >= fieldCount_)
+		{
+			return false;
+		}
+		int start = fieldStart(sabColumn_);
+		int length = fieldEnds_[sabColumn_] - start;
+		for (byte[] sab : sabs_)
+		{
+			if (sab.length == length)
+			{
+				boolean match = true;
+				for (int i = 0; i < length && match; i++)
+				{
+					match = sab[i] == window_.get(start + i);
+				}
+				if (match)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private List<String> decode()
+	{
+		int start = lineStart_;
+		int length = fieldEnds_[fieldCount_ - 1] - start;
+		if (lineBytes_.length < length)
+		{
+			lineBytes_ = new byte[Math.max(length, lineBytes_.length * 2)];
+		}
+		window_.position(start);
+		window_.get(lineBytes_, 0, length);
+		
+		ArrayList<String> fields = new ArrayList<>(fieldCount_);
+		for (int i = 0; i < fieldCount_; i++)
+		{
+			if (keepColumns_ != null && (i >= keepColumns_.length || !keepColumns_[i]))
+			{
+				fields.add(null);
+			}
+			else
+			{
+				int fieldStart = fieldStart(i) - start;
+				fields.add(new String(lineBytes_, fieldStart, fieldEnds_[i] - start - fieldStart, UTF8));
+			}
+		}
+		return fields;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		window_ = null;
+		channel_.close();
+		file_.close();
+	}
+}
@@ -0,0 +1,155 @@
+package gov.va.umls.rrf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * The column layout of the RRF files in a META folder, as described by MRFILES.RRF and MRCOLS.RRF.
+ * 
+ * Also has the helpers for working with raw (pipe delimited) RRF lines.
+ */
+public class RRFLayout
+{
+	private HashMap<String, String[]> tableColumns_ = new HashMap<>();
+	private HashSet<String> integerColumns_ = new HashSet<>();
+
+	public RRFLayout(File metaFolder) throws IOException
+	{
+		BufferedReader br = open(new File(metaFolder, "MRFILES.RRF"));
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			//FIL|DES|FMT|CLS|RWS|BTS|
+			String[] fields = split(line);
+			tableColumns_.put(tableName(fields[0]), fields[2].split(","));
+		}
+		br.close();
+		
+		br = open(new File(metaFolder, "MRCOLS.RRF"));
+		while ((line = br.readLine()) != null)
+		{
+			//COL|DES|REF|MIN|AV|MAX|FIL|DTY|
+			String[] fields = split(line);
+			if (fields[7] != null && fields[7].toLowerCase().startsWith("int"))
+			{
+				integerColumns_.add(tableName(fields[6]) + "." + fields[0]);
+			}
+		}
+		br.close();
+	}
+
+	/**
+	 * @param table - the table name, as used by the staging database - MRCONSO, CHANGE/DELETEDCUI, etc.
+	 * @return the column names, in file order, or null if the table isn't described in MRFILES
+	 */
+	public String[] getColumns(String table)
+	{
+		return tableColumns_.get(table);
+	}
+
+	/**
+	 * @return the position of the column within a row of the table
+	 * @throws IllegalArgumentException if the table doesn't have that column
+	 */
+	public int indexOf(String table, String column)
+	{
+		String[] columns = tableColumns_.get(table);
+		if (columns != null)
+		{
+			for (int i = 0; i < columns.length; i++)
+			{
+				if (columns[i].equals(column))
+				{
+					return i;
+				}
+			}
+		}
+		throw new IllegalArgumentException("No column " + column + " in " + table);
+	}
+
+	public int[] indexesOf(String table, String ... columns)
+	{
+		int[] result = new int[columns.length];
+		for (int i = 0; i < columns.length; i++)
+		{
+			result[i] = indexOf(table, columns[i]);
+		}
+		return result;
+	}
+
+	public boolean isInteger(String table, String column)
+	{
+		return integerColumns_.contains(table + "." + column);
+	}
+
+	/**
+	 * @return the file that holds the data for the table
+	 */
+	public static File dataFile(File metaFolder, String table)
+	{
+		return new File(metaFolder, table + ".RRF");
+	}
+
+	/**
+	 * Strip the .RRF off of a MRFILES FIL value
+	 */
+	public static String tableName(String fileName)
+	{
+		return fileName.endsWith(".RRF") ? fileName.substring(0, fileName.length() - 4) : fileName;
+	}
+
+	public static BufferedReader open(File f) throws IOException
+	{
+		return new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"), 1024 * 1024);
+	}
+
+	/**
+	 * Split a RRF line into its fields.  Empty fields are returned as null, and the trailing delimiter 
+	 * doesn't create an extra field.
+	 */
+	public static String[] split(String line)
+	{
+		ArrayList<String> fields = new ArrayList<>();
+		int start = 0;
+		int end;
+		while ((end = line.indexOf('|', start)) >= 0)
+		{
+			fields.add(end == start ? null : line.substring(start, end));
+			start = end + 1;
+		}
+		if (start < line.length())
+		{
+			fields.add(line.substring(start));
+		}
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * Pull a single field out of a RRF line, without splitting the rest of it.
+	 * @return the field value, or null if it is empty or the line doesn't have that many fields
+	 */
+	public static String field(String line, int index)
+	{
+		int start = 0;
+		for (int i = 0; i < index; i++)
+		{
+			start = line.indexOf('|', start) + 1;
+			if (start == 0)
+			{
+				return null;
+			}
+		}
+		int end = line.indexOf('|', start);
+		if (end < 0)
+		{
+			end = line.length();
+		}
+		return end == start ? null : line.substring(start, end);
+	}
+}
@@ -0,0 +1,72 @@
+package gov.va.umls.rrf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Assigns a short code to each distinct value of the low cardinality RRF columns (SAB, TTY, LAT...), so that rows can 
+ * hold the code instead of their own copy of the String.
+ * 
+ * Values are encoded from an immutable snapshot of the codes, without a lock - only a value that isn't in the snapshot yet 
+ * takes the lock, and publishes a new snapshot with it.  There are only a few hundred distinct values, so copying the 
+ * snapshot for each one is cheap.  Codes can be decoded from any thread - new values are published before their code is 
+ * handed out.
+ */
+public class ValueDictionary
+{
+	public static final short NULL_CODE = -1;
+	
+	private volatile HashMap<String, Short> codes_ = new HashMap<>();
+	private volatile String[] values_ = new String[256];
+
+	/**
+	 * @return the code for the value, adding it if necessary.  {@link #NULL_CODE} for null.
+	 */
+	public short encode(String value)
+	{
+		if (value == null)
+		{
+			return NULL_CODE;
+		}
+		Short code = codes_.get(value);
+		return code == null ? add(value) : code;
+	}
+
+	private synchronized short add(String value)
+	{
+		HashMap<String, Short> codes = codes_;
+		Short code = codes.get(value);
+		if (code == null)
+		{
+			if (codes.size() == Short.MAX_VALUE)
+			{
+				throw new IllegalStateException("Too many distinct values for the dictionary");
+			}
+			code = (short)codes.size();
+			String[] values = values_;
+			if (code >= values.length)
+			{
+				values = Arrays.copyOf(values, values.length * 2);
+			}
+			values[code] = value;
+			values_ = values;
+			codes = new HashMap<>(codes);
+			codes.put(value, code);
+			codes_ = codes;
+		}
+		return code;
+	}
+
+	/**
+	 * @return the number of distinct values encoded so far
+	 */
+	public int size()
+	{
+		return codes_.size();
+	}
+
+	public String decode(short code)
+	{
+		return code == NULL_CODE ? null : values_[code];
+	}
+}
@@ -0,0 +1,193 @@
+package gov.va.umls.sct;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.ihtsdo.etypes.EConcept;
+
+/**
+ * Holds the CUI concepts that may or may not need to be written (pending SCT related concepts) in a spill file, 
+ * rather than on the heap.  Only the file offset of each concept is kept in memory.
+ */
+public class PendingConceptStore
+{
+	private File file_;
+	private CountingOutputStream counter_;
+	private DataOutputStream out_;
+	private RandomAccessFile in_;
+	private HashMap<String, Long> offsets_ = new HashMap<>();
+
+	/**
+	 * @param folder - where to create the spill file.  Removed by {@link #close()}.
+	 */
+	public PendingConceptStore(File folder) throws IOException
+	{
+		file_ = new File(folder, "pendingSCTConcepts.spill");
+		counter_ = new CountingOutputStream(new FileOutputStream(file_), 0);
+		out_ = new DataOutputStream(new BufferedOutputStream(counter_, 1024 * 1024));
+	}
+
+	/**
+	 * Reopen the spill file left in the folder, as it was at a {@link #checkpoint()} - anything stored after that is discarded.
+	 * @param length - the length returned by the checkpoint
+	 * @param offsets - the offsets at the checkpoint
+	 */
+	public PendingConceptStore(File folder, long length, Map<String, Long> offsets) throws IOException
+	{
+		file_ = new File(folder, "pendingSCTConcepts.spill");
+		if (file_.length() < length)
+		{
+			throw new IOException("The spill file " + file_.getAbsolutePath() + " is shorter than at the checkpoint");
+		}
+		RandomAccessFile truncate = new RandomAccessFile(file_, "rw");
+		truncate.setLength(length);
+		truncate.close();
+		counter_ = new CountingOutputStream(new FileOutputStream(file_, true), length);
+		out_ = new DataOutputStream(new BufferedOutputStream(counter_, 1024 * 1024));
+		offsets_.putAll(offsets);
+	}
+
+	public void put(String cui, EConcept concept) throws IOException
+	{
+		out_.flush();
+		offsets_.put(cui, counter_.getCount());
+		concept.writeExternal(out_);
+	}
+
+	public int size()
+	{
+		return offsets_.size();
+	}
+
+	/**
+	 * Flush everything stored so far to the spill file.
+	 * @return the length of the spill file - to reopen it at this point, along with {@link #getOffsets()}
+	 */
+	public long checkpoint() throws IOException
+	{
+		out_.flush();
+		return counter_.getCount();
+	}
+
+	/**
+	 * @return the file offset of each stored concept
+	 */
+	public Map<String, Long> getOffsets()
+	{
+		return offsets_;
+	}
+
+	/**
+	 * @return the CUIs from the collection that are in the store, in the order they were stored - reading them back 
+	 * in this order reads the spill file sequentially.
+	 */
+	public List<String> inStoreOrder(Collection<String> cuis)
+	{
+		ArrayList<String> result = new ArrayList<>();
+		for (String cui : cuis)
+		{
+			if (offsets_.containsKey(cui))
+			{
+				result.add(cui);
+			}
+		}
+		Collections.sort(result, new Comparator<String>()
+		{
+			@Override
+			public int compare(String o1, String o2)
+			{
+				return offsets_.get(o1).compareTo(offsets_.get(o2));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @return the stored concept, or null if there isn't one for the CUI.  The concept is removed from the store.
+	 */
+	public EConcept remove(String cui) throws IOException, ClassNotFoundException
+	{
+		Long offset = offsets_.remove(cui);
+		if (offset == null)
+		{
+			return null;
+		}
+		//Concepts can be stored after the first remove - make sure the one asked for is in the file
+		out_.flush();
+		if (in_ == null)
+		{
+			in_ = new RandomAccessFile(file_, "r");
+		}
+		in_.seek(offset);
+		return new EConcept(new DataInputStream(new BufferedInputStream(Channels.newInputStream(in_.getChannel()), 64 * 1024)));
+	}
+
+	/**
+	 * Close and delete the spill file
+	 */
+	public void close() throws IOException
+	{
+		close(true);
+	}
+
+	/**
+	 * @param delete - false to leave the spill file behind, to be reopened from a checkpoint
+	 */
+	public void close(boolean delete) throws IOException
+	{
+		out_.close();
+		if (in_ != null)
+		{
+			in_.close();
+		}
+		if (delete)
+		{
+			file_.delete();
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream
+	{
+		private long count_;
+
+		CountingOutputStream(OutputStream out, long count)
+		{
+			super(out);
+			count_ = count;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count_++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count_ += len;
+		}
+
+		long getCount()
+		{
+			return count_;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package gov.va.umls.sct;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * An open addressing hash map from SCTID to concept UUID, with the ids and the two halves of the UUIDs in parallel long 
+ * arrays - no per entry objects.
+ * 
+ * {@link #find(CharSequence)} parses the id in place and returns a slot, so a lookup doesn't allocate anything.  The UUID is 
+ * only built (by {@link #getUUID(int)}) when it is actually used.  Safe for concurrent reads once populated.
+ */
+public class SCTIDMap
+{
+	private static final long EMPTY = -1;  //never a valid SCTID
+	
+	private long[] keys_;
+	private long[] msb_;
+	private long[] lsb_;
+	private int mask_;
+	private int size_;
+
+	/**
+	 * @param expectedSize - the number of ids that will be added.  The map doesn't grow.
+	 */
+	public SCTIDMap(int expectedSize)
+	{
+		int capacity = Integer.highestOneBit(Math.max(16, (int)(expectedSize / 0.7f)) - 1) << 1;
+		keys_ = new long[capacity];
+		msb_ = new long[capacity];
+		lsb_ = new long[capacity];
+		mask_ = capacity - 1;
+		Arrays.fill(keys_, EMPTY);
+	}
+
+	/**
+	 * Add (or replace) the UUID for an id
+	 */
+	public void put(long sctId, long mostSignificantBits, long leastSignificantBits)
+	{
+		int slot = slotFor(sctId);
+		if (keys_[slot] == EMPTY)
+		{
+			if (size_ == mask_)
+			{
+				throw new IllegalStateException("SCTIDMap is full");
+			}
+			keys_[slot] = sctId;
+			size_++;
+		}
+		msb_[slot] = mostSignificantBits;
+		lsb_[slot] = leastSignificantBits;
+	}
+
+	private int slotFor(long sctId)
+	{
+		int slot = mix(sctId) & mask_;
+		while (keys_[slot] != EMPTY && keys_[slot] != sctId)
+		{
+			slot = (slot + 1) & mask_;
+		}
+		return slot;
+	}
+
+	private static int mix(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return the slot of the id, or -1 if the id isn't present (or isn't a canonical numeric SCTID)
+	 */
+	public int find(CharSequence sctId)
+	{
+		long id = parse(sctId);
+		if (id < 0)
+		{
+			return -1;
+		}
+		int slot = slotFor(id);
+		return keys_[slot] == EMPTY ? -1 : slot;
+	}
+
+	public long getMostSignificantBits(int slot)
+	{
+		return msb_[slot];
+	}
+
+	public long getLeastSignificantBits(int slot)
+	{
+		return lsb_[slot];
+	}
+
+	public UUID getUUID(int slot)
+	{
+		return new UUID(msb_[slot], lsb_[slot]);
+	}
+
+	/**
+	 * @return the UUID for the id, or null
+	 */
+	public UUID get(CharSequence sctId)
+	{
+		int slot = find(sctId);
+		return slot < 0 ? null : getUUID(slot);
+	}
+
+	public int size()
+	{
+		return size_;
+	}
+
+	/**
+	 * @return the SCTID as a long, or -1 if it isn't a plain (canonical) SCTID.  Ids with leading zeros are rejected, 
+	 * as they never matched the ids read from the jbin files.
+	 */
+	public static long parse(CharSequence sctId)
+	{
+		if (sctId == null || sctId.length() == 0 || sctId.length() > 18 || (sctId.charAt(0) == '0' && sctId.length() > 1))
+		{
+			return -1;
+		}
+		long result = 0;
+		for (int i = 0; i < sctId.length(); i++)
+		{
+			char c = sctId.charAt(i);
+			if (c < '0' || c > '9')
+			{
+				return -1;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+}
@@ -0,0 +1,284 @@
+package gov.va.umls.sct;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import org.ihtsdo.etypes.EConcept;
+import org.ihtsdo.tk.dto.concept.component.identifier.TkIdentifier;
+
+/**
+ * The SCTID to concept UUID mapping of a set of SNOMED jbin files, kept as a sorted, memory-mapped index file.
+ * 
+ * The index is built on first use (reading every concept of every jbin file), and named by the checksums of the jbin files - 
+ * so later runs against the same SNOMED files just map the existing index.  Each entry is the SCTID, followed by the 
+ * most and least significant bits of the UUID, sorted by SCTID.  Lookups are a binary search.
+ */
+public class SCTIndex
+{
+	private static final UUID SCTID_TYPE = UUID.fromString("0418a591-f75b-39ad-be2c-3ab849326da9");  //"SNOMED integer id"
+	private static final long MAGIC = 0x5343544944583031L;  //SCTIDX01
+	private static final int HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 24;
+	
+	private MappedByteBuffer index_;
+	private int size_;
+
+	/**
+	 * @param jbinFolder - the folder of SNOMED jbin files
+	 * @param indexFolder - where to keep the index files
+	 */
+	public static SCTIndex open(File jbinFolder, File indexFolder) throws IOException, ClassNotFoundException
+	{
+		File[] jbins = jbinFolder.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.endsWith(".jbin");
+			}
+		});
+		if (jbins == null)
+		{
+			throw new IOException("Can't read the SCT jbin files from " + jbinFolder.getAbsolutePath());
+		}
+		Arrays.sort(jbins);
+		
+		File indexFile = new File(indexFolder, "sctIndex-" + checksum(jbins) + ".idx");
+		if (indexFile.isFile())
+		{
+			ConsoleUtil.println("Using the SCT index " + indexFile.getName());
+		}
+		else
+		{
+			build(jbins, indexFile);
+		}
+		return new SCTIndex(indexFile);
+	}
+
+	SCTIndex(File indexFile) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try
+		{
+			index_ = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		finally
+		{
+			raf.close();
+		}
+		if (index_.getLong(0) != MAGIC)
+		{
+			throw new IOException(indexFile.getAbsolutePath() + " is not a SCT index");
+		}
+		size_ = (int)index_.getLong(8);
+	}
+
+	/**
+	 * @return the UUID of the SNOMED concept with this SCTID, or null
+	 */
+	public UUID get(String sctId)
+	{
+		long id = SCTIDMap.parse(sctId);
+		if (id < 0)
+		{
+			return null;
+		}
+		int low = 0;
+		int high = size_ - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			long midId = index_.getLong(HEADER_SIZE + mid * ENTRY_SIZE);
+			if (midId < id)
+			{
+				low = mid + 1;
+			}
+			else if (midId > id)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				int offset = HEADER_SIZE + mid * ENTRY_SIZE;
+				return new UUID(index_.getLong(offset + 8), index_.getLong(offset + 16));
+			}
+		}
+		return null;
+	}
+
+	public int size()
+	{
+		return size_;
+	}
+
+	/**
+	 * @return the whole index, loaded into an in memory map
+	 */
+	public SCTIDMap toMap()
+	{
+		SCTIDMap map = new SCTIDMap(size_);
+		for (int i = 0; i < size_; i++)
+		{
+			int offset = HEADER_SIZE + i * ENTRY_SIZE;
+			map.put(index_.getLong(offset), index_.getLong(offset + 8), index_.getLong(offset + 16));
+		}
+		return map;
+	}
+
+	private static String checksum(File[] jbins) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		byte[] buffer = new byte[1024 * 1024];
+		for (File f : jbins)
+		{
+			CRC32 crc = new CRC32();
+			InputStream is = new FileInputStream(f);
+			int read;
+			while ((read = is.read(buffer)) > 0)
+			{
+				crc.update(buffer, 0, read);
+			}
+			is.close();
+			sb.append(f.getName()).append("|").append(f.length()).append("|").append(crc.getValue()).append("\n");
+		}
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("MD5").digest(sb.toString().getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (int i = 0; i < 8; i++)
+			{
+				hex.append(String.format("%02x", digest[i]));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void build(File[] jbins, File indexFile) throws IOException, ClassNotFoundException
+	{
+		long[] ids = new long[500000];
+		long[] msb = new long[ids.length];
+		long[] lsb = new long[ids.length];
+		int count = 0;
+		int skipped = 0;
+		
+		for (File f : jbins)
+		{
+			ConsoleUtil.println("Reading " + f.getName());
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			while (in.available() > 0)
+			{
+				if (count % 1000 == 0)
+				{
+					ConsoleUtil.showProgress();
+				}
+				EConcept concept = new EConcept(in);
+				
+				if (concept.getConceptAttributes() != null && concept.getConceptAttributes().getAdditionalIdComponents() != null)
+				{
+					for (TkIdentifier id : concept.getConceptAttributes().getAdditionalIdComponents())
+					{
+						if (SCTID_TYPE.equals(id.getAuthorityUuid()))
+						{
+							long sctId = SCTIDMap.parse(id.getDenotation().toString());
+							if (sctId < 0)
+							{
+								skipped++;
+								break;
+							}
+							if (count == ids.length)
+							{
+								ids = Arrays.copyOf(ids, count * 2);
+								msb = Arrays.copyOf(msb, count * 2);
+								lsb = Arrays.copyOf(lsb, count * 2);
+							}
+							ids[count] = sctId;
+							msb[count] = concept.getPrimordialUuid().getMostSignificantBits();
+							lsb[count] = concept.getPrimordialUuid().getLeastSignificantBits();
+							count++;
+							break;
+						}
+					}
+				}
+			}
+			in.close();
+		}
+		if (skipped > 0)
+		{
+			ConsoleUtil.printErrorln("Skipped " + skipped + " SCT concepts with non numeric ids");
+		}
+		write(ids, msb, lsb, count, indexFile);
+	}
+
+	/**
+	 * Write the first count ids (and their UUIDs) out as a sorted index file
+	 */
+	static void write(long[] ids, long[] msb, long[] lsb, int count, File indexFile) throws IOException
+	{
+		//Sort by id - when an id is repeated, the last one read wins
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++)
+		{
+			order[i] = i;
+		}
+		final long[] sortIds = ids;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer o1, Integer o2)
+			{
+				int result = Long.compare(sortIds[o1], sortIds[o2]);
+				return result == 0 ? Integer.compare(o1, o2) : result;
+			}
+		});
+		
+		int unique = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (i == count - 1 || ids[order[i]] != ids[order[i + 1]])
+			{
+				unique++;
+			}
+		}
+		
+		File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1024 * 1024));
+		out.writeLong(MAGIC);
+		out.writeLong(unique);
+		for (int i = 0; i < count; i++)
+		{
+			if (i == count - 1 || ids[order[i]] != ids[order[i + 1]])
+			{
+				out.writeLong(ids[order[i]]);
+				out.writeLong(msb[order[i]]);
+				out.writeLong(lsb[order[i]]);
+			}
+		}
+		out.close();
+		if (!temp.renameTo(indexFile))
+		{
+			throw new IOException("Couldn't rename " + temp.getAbsolutePath() + " to " + indexFile.getName());
+		}
+		ConsoleUtil.println("Wrote the SCT index " + indexFile.getName() + " - " + unique + " concepts");
+	}
+}
@@ -0,0 +1,210 @@
+package gov.va.umls.staging;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import gov.va.oia.terminology.converters.umlsUtils.RRFDatabaseHandle;
+import gov.va.oia.terminology.converters.umlsUtils.sql.ColumnDefinition;
+import gov.va.oia.terminology.converters.umlsUtils.sql.TableDefinition;
+import gov.va.umls.parallel.NamedThreadFactory;
+import gov.va.umls.report.RunReport;
+import gov.va.umls.rrf.MappedRRFReader;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the (already created) staging tables on a pool of threads, each with its own connection to the staging database.
+ * The indexes for a table are queued as soon as its data is loaded, so they build while the other tables are still loading.
+ * 
+ * The files are read with a {@link MappedRRFReader}, which drops the rows for other SABs before decoding them - and, with a 
+ * {@link ReachabilityPruner}, the rows that don't refer to a loaded concept or atom.
+ * 
+ * Each loader connection runs in a single transaction without an undo log - the H2 bulk load settings - so a load that 
+ * fails part way leaves an incomplete database (which the {@link StagingCache} won't reuse).
+ */
+public class ParallelTableLoader
+{
+	private File dbFile_;
+	private ReachabilityPruner pruner_;
+	private RunReport.Phase phase_;
+	private ExecutorService pool_;
+	private ArrayList<Future<Void>> tasks_ = new ArrayList<>();
+	private ArrayList<RRFDatabaseHandle> handles_ = new ArrayList<>();
+	private ThreadLocal<RRFDatabaseHandle> handle_ = new ThreadLocal<RRFDatabaseHandle>()
+	{
+		@Override
+		protected RRFDatabaseHandle initialValue()
+		{
+			try
+			{
+				RRFDatabaseHandle handle = new RRFDatabaseHandle();
+				handle.createOrOpenDatabase(dbFile_);
+				Statement s = handle.getConnection().createStatement();
+				s.execute("SET UNDO_LOG 0");
+				s.close();
+				handle.getConnection().setAutoCommit(false);
+				synchronized (handles_)
+				{
+					handles_.add(handle);
+				}
+				return handle;
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException("Couldn't open a loader connection to " + dbFile_.getAbsolutePath(), e);
+			}
+		}
+	};
+
+	/**
+	 * @param dbFile - the staging database (as passed to {@link RRFDatabaseHandle#createOrOpenDatabase(File)})
+	 * @param threads - the number of tables (or indexes) to work on at once
+	 * @param pruner - optional - restricts the rows loaded into the tables it knows about
+	 * @param phase - the report phase to record each table load and index build in
+	 */
+	public ParallelTableLoader(File dbFile, int threads, ReachabilityPruner pruner, RunReport.Phase phase)
+	{
+		dbFile_ = dbFile;
+		pruner_ = pruner;
+		phase_ = phase;
+		pool_ = Executors.newFixedThreadPool(Math.max(1, threads), new NamedThreadFactory("RRF-loader"));
+	}
+
+	/**
+	 * Queue the load of a table, followed by the creation of its indexes.
+	 */
+	public void load(final TableDefinition td, final File dataFile, final List<String> sabFilters, final List<String> indexStatements)
+	{
+		submit(new Callable<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				RunReport.Step step = phase_.startStep("table", td.getTableName());
+				RRFDatabaseHandle handle = handle_.get();
+				MappedRRFReader reader = new MappedRRFReader(dataFile, sabColumn(td), sabFilters, null);
+				if (pruner_ != null)
+				{
+					pruner_.apply(td, reader);
+				}
+				handle.loadDataIntoTable(td, reader, sabFilters);
+				handle.getConnection().commit();
+				step.end(reader.getRowCount());
+				if (indexStatements != null)
+				{
+					for (String index : indexStatements)
+					{
+						createIndex(index);
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @return the position of the SAB column in the table, or -1
+	 */
+	private static int sabColumn(TableDefinition td)
+	{
+		List<ColumnDefinition> columns = td.getColumns();
+		for (int i = 0; i < columns.size(); i++)
+		{
+			if (columns.get(i).getColumnName().equals("SAB"))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void createIndex(final String sql)
+	{
+		submit(new Callable<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				//CREATE INDEX name ON ...
+				RunReport.Step step = phase_.startStep("index", sql.split(" ")[2]);
+				Connection c = handle_.get().getConnection();
+				Statement s = c.createStatement();
+				s.execute(sql);
+				s.close();
+				c.commit();
+				step.end(-1);
+				ConsoleUtil.showProgress();
+				return null;
+			}
+		});
+	}
+
+	private void submit(Callable<Void> task)
+	{
+		synchronized (tasks_)
+		{
+			tasks_.add(pool_.submit(task));
+		}
+	}
+
+	/**
+	 * Wait for all of the loads and indexes (including those queued while waiting), then close the loader connections.
+	 */
+	public void finish() throws Exception
+	{
+		try
+		{
+			int i = 0;
+			while (true)
+			{
+				Future<Void> f;
+				synchronized (tasks_)
+				{
+					if (i >= tasks_.size())
+					{
+						break;
+					}
+					f = tasks_.get(i++);
+				}
+				try
+				{
+					f.get();
+				}
+				catch (ExecutionException e)
+				{
+					if (e.getCause() instanceof Exception)
+					{
+						throw (Exception)e.getCause();
+					}
+					throw e;
+				}
+			}
+		}
+		finally
+		{
+			pool_.shutdownNow();
+			synchronized (handles_)
+			{
+				for (RRFDatabaseHandle handle : handles_)
+				{
+					try
+					{
+						//Not shutdown() - that would close the database for everyone
+						handle.getConnection().close();
+					}
+					catch (SQLException e)
+					{
+						ConsoleUtil.printErrorln("Error closing a loader connection: " + e);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package gov.va.umls.staging;
+
+import gov.va.oia.terminology.converters.umlsUtils.sql.ColumnDefinition;
+import gov.va.oia.terminology.converters.umlsUtils.sql.TableDefinition;
+import gov.va.umls.rrf.IdBitmap;
+import gov.va.umls.rrf.MappedRRFReader;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Keeps the rows of MRSAT, MRDEF and MRREL that can't be reached from the (SAB filtered) MRCONSO out of the staging database.
+ *
+ * With a SAB filter, MRCONSO is cut down to the atoms of the requested SABs - but the attributes, definitions and relationships
+ * of every other atom of a shared CUI (and, for MRREL, the rows of the requested SABs that point at CUIs outside the filter)
+ * would still be loaded and indexed, only to be dropped by the joins to MRCONSO during the conversion.
+ *
+ * The CUIs and AUIs of the filtered MRCONSO are collected up front, into {@link IdBitmap}s, and the readers for the other
+ * tables are told to require them - so the rows are dropped on the raw bytes, before they are decoded.
+ */
+public class ReachabilityPruner
+{
+	private static final HashMap<String, String[]> PRUNED_COLUMNS = new HashMap<>();
+	static
+	{
+		//MRSAT rows for relationships (STYPE RUI) carry the CUI of the source concept
+		PRUNED_COLUMNS.put("MRSAT", new String[] {"CUI"});
+		PRUNED_COLUMNS.put("MRDEF", new String[] {"CUI", "AUI"});
+		//AUI1 / AUI2 are empty for the CUI level relationships
+		PRUNED_COLUMNS.put("MRREL", new String[] {"CUI1", "CUI2", "AUI1", "AUI2"});
+	}
+
+	private IdBitmap cuis_ = new IdBitmap('C');
+	private IdBitmap auis_ = new IdBitmap('A');
+
+	/**
+	 * Read the CUIs and AUIs of the MRCONSO rows that will be loaded.
+	 * @param sabFilters - the SAB filter used for loading MRCONSO
+	 */
+	public ReachabilityPruner(File metaFolder, List<String> sabFilters) throws IOException
+	{
+		RRFLayout layout = new RRFLayout(metaFolder);
+		int cuiColumn = layout.indexOf("MRCONSO", "CUI");
+		int auiColumn = layout.indexOf("MRCONSO", "AUI");
+		boolean[] keep = new boolean[layout.getColumns("MRCONSO").length];
+		keep[cuiColumn] = true;
+		keep[auiColumn] = true;
+
+		MappedRRFReader reader = new MappedRRFReader(RRFLayout.dataFile(metaFolder, "MRCONSO"), layout.indexOf("MRCONSO", "SAB"),
+				sabFilters, keep);
+		try
+		{
+			while (reader.hasNextRow())
+			{
+				List<String> row = reader.getNextRow();
+				cuis_.add(row.get(cuiColumn));
+				auis_.add(row.get(auiColumn));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Restrict the reader for the table to the rows that refer to the loaded CUIs and AUIs.  Tables other than MRSAT, MRDEF
+	 * and MRREL are left alone.
+	 */
+	public void apply(TableDefinition td, MappedRRFReader reader)
+	{
+		String[] pruned = PRUNED_COLUMNS.get(td.getTableName());
+		if (pruned == null)
+		{
+			return;
+		}
+		List<ColumnDefinition> columns = td.getColumns();
+		for (int i = 0; i < columns.size(); i++)
+		{
+			String name = columns.get(i).getColumnName();
+			for (String p : pruned)
+			{
+				if (p.equals(name))
+				{
+					reader.require(i, name.startsWith("CUI") ? cuis_ : auis_);
+				}
+			}
+		}
+	}
+
+	public int getCUICount()
+	{
+		return cuis_.size();
+	}
+
+	public int getAUICount()
+	{
+		return auis_.size();
+	}
+}
@@ -0,0 +1,112 @@
+package gov.va.umls.staging;
+
+import gov.va.umls.rrf.IdBitmap;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * The AUIs that can be root concepts - so the per atom root check only has to query MRHIER for the few atoms that could be one.
+ *
+ * Built from one scan of MRHIER: the root of every hierarchy path (the first AUI of PTR), the top level atoms (a PTR of just
+ * the root), the atoms without a path or parent, and the AUIs of the additionalRootConcepts entries.  This is a superset of
+ * what the root check accepts, so an atom that isn't in it is never a root.
+ */
+public class RootAUIs
+{
+	private IdBitmap auis_ = new IdBitmap('A');
+
+	/**
+	 * Scan the staged MRHIER table.
+	 * @param additionalRootConcepts - the SAB|CUI|AUI entries that are configured as roots (may be null)
+	 */
+	public RootAUIs(Connection connection, List<String> additionalRootConcepts) throws SQLException
+	{
+		Statement s = connection.createStatement();
+		s.setFetchSize(10000);
+		ResultSet rs = s.executeQuery("SELECT AUI, PAUI, PTR FROM MRHIER");
+		while (rs.next())
+		{
+			add(rs.getString(1), rs.getString(2), rs.getString(3));
+		}
+		rs.close();
+		s.close();
+		addAdditional(additionalRootConcepts);
+	}
+
+	/**
+	 * Scan MRHIER.RRF - for when MRHIER isn't staged yet.  Empty if the META folder has no MRHIER.
+	 */
+	public RootAUIs(File metaFolder, RRFLayout layout, List<String> additionalRootConcepts) throws IOException
+	{
+		File mrhier = RRFLayout.dataFile(metaFolder, "MRHIER");
+		if (layout.getColumns("MRHIER") != null && mrhier.isFile())
+		{
+			int[] columns = layout.indexesOf("MRHIER", "AUI", "PAUI", "PTR");
+			BufferedReader br = RRFLayout.open(mrhier);
+			String line;
+			while ((line = br.readLine()) != null)
+			{
+				String[] fields = RRFLayout.split(line);
+				add(fields[columns[0]], columns[1] < fields.length ? fields[columns[1]] : null, columns[2] < fields.length ? fields[columns[2]] : null);
+			}
+			br.close();
+		}
+		addAdditional(additionalRootConcepts);
+	}
+
+	private void add(String aui, String paui, String ptr)
+	{
+		if (ptr == null || ptr.length() == 0)
+		{
+			auis_.add(aui);
+			auis_.add(paui);
+			return;
+		}
+		int dot = ptr.indexOf('.');
+		if (dot < 0)
+		{
+			auis_.add(ptr);
+			auis_.add(aui);
+			auis_.add(paui);
+		}
+		else
+		{
+			auis_.add(ptr.substring(0, dot));
+		}
+	}
+
+	private void addAdditional(List<String> additionalRootConcepts)
+	{
+		if (additionalRootConcepts != null)
+		{
+			for (String entry : additionalRootConcepts)
+			{
+				String[] parts = entry.split("\\|");
+				if (parts.length >= 3)
+				{
+					auis_.add(parts[2].trim());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return false if the atom can't be a root concept
+	 */
+	public boolean mayBeRoot(String aui)
+	{
+		return aui == null || auis_.contains(aui);
+	}
+
+	public int size()
+	{
+		return auis_.size();
+	}
+}
@@ -0,0 +1,236 @@
+package gov.va.umls.staging;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the H2 staging databases in a folder, named by a fingerprint of what they were loaded from - the MRFILES and MRCOLS 
+ * contents, the size and modification time of each RRF file, and the SAB filters.  A database with a matching fingerprint 
+ * is reused, anything else gets its own database.
+ * 
+ * Each finished database has a '.staging' marker file next to it (holding the fingerprint inputs).  A database without a marker 
+ * was never finished, and is removed.  The marker modification time is the last use, for LRU eviction once the databases 
+ * take up more than the configured space.
+ */
+public class StagingCache
+{
+	//Bump when the staged tables or indexes change, so old databases aren't reused
+	private static final String SCHEMA_VERSION = "1";
+	private static final String MARKER = ".staging";
+	
+	private File folder_;
+	private long maxBytes_;
+	private String description_;
+
+	/**
+	 * @param maxBytes - the total size to trim the cached databases down to (the database in use is never removed)
+	 */
+	public StagingCache(File folder, long maxBytes)
+	{
+		folder_ = folder;
+		maxBytes_ = maxBytes;
+	}
+
+	/**
+	 * @param baseName - the kind of database - full or metadata only
+	 * @param variant - any other setting that changes what is staged
+	 * @return the name of the database (without extension) for this META folder and these settings
+	 */
+	public String getDatabaseName(String baseName, File metaFolder, List<String> sabFilters, String variant) throws IOException
+	{
+		StringBuilder description = new StringBuilder();
+		description.append("schema ").append(SCHEMA_VERSION).append("\n");
+		description.append("variant ").append(variant).append("\n");
+		
+		ArrayList<String> sabs = new ArrayList<>();
+		if (sabFilters != null)
+		{
+			sabs.addAll(sabFilters);
+			Collections.sort(sabs);
+		}
+		description.append("sabs ").append(sabs).append("\n");
+		description.append("MRFILES ").append(digest(new File(metaFolder, "MRFILES.RRF"))).append("\n");
+		description.append("MRCOLS ").append(digest(new File(metaFolder, "MRCOLS.RRF"))).append("\n");
+		
+		BufferedReader br = RRFLayout.open(new File(metaFolder, "MRFILES.RRF"));
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			String fileName = RRFLayout.field(line, 0);
+			File f = new File(metaFolder, fileName);
+			description.append(fileName).append(" ").append(f.length()).append(" ").append(f.lastModified()).append("\n");
+		}
+		br.close();
+		
+		String fingerprint = toHex(md5().digest(description.toString().getBytes("UTF-8")));
+		String name = baseName + "_" + fingerprint.substring(0, 16);
+		
+		File marker = new File(folder_, name + MARKER);
+		if (!marker.exists())
+		{
+			//Never finished (or never started) - clear out anything left over
+			deleteDatabase(name);
+		}
+		description_ = description.toString();
+		return name;
+	}
+
+	/**
+	 * Record that the database was fully loaded, then evict the least recently used databases, if over the size limit.
+	 */
+	public void markComplete(String name) throws IOException
+	{
+		Writer w = new OutputStreamWriter(new FileOutputStream(new File(folder_, name + MARKER)), "UTF-8");
+		w.write(description_);
+		w.close();
+		evict(name);
+	}
+
+	/**
+	 * Record a use of the database, for LRU ordering
+	 */
+	public void touch(String name)
+	{
+		new File(folder_, name + MARKER).setLastModified(System.currentTimeMillis());
+	}
+
+	private void evict(String keep)
+	{
+		File[] markers = folder_.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.endsWith(MARKER);
+			}
+		});
+		if (markers == null)
+		{
+			return;
+		}
+		
+		ArrayList<File> byAge = new ArrayList<>();
+		long total = 0;
+		for (File marker : markers)
+		{
+			byAge.add(marker);
+			total += size(databaseName(marker));
+		}
+		Collections.sort(byAge, new Comparator<File>()
+		{
+			@Override
+			public int compare(File o1, File o2)
+			{
+				return Long.compare(o1.lastModified(), o2.lastModified());
+			}
+		});
+		
+		for (File marker : byAge)
+		{
+			if (total <= maxBytes_)
+			{
+				break;
+			}
+			String name = databaseName(marker);
+			if (name.equals(keep))
+			{
+				continue;
+			}
+			long size = size(name);
+			ConsoleUtil.println("Removing least recently used staging database " + name);
+			marker.delete();
+			deleteDatabase(name);
+			total -= size;
+		}
+	}
+
+	private static String databaseName(File marker)
+	{
+		return marker.getName().substring(0, marker.getName().length() - MARKER.length());
+	}
+
+	private File[] databaseFiles(final String name)
+	{
+		File[] files = folder_.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String fileName)
+			{
+				return fileName.startsWith(name + ".") && !fileName.equals(name + MARKER);
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	private long size(String name)
+	{
+		long size = 0;
+		for (File f : databaseFiles(name))
+		{
+			size += f.length();
+		}
+		return size;
+	}
+
+	private void deleteDatabase(String name)
+	{
+		for (File f : databaseFiles(name))
+		{
+			if (!f.delete())
+			{
+				ConsoleUtil.printErrorln("Couldn't remove " + f.getAbsolutePath());
+			}
+		}
+	}
+
+	private static MessageDigest md5()
+	{
+		try
+		{
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String digest(File f) throws IOException
+	{
+		MessageDigest md = md5();
+		InputStream is = new FileInputStream(f);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) > 0)
+		{
+			md.update(buffer, 0, read);
+		}
+		is.close();
+		return toHex(md.digest());
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes)
+		{
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,233 @@
+package gov.va.umls.uuid;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import gov.va.oia.terminology.converters.sharedUtils.stats.ConverterUUID;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+/**
+ * Creates the same type 5 (SHA-1, namespace) UUIDs as {@link ConverterUUID#createNamespaceUUIDFromString(String, boolean)}, without
+ * building the name string - the prefix and the value are UTF-8 encoded straight into a per-thread buffer, and hashed with a
+ * per-thread digest, so it is safe (and doesn't contend) across the conversion threads.
+ *
+ * The created UUIDs are recorded in the {@link UUIDDuplicateLog}, if one is given, and in the ConverterUUID debug map while it
+ * is enabled (which needs the name string after all).  When the fast path doesn't reproduce the UUIDs of ConverterUUID (checked 
+ * on construction), every call is handed to ConverterUUID.
+ */
+public class NamespaceUUIDs
+{
+	private static final String PROBE = "UMLS-namespace-probe";
+
+	private final long namespaceMsb_, namespaceLsb_;
+	private final boolean fallback_;
+	private final UUIDDuplicateLog duplicates_;
+
+	private final ThreadLocal<State> state_ = new ThreadLocal<State>()
+	{
+		@Override
+		protected State initialValue()
+		{
+			return new State();
+		}
+	};
+
+	/**
+	 * @param duplicates - where to record the created UUIDs, or null to not record them
+	 */
+	public NamespaceUUIDs(UUIDDuplicateLog duplicates)
+	{
+		duplicates_ = duplicates;
+		UUID namespace = ConverterUUID.getNamespace();
+		namespaceMsb_ = namespace == null ? 0 : namespace.getMostSignificantBits();
+		namespaceLsb_ = namespace == null ? 0 : namespace.getLeastSignificantBits();
+		boolean matches = false;
+		if (namespace != null)
+		{
+			//Don't leave the probe in the debug map
+			boolean disableUUIDMap = ConverterUUID.disableUUIDMap_;
+			ConverterUUID.disableUUIDMap_ = true;
+			try
+			{
+				matches = hash("ATUI", PROBE).equals(ConverterUUID.createNamespaceUUIDFromString("ATUI" + PROBE, true));
+			}
+			finally
+			{
+				ConverterUUID.disableUUIDMap_ = disableUUIDMap;
+			}
+		}
+		if (!matches)
+		{
+			ConsoleUtil.printErrorln("The fast UUID path doesn't match ConverterUUID - using ConverterUUID for every UUID");
+		}
+		fallback_ = !matches;
+	}
+
+	/**
+	 * @return the UUID ConverterUUID would create for prefix + value
+	 * @param dupeCheck - false if the same name is expected to be created more than once
+	 */
+	public UUID create(String prefix, String value, boolean dupeCheck)
+	{
+		return create(dupeCheck, prefix, value);
+	}
+
+	/**
+	 * @return the UUID ConverterUUID would create for the name parts, concatenated
+	 * @param dupeCheck - false if the same name is expected to be created more than once
+	 */
+	public UUID create(boolean dupeCheck, String... nameParts)
+	{
+		if (fallback_ || (!dupeCheck && !ConverterUUID.disableUUIDMap_))
+		{
+			//The debug map has to take the name without complaining if it is already there - only ConverterUUID can do that
+			return ConverterUUID.createNamespaceUUIDFromString(name(nameParts), !dupeCheck);
+		}
+		UUID uuid = hash(nameParts);
+		if (!ConverterUUID.disableUUIDMap_)
+		{
+			ConverterUUID.addMapping(name(nameParts), uuid);
+		}
+		if (duplicates_ != null)
+		{
+			duplicates_.record(uuid, dupeCheck, nameParts);
+		}
+		return uuid;
+	}
+
+	private static String name(String[] nameParts)
+	{
+		if (nameParts.length == 1)
+		{
+			return nameParts[0];
+		}
+		StringBuilder name = new StringBuilder();
+		for (String part : nameParts)
+		{
+			name.append(part);
+		}
+		return name.toString();
+	}
+
+	private UUID hash(String... nameParts)
+	{
+		State state = state_.get();
+		int length = 0;
+		for (String part : nameParts)
+		{
+			length = state.encode(part, length);
+		}
+
+		MessageDigest sha1 = state.sha1_;
+		sha1.reset();
+		byte[] hash = state.hash_;
+		for (int i = 7; i >= 0; i--)
+		{
+			hash[7 - i] = (byte)(namespaceMsb_ >>> (i * 8));
+			hash[15 - i] = (byte)(namespaceLsb_ >>> (i * 8));
+		}
+		sha1.update(hash, 0, 16);
+		sha1.update(state.buffer_, 0, length);
+		try
+		{
+			sha1.digest(hash, 0, hash.length);
+		}
+		catch (DigestException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		hash[6] &= 0x0f;
+		hash[6] |= 0x50;  //version 5
+		hash[8] &= 0x3f;
+		hash[8] |= 0x80;  //IETF variant
+		long msb = 0;
+		long lsb = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			msb = (msb << 8) | (hash[i] & 0xff);
+			lsb = (lsb << 8) | (hash[i + 8] & 0xff);
+		}
+		return new UUID(msb, lsb);
+	}
+
+	/**
+	 * The digest and buffers of one thread
+	 */
+	private static class State
+	{
+		private MessageDigest sha1_;
+		private byte[] buffer_ = new byte[256];
+		private byte[] hash_ = new byte[20];
+
+		private State()
+		{
+			try
+			{
+				sha1_ = MessageDigest.getInstance("SHA-1");
+			}
+			catch (NoSuchAlgorithmException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * UTF-8 encode the string into the buffer at the position, as String.getBytes("UTF-8") would
+		 * @return the position after it
+		 */
+		private int encode(String s, int pos)
+		{
+			int length = s.length();
+			ensure(pos + length * 3);
+			byte[] b = buffer_;
+			for (int i = 0; i < length; i++)
+			{
+				char c = s.charAt(i);
+				if (c < 0x80)
+				{
+					b[pos++] = (byte)c;
+				}
+				else if (c < 0x800)
+				{
+					b[pos++] = (byte)(0xc0 | (c >> 6));
+					b[pos++] = (byte)(0x80 | (c & 0x3f));
+				}
+				else if (Character.isSurrogate(c))
+				{
+					if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1)))
+					{
+						int cp = Character.toCodePoint(c, s.charAt(++i));
+						b[pos++] = (byte)(0xf0 | (cp >> 18));
+						b[pos++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+						b[pos++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+						b[pos++] = (byte)(0x80 | (cp & 0x3f));
+					}
+					else
+					{
+						//unpaired - replaced, as the JDK encoder does
+						b[pos++] = (byte)'?';
+					}
+				}
+				else
+				{
+					b[pos++] = (byte)(0xe0 | (c >> 12));
+					b[pos++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+					b[pos++] = (byte)(0x80 | (c & 0x3f));
+				}
+			}
+			return pos;
+		}
+
+		private void ensure(int size)
+		{
+			if (buffer_.length < size)
+			{
+				byte[] grown = new byte[Math.max(size, buffer_.length * 2)];
+				System.arraycopy(buffer_, 0, grown, 0, buffer_.length);
+				buffer_ = grown;
+			}
+		}
+	}
+}
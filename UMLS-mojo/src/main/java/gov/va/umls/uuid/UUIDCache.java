@@ -0,0 +1,121 @@
+package gov.va.umls.uuid;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least recently used cache of created UUIDs - for the UUIDs that are asked for over and over, like the concept
+ * UUIDs of relationship targets.
+ *
+ * Split into segments, each with its own lock, so the conversion threads don't all contend on one map.
+ */
+public class UUIDCache<K>
+{
+	private static final int SEGMENTS = 16;
+
+	private Segment<K>[] segments_;
+	private AtomicLong hits_ = new AtomicLong();
+	private AtomicLong misses_ = new AtomicLong();
+
+	/**
+	 * @param maxSize - the number of UUIDs to keep
+	 */
+	@SuppressWarnings("unchecked")
+	public UUIDCache(int maxSize)
+	{
+		segments_ = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++)
+		{
+			segments_[i] = new Segment<>(Math.max(1, maxSize / SEGMENTS));
+		}
+	}
+
+	/**
+	 * @return the cached UUID, or null
+	 */
+	public UUID get(K key)
+	{
+		Segment<K> segment = segment(key);
+		UUID uuid;
+		synchronized (segment)
+		{
+			uuid = segment.get(key);
+		}
+		(uuid == null ? misses_ : hits_).incrementAndGet();
+		return uuid;
+	}
+
+	public void put(K key, UUID uuid)
+	{
+		Segment<K> segment = segment(key);
+		synchronized (segment)
+		{
+			segment.put(key, uuid);
+		}
+	}
+
+	public long getHits()
+	{
+		return hits_.get();
+	}
+
+	public long getMisses()
+	{
+		return misses_.get();
+	}
+
+	private Segment<K> segment(K key)
+	{
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments_[(h & 0x7fffffff) % SEGMENTS];
+	}
+
+	/**
+	 * A key made of several strings - compared part by part, so the parts don't need to be joined
+	 */
+	public static final class CompositeKey
+	{
+		private final String[] parts_;
+		private final int hash_;
+
+		public CompositeKey(String... parts)
+		{
+			parts_ = parts;
+			hash_ = Arrays.hashCode(parts);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash_;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof CompositeKey && hash_ == ((CompositeKey)obj).hash_ && Arrays.equals(parts_, ((CompositeKey)obj).parts_);
+		}
+	}
+
+	private static class Segment<K> extends LinkedHashMap<K, UUID>
+	{
+		private static final long serialVersionUID = 1L;
+		private int maxSize_;
+
+		private Segment(int maxSize)
+		{
+			super(16, 0.75f, true);
+			maxSize_ = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, UUID> eldest)
+		{
+			return size() > maxSize_;
+		}
+	}
+}
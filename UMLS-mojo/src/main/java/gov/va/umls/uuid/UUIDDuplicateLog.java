@@ -0,0 +1,312 @@
+package gov.va.umls.uuid;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * A disk backed duplicate check for the UUIDs that are handed to it - unlike the ConverterUUID debug map, which keeps every UUID 
+ * and its name on the heap (too much for a full UMLS conversion).  Only covers the UUIDs that are recorded here - UUIDs created 
+ * inside ConverterUUID / EConceptUtility never are.
+ *
+ * The recorded UUIDs are appended to a log file (16 bytes plus the name parts each) as they are created.  {@link #check(File)}
+ * sorts the log by UUID, in runs that fit in memory, then merges the runs, looking for UUIDs created from different names - or
+ * created more than once from the same name, when the duplicate check was requested.
+ *
+ * Safe to record from multiple threads.
+ */
+public class UUIDDuplicateLog
+{
+	public static final String REPORT_FILE_NAME = "umlsUUIDDuplicates.txt";
+
+	private static final int RUN_SIZE = 1000000;
+
+	private File folder_;
+	private File file_;
+	private DataOutputStream out_;
+	private long count_ = 0;
+
+	/**
+	 * @param folder - where to create the log and sort files.  Removed by {@link #check(File)} or {@link #close()}.
+	 */
+	public UUIDDuplicateLog(File folder) throws IOException
+	{
+		folder_ = folder;
+		file_ = new File(folder, "uuidLog.spill");
+		out_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file_), 1024 * 1024));
+	}
+
+	/**
+	 * @param dupeCheck - false if the same name is expected to be created more than once
+	 * @param nameParts - the parts of the name the UUID was created from
+	 */
+	public synchronized void record(UUID uuid, boolean dupeCheck, String... nameParts)
+	{
+		try
+		{
+			out_.writeLong(uuid.getMostSignificantBits());
+			out_.writeLong(uuid.getLeastSignificantBits());
+			out_.writeBoolean(dupeCheck);
+			out_.writeByte(nameParts.length);
+			for (String part : nameParts)
+			{
+				out_.writeUTF(part);
+			}
+			count_++;
+		}
+		catch (IOException e)
+		{
+			//Callers are the UUID creators, which can't throw checked exceptions
+			throw new RuntimeException("Failed recording a UUID to " + file_.getAbsolutePath(), e);
+		}
+	}
+
+	public synchronized long size()
+	{
+		return count_;
+	}
+
+	/**
+	 * Look for duplicates in the log, write them to the report (if any are found), and remove the log.
+	 * @return the number of duplicates found
+	 */
+	public synchronized long check(File report) throws IOException
+	{
+		out_.close();
+		out_ = null;
+
+		ArrayList<File> runs = new ArrayList<>();
+		PriorityQueue<Run> merge = new PriorityQueue<>();
+		BufferedWriter reportOut = null;
+		long duplicates = 0;
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file_), 1024 * 1024));
+			try
+			{
+				ArrayList<Entry> run = new ArrayList<>(RUN_SIZE);
+				for (long i = 0; i < count_; i++)
+				{
+					run.add(Entry.read(in));
+					if (run.size() == RUN_SIZE)
+					{
+						runs.add(writeRun(run, runs.size()));
+						run.clear();
+					}
+				}
+				if (run.size() > 0)
+				{
+					runs.add(writeRun(run, runs.size()));
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+			file_.delete();
+
+			for (File f : runs)
+			{
+				Run run = new Run(f);
+				if (run.next())
+				{
+					merge.add(run);
+				}
+			}
+
+			Entry previous = null;
+			while (!merge.isEmpty())
+			{
+				Run run = merge.poll();
+				Entry current = run.current_;
+				if (previous != null && previous.compareTo(current) == 0
+						&& (previous.dupeCheck_ || current.dupeCheck_ || !Arrays.equals(previous.name_, current.name_)))
+				{
+					if (reportOut == null)
+					{
+						reportOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(report), "UTF-8"));
+						reportOut.write("UUID\tName\tDuplicate Name\n");
+					}
+					reportOut.write(new UUID(current.msb_, current.lsb_) + "\t" + previous.name() + "\t" + current.name() + "\n");
+					duplicates++;
+				}
+				previous = current;
+				if (run.next())
+				{
+					merge.add(run);
+				}
+				else
+				{
+					run.close();
+				}
+			}
+		}
+		finally
+		{
+			for (Run run : merge)
+			{
+				run.close();
+			}
+			if (reportOut != null)
+			{
+				reportOut.close();
+			}
+			for (File f : runs)
+			{
+				f.delete();
+			}
+		}
+		return duplicates;
+	}
+
+	/**
+	 * Remove the log, without checking it - for when the conversion fails.
+	 */
+	public synchronized void close() throws IOException
+	{
+		if (out_ != null)
+		{
+			out_.close();
+			out_ = null;
+		}
+		file_.delete();
+	}
+
+	private File writeRun(ArrayList<Entry> run, int index) throws IOException
+	{
+		Collections.sort(run, new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry o1, Entry o2)
+			{
+				return o1.compareTo(o2);
+			}
+		});
+		File f = new File(folder_, "uuidLog-" + index + ".run");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1024 * 1024));
+		out.writeInt(run.size());
+		for (Entry e : run)
+		{
+			e.write(out);
+		}
+		out.close();
+		return f;
+	}
+
+	private static class Entry implements Comparable<Entry>
+	{
+		private long msb_, lsb_;
+		private boolean dupeCheck_;
+		private String[] name_;
+
+		private static Entry read(DataInputStream in) throws IOException
+		{
+			Entry e = new Entry();
+			try
+			{
+				e.msb_ = in.readLong();
+				e.lsb_ = in.readLong();
+				e.dupeCheck_ = in.readBoolean();
+				e.name_ = new String[in.readByte()];
+				for (int i = 0; i < e.name_.length; i++)
+				{
+					e.name_[i] = in.readUTF();
+				}
+			}
+			catch (EOFException ex)
+			{
+				throw new IOException("The UUID log is shorter than expected", ex);
+			}
+			return e;
+		}
+
+		private void write(DataOutputStream out) throws IOException
+		{
+			out.writeLong(msb_);
+			out.writeLong(lsb_);
+			out.writeBoolean(dupeCheck_);
+			out.writeByte(name_.length);
+			for (String part : name_)
+			{
+				out.writeUTF(part);
+			}
+		}
+
+		private String name()
+		{
+			StringBuilder sb = new StringBuilder();
+			for (String part : name_)
+			{
+				sb.append(part);
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public int compareTo(Entry o)
+		{
+			int c = Long.compare(msb_, o.msb_);
+			return c != 0 ? c : Long.compare(lsb_, o.lsb_);
+		}
+	}
+
+	/**
+	 * A sorted run file, being merged
+	 */
+	private static class Run implements Comparable<Run>
+	{
+		private DataInputStream in_;
+		private int remaining_;
+		private Entry current_;
+
+		private Run(File f) throws IOException
+		{
+			in_ = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024));
+			remaining_ = in_.readInt();
+		}
+
+		private boolean next() throws IOException
+		{
+			if (remaining_ == 0)
+			{
+				current_ = null;
+				return false;
+			}
+			remaining_--;
+			current_ = Entry.read(in_);
+			return true;
+		}
+
+		private void close()
+		{
+			try
+			{
+				in_.close();
+			}
+			catch (IOException e)
+			{
+				//only read
+			}
+		}
+
+		@Override
+		public int compareTo(Run o)
+		{
+			return current_.compareTo(o.current_);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package gov.va.umls;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gov.va.umls.checkpoint.ConversionCheckpoint;
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.rrf.MRCONSO;
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Kills a checkpointed conversion of the fixture part way through the CUI loop, and resumes it - the jbin file has to be the
+ * same as the one of a run that was never interrupted.
+ */
+public class CheckpointResumeTest
+{
+	private static final int CHECKPOINT_INTERVAL = 3;
+
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void resumedRunWritesTheSameJbin() throws Exception
+	{
+		byte[] clean = Files.readAllBytes(new FixtureConversion(temp_.newFolder("clean")).set("checkpointInterval", CHECKPOINT_INTERVAL)
+				.run().toPath());
+		assertTrue(clean.length > 0);
+
+		//Two checkpoints in, and part way to the third
+		FixtureConversion killed = new FixtureConversion(temp_.newFolder("killed")).set("checkpointInterval", CHECKPOINT_INTERVAL)
+				.useMojo(new KilledMojo(2 * CHECKPOINT_INTERVAL + 1));
+		try
+		{
+			killed.run();
+			fail("The conversion wasn't killed");
+		}
+		catch (MojoExecutionException e)
+		{
+			//expected
+		}
+		File checkpoint = new File(killed.getOutputFolder(), ConversionCheckpoint.FOLDER_NAME);
+		assertTrue(new File(checkpoint, "checkpoint.state").isFile());
+
+		FixtureConversion resumed = killed.again().set("checkpointInterval", CHECKPOINT_INTERVAL).set("resume", true);
+		assertArrayEquals(clean, Files.readAllBytes(resumed.run().toPath()));
+		assertTrue("The checkpoint is removed once the conversion completes", !checkpoint.exists());
+	}
+
+	/**
+	 * Fails the conversion after converting the given number of CUIs
+	 */
+	public static class KilledMojo extends UMLSMojo
+	{
+		private int remaining_;
+
+		public KilledMojo(int cuis)
+		{
+			remaining_ = cuis;
+		}
+
+		@Override
+		public ConvertedCUI processCUIRows(CUILookup lookup, HashMap<String, ArrayList<MRCONSO>> conceptData) throws SQLException
+		{
+			if (remaining_-- == 0)
+			{
+				throw new SQLException("Killed");
+			}
+			return super.processCUIRows(lookup, conceptData);
+		}
+	}
+}
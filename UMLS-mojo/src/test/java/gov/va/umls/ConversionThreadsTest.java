@@ -0,0 +1,39 @@
+package gov.va.umls;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Converts the fixture with a single thread and with worker threads reading the CUI rows - the jbin files have to be the same.
+ */
+public class ConversionThreadsTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void workerThreadsWriteTheSameJbin() throws Exception
+	{
+		byte[] serial = convert("serial", 1, 2);
+		byte[] parallel = convert("parallel", 4, 2);
+		assertTrue(serial.length > 0);
+		assertArrayEquals(serial, parallel);
+
+		//With individual queries per CUI and atom, rather than window prefetches
+		assertArrayEquals(serial, convert("parallelStatements", 4, 0));
+	}
+
+	private byte[] convert(String name, int threads, int windowSize) throws Exception
+	{
+		//Small windows, so the workers have several to read at once
+		FixtureConversion conversion = new FixtureConversion(temp_.newFolder(name)).set("conversionThreads", threads)
+				.set("prefetchWindowSize", windowSize);
+		File jbin = conversion.run();
+		return Files.readAllBytes(jbin.toPath());
+	}
+}
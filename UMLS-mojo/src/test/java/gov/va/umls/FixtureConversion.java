@@ -0,0 +1,256 @@
+package gov.va.umls;
+
+import gov.va.oia.terminology.converters.sharedUtils.stats.ConverterUUID;
+import gov.va.umls.output.ShardedConceptWriter;
+import gov.va.umls.rrf.RRFLayout;
+import gov.va.umls.sct.SCTIDMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.ihtsdo.etypes.EConcept;
+
+/**
+ * A complete run of the mojo over the fixture META (src/test/resources/fixture) - for the tests that compare the output of
+ * conversions with different settings.  Also used by the benchmarks (through the test jar), so it only reads the fixture
+ * as classpath resources.
+ */
+public class FixtureConversion
+{
+	public static final List<String> SAB_FILTERS = Arrays.asList("ICD9CM", "SNOMEDCT_US", "MSH", "SRC", "MTH");
+
+	private static final String[] META_FILES = new String[] {"MRFILES.RRF", "MRCOLS.RRF", "MRCONSO.RRF", "MRSAT.RRF", "MRREL.RRF",
+		"MRDEF.RRF", "MRSTY.RRF", "MRHIER.RRF", "MRRANK.RRF", "MRDOC.RRF", "MRSAB.RRF"};
+
+	private File folder_;
+	private UMLSMojo mojo_;
+
+	/**
+	 * @param folder - an empty folder to copy the fixture META, and write the staging database and output, into
+	 */
+	public FixtureConversion(File folder) throws IOException
+	{
+		this(folder, false);
+	}
+
+	/**
+	 * @param folder - an empty folder to copy the fixture META, and write the staging database and output, into
+	 * @param sctIds - true to give the mojo a UUID for each SNOMED code of the fixture, in place of the index of the SCT jbin files
+	 */
+	public FixtureConversion(File folder, boolean sctIds) throws IOException
+	{
+		folder_ = folder;
+		File meta = getMETAFolder();
+		meta.mkdirs();
+		for (String name : META_FILES)
+		{
+			copy("/fixture/META/" + name, new File(meta, name));
+		}
+		mojo_ = UMLSMojo.create(folder, getOutputFolder(), "2014AA-fixture", new ArrayList<>(SAB_FILTERS), sctIds ? sctIds(meta) : null);
+		//The debug map lasts as long as the JVM - it would take the UUIDs of an earlier conversion in the same run for duplicates
+		ConverterUUID.disableUUIDMap_ = true;
+	}
+
+	private FixtureConversion(File folder, UMLSMojo mojo)
+	{
+		folder_ = folder;
+		mojo_ = mojo;
+	}
+
+	/**
+	 * @return a new conversion of the META already copied to the folder, with a new mojo - for a run that follows on from this 
+	 * one, such as a resume.  The parameters set on this conversion aren't carried over.
+	 */
+	public FixtureConversion again() throws IOException
+	{
+		return new FixtureConversion(folder_, UMLSMojo.create(folder_, getOutputFolder(), "2014AA-fixture", new ArrayList<>(SAB_FILTERS), 
+				null));
+	}
+
+	/**
+	 * Run with the given mojo (a subclass that overrides a step) in place of the current one - the current mojo's configuration
+	 * is copied into it.
+	 */
+	public FixtureConversion useMojo(UMLSMojo mojo) throws ReflectiveOperationException
+	{
+		for (Class<?> c = UMLSMojo.class; c != null; c = c.getSuperclass())
+		{
+			for (Field f : c.getDeclaredFields())
+			{
+				if (!Modifier.isStatic(f.getModifiers()))
+				{
+					f.setAccessible(true);
+					f.set(mojo, f.get(mojo_));
+				}
+			}
+		}
+		mojo_ = mojo;
+		return this;
+	}
+
+	/**
+	 * Stands in for the index of the SCT jbin files - a UUID for each SNOMED code in the META folder
+	 */
+	private static SCTIDMap sctIds(File meta) throws IOException
+	{
+		RRFLayout layout = new RRFLayout(meta);
+		int sabColumn = layout.indexOf("MRCONSO", "SAB");
+		int codeColumn = layout.indexOf("MRCONSO", "CODE");
+		SCTIDMap map = new SCTIDMap(64);
+		BufferedReader br = RRFLayout.open(RRFLayout.dataFile(meta, "MRCONSO"));
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			String[] fields = RRFLayout.split(line);
+			if (fields[sabColumn].equals("SNOMEDCT_US"))
+			{
+				UUID uuid = UUID.nameUUIDFromBytes(("SCTID" + fields[codeColumn]).getBytes("UTF-8"));
+				map.put(SCTIDMap.parse(fields[codeColumn]), uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+			}
+		}
+		br.close();
+		return map;
+	}
+
+	private static void copy(String resource, File to) throws IOException
+	{
+		InputStream is = FixtureConversion.class.getResourceAsStream(resource);
+		if (is == null)
+		{
+			throw new IOException("Missing fixture file " + resource);
+		}
+		try
+		{
+			Files.copy(is, to.toPath());
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	/**
+	 * @return the fixture META folder on the test classpath - only when the test classes aren't in a jar
+	 */
+	public static File fixture() throws IOException
+	{
+		try
+		{
+			return new File(FixtureConversion.class.getResource("/fixture/META/MRFILES.RRF").toURI()).getParentFile();
+		}
+		catch (Exception e)
+		{
+			throw new IOException("Missing the fixture META folder", e);
+		}
+	}
+
+	/**
+	 * Set a mojo parameter by its field name - the same way maven configures it.
+	 */
+	public FixtureConversion set(String parameter, Object value) throws ReflectiveOperationException
+	{
+		Field f = UMLSMojo.class.getDeclaredField(parameter);
+		f.setAccessible(true);
+		f.set(mojo_, value);
+		return this;
+	}
+
+	/**
+	 * Read a private field of the mojo (or of the base mojo) - for checking the state it was left in.
+	 */
+	public Object get(String field) throws ReflectiveOperationException
+	{
+		for (Class<?> c = UMLSMojo.class; c != null; c = c.getSuperclass())
+		{
+			try
+			{
+				Field f = c.getDeclaredField(field);
+				f.setAccessible(true);
+				return f.get(mojo_);
+			}
+			catch (NoSuchFieldException e)
+			{
+				//try the superclass
+			}
+		}
+		throw new NoSuchFieldException(field);
+	}
+
+	public UMLSMojo getMojo()
+	{
+		return mojo_;
+	}
+
+	public File getMETAFolder()
+	{
+		return new File(folder_, "META");
+	}
+
+	public File getOutputFolder()
+	{
+		return new File(folder_, "target");
+	}
+
+	/**
+	 * Run the conversion.
+	 * @return the jbin file written by the base mojo
+	 */
+	public File run() throws MojoExecutionException, IOException
+	{
+		mojo_.execute();
+		return getJbin();
+	}
+
+	/**
+	 * @return the single jbin file the base mojo writes (shards excluded)
+	 */
+	public File getJbin() throws IOException
+	{
+		File[] jbins = getOutputFolder().listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.endsWith(".jbin") && !name.startsWith(ShardedConceptWriter.SHARD_PREFIX);
+			}
+		});
+		if (jbins == null || jbins.length != 1)
+		{
+			throw new IOException("Expected one jbin file in " + getOutputFolder() + " - found " + (jbins == null ? 0 : jbins.length));
+		}
+		return jbins[0];
+	}
+
+	/**
+	 * @return the concepts of a jbin file, in file order
+	 */
+	public static List<EConcept> read(File jbin) throws IOException, ClassNotFoundException
+	{
+		ArrayList<EConcept> concepts = new ArrayList<>();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(jbin)));
+		try
+		{
+			while (in.available() > 0)
+			{
+				concepts.add(new EConcept(in));
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return concepts;
+	}
+}
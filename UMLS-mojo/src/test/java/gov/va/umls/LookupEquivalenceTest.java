@@ -0,0 +1,123 @@
+package gov.va.umls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.va.oia.terminology.converters.umlsUtils.RRFDatabaseHandle;
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.lookup.LookupQueries;
+import gov.va.umls.lookup.StatementLookup;
+import gov.va.umls.lookup.WindowPrefetchLookup;
+import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.MRCONSOReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reads every fixture CUI and atom through {@link WindowPrefetchLookup} and {@link StatementLookup} - the range queries have to
+ * return the same rows, in the same order, as the per item queries.
+ */
+public class LookupEquivalenceTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	private FixtureConversion conversion_;
+	private LinkedHashMap<String, List<String>> auis_ = new LinkedHashMap<>();
+	private LookupQueries queries_;
+	private Connection connection_;
+
+	@Before
+	public void prepare() throws Exception
+	{
+		conversion_ = new FixtureConversion(temp_.getRoot());
+		conversion_.getMojo().prepare();
+		MRCONSOReader reader = conversion_.getMojo().openMRCONSO();
+		MRCONSO row;
+		while ((row = reader.read()) != null)
+		{
+			List<String> auis = auis_.get(row.cui);
+			if (auis == null)
+			{
+				auis = new ArrayList<>();
+				auis_.put(row.cui, auis);
+			}
+			auis.add(row.aui);
+		}
+		reader.close();
+		assertTrue(auis_.size() > 1);
+		queries_ = new LookupQueries((String) conversion_.get("sabQueryString_"), (String) conversion_.get("sabQueryStringMTHModified_"));
+		connection_ = ((RRFDatabaseHandle) conversion_.get("db_")).getConnection();
+	}
+
+	@After
+	public void cleanUp()
+	{
+		conversion_.getMojo().cleanUp();
+	}
+
+	@Test
+	public void windowsReturnTheSameRowsAsStatements() throws Exception
+	{
+		for (int windowSize : new int[] {1, 2, auis_.size()})
+		{
+			CUILookup statements = new StatementLookup(connection_, queries_, null);
+			CUILookup windows = new WindowPrefetchLookup(connection_, queries_, null);
+			ArrayList<String> cuis = new ArrayList<>(auis_.keySet());
+			for (int start = 0; start < cuis.size(); start += windowSize)
+			{
+				List<String> window = cuis.subList(start, Math.min(cuis.size(), start + windowSize));
+				windows.prefetch(window.get(0), window.get(window.size() - 1));
+				for (String cui : window)
+				{
+					assertSameRows(cui + " concept attributes", statements.conceptAttributes(cui), windows.conceptAttributes(cui));
+					assertSameRows(cui + " semantic types", statements.semanticTypes(cui), windows.semanticTypes(cui));
+					assertSameRows(cui + " forward rels", statements.cuiRelationshipsForward(cui), windows.cuiRelationshipsForward(cui));
+					assertSameRows(cui + " backward rels", statements.cuiRelationshipsBackward(cui), windows.cuiRelationshipsBackward(cui));
+					for (String aui : auis_.get(cui))
+					{
+						assertSameRows(aui + " attributes", statements.atomAttributes(cui, aui), windows.atomAttributes(cui, aui));
+						assertSameRows(aui + " definitions", statements.definitions(cui, aui), windows.definitions(cui, aui));
+						assertSameRows(aui + " forward rels", statements.atomRelationshipsForward(cui, aui),
+								windows.atomRelationshipsForward(cui, aui));
+						assertSameRows(aui + " backward rels", statements.atomRelationshipsBackward(cui, aui),
+								windows.atomRelationshipsBackward(cui, aui));
+					}
+				}
+			}
+			statements.close();
+			windows.close();
+		}
+	}
+
+	/**
+	 * Compare the columns of the per item result (the range forms may carry extra columns to bucket on)
+	 */
+	static void assertSameRows(String what, ResultSet expected, ResultSet actual) throws SQLException
+	{
+		ResultSetMetaData md = expected.getMetaData();
+		int row = 0;
+		while (expected.next())
+		{
+			assertTrue(what + " - missing row " + row, actual.next());
+			for (int i = 1; i <= md.getColumnCount(); i++)
+			{
+				String column = md.getColumnLabel(i);
+				assertEquals(what + " - row " + row + " " + column, expected.getString(i), actual.getString(column));
+			}
+			row++;
+		}
+		assertTrue(what + " - extra rows", !actual.next());
+		expected.close();
+		actual.close();
+	}
+}
@@ -0,0 +1,121 @@
+package gov.va.umls;
+
+import static org.junit.Assert.assertTrue;
+import gov.va.oia.terminology.converters.umlsUtils.RRFDatabaseHandle;
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.lookup.LookupQueries;
+import gov.va.umls.lookup.StatementLookup;
+import gov.va.umls.lookup.WindowPrefetchLookup;
+import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.MRCONSOReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reads the relationships of every fixture CUI and atom from the materialized relationship tables, and from the joins they
+ * were built from - with the per item and the range queries, and with and without the MTH targets.
+ */
+public class MaterializedRelationshipsTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void tablesMatchTheJoins() throws Exception
+	{
+		assertTablesMatchTheJoins(new FixtureConversion(temp_.newFolder("withMTH")));
+	}
+
+	@Test
+	public void tablesMatchTheJoinsWithoutMTHTargets() throws Exception
+	{
+		assertTablesMatchTheJoins(new FixtureConversion(temp_.newFolder("withoutMTH")).set("skipMTHConcepts", true));
+	}
+
+	private static void assertTablesMatchTheJoins(FixtureConversion conversion) throws Exception
+	{
+		UMLSMojo mojo = conversion.getMojo();
+		mojo.prepare();
+		try
+		{
+			LinkedHashMap<String, List<String>> auis = new LinkedHashMap<>();
+			MRCONSOReader reader = mojo.openMRCONSO();
+			MRCONSO row;
+			while ((row = reader.read()) != null)
+			{
+				if (!auis.containsKey(row.cui))
+				{
+					auis.put(row.cui, new ArrayList<String>());
+				}
+				auis.get(row.cui).add(row.aui);
+			}
+			reader.close();
+
+			String sabQueryString = (String) conversion.get("sabQueryString_");
+			String sabQueryStringMTHModified = (String) conversion.get("sabQueryStringMTHModified_");
+			LookupQueries joins = new LookupQueries(sabQueryString, sabQueryStringMTHModified);
+			LookupQueries tables = new LookupQueries(sabQueryString, sabQueryStringMTHModified);
+			tables.useMaterializedRelationships();
+			Connection connection = ((RRFDatabaseHandle) conversion.get("db_")).getConnection();
+			for (boolean atom : new boolean[] {false, true})
+			{
+				for (boolean forward : new boolean[] {true, false})
+				{
+					ResultSet rs = connection.getMetaData().getTables(null, null, tables.relationshipTable(atom, forward), null);
+					assertTrue(tables.relationshipTable(atom, forward), rs.next());
+					rs.close();
+				}
+			}
+
+			ArrayList<String> cuis = new ArrayList<>(auis.keySet());
+			CUILookup[] expected = new CUILookup[] {new StatementLookup(connection, joins, null), new WindowPrefetchLookup(connection, joins, null)};
+			CUILookup[] actual = new CUILookup[] {new StatementLookup(connection, tables, null), new WindowPrefetchLookup(connection, tables, null)};
+			int rels = 0;
+			for (int i = 0; i < expected.length; i++)
+			{
+				expected[i].prefetch(cuis.get(0), cuis.get(cuis.size() - 1));
+				actual[i].prefetch(cuis.get(0), cuis.get(cuis.size() - 1));
+				for (String cui : cuis)
+				{
+					rels += count(expected[i].cuiRelationshipsForward(cui));
+					LookupEquivalenceTest.assertSameRows(cui + " forward rels", expected[i].cuiRelationshipsForward(cui),
+							actual[i].cuiRelationshipsForward(cui));
+					LookupEquivalenceTest.assertSameRows(cui + " backward rels", expected[i].cuiRelationshipsBackward(cui),
+							actual[i].cuiRelationshipsBackward(cui));
+					for (String aui : auis.get(cui))
+					{
+						rels += count(expected[i].atomRelationshipsForward(cui, aui));
+						LookupEquivalenceTest.assertSameRows(aui + " forward rels", expected[i].atomRelationshipsForward(cui, aui),
+								actual[i].atomRelationshipsForward(cui, aui));
+						LookupEquivalenceTest.assertSameRows(aui + " backward rels", expected[i].atomRelationshipsBackward(cui, aui),
+								actual[i].atomRelationshipsBackward(cui, aui));
+					}
+				}
+				expected[i].close();
+				actual[i].close();
+			}
+			assertTrue("No fixture relationships read", rels > 0);
+		}
+		finally
+		{
+			mojo.cleanUp();
+		}
+	}
+
+	private static int count(ResultSet rs) throws Exception
+	{
+		int count = 0;
+		while (rs.next())
+		{
+			count++;
+		}
+		rs.close();
+		return count;
+	}
+}
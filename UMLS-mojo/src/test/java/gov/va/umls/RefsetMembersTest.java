@@ -0,0 +1,99 @@
+package gov.va.umls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import org.ihtsdo.etypes.EConcept;
+import org.ihtsdo.tk.dto.concept.component.refex.TkRefexAbstractMember;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reads the refsets back from the jbin file of a fixture conversion - the memberships logged during the conversion have to end
+ * up in their refset concepts, each of which is written once.
+ */
+public class RefsetMembersTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void writesEachRefsetOnceWithItsLoggedMembers() throws Exception
+	{
+		FixtureConversion conversion = new FixtureConversion(temp_.getRoot());
+		List<EConcept> concepts = FixtureConversion.read(conversion.run());
+
+		HashSet<UUID> written = new HashSet<>();
+		HashMap<UUID, List<UUID>> refsets = new HashMap<>();
+		for (EConcept concept : concepts)
+		{
+			assertTrue("Wrote " + concept.getPrimordialUuid() + " more than once", written.add(concept.getPrimordialUuid()));
+			if (concept.getRefsetMembers() != null && concept.getRefsetMembers().size() > 0)
+			{
+				ArrayList<UUID> members = new ArrayList<>();
+				for (TkRefexAbstractMember<?> member : concept.getRefsetMembers())
+				{
+					members.add(member.getComponentUuid());
+				}
+				refsets.put(concept.getPrimordialUuid(), members);
+			}
+		}
+
+		for (List<UUID> members : refsets.values())
+		{
+			assertEquals("Duplicate members", members.size(), new HashSet<>(members).size());
+			for (UUID member : members)
+			{
+				assertTrue("Member " + member + " isn't a written concept", written.contains(member));
+			}
+		}
+
+		List<UUID> all = refsets.get(((EConcept) conversion.get("allRefsetConcept_")).getPrimordialUuid());
+		List<UUID> cuis = refsets.get(((EConcept) conversion.get("allCUIRefsetConcept_")).getPrimordialUuid());
+		List<UUID> auis = refsets.get(((EConcept) conversion.get("allAUIRefsetConcept_")).getPrimordialUuid());
+
+		LinkedHashSet<UUID> expectedCUIs = new LinkedHashSet<>();
+		for (String cui : convertedCUIs(conversion.getMETAFolder()))
+		{
+			expectedCUIs.add(conversion.getMojo().createCUIConceptUUID(cui));
+		}
+		assertEquals(expectedCUIs, new HashSet<>(cuis));
+
+		HashSet<UUID> union = new HashSet<>(cuis);
+		union.addAll(auis);
+		assertEquals(cuis.size() + auis.size(), union.size());
+		assertEquals(union, new HashSet<>(all));
+	}
+
+	/**
+	 * @return the CUIs with a row from one of the SABs the fixture is converted with
+	 */
+	private static LinkedHashSet<String> convertedCUIs(File meta) throws Exception
+	{
+		RRFLayout layout = new RRFLayout(meta);
+		int cuiColumn = layout.indexOf("MRCONSO", "CUI");
+		int sabColumn = layout.indexOf("MRCONSO", "SAB");
+		LinkedHashSet<String> cuis = new LinkedHashSet<>();
+		BufferedReader br = RRFLayout.open(RRFLayout.dataFile(meta, "MRCONSO"));
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			String[] fields = RRFLayout.split(line);
+			if (FixtureConversion.SAB_FILTERS.contains(fields[sabColumn]))
+			{
+				cuis.add(fields[cuiColumn]);
+			}
+		}
+		br.close();
+		return cuis;
+	}
+}
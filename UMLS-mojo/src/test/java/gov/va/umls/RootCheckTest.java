@@ -0,0 +1,115 @@
+package gov.va.umls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.va.oia.terminology.converters.umlsUtils.RRFBaseConverterMojo;
+import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.MRCONSOReader;
+import gov.va.umls.staging.RootAUIs;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the base mojo's MRHIER root check on every fixture atom - the ones it finds to be roots have to be in {@link RootAUIs},
+ * or the pre-filter would change the output.  The check has to come out the same against the staging database of the merge 
+ * join engine, too.
+ */
+public class RootCheckTest
+{
+	private static final Method IS_ROOT_CONCEPT;
+	static
+	{
+		try
+		{
+			IS_ROOT_CONCEPT = RRFBaseConverterMojo.class.getDeclaredMethod("isRootConcept", String.class, String.class);
+			IS_ROOT_CONCEPT.setAccessible(true);
+		}
+		catch (NoSuchMethodException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void preFilterKeepsEveryRoot() throws Exception
+	{
+		FixtureConversion conversion = new FixtureConversion(temp_.newFolder("staged"));
+		UMLSMojo mojo = conversion.getMojo();
+		mojo.prepare();
+		try
+		{
+			RootAUIs rootAUIs = (RootAUIs) conversion.get("rootAUIs_");
+			int roots = 0;
+			for (Entry<String, UUID> atom : roots(mojo).entrySet())
+			{
+				String[] cuiAui = atom.getKey().split("\\|");
+				UUID filtered = rootAUIs.mayBeRoot(cuiAui[1]) ? (UUID) IS_ROOT_CONCEPT.invoke(mojo, cuiAui[0], cuiAui[1]) : null;
+				assertEquals(atom.getKey(), atom.getValue(), filtered);
+				if (atom.getValue() != null)
+				{
+					roots++;
+				}
+			}
+			assertTrue("No fixture atoms are roots - the check proves nothing", roots > 0);
+		}
+		finally
+		{
+			mojo.cleanUp();
+		}
+	}
+
+	/**
+	 * The merge join engine only stages some of MRCONSO - the root check has to find the same roots from it.
+	 */
+	@Test
+	public void mergeJoinStagingFindsTheSameRoots() throws Exception
+	{
+		FixtureConversion staged = new FixtureConversion(temp_.newFolder("staged"));
+		staged.getMojo().prepare();
+		HashMap<String, UUID> expected;
+		try
+		{
+			expected = roots(staged.getMojo());
+		}
+		finally
+		{
+			staged.getMojo().cleanUp();
+		}
+
+		FixtureConversion mergeJoin = new FixtureConversion(temp_.newFolder("mergeJoin")).set("mergeJoinEngine", true);
+		mergeJoin.getMojo().prepare();
+		try
+		{
+			assertEquals(expected, roots(mergeJoin.getMojo()));
+		}
+		finally
+		{
+			mergeJoin.getMojo().cleanUp();
+		}
+	}
+
+	/**
+	 * @return the result of the base root check for every atom, by CUI|AUI
+	 */
+	private static HashMap<String, UUID> roots(UMLSMojo mojo) throws Exception
+	{
+		HashMap<String, UUID> roots = new HashMap<>();
+		MRCONSOReader reader = mojo.openMRCONSO();
+		MRCONSO row;
+		while ((row = reader.read()) != null)
+		{
+			roots.put(row.cui + "|" + row.aui, (UUID) IS_ROOT_CONCEPT.invoke(mojo, row.cui, row.aui));
+		}
+		reader.close();
+		assertTrue("No fixture atoms read", roots.size() > 0);
+		return roots;
+	}
+}
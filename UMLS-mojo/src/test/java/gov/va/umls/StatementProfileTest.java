@@ -0,0 +1,55 @@
+package gov.va.umls;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.va.umls.report.StatementProfiler;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Profiles the lookup statements of a fixture conversion - the plans have to be captured for every statement, with real values
+ * bound, and use the indexes of the staging database.
+ */
+public class StatementProfileTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void capturesThePlansOfStatementLookups() throws Exception
+	{
+		assertPlans(profile("statements", 0));
+	}
+
+	@Test
+	public void capturesThePlansOfWindowPrefetches() throws Exception
+	{
+		assertPlans(profile("windows", 2));
+	}
+
+	private String profile(String name, int windowSize) throws Exception
+	{
+		FixtureConversion conversion = new FixtureConversion(temp_.newFolder(name)).set("profileStatements", true)
+				.set("prefetchWindowSize", windowSize);
+		conversion.run();
+		return new String(Files.readAllBytes(new File(conversion.getOutputFolder(), StatementProfiler.FILE_NAME).toPath()),
+				StandardCharsets.UTF_8);
+	}
+
+	private static void assertPlans(String json)
+	{
+		for (String name : new String[] {"atomAttributes", "conceptAttributes", "semanticTypes", "definitions", "cuiRelForward",
+				"cuiRelBackward", "auiRelForward", "auiRelBackward"})
+		{
+			assertTrue(name, json.contains("\"name\": \"" + name + "\""));
+		}
+		assertFalse(json, json.contains("\"plan\": \"\""));
+		assertFalse(json, json.contains("EXPLAIN failed"));
+		assertFalse(json, json.contains("\"tableScans\": [\""));
+		assertTrue(json, json.contains("SAT_CUI_METAUI_INDEX"));
+	}
+}
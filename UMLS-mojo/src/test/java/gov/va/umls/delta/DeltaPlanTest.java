@@ -0,0 +1,82 @@
+package gov.va.umls.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.va.umls.FixtureConversion;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Plans a delta against a previous release that differs from the fixture by a new, a modified, a pending SCT and a retired CUI.
+ */
+public class DeltaPlanTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void convertsTheChangedCUIsAndTheirNeighbours() throws Exception
+	{
+		File meta = new FixtureConversion(temp_.getRoot()).getMETAFolder();
+		RRFLayout layout = new RRFLayout(meta);
+		CUIDigests previousDigests = new CUIDigests(meta, layout, FixtureConversion.SAB_FILTERS, false);
+
+		//The previous release didn't have C0018681, but did have C9999999 - and C1000003 was a pending SCT CUI
+		File manifestFile = new File(temp_.getRoot(), DeltaManifest.FILE_NAME);
+		DeltaManifest.Writer writer = new DeltaManifest.Writer(manifestFile, "config", UUID.randomUUID());
+		for (String cui : previousDigests.getCuis())
+		{
+			if (!cui.equals("C0018681"))
+			{
+				DeltaManifest.Entry entry = new DeltaManifest.Entry(previousDigests.get(cui));
+				if (cui.equals("C1000003"))
+				{
+					entry.setPendingSCT();
+				}
+				writer.write(cui, entry);
+			}
+		}
+		writer.write("C9999999", new DeltaManifest.Entry("0-0-1"));
+		writer.close();
+
+		//And a different string for an atom of C0020538
+		File conso = RRFLayout.dataFile(meta, "MRCONSO");
+		List<String> lines = Files.readAllLines(conso.toPath(), StandardCharsets.UTF_8);
+		ArrayList<String> modified = new ArrayList<>();
+		for (String line : lines)
+		{
+			modified.add(line.replace("|Essential hypertension|", "|Essential (primary) hypertension|"));
+		}
+		assertFalse(lines.equals(modified));
+		Files.write(conso.toPath(), modified, StandardCharsets.UTF_8);
+
+		CUIDigests current = new CUIDigests(meta, layout, FixtureConversion.SAB_FILTERS, false);
+		DeltaPlan plan = new DeltaPlan(current, DeltaManifest.read(manifestFile), new ReleaseChanges(meta, layout), new HashSet<UUID>(),
+				meta, layout, CUIDigests.sabSet(FixtureConversion.SAB_FILTERS, false));
+
+		//C0012634 has a SNOMED rel to C0020538 - its neighbour C0011849 is one more step away, so is copied
+		HashSet<String> converted = new HashSet<>(Arrays.asList("C0018681", "C0020538", "C1000003", "C0012634"));
+		for (String cui : current.getCuis())
+		{
+			assertEquals(cui, converted.contains(cui), plan.isConverted(cui));
+			if (!converted.contains(cui))
+			{
+				assertEquals(cui, current.get(cui), plan.getUnchanged().get(cui).getDigest());
+			}
+		}
+		assertEquals(current.size() - converted.size(), plan.getUnchanged().size());
+		assertTrue(plan.isConverted("C9999999"));
+		assertEquals("Delta: 1 new CUIs, 2 modified CUIs, 1 retired CUIs, 1 related CUIs to reconvert, 6 unchanged CUIs", plan.toString());
+	}
+}
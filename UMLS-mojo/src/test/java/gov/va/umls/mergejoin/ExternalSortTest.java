@@ -0,0 +1,111 @@
+package gov.va.umls.mergejoin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExternalSortTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void sortsInMemory() throws IOException
+	{
+		ExternalSort sort = new ExternalSort("test", temp_.getRoot(), 100, 0);
+		sort.add("C3|c|");
+		sort.add("C1|a|");
+		sort.add("C2|b|");
+		assertEquals(3, sort.getLineCount());
+		assertEquals(lines("C1|a|", "C2|b|", "C3|c|"), read(sort.finish(temp_.newFile("out.txt"))));
+	}
+
+	@Test
+	public void mergesSpilledRunsInOrder() throws IOException
+	{
+		//enough runs of one line to need more than one merge pass
+		ExternalSort sort = new ExternalSort("test", temp_.getRoot(), 1, 0);
+		Random random = new Random(42);
+		for (int i = 0; i < 300; i++)
+		{
+			sort.add("C" + random.nextInt(50) + "|" + i + "|");
+		}
+		ArrayList<String> sorted = read(sort.finish(temp_.newFile("out.txt")));
+		assertEquals(300, sorted.size());
+		for (int i = 1; i < sorted.size(); i++)
+		{
+			String previousKey = RRFLayout.field(sorted.get(i - 1), 0);
+			String key = RRFLayout.field(sorted.get(i), 0);
+			int c = previousKey.compareTo(key);
+			if (c > 0 || (c == 0 && Integer.parseInt(RRFLayout.field(sorted.get(i - 1), 1)) > Integer.parseInt(RRFLayout.field(sorted.get(i), 1))))
+			{
+				throw new AssertionError("Out of order, or not stable: " + sorted.get(i - 1) + " then " + sorted.get(i));
+			}
+		}
+		//only the output is left behind
+		assertEquals(1, temp_.getRoot().listFiles().length);
+	}
+
+	@Test
+	public void comparesKeysFieldByField() throws IOException
+	{
+		ExternalSort sort = new ExternalSort("test", temp_.getRoot(), 2, 0, 1);
+		sort.add("AB|0|");
+		sort.add("A|2|");
+		sort.add("|9|");
+		sort.add("A|1|");
+		assertEquals(lines("|9|", "A|1|", "A|2|", "AB|0|"), read(sort.finish(temp_.newFile("out.txt"))));
+	}
+
+	@Test
+	public void streamsSortedLines() throws IOException
+	{
+		ExternalSort sort = new ExternalSort("test", temp_.getRoot(), 100, 0);
+		sort.add("C2|b||");
+		sort.add("C1|a||");
+		SortedLineStream stream = new SortedLineStream(sort.finish(temp_.newFile("out.txt")));
+		assertEquals("C1|a||", stream.peek());
+		assertEquals("a", stream.peekField(1));
+		//empty fields are null
+		assertNull(stream.peekField(2));
+		assertEquals(3, stream.peekFields().length);
+		assertNull(stream.peekFields()[2]);
+		stream.advance();
+		assertEquals("C2", stream.peekFields()[0]);
+		stream.advance();
+		assertNull(stream.peek());
+		assertNull(stream.peekFields());
+		stream.close();
+	}
+
+	private static ArrayList<String> lines(String ... lines)
+	{
+		ArrayList<String> result = new ArrayList<>();
+		for (String line : lines)
+		{
+			result.add(line);
+		}
+		return result;
+	}
+
+	private static ArrayList<String> read(File f) throws IOException
+	{
+		ArrayList<String> result = new ArrayList<>();
+		BufferedReader br = RRFLayout.open(f);
+		String line;
+		while ((line = br.readLine()) != null)
+		{
+			result.add(line);
+		}
+		br.close();
+		return result;
+	}
+}
@@ -0,0 +1,149 @@
+package gov.va.umls.mergejoin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gov.va.umls.lookup.CUILookup;
+import gov.va.umls.rrf.MRCONSO;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.File;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the sorts and joins over the small META fixture
+ */
+public class MergeJoinEngineTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	private MergeJoinEngine engine_;
+
+	static File fixture() throws URISyntaxException
+	{
+		return new File(MergeJoinEngineTest.class.getResource("/fixture/META/MRFILES.RRF").toURI()).getParentFile();
+	}
+
+	@After
+	public void dispose() throws Exception
+	{
+		if (engine_ != null)
+		{
+			engine_.dispose();
+		}
+	}
+
+	@Test
+	public void readsConsoInCuiOrder() throws Exception
+	{
+		engine_ = new MergeJoinEngine(fixture(), new File(temp_.getRoot(), "sort"), null, false, null, 4);
+		engine_.prepare();
+		ArrayList<MRCONSO> rows = readAll();
+		assertEquals(37, rows.size());
+		for (int i = 1; i < rows.size(); i++)
+		{
+			int c = rows.get(i - 1).cui.compareTo(rows.get(i).cui);
+			assertTrue(rows.get(i - 1).cui + " before " + rows.get(i).cui, c < 0 || (c == 0 && rows.get(i - 1).aui.compareTo(rows.get(i).aui) < 0));
+		}
+	}
+
+	@Test
+	public void appliesTheSabFilter() throws Exception
+	{
+		engine_ = new MergeJoinEngine(fixture(), new File(temp_.getRoot(), "sort"), Arrays.asList("MSH", "MTH"), true, null, 4);
+		engine_.prepare();
+		HashSet<String> sabs = new HashSet<>();
+		for (MRCONSO row : readAll())
+		{
+			sabs.add(row.getSab());
+		}
+		assertEquals(new HashSet<>(Arrays.asList("MSH")), sabs);
+	}
+
+	@Test
+	public void joinsTheRowsOfEachCui() throws Exception
+	{
+		engine_ = new MergeJoinEngine(fixture(), new File(temp_.getRoot(), "sort"), null, false, null, 4);
+		engine_.prepare();
+		CUILookup lookup = engine_.getLookup();
+		lookup.prefetch("C0000000", "C9999999");
+
+		ResultSet rs = lookup.semanticTypes("C0011849");
+		assertTrue(rs.next());
+		assertEquals("T047", rs.getString("TUI"));
+		assertFalse(rs.next());
+
+		assertEquals(Arrays.asList("AT0000001", "AT0000002"), column(lookup.atomAttributes("C0011849", "A0000010"), "ATUI"));
+		assertEquals(Arrays.asList("AT0000101"), column(lookup.definitions("C0011849", "A0000013"), "ATUI"));
+
+		//The CUI level MTH rels, in file order
+		assertEquals(Arrays.asList("R0000034", "R0000036"), column(lookup.cuiRelationshipsBackward("C0011849"), "RUI"));
+		assertEquals(Arrays.asList("R0000033", "R0000035"), column(lookup.cuiRelationshipsForward("C0011849"), "RUI"));
+
+		//Atom rels carry the SAB and code of the atom at the far end
+		rs = lookup.atomRelationshipsBackward("C0011849", "A0000010");
+		assertTrue(rs.next());
+		assertEquals("R0000001", rs.getString("RUI"));
+		assertEquals("ICD9CM", rs.getString("TARGETSAB"));
+		assertEquals("240-279.99", rs.getString("TARGETCODE"));
+
+		assertFalse(lookup.semanticTypes("C9999998").next());
+	}
+
+	@Test
+	public void stagesOnlyTheMetadataAndRootRowsOfMRCONSO() throws Exception
+	{
+		engine_ = new MergeJoinEngine(fixture(), new File(temp_.getRoot(), "sort"), null, false, Arrays.asList("MSH|C0018681|A0000052"), 4);
+		engine_.prepare();
+		File original = RRFLayout.dataFile(fixture(), "MRCONSO");
+		File staged = engine_.getStagingFile("MRCONSO", original);
+		assertNotEquals(original, staged);
+
+		HashSet<String> originalLines = new HashSet<>(Files.readAllLines(original.toPath(), StandardCharsets.UTF_8));
+		HashSet<String> auis = new HashSet<>();
+		for (String line : Files.readAllLines(staged.toPath(), StandardCharsets.UTF_8))
+		{
+			assertTrue(line, originalLines.contains(line));
+			auis.add(RRFLayout.split(line)[7]);
+		}
+		//The SRC atoms, the top level atoms of each hierarchy, and the configured root
+		assertTrue(auis.containsAll(Arrays.asList("A0000001", "A0000002", "A0000003", "A0000004", "A0000070", "A0000040", "A0000050", 
+				"A0000060", "A0000062", "A0000071", "A0000044", "A0000052")));
+	}
+
+	private ArrayList<MRCONSO> readAll() throws Exception
+	{
+		ArrayList<MRCONSO> rows = new ArrayList<>();
+		MRCONSO row;
+		while ((row = engine_.read()) != null)
+		{
+			rows.add(row);
+		}
+		assertNull(engine_.read());
+		return rows;
+	}
+
+	private static ArrayList<String> column(ResultSet rs, String column) throws SQLException
+	{
+		ArrayList<String> values = new ArrayList<>();
+		while (rs.next())
+		{
+			values.add(rs.getString(column));
+		}
+		rs.close();
+		return values;
+	}
+}
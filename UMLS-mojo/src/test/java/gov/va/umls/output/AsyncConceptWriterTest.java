@@ -0,0 +1,78 @@
+package gov.va.umls.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import gov.va.umls.FixtureConversion;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import org.ihtsdo.etypes.EConcept;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The bytes written through {@link AsyncConceptWriter} have to be exactly those writeExternal writes - for the fixture
+ * conversion with and without asyncOutput, and for the fixture concepts written with small queues and buffers, across a
+ * switch of the target stream.
+ */
+public class AsyncConceptWriterTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void conversionWritesTheSameJbin() throws Exception
+	{
+		byte[] direct = Files.readAllBytes(new FixtureConversion(temp_.newFolder("direct")).set("asyncOutput", false).run().toPath());
+		assertTrue(direct.length > 0);
+		byte[] async = Files.readAllBytes(new FixtureConversion(temp_.newFolder("async")).set("asyncOutput", true).run().toPath());
+		assertArrayEquals(direct, async);
+	}
+
+	@Test
+	public void writesTheBytesOfWriteExternal() throws Exception
+	{
+		List<EConcept> concepts = FixtureConversion.read(new FixtureConversion(temp_.newFolder("fixture")).set("asyncOutput", false).run());
+		assertTrue(concepts.size() > 2);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(expected);
+		for (EConcept concept : concepts)
+		{
+			concept.writeExternal(dos);
+		}
+		dos.close();
+
+		//Buffers smaller than a concept, and a queue that fills up, with half the concepts to each stream
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		AsyncConceptWriter writer = new AsyncConceptWriter(new DataOutputStream(first), 2, 16);
+		int half = concepts.size() / 2;
+		for (int i = 0; i < concepts.size(); i++)
+		{
+			if (i == half)
+			{
+				writer.flush();
+				writer.setTarget(new DataOutputStream(second));
+			}
+			writer.write(concepts.get(i));
+		}
+		writer.close();
+
+		ByteArrayOutputStream firstExpected = new ByteArrayOutputStream();
+		dos = new DataOutputStream(firstExpected);
+		for (EConcept concept : concepts.subList(0, half))
+		{
+			concept.writeExternal(dos);
+		}
+		dos.close();
+		assertArrayEquals(firstExpected.toByteArray(), first.toByteArray());
+
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		all.write(first.toByteArray());
+		all.write(second.toByteArray());
+		assertArrayEquals(expected.toByteArray(), all.toByteArray());
+	}
+}
@@ -0,0 +1,184 @@
+package gov.va.umls.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trips blocks through {@link BlockCompressedWriter} and {@link BlockCompressedReader}
+ */
+public class BlockCompressedTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	private ArrayList<byte[]> blocks_ = new ArrayList<>();
+	private ArrayList<Integer> concepts_ = new ArrayList<>();
+
+	@Test
+	public void writesSeeksAndReadsBlocks() throws IOException
+	{
+		File f = write(40);
+		BlockCompressedReader reader = new BlockCompressedReader(f);
+		assertEquals(blocks_.size(), reader.getBlockCount());
+		
+		long concept = 0;
+		for (int block = 0; block < blocks_.size(); block++)
+		{
+			assertEquals(concept, reader.getFirstConcept(block));
+			for (int i = 0; i < concepts_.get(block); i++)
+			{
+				assertEquals(block, reader.findBlock(concept++));
+			}
+		}
+		assertEquals(concept, reader.getConceptCount());
+		
+		//Read out of order
+		for (int block = blocks_.size() - 1; block >= 0; block -= 3)
+		{
+			assertArrayEquals(blocks_.get(block), reader.readBlock(block));
+		}
+		assertArrayEquals(blocks_.get(0), reader.readBlock(0));
+		
+		try
+		{
+			reader.findBlock(concept);
+			fail("Found a block for a concept past the end");
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			//expected
+		}
+		reader.close();
+	}
+
+	@Test
+	public void failsTheChecksumOfAChangedBlock() throws IOException
+	{
+		File f = write(3);
+		long frame = offsetOf(f, 1);
+		
+		//The CRC follows the compressed length, uncompressed length and concept count
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.seek(frame + 12);
+		int crc = raf.readInt();
+		raf.seek(frame + 12);
+		raf.writeInt(crc ^ 1);
+		raf.close();
+		
+		BlockCompressedReader reader = new BlockCompressedReader(f);
+		assertArrayEquals(blocks_.get(0), reader.readBlock(0));
+		try
+		{
+			reader.readBlock(1);
+			fail("The changed block passed its checksum");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+		}
+		assertArrayEquals(blocks_.get(2), reader.readBlock(2));
+		reader.close();
+	}
+
+	@Test
+	public void rejectsACorruptFrame() throws IOException
+	{
+		File f = write(2);
+		long frame = offsetOf(f, 1);
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.seek(frame + 16 + 4);
+		int b = raf.read();
+		raf.seek(frame + 16 + 4);
+		raf.write(b ^ 0xFF);
+		raf.close();
+		
+		BlockCompressedReader reader = new BlockCompressedReader(f);
+		try
+		{
+			reader.readBlock(1);
+			fail("Read a corrupt block");
+		}
+		catch (IOException e)
+		{
+			//corrupt, truncated or failing the checksum - depending on where the change lands
+		}
+		reader.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsAnUnfinishedFile() throws IOException
+	{
+		File f = write(2);
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.setLength(raf.length() - 4);
+		raf.close();
+		new BlockCompressedReader(f);
+	}
+
+	@Test
+	public void readsAFileWithoutBlocks() throws IOException
+	{
+		BlockCompressedReader reader = new BlockCompressedReader(write(0));
+		assertEquals(0, reader.getBlockCount());
+		assertEquals(0, reader.getConceptCount());
+		reader.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsLz4()
+	{
+		BlockCompressedWriter.Codec.parse("lz4");
+	}
+
+	/**
+	 * Write blocks of mixed random and repetitive bytes
+	 */
+	private File write(int blocks) throws IOException
+	{
+		Random random = new Random(blocks);
+		File f = new File(temp_.getRoot(), BlockCompressedWriter.FILE_NAME);
+		BlockCompressedWriter writer = new BlockCompressedWriter(f, BlockCompressedWriter.Codec.parse("deflate"), 3);
+		//reused between blocks, like the AsyncConceptWriter buffer
+		byte[] buffer = new byte[64 * 1024];
+		for (int i = 0; i < blocks; i++)
+		{
+			int length = 1 + random.nextInt(buffer.length - 1);
+			for (int j = 0; j < length; j++)
+			{
+				buffer[j] = (byte)(j % 7 == 0 ? random.nextInt() : j);
+			}
+			int concepts = 1 + random.nextInt(20);
+			writer.writeBlock(buffer, length, concepts);
+			blocks_.add(Arrays.copyOf(buffer, length));
+			concepts_.add(concepts);
+		}
+		writer.close();
+		assertEquals(blocks, writer.getBlockCount());
+		assertEquals(f.length() - 16 - 24 * blocks, writer.getCompressedBytes());
+		return f;
+	}
+
+	/**
+	 * @return the file offset of the frame of a block, from the index
+	 */
+	private static long offsetOf(File f, int block) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		raf.seek(raf.length() - 16);
+		raf.seek(raf.readLong() + block * 24);
+		long offset = raf.readLong();
+		raf.close();
+		return offset;
+	}
+}
@@ -0,0 +1,92 @@
+package gov.va.umls.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.va.umls.FixtureConversion;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.TreeSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Converts the fixture to shards, and checks the manifest against the files written - and the concepts of the shards plus the
+ * base jbin against those of an unsharded run.
+ */
+public class ShardedOutputTest
+{
+	private static final int SHARDS = 3;
+
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void manifestMatchesTheShards() throws Exception
+	{
+		int unshardedConcepts = FixtureConversion.read(new FixtureConversion(temp_.newFolder("unsharded")).run()).size();
+
+		FixtureConversion sharded = new FixtureConversion(temp_.newFolder("sharded")).set("outputShards", SHARDS);
+		sharded.run();
+		File output = sharded.getOutputFolder();
+		List<String> manifest = Files.readAllLines(new File(output, ShardedConceptWriter.MANIFEST_FILE_NAME).toPath(), StandardCharsets.UTF_8);
+		assertEquals("shards\t" + SHARDS, manifest.get(0));
+		assertEquals(1 + 1 + SHARDS, manifest.size());
+
+		TreeSet<String> listed = new TreeSet<>();
+		int concepts = 0, shardConcepts = 0;
+		for (int i = 1; i < manifest.size(); i++)
+		{
+			String[] fields = manifest.get(i).split("\t");
+			assertEquals(manifest.get(i), 4, fields.length);
+			File f = new File(output, fields[0]);
+			assertTrue(fields[0], f.isFile());
+			listed.add(fields[0]);
+
+			int read = FixtureConversion.read(f).size();
+			concepts += read;
+			if (fields[0].startsWith(ShardedConceptWriter.SHARD_PREFIX))
+			{
+				assertEquals(fields[0], read, Integer.parseInt(fields[1]));
+				shardConcepts += read;
+			}
+			else
+			{
+				assertEquals(fields[0], sharded.getJbin().getName(), fields[0]);
+				assertEquals(fields[0], "-1", fields[1]);
+			}
+			assertEquals(fields[0], f.length(), Long.parseLong(fields[2]));
+			assertEquals(fields[0], md5(f), fields[3]);
+		}
+
+		String[] shards = output.list(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.startsWith(ShardedConceptWriter.SHARD_PREFIX);
+			}
+		});
+		assertEquals(SHARDS, shards.length);
+		for (String shard : shards)
+		{
+			assertTrue(shard + " isn't in the manifest", listed.contains(shard));
+		}
+		assertTrue("No concepts in the shards", shardConcepts > 0);
+		assertEquals(unshardedConcepts, concepts);
+	}
+
+	private static String md5(File f) throws Exception
+	{
+		StringBuilder sb = new StringBuilder();
+		for (byte b : MessageDigest.getInstance("MD5").digest(Files.readAllBytes(f.toPath())))
+		{
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,133 @@
+package gov.va.umls.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import org.junit.Test;
+
+public class OrderedTaskSequencerTest
+{
+	@Test
+	public void commitsInSubmissionOrder() throws Exception
+	{
+		final ArrayList<Integer> committed = new ArrayList<>();
+		final Thread submitter = Thread.currentThread();
+		OrderedTaskSequencer<Integer> sequencer = new OrderedTaskSequencer<>("test", 4, 3, new OrderedTaskSequencer.Committer<Integer>()
+		{
+			@Override
+			public void commit(Integer result)
+			{
+				assertSame(submitter, Thread.currentThread());
+				committed.add(result);
+			}
+		});
+		
+		//Later tasks tend to finish first
+		Random random = new Random(7);
+		for (int i = 0; i < 50; i++)
+		{
+			sequencer.submit(task(i, random.nextInt(5)));
+		}
+		sequencer.finish();
+		
+		assertEquals(50, committed.size());
+		for (int i = 0; i < committed.size(); i++)
+		{
+			assertEquals(i, committed.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void propagatesTaskFailures() throws Exception
+	{
+		final ArrayList<Integer> committed = new ArrayList<>();
+		OrderedTaskSequencer<Integer> sequencer = new OrderedTaskSequencer<>("test", 2, 2, new OrderedTaskSequencer.Committer<Integer>()
+		{
+			@Override
+			public void commit(Integer result)
+			{
+				committed.add(result);
+			}
+		});
+		
+		try
+		{
+			sequencer.submit(task(0, 0));
+			sequencer.submit(new Callable<Integer>()
+			{
+				@Override
+				public Integer call() throws Exception
+				{
+					throw new IOException("task failed");
+				}
+			});
+			for (int i = 2; i < 10; i++)
+			{
+				sequencer.submit(task(i, 0));
+			}
+			sequencer.finish();
+			fail("The task failure wasn't passed on");
+		}
+		catch (IOException e)
+		{
+			//unwrapped from the ExecutionException
+			assertEquals("task failed", e.getMessage());
+		}
+		finally
+		{
+			sequencer.shutdown();
+		}
+		
+		//Nothing after the failed task is committed
+		assertTrue(committed.size() <= 1);
+		if (committed.size() == 1)
+		{
+			assertEquals(0, committed.get(0).intValue());
+		}
+	}
+
+	@Test
+	public void propagatesCommitFailures() throws Exception
+	{
+		OrderedTaskSequencer<Integer> sequencer = new OrderedTaskSequencer<>("test", 2, 1, new OrderedTaskSequencer.Committer<Integer>()
+		{
+			@Override
+			public void commit(Integer result) throws Exception
+			{
+				throw new IllegalStateException("commit " + result);
+			}
+		});
+		try
+		{
+			sequencer.submit(task(0, 0));
+			sequencer.finish();
+			fail("The commit failure wasn't passed on");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals("commit 0", e.getMessage());
+		}
+		finally
+		{
+			sequencer.shutdown();
+		}
+	}
+
+	private static Callable<Integer> task(final int value, final int sleepMillis)
+	{
+		return new Callable<Integer>()
+		{
+			@Override
+			public Integer call() throws Exception
+			{
+				Thread.sleep(sleepMillis * 2);
+				return value;
+			}
+		};
+	}
+}
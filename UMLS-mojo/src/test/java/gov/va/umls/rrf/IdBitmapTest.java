@@ -0,0 +1,63 @@
+package gov.va.umls.rrf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class IdBitmapTest
+{
+	@Test
+	public void testsMembershipOnRawBytes()
+	{
+		IdBitmap ids = new IdBitmap('C');
+		ids.add("C0011849");
+		ids.add("C1");
+		ids.add("C9999999999");  //too big for the bitmap
+		ids.add("CL123");  //not prefix + digits
+		ids.add("C123\u00e9");
+		ids.add(null);
+		assertEquals(5, ids.size());
+		
+		//The ids sit in the middle of a RRF line
+		String line = "xx|C0011849|C1|C01|C0011848|C9999999999|CL123|C123\u00e9|A0011849|C|";
+		ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+		assertTrue(contains(ids, buffer, line, "C0011849"));
+		assertTrue(contains(ids, buffer, line, "C1"));
+		assertTrue(contains(ids, buffer, line, "C9999999999"));
+		assertTrue(contains(ids, buffer, line, "CL123"));
+		//zero padding is significant
+		assertFalse(contains(ids, buffer, line, "C01"));
+		assertFalse(contains(ids, buffer, line, "C0011848"));
+		assertFalse(contains(ids, buffer, line, "A0011849"));
+		assertFalse(contains(ids, buffer, line, "C"));
+		
+		byte[] utf8 = "C123\u00e9".getBytes(StandardCharsets.UTF_8);
+		assertTrue(ids.contains(ByteBuffer.wrap(utf8), 0, utf8.length));
+	}
+
+	@Test
+	public void testsMembershipOnStrings()
+	{
+		IdBitmap ids = new IdBitmap('A');
+		ids.add("A0000010");
+		ids.add("A10");
+		assertTrue(ids.contains("A0000010"));
+		assertTrue(ids.contains("A10"));
+		assertFalse(ids.contains("A010"));
+		assertFalse(ids.contains("C0000010"));
+		assertFalse(ids.contains("A"));
+		assertEquals(2, ids.size());
+	}
+
+	/**
+	 * Test the bytes of the field holding the id
+	 */
+	private static boolean contains(IdBitmap ids, ByteBuffer buffer, String line, String id)
+	{
+		int start = line.substring(0, line.indexOf("|" + id + "|") + 1).getBytes(StandardCharsets.UTF_8).length;
+		return ids.contains(buffer, start, id.getBytes(StandardCharsets.UTF_8).length);
+	}
+}
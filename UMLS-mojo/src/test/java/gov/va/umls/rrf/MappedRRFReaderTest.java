@@ -0,0 +1,85 @@
+package gov.va.umls.rrf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedRRFReaderTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void readsAllRows() throws IOException
+	{
+		MappedRRFReader reader = new MappedRRFReader(file("C1|A1|MSH|one|\r\n\nC2|A2|MTH|t\u00e9st|\nC3|A3|MSH||"), 2, null, null);
+		List<List<String>> rows = readAll(reader);
+		assertEquals(3, rows.size());
+		assertEquals(Arrays.asList("C1", "A1", "MSH", "one"), rows.get(0));
+		assertEquals(Arrays.asList("C2", "A2", "MTH", "t\u00e9st"), rows.get(1));
+		//empty fields are empty strings
+		assertEquals(Arrays.asList("C3", "A3", "MSH", ""), rows.get(2));
+		assertEquals(3, reader.getRowCount());
+	}
+
+	@Test
+	public void filtersBySabAndRequiredIds() throws IOException
+	{
+		File f = file("C1|A1|MSH|\nC2|A2|MSHX|\nC3|A3|MTH|\nC4||MSH|\nC5|A5|MSH|\nC6|A6|MS|\n");
+		IdBitmap auis = new IdBitmap('A');
+		auis.add("A1");
+		auis.add("A3");
+		MappedRRFReader reader = new MappedRRFReader(f, 2, Arrays.asList("MSH", "MTH"), new boolean[] {true, false});
+		reader.require(1, auis);
+		List<List<String>> rows = readAll(reader);
+		
+		ArrayList<String> cuis = new ArrayList<>();
+		for (List<String> row : rows)
+		{
+			cuis.add(row.get(0));
+			//columns that aren't kept are null
+			assertNull(row.get(1));
+			assertNull(row.get(2));
+		}
+		//A5 isn't required, and an empty column always passes
+		assertEquals(Arrays.asList("C1", "C3", "C4"), cuis);
+	}
+
+	@Test
+	public void readsAnEmptyFile() throws IOException
+	{
+		MappedRRFReader reader = new MappedRRFReader(file(""), -1, null, null);
+		assertFalse(reader.hasNextRow());
+		assertNull(reader.getNextRow());
+		reader.close();
+	}
+
+	private File file(String content) throws IOException
+	{
+		File f = File.createTempFile("test", ".RRF", temp_.getRoot());
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(content.getBytes("UTF-8"));
+		out.close();
+		return f;
+	}
+
+	private static List<List<String>> readAll(MappedRRFReader reader) throws IOException
+	{
+		ArrayList<List<String>> rows = new ArrayList<>();
+		while (reader.hasNextRow())
+		{
+			rows.add(reader.getNextRow());
+		}
+		reader.close();
+		return rows;
+	}
+}
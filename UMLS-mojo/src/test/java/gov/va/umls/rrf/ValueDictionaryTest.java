@@ -0,0 +1,67 @@
+package gov.va.umls.rrf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+/**
+ * Encodes values through {@link ValueDictionary}, from one thread and from several at once
+ */
+public class ValueDictionaryTest
+{
+	@Test
+	public void roundTripsValues()
+	{
+		ValueDictionary dictionary = new ValueDictionary();
+		short sab = dictionary.encode("SNOMEDCT_US");
+		short tty = dictionary.encode("PT");
+		assertEquals(sab, dictionary.encode(new String("SNOMEDCT_US")));
+		assertEquals("SNOMEDCT_US", dictionary.decode(sab));
+		assertEquals("PT", dictionary.decode(tty));
+		assertEquals(ValueDictionary.NULL_CODE, dictionary.encode(null));
+		assertNull(dictionary.decode(ValueDictionary.NULL_CODE));
+		assertEquals(2, dictionary.size());
+	}
+
+	@Test
+	public void givesEveryThreadTheSameCodes() throws Exception
+	{
+		final ValueDictionary dictionary = new ValueDictionary();
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		ArrayList<Future<short[]>> results = new ArrayList<>();
+		for (int t = 0; t < 8; t++)
+		{
+			results.add(pool.submit(new Callable<short[]>()
+			{
+				@Override
+				public short[] call()
+				{
+					//More values than the initial value array holds, so it grows while the threads are encoding
+					short[] codes = new short[1000];
+					for (int i = 0; i < codes.length; i++)
+					{
+						codes[i] = dictionary.encode("V" + i);
+					}
+					return codes;
+				}
+			}));
+		}
+		short[] first = results.get(0).get();
+		for (Future<short[]> result : results)
+		{
+			short[] codes = result.get();
+			for (int i = 0; i < codes.length; i++)
+			{
+				assertEquals(first[i], codes[i]);
+				assertEquals("V" + i, dictionary.decode(codes[i]));
+			}
+		}
+		pool.shutdown();
+		assertEquals(1000, dictionary.size());
+	}
+}
@@ -0,0 +1,85 @@
+package gov.va.umls.sct;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.ihtsdo.etypes.EConcept;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PendingConceptStoreTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void roundTripsConcepts() throws Exception
+	{
+		PendingConceptStore store = new PendingConceptStore(temp_.getRoot());
+		for (int i = 0; i < 10; i++)
+		{
+			store.put("C" + i, concept(i));
+		}
+		assertEquals(10, store.size());
+		
+		//Read back out of order, interleaved with more puts
+		assertEquals(uuid(7), store.remove("C7").getPrimordialUuid());
+		store.put("C10", concept(10));
+		assertEquals(uuid(2), store.remove("C2").getPrimordialUuid());
+		assertEquals(uuid(10), store.remove("C10").getPrimordialUuid());
+		assertNull(store.remove("C7"));
+		assertNull(store.remove("C99"));
+		assertEquals(8, store.size());
+		
+		assertEquals(Arrays.asList("C1", "C5", "C9"), store.inStoreOrder(Arrays.asList("C9", "C7", "C1", "C5")));
+		
+		store.close();
+		assertEquals(0, temp_.getRoot().listFiles().length);
+	}
+
+	@Test
+	public void reopensAtACheckpoint() throws Exception
+	{
+		PendingConceptStore store = new PendingConceptStore(temp_.getRoot());
+		store.put("C1", concept(1));
+		store.put("C2", concept(2));
+		long length = store.checkpoint();
+		Map<String, Long> offsets = new HashMap<>(store.getOffsets());
+		//stored after the checkpoint - discarded
+		store.put("C3", concept(3));
+		store.close(false);
+		
+		File spill = temp_.getRoot().listFiles()[0];
+		assertTrue(spill.length() > length);
+		
+		store = new PendingConceptStore(temp_.getRoot(), length, offsets);
+		assertEquals(2, store.size());
+		assertEquals(length, spill.length());
+		store.put("C4", concept(4));
+		assertEquals(uuid(4), store.remove("C4").getPrimordialUuid());
+		assertEquals(uuid(1), store.remove("C1").getPrimordialUuid());
+		assertEquals(uuid(2), store.remove("C2").getPrimordialUuid());
+		assertNull(store.remove("C3"));
+		store.close();
+		assertFalse(spill.exists());
+	}
+
+	private static EConcept concept(int i)
+	{
+		EConcept concept = new EConcept();
+		concept.setPrimordialUuid(uuid(i));
+		return concept;
+	}
+
+	private static UUID uuid(int i)
+	{
+		return UUID.nameUUIDFromBytes(("C" + i).getBytes());
+	}
+}
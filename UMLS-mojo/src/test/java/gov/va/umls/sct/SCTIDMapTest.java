@@ -0,0 +1,82 @@
+package gov.va.umls.sct;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.UUID;
+import org.junit.Test;
+
+public class SCTIDMapTest
+{
+	@Test
+	public void roundTripsIds()
+	{
+		int count = 5000;
+		SCTIDMap map = new SCTIDMap(count);
+		for (int i = 0; i < count; i++)
+		{
+			map.put(id(i), i, ~i);
+		}
+		assertEquals(count, map.size());
+		for (int i = 0; i < count; i++)
+		{
+			String id = Long.toString(id(i));
+			int slot = map.find(id);
+			assertTrue(slot >= 0);
+			assertEquals(i, map.getMostSignificantBits(slot));
+			assertEquals(~i, map.getLeastSignificantBits(slot));
+			assertEquals(new UUID(i, ~i), map.get(new StringBuilder(id)));
+		}
+		assertEquals(-1, map.find(Long.toString(id(count))));
+	}
+
+	@Test
+	public void replacesTheUUIDOfARepeatedId()
+	{
+		SCTIDMap map = new SCTIDMap(4);
+		map.put(73211009L, 1, 2);
+		map.put(73211009L, 3, 4);
+		assertEquals(1, map.size());
+		assertEquals(new UUID(3, 4), map.get("73211009"));
+	}
+
+	@Test
+	public void onlyAcceptsCanonicalIds()
+	{
+		SCTIDMap map = new SCTIDMap(4);
+		map.put(9L, 1, 1);
+		map.put(0L, 2, 2);
+		map.put(73211009L, 3, 3);
+		
+		assertEquals(new UUID(2, 2), map.get("0"));
+		assertEquals(new UUID(1, 1), map.get("9"));
+		//Leading zeros never matched the ids from the jbin files
+		assertNull(map.get("09"));
+		assertNull(map.get("00"));
+		assertNull(map.get("073211009"));
+		assertNull(map.get("73211009 "));
+		assertNull(map.get("-9"));
+		assertNull(map.get(""));
+		assertNull(map.get(null));
+		
+		assertEquals(73211009L, SCTIDMap.parse("73211009"));
+		assertEquals(-1, SCTIDMap.parse("073211009"));
+		assertEquals(-1, SCTIDMap.parse("1234567890123456789"));
+		assertEquals(999999999999999999L, SCTIDMap.parse("999999999999999999"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void doesNotGrow()
+	{
+		SCTIDMap map = new SCTIDMap(1);
+		for (int i = 0; i < 100; i++)
+		{
+			map.put(id(i), i, i);
+		}
+	}
+
+	private static long id(int i)
+	{
+		return 100000000L + i * 104729L;
+	}
+}
@@ -0,0 +1,99 @@
+package gov.va.umls.sct;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SCTIndexTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void looksUpWrittenIds() throws Exception
+	{
+		File f = new File(temp_.getRoot(), "test.idx");
+		//unsorted, with 73211009 repeated - the last one wins
+		long[] ids = new long[] {73211009L, 138875005L, 46635009L, 73211009L, 9L};
+		long[] msb = new long[] {1, 2, 3, 4, 5};
+		long[] lsb = new long[] {10, 20, 30, 40, 50};
+		SCTIndex.write(ids, msb, lsb, ids.length, f);
+		
+		SCTIndex index = new SCTIndex(f);
+		assertEquals(4, index.size());
+		assertEquals(new UUID(4, 40), index.get("73211009"));
+		assertEquals(new UUID(2, 20), index.get("138875005"));
+		assertEquals(new UUID(3, 30), index.get("46635009"));
+		assertEquals(new UUID(5, 50), index.get("9"));
+		assertNull(index.get("46635008"));
+		assertNull(index.get("1"));
+		assertNull(index.get("999999999999999999"));
+		
+		//Leading zeros never matched the ids from the jbin files
+		assertNull(index.get("073211009"));
+		assertNull(index.get("09"));
+		assertNull(index.get("7321100x"));
+		assertNull(index.get(""));
+		assertNull(index.get(null));
+	}
+
+	@Test
+	public void loadsIntoAMap() throws Exception
+	{
+		File f = new File(temp_.getRoot(), "test.idx");
+		int count = 1000;
+		long[] ids = new long[count];
+		long[] msb = new long[count];
+		long[] lsb = new long[count];
+		for (int i = 0; i < count; i++)
+		{
+			ids[i] = 100000000L + i * 7919L;
+			msb[i] = i;
+			lsb[i] = -i;
+		}
+		SCTIndex.write(ids, msb, lsb, count, f);
+		
+		SCTIndex index = new SCTIndex(f);
+		SCTIDMap map = index.toMap();
+		assertEquals(count, map.size());
+		for (int i = 0; i < count; i++)
+		{
+			String id = Long.toString(ids[i]);
+			assertEquals(new UUID(i, -i), index.get(id));
+			assertEquals(index.get(id), map.get(id));
+		}
+	}
+
+	@Test
+	public void reusesTheIndexOfTheSameJbins() throws Exception
+	{
+		File jbins = temp_.newFolder("jbins");
+		File indexes = temp_.newFolder("indexes");
+		new File(jbins, "empty.jbin").createNewFile();
+		
+		assertEquals(0, SCTIndex.open(jbins, indexes).size());
+		File[] built = indexes.listFiles();
+		assertEquals(1, built.length);
+		long modified = built[0].lastModified();
+		
+		assertEquals(0, SCTIndex.open(jbins, indexes).size());
+		assertEquals(1, indexes.listFiles().length);
+		assertEquals(modified, indexes.listFiles()[0].lastModified());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws Exception
+	{
+		File f = temp_.newFile("bogus.idx");
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(new byte[32]);
+		out.close();
+		new SCTIndex(f);
+	}
+}
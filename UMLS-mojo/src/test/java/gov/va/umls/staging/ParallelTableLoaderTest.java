@@ -0,0 +1,164 @@
+package gov.va.umls.staging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.va.oia.terminology.converters.umlsUtils.RRFDatabaseHandle;
+import gov.va.oia.terminology.converters.umlsUtils.UMLSFileReader;
+import gov.va.oia.terminology.converters.umlsUtils.sql.TableDefinition;
+import gov.va.umls.FixtureConversion;
+import gov.va.umls.report.RunReport;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Stages the fixture META with the {@link ParallelTableLoader}, and one table after the other on a single connection (as the
+ * mojo used to) - the tables, their rows and their indexes have to come out the same.
+ */
+public class ParallelTableLoaderTest
+{
+	private static final List<String> INDEXES = Arrays.asList(
+			"CREATE INDEX conso_cui_index ON MRCONSO (CUI, AUI)",
+			"CREATE INDEX sat_cui_metaui_index ON MRSAT (CUI, METAUI)",
+			"CREATE INDEX sat_metaui_index ON MRSAT (METAUI)",
+			"CREATE INDEX sty_cui_index ON MRSTY (CUI)",
+			"CREATE INDEX rel_2_index ON MRREL (CUI2, AUI2)",
+			"CREATE INDEX rel_1_index ON MRREL (CUI1, AUI1)",
+			"CREATE INDEX mrdef_cui_aui_index ON MRDEF (CUI, AUI)",
+			"CREATE INDEX mrhier_paui_index ON MRHIER (PAUI)");
+
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void loadsTheSameTablesAsASerialLoad() throws Exception
+	{
+		File meta = new FixtureConversion(temp_.newFolder("fixture")).getMETAFolder();
+
+		RRFDatabaseHandle serial = new RRFDatabaseHandle();
+		serial.createOrOpenDatabase(new File(temp_.getRoot(), "serial"));
+		for (TableDefinition td : tables(serial, meta))
+		{
+			serial.loadDataIntoTable(td, new UMLSFileReader(new BufferedReader(new FileReader(RRFLayout.dataFile(meta, td.getTableName())))),
+					FixtureConversion.SAB_FILTERS);
+		}
+		Statement s = serial.getConnection().createStatement();
+		for (String index : INDEXES)
+		{
+			s.execute(index);
+		}
+		s.close();
+
+		File parallelFile = new File(temp_.getRoot(), "parallel");
+		RRFDatabaseHandle parallel = new RRFDatabaseHandle();
+		parallel.createOrOpenDatabase(parallelFile);
+		ParallelTableLoader loader = new ParallelTableLoader(parallelFile, 4, null, new RunReport().start("stagingLoad"));
+		for (TableDefinition td : tables(parallel, meta))
+		{
+			ArrayList<String> indexes = new ArrayList<>();
+			for (String index : INDEXES)
+			{
+				if (index.contains(" ON " + td.getTableName() + " "))
+				{
+					indexes.add(index);
+				}
+			}
+			loader.load(td, RRFLayout.dataFile(meta, td.getTableName()), FixtureConversion.SAB_FILTERS, indexes);
+		}
+		loader.finish();
+
+		try
+		{
+			TreeMap<String, List<String>> expected = dump(serial.getConnection());
+			assertTrue(expected.get("MRCONSO").size() > 0);
+			TreeMap<String, List<String>> actual = dump(parallel.getConnection());
+			assertEquals(expected.keySet(), actual.keySet());
+			assertEquals(expected, actual);
+			assertEquals(indexes(serial.getConnection()), indexes(parallel.getConnection()));
+		}
+		finally
+		{
+			serial.shutdown();
+			parallel.shutdown();
+		}
+	}
+
+	private static List<TableDefinition> tables(RRFDatabaseHandle db, File meta) throws Exception
+	{
+		return db.loadTableDefinitionsFromMRCOLS(new FileInputStream(new File(meta, "MRFILES.RRF")),
+				new FileInputStream(new File(meta, "MRCOLS.RRF")), new HashSet<String>());
+	}
+
+	/**
+	 * @return the rows of every table, in load order
+	 */
+	private static TreeMap<String, List<String>> dump(Connection c) throws SQLException
+	{
+		TreeMap<String, List<String>> tables = new TreeMap<>();
+		ResultSet rs = c.getMetaData().getTables(null, "PUBLIC", null, new String[] {"TABLE"});
+		while (rs.next())
+		{
+			tables.put(rs.getString("TABLE_NAME"), null);
+		}
+		rs.close();
+
+		Statement s = c.createStatement();
+		for (String table : tables.keySet())
+		{
+			ArrayList<String> rows = new ArrayList<>();
+			ResultSet data = s.executeQuery("select * from " + table + " order by _ROWID_");
+			int columns = data.getMetaData().getColumnCount();
+			while (data.next())
+			{
+				StringBuilder row = new StringBuilder();
+				for (int i = 1; i <= columns; i++)
+				{
+					row.append(data.getString(i)).append('|');
+				}
+				rows.add(row.toString());
+			}
+			data.close();
+			tables.put(table, rows);
+		}
+		s.close();
+		return tables;
+	}
+
+	/**
+	 * @return table.index(position column) for each indexed column
+	 */
+	private static TreeSet<String> indexes(Connection c) throws SQLException
+	{
+		TreeSet<String> indexes = new TreeSet<>();
+		DatabaseMetaData md = c.getMetaData();
+		ResultSet tables = md.getTables(null, "PUBLIC", null, new String[] {"TABLE"});
+		while (tables.next())
+		{
+			ResultSet rs = md.getIndexInfo(null, "PUBLIC", tables.getString("TABLE_NAME"), false, false);
+			while (rs.next())
+			{
+				indexes.add(rs.getString("TABLE_NAME") + "." + rs.getString("INDEX_NAME") + "(" + rs.getShort("ORDINAL_POSITION") + " "
+						+ rs.getString("COLUMN_NAME") + ")");
+			}
+			rs.close();
+		}
+		tables.close();
+		return indexes;
+	}
+}
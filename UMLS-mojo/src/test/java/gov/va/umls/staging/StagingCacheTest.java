@@ -0,0 +1,131 @@
+package gov.va.umls.staging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import gov.va.umls.FixtureConversion;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Names, reuses and evicts staging databases for the fixture META - the databases are stand in files, as the cache only
+ * deals in the files.
+ */
+public class StagingCacheTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	private File meta_;
+	private File h2Folder_;
+
+	@Before
+	public void copyFixture() throws Exception
+	{
+		meta_ = new FixtureConversion(temp_.newFolder("fixture")).getMETAFolder();
+		h2Folder_ = temp_.newFolder("h2");
+	}
+
+	@Test
+	public void reusesACompleteDatabase() throws Exception
+	{
+		StagingCache cache = new StagingCache(h2Folder_, Long.MAX_VALUE);
+		String name = cache.getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS, "full");
+		File db = database(name, 100);
+		cache.markComplete(name);
+
+		//The same inputs, with the filters in another order
+		StagingCache again = new StagingCache(h2Folder_, Long.MAX_VALUE);
+		assertEquals(name, again.getDatabaseName("umlsRRF_DB", meta_, Arrays.asList("MTH", "SRC", "MSH", "SNOMEDCT_US", "ICD9CM"), "full"));
+		assertTrue(db.isFile());
+	}
+
+	@Test
+	public void removesAnUnfinishedDatabase() throws Exception
+	{
+		StagingCache cache = new StagingCache(h2Folder_, Long.MAX_VALUE);
+		String name = cache.getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS, "full");
+		File db = database(name, 100);
+
+		assertEquals(name, new StagingCache(h2Folder_, Long.MAX_VALUE).getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS,
+				"full"));
+		assertFalse(db.exists());
+	}
+
+	@Test
+	public void changedInputsGetAnotherDatabase() throws Exception
+	{
+		StagingCache cache = new StagingCache(h2Folder_, Long.MAX_VALUE);
+		String name = cache.getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS, "full");
+		database(name, 100);
+		cache.markComplete(name);
+
+		assertNotEquals(name, cache.getDatabaseName("umlsRRF_DB", meta_, Arrays.asList("MSH"), "full"));
+		assertNotEquals(name, cache.getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS, "full, pruned"));
+		assertNotEquals(name, cache.getDatabaseName("umlsRRF_metadata_DB", meta_, FixtureConversion.SAB_FILTERS, "full"));
+
+		FileOutputStream append = new FileOutputStream(RRFLayout.dataFile(meta_, "MRSTY"), true);
+		append.write("C0011849|T047|A1.2.2|Disease or Syndrome|AT9999999||\n".getBytes("UTF-8"));
+		append.close();
+		String changed = cache.getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS, "full");
+		assertNotEquals(name, changed);
+		assertTrue("The old database stays until it is evicted", new File(h2Folder_, name + ".h2.db").isFile());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsed() throws Exception
+	{
+		StagingCache cache = new StagingCache(h2Folder_, 250);
+		String oldest = cache.getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS, "full");
+		File oldestDb = database(oldest, 100);
+		cache.markComplete(oldest);
+		String used = cache.getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS, "full, pruned");
+		File usedDb = database(used, 100);
+		cache.markComplete(used);
+		age(oldest, 3);
+		age(used, 2);
+		cache.touch(used);
+
+		//Over the limit once this one is added - the oldest goes, the recently used one stays
+		String newest = cache.getDatabaseName("umlsRRF_metadata_DB", meta_, FixtureConversion.SAB_FILTERS, "metadata");
+		File newestDb = database(newest, 100);
+		cache.markComplete(newest);
+
+		assertFalse(oldestDb.exists());
+		assertFalse(new File(h2Folder_, oldest + ".staging").exists());
+		assertTrue(usedDb.isFile());
+		assertTrue(newestDb.isFile());
+	}
+
+	@Test
+	public void neverEvictsTheDatabaseInUse() throws Exception
+	{
+		StagingCache cache = new StagingCache(h2Folder_, 10);
+		String name = cache.getDatabaseName("umlsRRF_DB", meta_, FixtureConversion.SAB_FILTERS, "full");
+		File db = database(name, 100);
+		cache.markComplete(name);
+		assertTrue(db.isFile());
+	}
+
+	private File database(String name, int size) throws IOException
+	{
+		File f = new File(h2Folder_, name + ".h2.db");
+		FileOutputStream fos = new FileOutputStream(f);
+		fos.write(new byte[size]);
+		fos.close();
+		return f;
+	}
+
+	private void age(String name, int hours)
+	{
+		new File(h2Folder_, name + ".staging").setLastModified(System.currentTimeMillis() - hours * 3600000L);
+	}
+}
@@ -0,0 +1,103 @@
+package gov.va.umls.uuid;
+
+import static org.junit.Assert.assertEquals;
+import gov.va.oia.terminology.converters.sharedUtils.stats.ConverterUUID;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NamespaceUUIDsTest
+{
+	private UUID previousNamespace_;
+	private boolean previousDisableMap_;
+
+	@Before
+	public void configure()
+	{
+		previousNamespace_ = ConverterUUID.getNamespace();
+		previousDisableMap_ = ConverterUUID.disableUUIDMap_;
+		ConverterUUID.configureNamespace(UUID.fromString("1b6d3a18-5a3c-5e7b-9f0a-6c1d2e3f4a5b"));
+		ConverterUUID.disableUUIDMap_ = true;
+	}
+
+	@After
+	public void restore()
+	{
+		ConverterUUID.configureNamespace(previousNamespace_);
+		ConverterUUID.disableUUIDMap_ = previousDisableMap_;
+	}
+
+	@Test
+	public void matchesConverterUUID()
+	{
+		NamespaceUUIDs uuids = new NamespaceUUIDs(null);
+		String[] values = new String[] {
+			"C0011849",
+			"",
+			"Diabetes Mellitus (Spanish)",
+			"Kreuzbandl\u00e4sion",  //2 byte
+			"\u7cd6\u5c3f\u75c5",  //3 byte
+			"\ud83d\ude00 smile",  //surrogate pair - 4 byte
+			"\ud800 unpaired high",
+			"unpaired low \udc00",
+			"ends high \ud83d",
+			"\udc00\ud800 reversed",
+			"\u0000\u007f\u0080\u07ff\u0800\uffff",
+			new String(new char[300]).replace('\0', '\u00e9')  //grows the buffer
+		};
+		for (String prefix : new String[] {"ATUI", "CUI:", "\u00c5"})
+		{
+			for (String value : values)
+			{
+				assertEquals(prefix + value, ConverterUUID.createNamespaceUUIDFromString(prefix + value, true), uuids.create(prefix, value, false));
+			}
+		}
+	}
+
+	@Test
+	public void joinsTheNameParts()
+	{
+		NamespaceUUIDs uuids = new NamespaceUUIDs(null);
+		assertEquals(ConverterUUID.createNamespaceUUIDFromString("CODE:C0011849:MSH:D003920", true), 
+				uuids.create(false, "CODE:", "C0011849", ":", "MSH", ":", "D003920"));
+	}
+
+	@Test
+	public void matchesWithTheDebugMap()
+	{
+		ConverterUUID.disableUUIDMap_ = false;
+		NamespaceUUIDs uuids = new NamespaceUUIDs(null);
+		assertEquals(ConverterUUID.createNamespaceUUIDFromString("ATUIAT0000001", true), uuids.create("ATUI", "AT0000001", true));
+		assertEquals(ConverterUUID.createNamespaceUUIDFromString("CUI:C0011849", true), uuids.create(false, "CUI:", "C0011849"));
+	}
+
+	@Test
+	public void matchesAcrossThreads() throws Exception
+	{
+		final NamespaceUUIDs uuids = new NamespaceUUIDs(null);
+		final UUID[] created = new UUID[4];
+		Thread[] threads = new Thread[created.length];
+		for (int i = 0; i < threads.length; i++)
+		{
+			final int index = i;
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (int j = 0; j < 1000; j++)
+					{
+						created[index] = uuids.create("AUI", "A" + j + "\u00e9", false);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i].join();
+			assertEquals(ConverterUUID.createNamespaceUUIDFromString("AUIA999\u00e9", true), created[i]);
+		}
+	}
+}
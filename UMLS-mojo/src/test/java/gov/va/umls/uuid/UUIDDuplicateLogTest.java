@@ -0,0 +1,76 @@
+package gov.va.umls.uuid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.va.umls.rrf.RRFLayout;
+import java.io.BufferedReader;
+import java.io.File;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UUIDDuplicateLogTest
+{
+	@Rule
+	public TemporaryFolder temp_ = new TemporaryFolder();
+
+	@Test
+	public void findsDuplicates() throws Exception
+	{
+		File folder = temp_.newFolder("log");
+		UUIDDuplicateLog log = new UUIDDuplicateLog(folder);
+		for (int i = 0; i < 100; i++)
+		{
+			log.record(uuid(i), true, "C", Integer.toString(i));
+		}
+		//The same name again, where that is expected
+		log.record(uuid(200), false, "AUI", "A1");
+		log.record(uuid(200), false, "AUI", "A1");
+		//A different name for the same UUID
+		log.record(uuid(7), false, "C", "\u00e9");
+		//The same name again, where it shouldn't be
+		log.record(uuid(9), true, "C", "9");
+		assertEquals(104, log.size());
+		
+		File report = new File(temp_.getRoot(), UUIDDuplicateLog.REPORT_FILE_NAME);
+		assertEquals(2, log.check(report));
+		//The log and its sort runs are removed
+		assertEquals(0, folder.listFiles().length);
+		
+		BufferedReader br = RRFLayout.open(report);
+		assertEquals("UUID\tName\tDuplicate Name", br.readLine());
+		String first = br.readLine();
+		String second = br.readLine();
+		br.close();
+		assertTrue(first + second, (first + second).contains(uuid(7) + "\tC7\tC\u00e9") || (first + second).contains(uuid(7) + "\tC\u00e9\tC7"));
+		assertTrue(first + second, (first + second).contains(uuid(9) + "\tC9\tC9"));
+	}
+
+	@Test
+	public void writesNoReportWithoutDuplicates() throws Exception
+	{
+		UUIDDuplicateLog log = new UUIDDuplicateLog(temp_.newFolder("log"));
+		log.record(uuid(1), true, "C", "1");
+		log.record(uuid(2), true, "C", "2");
+		File report = new File(temp_.getRoot(), UUIDDuplicateLog.REPORT_FILE_NAME);
+		assertEquals(0, log.check(report));
+		assertFalse(report.exists());
+	}
+
+	@Test
+	public void closeRemovesTheLog() throws Exception
+	{
+		File folder = temp_.newFolder("log");
+		UUIDDuplicateLog log = new UUIDDuplicateLog(folder);
+		log.record(uuid(1), true, "C", "1");
+		log.close();
+		assertEquals(0, folder.listFiles().length);
+	}
+
+	private static UUID uuid(int i)
+	{
+		return new UUID(i, i * 31L);
+	}
+}